@@ -0,0 +1,46 @@
+package com.ram.ds.cds;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.filters.IFilter;
+
+/**
+ * One aggregation in a batch passed to {@link CubeDs#aggregate(java.util.Map, String, java.util.List)}: the filters to apply and
+ * the aggregators to feed with the matching elements, as for a single call to
+ * {@link CubeDs#aggregate(java.util.Map, String, Aggregator[], IFilter[])}.
+ */
+public class AggregationRequest {
+
+    private final IFilter[] filters;
+    private final Aggregator[] aggregators;
+
+    /**
+     * @param filters  filters on levels of the dimensions or on the intersection; null or empty to aggregate
+     *                 every element.
+     * @param aggregators  aggregators to accumulate the matching elements.  Cannot be null.
+     */
+    public AggregationRequest(IFilter[] filters, Aggregator[] aggregators) {
+        if (aggregators == null) {
+            throw new IllegalArgumentException("aggregators must not be null");
+        }
+        this.filters = filters == null ? new IFilter[0] : filters;
+        this.aggregators = aggregators;
+    }
+
+    public IFilter[] getFilters() {
+        return filters;
+    }
+
+    public Aggregator[] getAggregators() {
+        return aggregators;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregationRequest{" +
+                "filters=" + Arrays.toString(filters) +
+                ", aggregators=" + Arrays.toString(aggregators) +
+                '}';
+    }
+}
@@ -1,31 +1,51 @@
 package com.ram.ds.cds;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.aggregator.IBlockAggregator;
+import com.ram.ds.cds.filters.DataDomainFilter;
 import com.ram.ds.cds.filters.Filter;
+import com.ram.ds.cds.filters.IBlockFilter;
 import com.ram.ds.cds.filters.IFilter;
+import com.ram.ds.cds.filters.IZoneFilter;
+import com.ram.ds.cds.memory.MemoryBudget;
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.memory.MemoryUsage;
+import com.ram.ds.cds.query.QueryCancelledException;
+import com.ram.ds.cds.query.QueryContext;
 import com.ram.ds.cds.stores.BitSetStore;
 import com.ram.ds.cds.stores.BooleanArrayStore;
 import com.ram.ds.cds.stores.BooleanStore;
+import com.ram.ds.cds.stores.CompressedDoubleArrayStore;
+import com.ram.ds.cds.stores.Constants;
 import com.ram.ds.cds.stores.DataDomainAttrStore;
 import com.ram.ds.cds.stores.DoubleArrayStore;
 import com.ram.ds.cds.stores.DoubleSparseArrayStore;
 import com.ram.ds.cds.stores.DoubleStore;
+import com.ram.ds.cds.stores.EncodedIntStore;
+import com.ram.ds.cds.stores.EncodedLongStore;
 import com.ram.ds.cds.stores.FixedLengthIntStore;
 import com.ram.ds.cds.stores.FixedLengthStringLookupStore;
 import com.ram.ds.cds.stores.FloatArrayStore;
 import com.ram.ds.cds.stores.FloatStore;
+import com.ram.ds.cds.stores.GenericStore;
 import com.ram.ds.cds.stores.IBitSetStore;
 import com.ram.ds.cds.stores.IBooleanArrayStore;
 import com.ram.ds.cds.stores.IBooleanStore;
 import com.ram.ds.cds.stores.IDataDomainStore;
 import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IDictionaryStore;
 import com.ram.ds.cds.stores.IDoubleArrayStore;
 import com.ram.ds.cds.stores.IDoubleStore;
 import com.ram.ds.cds.stores.IFloatArrayStore;
@@ -41,6 +61,13 @@ import com.ram.ds.cds.stores.IntArrayStore;
 import com.ram.ds.cds.stores.IntStore;
 import com.ram.ds.cds.stores.LongLookupStore;
 import com.ram.ds.cds.stores.LongStore;
+import com.ram.ds.cds.stores.PackedBooleanArrayStore;
+import com.ram.ds.cds.stores.PackedBooleanStore;
+import com.ram.ds.cds.stores.PageCache;
+import com.ram.ds.cds.stores.PagedDoubleArrayStore;
+import com.ram.ds.cds.stores.PagedDoubleStore;
+import com.ram.ds.cds.stores.PagedIntStore;
+import com.ram.ds.cds.stores.StoreSpliterators;
 import com.ram.ds.cds.stores.StringArrayStore;
 import com.ram.ds.cds.stores.StringLookupStore;
 import com.ram.ds.cds.stores.StringStore;
@@ -74,6 +101,11 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
      */
     private Map<String, IDataStore> attrNameToAttrStorage = new HashMap<String, IDataStore>(40);
 
+    /**
+     * The budget of the cube holding this container, which its stores report their growth to, or null.
+     */
+    private transient MemoryBudget memoryBudget;
+
     public AttributeContainer(String name) {
         this.name = name;
     }
@@ -93,7 +125,7 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     public BitSet getParentSelector(List<IFilter> iFilters,
                                             String parentAttrName) {
         ParentAggregator parentAggregator = new ParentAggregator(parentAttrName);
-        aggregate(iFilters, new Aggregator[]{parentAggregator});
+        aggregate(iFilters, new Aggregator[]{parentAggregator}, false);
         return parentAggregator.getParentBits();
     }
 
@@ -139,7 +171,7 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
      */
     public BitSetSelector getSelector(List<IFilter> iFilters) {
         BitSetSelector selector = new BitSetSelector(name);
-        aggregate(iFilters, new Aggregator []{ selector });
+        aggregate(iFilters, new Aggregator []{ selector }, false);
         return selector;
     }
 
@@ -212,6 +244,23 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
 		return (IBooleanArrayStore)this.attrNameToAttrStorage.get(attrName);
 	}
 
+    // ---------------------- Add bit-packed boolean stores  ----------------------
+
+    /**
+     * Add a boolean attribute held in one bit per item, see {@link PackedBooleanStore}.
+     */
+    public PackedBooleanStore addPackedBooleanAttribute(String attrName) {
+        PackedBooleanStore attrStore = new PackedBooleanStore();
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
+    public PackedBooleanArrayStore addPackedBooleanArrayAttribute(String attrName, int chunkSize) {
+        PackedBooleanArrayStore attrStore = new PackedBooleanArrayStore(0, chunkSize);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
     // ---------------------- Add and get FloatStore  ---------------------------
 
     public IFloatStore addFloatAttribute(String attrName, int chunkSize) {
@@ -254,7 +303,7 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
 
     public IStringLookupStore addFixedLengthStringLookupAttribute(String attrName, int maximumSize) {
         IStringLookupStore stringLookupStoreForAttr = new FixedLengthStringLookupStore(maximumSize);
-        attrNameToAttrStorage.put(attrName, stringLookupStoreForAttr);
+        putStoreIntoMap(attrName, stringLookupStoreForAttr);
         return stringLookupStoreForAttr;
     }
 
@@ -328,13 +377,13 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     
     public IDoubleStore addDoubleAttribute(String attrName) {
         IDoubleStore doubleStoreForAttr = new DoubleStore();
-        attrNameToAttrStorage.put(attrName, doubleStoreForAttr);
+        putStoreIntoMap(attrName, doubleStoreForAttr);
         return doubleStoreForAttr;
     }
 
     public IDoubleStore addDoubleAttribute(String attrName, int chunkSize) {
         DoubleStore attrStore = new DoubleStore(0, chunkSize);
-        attrNameToAttrStorage.put(attrName, attrStore);
+        putStoreIntoMap(attrName, attrStore);
         return attrStore;
     }
 
@@ -361,6 +410,16 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     }
 
 
+    /**
+     * Add a double array attribute whose series are compressed as they are added, see
+     * {@link CompressedDoubleArrayStore}.  Suited to series that are constant, repeat values or change slowly.
+     */
+    public CompressedDoubleArrayStore addCompressedDoubleArrayAttribute(String attrName) {
+        CompressedDoubleArrayStore attrStore = new CompressedDoubleArrayStore(0, Constants.DEF_CHNK_SIZE);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
     public IDoubleArrayStore addSparseDoubleArrayAttribute(String attrName, int secondDimCapacity, int defaultTimeSeriesLength, double missingValue) {
         DoubleSparseArrayStore attrStore = new DoubleSparseArrayStore(0, secondDimCapacity, defaultTimeSeriesLength, missingValue );
         putStoreIntoMap(attrName, attrStore);
@@ -376,7 +435,7 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
 
     public IDataDomainStore addDataDomainAttribute(String attrName) {
         IDataDomainStore datadomainStoreForAttr = new DataDomainAttrStore();
-        attrNameToAttrStorage.put(attrName, datadomainStoreForAttr);
+        putStoreIntoMap(attrName, datadomainStoreForAttr);
         return datadomainStoreForAttr;
     }
 
@@ -402,7 +461,7 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     
     public ILongLookupStore addLongLookupAttribute(String attrName) {
         ILongLookupStore longLookupStoreForAttr = new LongLookupStore();
-        attrNameToAttrStorage.put(attrName, longLookupStoreForAttr);
+        putStoreIntoMap(attrName, longLookupStoreForAttr);
         return longLookupStoreForAttr;
     }
 
@@ -425,9 +484,56 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     }
 
 
+    // ---------------------- Add encoded stores  ---------------------------------
+
+    /**
+     * Add an int attribute whose chunks are packed in as few bits as their values need, see
+     * {@link EncodedIntStore}.  Suited to ids and other small values.
+     */
+    public EncodedIntStore addEncodedIntAttribute(String attrName) {
+        EncodedIntStore attrStore = new EncodedIntStore();
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
+    public EncodedLongStore addEncodedLongAttribute(String attrName, int chunkSize) {
+        EncodedLongStore attrStore = new EncodedLongStore(0, chunkSize);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
+    // ---------------------- Add paged stores  -----------------------------------
+
+    /**
+     * Add a double attribute whose chunks are loaded from a column file on demand, see {@link PagedStore}.
+     * @param attrName the name of the attribute
+     * @param cache the cache to hold the chunks in memory, usually shared by all the paged stores
+     * @param chunkSize the number of elements in a chunk
+     */
+    public PagedDoubleStore addPagedDoubleAttribute(String attrName, PageCache cache, int chunkSize) {
+        PagedDoubleStore attrStore = new PagedDoubleStore(cache, chunkSize);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
+    public PagedIntStore addPagedIntAttribute(String attrName, PageCache cache, int chunkSize) {
+        PagedIntStore attrStore = new PagedIntStore(cache, chunkSize);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
+    public PagedDoubleArrayStore addPagedDoubleArrayAttribute(String attrName, PageCache cache, int chunkSize) {
+        PagedDoubleArrayStore attrStore = new PagedDoubleArrayStore(cache, chunkSize);
+        putStoreIntoMap(attrName, attrStore);
+        return attrStore;
+    }
+
     private void putStoreIntoMap(String attrName, IDataStore attrStore)
     {
         attrNameToAttrStorage.put(attrName, attrStore);
+        if (memoryBudget != null && attrStore instanceof GenericStore) {
+            ((GenericStore) attrStore).setGrowthListener(memoryBudget);
+        }
     }
 
     
@@ -480,12 +586,12 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
 
     @Override
     public Filter getDataDomainSelector(String attrName, String[] values) {
-//        IDataDomainStore store = (IDataDomainStore) attrNameToAttrStorage.get(attrName);
-//        DataDomainFilter selector = new DataDomainFilter(this, values.length);
-//        for (String value : values) {
-//            selector.setSelectedValue(store.getKeyForValidValue(value)); // need to add this method and then add the integer to the selector
-//        }
-        return null;
+        IDictionaryStore store = (IDictionaryStore) attrNameToAttrStorage.get(attrName);
+        DataDomainFilter selector = new DataDomainFilter(this, store, values.length);
+        for (String value : values) {
+            selector.setSelectedValue(store.getKeyForValidValue(value));
+        }
+        return selector;
     }
 
     /**
@@ -524,33 +630,289 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
      * matches all filters, call accumulate(i) on each of the aggregators.
      * <p>
      * <b>Note that the filters must be defined for this container.</b>
+     * <p>
+     * If a {@link QueryContext} is entered on the calling thread, it is checked after every chunk of items.
+     * Deleted items, see {@link #getDeletedItems()}, are skipped.
      * 
      * @param iFilters  List of filters to apply. The filters must be defined for this container. 
      * 					The list can be null, in which case every item in the container is accumulated.
      * @param aggregators  Array of aggregators to accumulate aggregated result(s). Cannot be null.
+     * @throws QueryCancelledException if the query context stops the scan and does not accept partial results.
      */
     public void aggregate(List<IFilter> iFilters, Aggregator[] aggregators) {
+        aggregate(iFilters, aggregators, true);
+    }
+
+    /**
+     * @param allowPartial false if the scan must either complete or throw, such as when building a selector.
+     */
+    private void aggregate(List<IFilter> iFilters, Aggregator[] aggregators, boolean allowPartial) {
         int memberCount = getMemberCount();
+        QueryContext context = QueryContext.current();
+        BitSet deletedItems = getDeletedItems();
         if (iFilters != null) {
             IFilter[] filters = new IFilter[iFilters.size()];
             filters = iFilters.toArray(filters);
-            for (int index = 0; index < memberCount; index++) {
+            if (hasBlockFilter(filters) || deletedItems != null || hasBlockAggregator(aggregators)) {
+                aggregateByBlock(filters, aggregators, memberCount, context, allowPartial, deletedItems);
+                return;
+            }
+            for (int blockStart = 0; blockStart < memberCount; blockStart += Constants.DEF_CHNK_SIZE) {
+                if (isStopped(context, allowPartial)) {
+                    return;
+                }
+                int blockEnd = Math.min(memberCount, blockStart + Constants.DEF_CHNK_SIZE);
+                for (int index = blockStart; index < blockEnd; index++) {
+                    boolean match = true;
+                    for (IFilter filter : filters) {
+                        if (!filter.isMatch(index)) {
+                            match = false;
+                            break;
+                        }
+                    }
+                    if (match) {
+                        for (Aggregator aggregator : aggregators) {
+                            aggregator.accumulate(index);
+                        }
+                    }
+                }
+            }
+        }
+        else {
+            accumulateAll(aggregators, memberCount, context, allowPartial, deletedItems);
+        }
+    }
+
+    /**
+     * @return the positions of the items that have been deleted but are still held in the stores, or null if
+     * there are none.  Every scan of the container skips them.
+     */
+    protected BitSet getDeletedItems() {
+        return null;
+    }
+
+    /**
+     * @return a stream of the positions of the items of this container, in order, skipping the deleted items.  A
+     * parallel stream splits every {@link Constants#DEF_CHNK_SIZE} items, the chunk size of the stores by default.
+     * The items are those of the container when the stream is created.
+     */
+    public IntStream rowIds() {
+        return StreamSupport.intStream(StoreSpliterators.ofRowIds(0, getMemberCount(), getDeletedSnapshot(),
+                Constants.DEF_CHNK_SIZE), false);
+    }
+
+    /**
+     * @return a stream of the values of an int attribute, in order, skipping the deleted items.  Empty values are
+     * included.  A parallel stream splits on the chunk boundaries of the store.
+     * @throws IllegalArgumentException if there is no int attribute with the given name.
+     */
+    public IntStream intValues(String attrName) {
+        IDataStore store = attrNameToAttrStorage.get(attrName);
+        if (!(store instanceof IIntStore)) {
+            throw new IllegalArgumentException("Not an int attribute: " + attrName);
+        }
+        return StreamSupport.intStream(StoreSpliterators.ofInts((IIntStore) store, 0, store.size(),
+                getDeletedSnapshot()), false);
+    }
+
+    /**
+     * @return a stream of the values of a long attribute; see {@link #intValues(String)}.
+     * @throws IllegalArgumentException if there is no long attribute with the given name.
+     */
+    public LongStream longValues(String attrName) {
+        IDataStore store = attrNameToAttrStorage.get(attrName);
+        if (!(store instanceof ILongStore)) {
+            throw new IllegalArgumentException("Not a long attribute: " + attrName);
+        }
+        return StreamSupport.longStream(StoreSpliterators.ofLongs((ILongStore) store, 0, store.size(),
+                getDeletedSnapshot()), false);
+    }
+
+    /**
+     * @return a stream of the values of a double or float attribute; see {@link #intValues(String)}.  Float values
+     * are widened to double.
+     * @throws IllegalArgumentException if there is no double or float attribute with the given name.
+     */
+    public DoubleStream doubleValues(String attrName) {
+        IDataStore store = attrNameToAttrStorage.get(attrName);
+        if (store instanceof IDoubleStore) {
+            return StreamSupport.doubleStream(StoreSpliterators.ofDoubles((IDoubleStore) store, 0, store.size(),
+                    getDeletedSnapshot()), false);
+        }
+        if (store instanceof IFloatStore) {
+            return StreamSupport.doubleStream(StoreSpliterators.ofFloats((IFloatStore) store, 0, store.size(),
+                    getDeletedSnapshot()), false);
+        }
+        throw new IllegalArgumentException("Not a double or float attribute: " + attrName);
+    }
+
+    /**
+     * @return a copy of the deleted items, so that a stream is not affected by later deletions, or null.
+     */
+    private BitSet getDeletedSnapshot() {
+        BitSet deletedItems = getDeletedItems();
+        return deletedItems == null ? null : (BitSet) deletedItems.clone();
+    }
+
+    /**
+     * Remove the items at the given positions from every attribute store, moving the remaining items down.
+     *
+     * @param removed the positions of the items to remove.
+     * @return the number of items left.
+     */
+    protected int removeItems(BitSet removed) {
+        for (IDataStore store : attrNameToAttrStorage.values()) {
+            store.removeElements(removed);
+        }
+        return getMemberCount();
+    }
+
+    /**
+     * Check the query context at a chunk boundary.
+     *
+     * @return true if the scan should stop and keep what it has accumulated.
+     */
+    private static boolean isStopped(QueryContext context, boolean allowPartial) {
+        if (context == null) {
+            return false;
+        }
+        if (allowPartial) {
+            return context.stopScan();
+        }
+        context.check();
+        return false;
+    }
+
+    private static boolean hasBlockAggregator(Aggregator[] aggregators) {
+        for (Aggregator aggregator : aggregators) {
+            if (aggregator instanceof IBlockAggregator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasBlockFilter(IFilter[] filters) {
+        for (IFilter filter : filters) {
+            if (filter instanceof IZoneFilter || filter instanceof IBlockFilter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as the filtered loop in {@link #aggregate(List, Aggregator[])}, but lets the zone filters classify
+     * each block first. A block that one of them rejects is skipped, and a zone filter that accepts the whole
+     * block is not evaluated for its items.  The block filters that remain are evaluated for the whole block
+     * at once, and the other filters only for the items that are still candidates after that.  Deleted items
+     * are never candidates.  Block aggregators are given the items of the block that matched every filter.
+     */
+    private void aggregateByBlock(IFilter[] filters, Aggregator[] aggregators, int memberCount,
+                                  QueryContext context, boolean allowPartial, BitSet deletedItems) {
+        IBlockAggregator[] blockAggregators = getBlockAggregators(aggregators);
+        Aggregator[] rowAggregators = getRowAggregators(aggregators);
+        IFilter[] pendingFilters = new IFilter[filters.length];
+        IBlockFilter[] blockFilters = new IBlockFilter[filters.length];
+        BitSet candidates = new BitSet(Constants.DEF_CHNK_SIZE);
+        for (int blockStart = 0; blockStart < memberCount; blockStart += Constants.DEF_CHNK_SIZE) {
+            if (isStopped(context, allowPartial)) {
+                return;
+            }
+            int blockEnd = Math.min(memberCount, blockStart + Constants.DEF_CHNK_SIZE);
+            int pendingCount = 0;
+            int blockFilterCount = 0;
+            boolean skipBlock = false;
+            for (IFilter filter : filters) {
+                if (filter instanceof IZoneFilter) {
+                    int zoneMatch = ((IZoneFilter) filter).classifyRange(blockStart, blockEnd);
+                    if (zoneMatch == IZoneFilter.NO_MATCH) {
+                        skipBlock = true;
+                        break;
+                    }
+                    if (zoneMatch == IZoneFilter.FULL_MATCH) {
+                        continue;
+                    }
+                }
+                if (filter instanceof IBlockFilter) {
+                    blockFilters[blockFilterCount++] = (IBlockFilter) filter;
+                } else {
+                    pendingFilters[pendingCount++] = filter;
+                }
+            }
+            if (skipBlock) {
+                continue;
+            }
+
+            candidates.clear();
+            candidates.set(blockStart, blockEnd);
+            if (deletedItems != null) {
+                clearDeleted(candidates, deletedItems, blockStart, blockEnd);
+            }
+            for (int i = 0; i < blockFilterCount && !candidates.isEmpty(); i++) {
+                blockFilters[i].matchBlock(blockStart, blockEnd, candidates);
+            }
+
+            for (int index = candidates.nextSetBit(blockStart); index >= 0; index = candidates.nextSetBit(index + 1)) {
                 boolean match = true;
-                for (IFilter filter : filters) {
-                    if (!filter.isMatch(index)) {
+                for (int i = 0; i < pendingCount; i++) {
+                    if (!pendingFilters[i].isMatch(index)) {
                         match = false;
                         break;
                     }
                 }
                 if (match) {
-                    for (Aggregator aggregator : aggregators) {
+                    for (Aggregator aggregator : rowAggregators) {
                         aggregator.accumulate(index);
                     }
+                } else {
+                    candidates.clear(index);
                 }
             }
+            for (IBlockAggregator aggregator : blockAggregators) {
+                aggregator.accumulateBlock(blockStart, blockEnd, candidates);
+            }
         }
-        else {
-            for (int index = 0; index < memberCount; index++) {
+    }
+
+    /**
+     * Perform aggregation over all the items in this container without filtering.  Like
+     * {@link #aggregate(List, Aggregator[])}, it honors the query context of the calling thread.
+     * 
+     * @param aggregators array of aggregators, cannot be null.
+     */
+    public void aggregate(Aggregator[] aggregators) {
+        accumulateAll(aggregators, getMemberCount(), QueryContext.current(), true, getDeletedItems());
+    }
+
+    private static void accumulateAll(Aggregator[] allAggregators, int memberCount, QueryContext context,
+                                      boolean allowPartial, BitSet deletedItems) {
+        IBlockAggregator[] blockAggregators = getBlockAggregators(allAggregators);
+        Aggregator[] aggregators = getRowAggregators(allAggregators);
+        BitSet candidates = deletedItems != null && blockAggregators.length > 0 ? new BitSet(Constants.DEF_CHNK_SIZE) : null;
+        for (int blockStart = 0; blockStart < memberCount; blockStart += Constants.DEF_CHNK_SIZE) {
+            if (isStopped(context, allowPartial)) {
+                return;
+            }
+            int blockEnd = Math.min(memberCount, blockStart + Constants.DEF_CHNK_SIZE);
+            if (candidates != null) {
+                candidates.clear();
+                candidates.set(blockStart, blockEnd);
+                clearDeleted(candidates, deletedItems, blockStart, blockEnd);
+            }
+            for (IBlockAggregator aggregator : blockAggregators) {
+                aggregator.accumulateBlock(blockStart, blockEnd, candidates);
+            }
+            if (deletedItems != null) {
+                for (int index = deletedItems.nextClearBit(blockStart); index < blockEnd;
+                     index = deletedItems.nextClearBit(index + 1)) {
+                    for (Aggregator aggregator : aggregators) {
+                        aggregator.accumulate(index);
+                    }
+                }
+                continue;
+            }
+            for (int index = blockStart; index < blockEnd; index++) {
                 for (Aggregator aggregator : aggregators) {
                     aggregator.accumulate(index);
                 }
@@ -558,18 +920,36 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
         }
     }
 
+    static IBlockAggregator[] getBlockAggregators(Aggregator[] aggregators) {
+        int count = 0;
+        IBlockAggregator[] blockAggregators = new IBlockAggregator[aggregators.length];
+        for (Aggregator aggregator : aggregators) {
+            if (aggregator instanceof IBlockAggregator) {
+                blockAggregators[count++] = (IBlockAggregator) aggregator;
+            }
+        }
+        return Arrays.copyOf(blockAggregators, count);
+    }
+
     /**
-     * Perform aggregation over all the items in this container without filtering.
-     * 
-     * @param aggregators array of aggregators, cannot be null.
+     * @return the aggregators that are not block aggregators, which accumulate one index at a time.
      */
-    public void aggregate(Aggregator[] aggregators) {
-        int numberOfMembers = this.getMemberCount();
-        for (int index = 0; index < numberOfMembers; index++) {
-            for (Aggregator aggregator : aggregators) {
-                aggregator.accumulate(index);
+    static Aggregator[] getRowAggregators(Aggregator[] aggregators) {
+        int count = 0;
+        Aggregator[] rowAggregators = new Aggregator[aggregators.length];
+        for (Aggregator aggregator : aggregators) {
+            if (!(aggregator instanceof IBlockAggregator)) {
+                rowAggregators[count++] = aggregator;
             }
         }
+        return Arrays.copyOf(rowAggregators, count);
+    }
+
+    private static void clearDeleted(BitSet candidates, BitSet deletedItems, int blockStart, int blockEnd) {
+        for (int index = deletedItems.nextSetBit(blockStart); index >= 0 && index < blockEnd;
+             index = deletedItems.nextSetBit(index + 1)) {
+            candidates.clear(index);
+        }
     }
 
     @Override
@@ -589,5 +969,63 @@ public class AttributeContainer implements IAttributeContainer, Serializable {
     public IDataStore getAttribute( String attrName ) {
         return attrNameToAttrStorage.get( attrName );
     }
+
+    /**
+     * Measure the heap retained by this container.  Each attribute store is reported as a child.
+     *
+     * @return the memory usage of the container and its stores.
+     */
+    public MemoryUsage getMemoryUsage() {
+        long ownBytes = MemoryEstimator.sizeOfObject(2, 0) + MemoryEstimator.sizeOfString(name)
+                + MemoryEstimator.sizeOfHashMap(attrNameToAttrStorage.size());
+        MemoryUsage usage = new MemoryUsage(name, getMemoryKind(), ownBytes, 0);
+        for (Map.Entry<String, IDataStore> entry : attrNameToAttrStorage.entrySet()) {
+            IDataStore store = entry.getValue();
+            usage.addChild(new MemoryUsage(entry.getKey(), MemoryUsage.Kind.ATTRIBUTE,
+                    MemoryEstimator.sizeOfString(entry.getKey()) + store.getRetainedSize(), store.getOffHeapSize()));
+        }
+        return usage;
+    }
+
+    /**
+     * Set the budget that the stores of the container report their growth to, and that items added to the
+     * container are checked against.  Stores added to the container later report to it as well.
+     *
+     * @param budget the budget, or null to stop reporting.
+     */
+    void setMemoryBudget(MemoryBudget budget) {
+        memoryBudget = budget;
+        for (IDataStore store : attrNameToAttrStorage.values()) {
+            if (store instanceof GenericStore) {
+                ((GenericStore) store).setGrowthListener(budget);
+            }
+        }
+    }
+
+    /**
+     * Check that the cube is not past its memory limit before an item is added to this container.
+     *
+     * @throws CdsException if the cube is past the limit of its budget.
+     */
+    protected void checkItemGrowth() {
+        if (memoryBudget != null) {
+            memoryBudget.checkGrowth(0);
+        }
+    }
+
+    /**
+     * Record memory taken by the container itself, outside its stores, as an item is added.
+     *
+     * @param bytes the estimated bytes added.
+     */
+    protected void recordItemGrowth(long bytes) {
+        if (memoryBudget != null && bytes != 0) {
+            memoryBudget.record(bytes);
+        }
+    }
+
+    protected MemoryUsage.Kind getMemoryKind() {
+        return MemoryUsage.Kind.ATTRIBUTE;
+    }
 }
 
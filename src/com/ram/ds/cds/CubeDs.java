@@ -5,10 +5,22 @@ import java.io.Serializable;
 import java.util.*;
 
 import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.aggregator.IBlockAggregator;
+import com.ram.ds.cds.events.AggregateEvent;
+import com.ram.ds.cds.events.GetChildrenEvent;
 import com.ram.ds.cds.filters.BitSetFilter;
 import com.ram.ds.cds.filters.IFilter;
+import com.ram.ds.cds.filters.IValueFilter;
+import com.ram.ds.cds.filters.IZoneFilter;
 import com.ram.ds.cds.filters.LevelFilter;
+import com.ram.ds.cds.filters.RowSetFilter;
 import com.ram.ds.cds.filters.StringFilter;
+import com.ram.ds.cds.memory.MemoryBudget;
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.memory.MemoryUsage;
+import com.ram.ds.cds.query.QueryCancelledException;
+import com.ram.ds.cds.query.QueryContext;
+import com.ram.ds.cds.stores.Constants;
 import com.ram.ds.cds.util.Pair;
 
 public class CubeDs implements Serializable {
@@ -23,6 +35,12 @@ public class CubeDs implements Serializable {
      */
     private final HashMap<String, Serializable> applicationDataMap= new HashMap<>();
 
+    /**
+     * Optional limit on the memory retained by the cube, checked as dimensions, intersections, members and
+     * items are added.
+     */
+    private transient MemoryBudget memoryBudget;
+
     /**
      * Get application data object in Collector; will be serialized with the Collector when persisted.
      * Application data can be any application-specific object or collection that should be included with the Collector instance
@@ -52,7 +70,16 @@ public class CubeDs implements Serializable {
      * @param dimension the new dimension
      */
     public void addDimension(Dimension dimension) {
+        long dimensionBytes = 0;
+        if (memoryBudget != null) {
+            dimensionBytes = dimension.getMemoryUsage().getTotalBytes();
+            memoryBudget.checkLoad(this, dimensionBytes);
+        }
         dimensionMap.put(dimension.getName(), dimension);
+        if (memoryBudget != null) {
+            attachMemoryBudget(dimension, memoryBudget);
+            memoryBudget.record(dimensionBytes);
+        }
     }
 
     /**
@@ -113,10 +140,25 @@ public class CubeDs implements Serializable {
      * @param parentValue       "Category-1"
      * @param aggregators       [MemberAggregator for lower level]
      * @param additionalFilters []
+     * @throws QueryCancelledException if the query context of the calling thread stops the scan and does not
+     *            accept partial results.
      */
     public void getChildren(String dimName, String hierarchyName, String parentLevelName, String parentAttribute,
                             String parentValue, Aggregator[] aggregators,
                             IFilter[] additionalFilters) {
+        GetChildrenEvent event = new GetChildrenEvent();
+        event.start();
+        try {
+            aggregateChildren(dimName, hierarchyName, parentLevelName, parentAttribute, parentValue, aggregators,
+                              additionalFilters, event);
+        } finally {
+            event.finish();
+        }
+    }
+
+    private void aggregateChildren(String dimName, String hierarchyName, String parentLevelName, String parentAttribute,
+                                   String parentValue, Aggregator[] aggregators,
+                                   IFilter[] additionalFilters, GetChildrenEvent event) {
 
         Dimension dimension = getDimension(dimName);
         HierarchyLevel parentLevel = dimension.getLevel(parentLevelName);
@@ -185,7 +227,15 @@ public class CubeDs implements Serializable {
         }
 
         HierarchyLevel targetLevel = descendantLevels.get(descendantLevels.size() - 1).getLeft();
-        targetLevel.aggregate(descendantLevels.get(descendantLevels.size() - 1).getRight(), aggregators);
+        if (event.isEnabled()) {
+            event.dimension = dimName;
+            event.hierarchy = hierarchyName;
+            event.parentLevel = parentLevelName;
+            event.targetLevel = targetLevel.getName();
+            event.filterCount = descendantLevels.get(descendantLevels.size() - 1).getRight().size();
+            event.rowsScanned = targetLevel.getMemberCount();
+        }
+        targetLevel.aggregate(descendantLevels.get(descendantLevels.size() - 1).getRight(), event.countMatches(aggregators));
     }
 
     /**
@@ -237,11 +287,27 @@ public class CubeDs implements Serializable {
      *            An array of filters.  The isMatch() must return true for each and every
      *            filter in order for the element in the intersection to be considered a 
      *            match. Any matching element will be passed to the aggregator.
+     * @throws QueryCancelledException if the query context of the calling thread stops the scan and does not
+     *            accept partial results.
      */
     public void aggregate(Map<String, String> iDimensionNameToHierarchyNameMap,
                           String iIntersectionName,
                           Aggregator[] aggregators,
                           IFilter[] iFilters) {
+        AggregateEvent event = new AggregateEvent();
+        event.start();
+        try {
+            aggregateFiltered(iDimensionNameToHierarchyNameMap, iIntersectionName, aggregators, iFilters, event);
+        } finally {
+            event.finish();
+        }
+    }
+
+    private void aggregateFiltered(Map<String, String> iDimensionNameToHierarchyNameMap,
+                                   String iIntersectionName,
+                                   Aggregator[] aggregators,
+                                   IFilter[] iFilters,
+                                   AggregateEvent event) {
 
         // build a list of filters for each dimension and list of filters for the intersection
         List<IFilter> filtersForIntersection = new ArrayList<IFilter>(iFilters.length);
@@ -264,6 +330,11 @@ public class CubeDs implements Serializable {
 
         // get a selector for each dimension and add them as a filter onto the intersection filter list 
         Intersection targetIntersection = intersectionMap.get(iIntersectionName);
+        if (event.isEnabled()) {
+            event.intersection = iIntersectionName;
+            event.filterCount = iFilters.length;
+        }
+        Map<String, BitSet> memberIdsByLevel = new HashMap<String, BitSet>();
         for(Map.Entry<String, List<IFilter>> dimFiltersEntry : dimensionToFiltersMap.entrySet()){
         	String dimensionName = dimFiltersEntry.getKey();
             List<IFilter> filters = dimFiltersEntry.getValue();
@@ -274,20 +345,274 @@ public class CubeDs implements Serializable {
                     // level for that dimension on the intersection.  The filter in this case has no effect.
                     continue;
                 }
-                String hierarchyName = iDimensionNameToHierarchyNameMap.get(dimensionName);
+                String hierarchyName = getHierarchyName(iDimensionNameToHierarchyNameMap, dimensionName);
             	String intersectionLevelName = intersectionLevel.getName();
                 BitSetSelector selector = getDimension(dimensionName).getSelector(hierarchyName, intersectionLevelName, filters, false);
                 BitSet bitset = selector.getBitSet();
                 if (bitset.isEmpty()) {
                 	return;
                 }
-                filtersForIntersection.add(0, new BitSetFilter(targetIntersection, intersectionLevelName, bitset));
+                memberIdsByLevel.put(intersectionLevelName, bitset);
+            }
+        }
+
+        // a secondary index of the intersection may find the selected elements without a scan; otherwise
+        // the selection is applied as a filter for each level.
+        BitSet indexedRows = memberIdsByLevel.isEmpty() ? null : targetIntersection.selectIndexed(memberIdsByLevel);
+        if (indexedRows != null) {
+            filtersForIntersection.add(0, new RowSetFilter(targetIntersection, indexedRows));
+        } else {
+            for (Map.Entry<String, BitSet> levelEntry : memberIdsByLevel.entrySet()) {
+                filtersForIntersection.add(0, new BitSetFilter(targetIntersection, levelEntry.getKey(), levelEntry.getValue()));
             }
         }
         
         // finally, accumulate using the combined filters of what the user passed in for the intersection and
         // the filters we built for the intersection levels from each dimension
-        targetIntersection.aggregate(filtersForIntersection, aggregators);
+        if (event.isEnabled()) {
+            event.rowsScanned = targetIntersection.size();
+        }
+        targetIntersection.aggregate(filtersForIntersection, event.countMatches(aggregators));
+    }
+
+    /**
+     * Perform a batch of aggregations over one intersection in a single pass.  The result is the same as
+     * calling {@link #aggregate(Map, String, Aggregator[], IFilter[])} once per request, but each distinct
+     * filter is evaluated only once into a bitmap of the matching elements, the bitmaps are shared by the
+     * requests that use the filter, and the elements are then read once to feed all the aggregators.
+     *
+     * <p>Filters are distinct unless they are the same instance, or value filters with the same store and
+     * predicate.  The level filters on one dimension are evaluated together, so they are shared when two
+     * requests filter the dimension the same way.</p>
+     *
+     * @param iDimensionNameToHierarchyNameMap  the hierarchy to use for each dimension, as for a single aggregate.
+     * @param iIntersectionName  the name of the intersection.
+     * @param requests  the aggregations to perform.
+     * @throws QueryCancelledException if the query context of the calling thread stops the scan and does not
+     *            accept partial results.
+     */
+    public void aggregate(Map<String, String> iDimensionNameToHierarchyNameMap,
+                          String iIntersectionName,
+                          List<AggregationRequest> requests) {
+        AggregateEvent event = new AggregateEvent();
+        event.start();
+        try {
+            aggregateShared(iDimensionNameToHierarchyNameMap, iIntersectionName, requests, event);
+        } finally {
+            event.finish();
+        }
+    }
+
+    private void aggregateShared(Map<String, String> iDimensionNameToHierarchyNameMap,
+                                 String iIntersectionName,
+                                 List<AggregationRequest> requests,
+                                 AggregateEvent event) {
+        Intersection targetIntersection = intersectionMap.get(iIntersectionName);
+
+        // the elements matching each distinct filter, or each distinct set of filters on a dimension
+        Map<Object, BitSet> matchesByFilter = new HashMap<Object, BitSet>();
+        // the elements matching all the filters of each request; null if the request has no filters.
+        BitSet[] requestMatches = new BitSet[requests.size()];
+        for (int r = 0; r < requestMatches.length; r++) {
+            Map<String, List<IFilter>> dimensionToFiltersMap = new HashMap<String, List<IFilter>>();
+            BitSet matches = null;
+            for (IFilter filter : requests.get(r).getFilters()) {
+                IAttributeContainer container = filter.getAttributeContainer();
+                if (container instanceof HierarchyLevel) {
+                    String dimensionName = ((HierarchyLevel) container).getDimensionName();
+                    List<IFilter> filterList = dimensionToFiltersMap.get(dimensionName);
+                    if (filterList == null) {
+                        filterList = new ArrayList<IFilter>();
+                        dimensionToFiltersMap.put(dimensionName, filterList);
+                    }
+                    filterList.add(filter);
+                    continue;
+                }
+                Object key = getFilterKey(filter);
+                BitSet filterMatches = matchesByFilter.get(key);
+                if (filterMatches == null) {
+                    filterMatches = targetIntersection.getSelector(Collections.singletonList(filter)).getBitSet();
+                    matchesByFilter.put(key, filterMatches);
+                }
+                matches = intersect(matches, filterMatches);
+            }
+            for (Map.Entry<String, List<IFilter>> dimFiltersEntry : dimensionToFiltersMap.entrySet()) {
+                String dimensionName = dimFiltersEntry.getKey();
+                HierarchyLevel intersectionLevel = targetIntersection.getRelatedLevel(dimensionName);
+                if (intersectionLevel == null) {
+                    continue; // as in a single aggregate, the filters have no effect
+                }
+                String hierarchyName = getHierarchyName(iDimensionNameToHierarchyNameMap, dimensionName);
+                Set<Object> filterKeys = new HashSet<Object>();
+                for (IFilter filter : dimFiltersEntry.getValue()) {
+                    filterKeys.add(getFilterKey(filter));
+                }
+                Object key = Arrays.asList(dimensionName, hierarchyName, filterKeys);
+                BitSet filterMatches = matchesByFilter.get(key);
+                if (filterMatches == null) {
+                    String intersectionLevelName = intersectionLevel.getName();
+                    BitSet bitset = getDimension(dimensionName)
+                            .getSelector(hierarchyName, intersectionLevelName, dimFiltersEntry.getValue(), false)
+                            .getBitSet();
+                    filterMatches = targetIntersection.selectIndexed(Collections.singletonMap(intersectionLevelName, bitset));
+                    if (filterMatches == null) {
+                        IFilter levelFilter = new BitSetFilter(targetIntersection, intersectionLevelName, bitset);
+                        filterMatches = targetIntersection.getSelector(Collections.singletonList(levelFilter)).getBitSet();
+                    }
+                    matchesByFilter.put(key, filterMatches);
+                }
+                matches = intersect(matches, filterMatches);
+            }
+            requestMatches[r] = matches;
+        }
+
+        int memberCount = targetIntersection.getMemberCount();
+        BitSet deletedItems = targetIntersection.getDeletedItems();
+        if (deletedItems != null) {
+            // the filter bitmaps already leave out the deleted elements; a request without filters must too
+            BitSet liveItems = new BitSet(memberCount);
+            liveItems.set(0, memberCount);
+            liveItems.andNot(deletedItems);
+            for (int r = 0; r < requestMatches.length; r++) {
+                if (requestMatches[r] == null) {
+                    requestMatches[r] = liveItems;
+                }
+            }
+        }
+        if (event.isEnabled()) {
+            event.intersection = iIntersectionName;
+            event.filterCount = matchesByFilter.size();
+            event.rowsScanned = memberCount;
+            for (BitSet matches : requestMatches) {
+                event.rowsMatched += matches == null ? memberCount : matches.cardinality();
+            }
+        }
+
+        // one pass over the elements, a chunk at a time, feeding every request its matches in the chunk.  A
+        // request passes over the chunks that its zone filters rule out or where it has no match, and its block
+        // aggregators take the matches of a chunk in one call, as in a single aggregate.
+        IBlockAggregator[][] blockAggregators = new IBlockAggregator[requestMatches.length][];
+        Aggregator[][] rowAggregators = new Aggregator[requestMatches.length][];
+        IZoneFilter[][] zoneFilters = new IZoneFilter[requestMatches.length][];
+        for (int r = 0; r < requestMatches.length; r++) {
+            AggregationRequest request = requests.get(r);
+            blockAggregators[r] = AttributeContainer.getBlockAggregators(request.getAggregators());
+            rowAggregators[r] = AttributeContainer.getRowAggregators(request.getAggregators());
+            zoneFilters[r] = getZoneFilters(request.getFilters());
+        }
+        QueryContext context = QueryContext.current();
+        for (int blockStart = 0; blockStart < memberCount; blockStart += Constants.DEF_CHNK_SIZE) {
+            if (context != null && context.stopScan()) {
+                return;
+            }
+            int blockEnd = Math.min(memberCount, blockStart + Constants.DEF_CHNK_SIZE);
+            for (int r = 0; r < requestMatches.length; r++) {
+                if (isRuledOut(zoneFilters[r], blockStart, blockEnd)) {
+                    continue;
+                }
+                BitSet matches = requestMatches[r];
+                int first = matches == null ? blockStart : matches.nextSetBit(blockStart);
+                if (first < 0 || first >= blockEnd) {
+                    continue;
+                }
+                for (IBlockAggregator aggregator : blockAggregators[r]) {
+                    aggregator.accumulateBlock(blockStart, blockEnd, matches);
+                }
+                Aggregator[] aggregators = rowAggregators[r];
+                if (aggregators.length == 0) {
+                    continue;
+                }
+                if (matches == null) {
+                    for (int index = blockStart; index < blockEnd; index++) {
+                        for (Aggregator aggregator : aggregators) {
+                            aggregator.accumulate(index);
+                        }
+                    }
+                    continue;
+                }
+                for (int index = first; index >= 0 && index < blockEnd; index = matches.nextSetBit(index + 1)) {
+                    for (Aggregator aggregator : aggregators) {
+                        aggregator.accumulate(index);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the filters of a request that can rule out a chunk of the intersection from its zone maps.
+     */
+    private static IZoneFilter[] getZoneFilters(IFilter[] filters) {
+        List<IZoneFilter> zoneFilters = new ArrayList<IZoneFilter>();
+        for (IFilter filter : filters) {
+            if (filter instanceof IZoneFilter && !(filter.getAttributeContainer() instanceof HierarchyLevel)) {
+                zoneFilters.add((IZoneFilter) filter);
+            }
+        }
+        return zoneFilters.toArray(new IZoneFilter[zoneFilters.size()]);
+    }
+
+    /**
+     * @return true if one of the zone filters matches none of the elements of the chunk.
+     */
+    private static boolean isRuledOut(IZoneFilter[] zoneFilters, int blockStart, int blockEnd) {
+        for (IZoneFilter zoneFilter : zoneFilters) {
+            if (zoneFilter.classifyRange(blockStart, blockEnd) == IZoneFilter.NO_MATCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the hierarchy the map names for the dimension, or the default hierarchy of the dimension, so that
+     *         an aggregation and its cached selections and level mappings use the same hierarchy either way.
+     */
+    private String getHierarchyName(Map<String, String> dimensionHierarchyMap, String dimensionName) {
+        String hierarchyName = dimensionHierarchyMap.get(dimensionName);
+        return hierarchyName != null ? hierarchyName : getDimension(dimensionName).getDefaultHierarchyName();
+    }
+
+    /**
+     * Value filters on the same store with the same predicate are interchangeable; other filters are only
+     * known to be the same if they are the same instance.
+     */
+    private static Object getFilterKey(IFilter filter) {
+        if (filter instanceof IValueFilter) {
+            IValueFilter valueFilter = (IValueFilter) filter;
+            return Arrays.asList(filter.getClass(), new IdentityKey(valueFilter.getStore()), valueFilter.getPredicate());
+        }
+        return new IdentityKey(filter);
+    }
+
+    /**
+     * @return the intersection of the two sets of matches, without modifying the shared filterMatches.
+     */
+    private static BitSet intersect(BitSet matches, BitSet filterMatches) {
+        if (matches == null) {
+            return (BitSet) filterMatches.clone();
+        }
+        matches.and(filterMatches);
+        return matches;
+    }
+
+    private static final class IdentityKey {
+
+        private final Object object;
+
+        IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentityKey && ((IdentityKey) other).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
     }
 
     /**
@@ -310,8 +635,19 @@ public class CubeDs implements Serializable {
     public void aggregate(String iIntersectionName,
                           Aggregator[] aggregators) {
         Intersection targetIntersection = intersectionMap.get(iIntersectionName);
-        // accumulate using all of the elements at this intersection
-        targetIntersection.aggregate(aggregators);
+        AggregateEvent event = new AggregateEvent();
+        event.start();
+        try {
+            // accumulate using all of the elements at this intersection
+            targetIntersection.aggregate(aggregators);
+            if (event.isEnabled()) {
+                event.intersection = iIntersectionName;
+                event.rowsScanned = targetIntersection.size();
+                event.rowsMatched = event.rowsScanned;
+            }
+        } finally {
+            event.finish();
+        }
 
     }
 
@@ -323,8 +659,15 @@ public class CubeDs implements Serializable {
      * @param iRelatedLevels    the levels for which this intersection exists
      */
     public Intersection addIntersection(String iIntersectionName, HierarchyLevel[] iRelatedLevels) {
+        if (memoryBudget != null) {
+            memoryBudget.checkLoad(this, 0);
+        }
         Intersection newIntersection = new Intersection(iIntersectionName, iRelatedLevels);
         intersectionMap.put(iIntersectionName, newIntersection);
+        if (memoryBudget != null) {
+            newIntersection.setMemoryBudget(memoryBudget);
+            memoryBudget.record(newIntersection.getMemoryUsage().getTotalBytes());
+        }
 
         return newIntersection;
     }
@@ -355,6 +698,57 @@ public class CubeDs implements Serializable {
     	return new ArrayList<>(intersectionMap.values());
     }
 
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set a memory budget for the cube.  The cube is measured once, then the stores of its levels and
+     * intersections report their growth to the budget as they allocate.  Adding a dimension, intersection,
+     * member or item while the cube is past the budget's limit fails with a CdsException; listeners on the
+     * budget are warned when it crosses the warning level.  Levels added to a dimension after the dimension
+     * was added to the cube are not reported until the budget is set again.
+     *
+     * @param memoryBudget the budget, or null to remove it.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        for (Dimension dimension : dimensionMap.values()) {
+            attachMemoryBudget(dimension, memoryBudget);
+        }
+        for (Intersection intersection : intersectionMap.values()) {
+            intersection.setMemoryBudget(memoryBudget);
+        }
+        if (memoryBudget != null) {
+            memoryBudget.check(this);
+        }
+    }
+
+    private static void attachMemoryBudget(Dimension dimension, MemoryBudget memoryBudget) {
+        for (HierarchyLevel level : dimension.getLevels()) {
+            level.setMemoryBudget(memoryBudget);
+        }
+    }
+
+    /**
+     * Measure the heap retained by the cube, broken down by dimension, level, intersection, attribute and cache.
+     *
+     * @return the memory usage of the cube.
+     */
+    public MemoryUsage getMemoryUsage() {
+        long ownBytes = MemoryEstimator.sizeOfObject(4, 0) + MemoryEstimator.sizeOfHashMap(dimensionMap.size())
+                + MemoryEstimator.sizeOfHashMap(intersectionMap.size())
+                + MemoryEstimator.sizeOfHashMap(applicationDataMap.size());
+        MemoryUsage usage = new MemoryUsage("cube", MemoryUsage.Kind.CUBE, ownBytes, 0);
+        for (Dimension dimension : dimensionMap.values()) {
+            usage.addChild(dimension.getMemoryUsage());
+        }
+        for (Intersection intersection : intersectionMap.values()) {
+            usage.addChild(intersection.getMemoryUsage());
+        }
+        return usage;
+    }
+
     @Override
     public String toString() {
         return "Collector{" +
@@ -0,0 +1,83 @@
+package com.ram.ds.cds;
+
+import java.util.BitSet;
+
+/**
+ * Passes the changes to a level or an intersection on to two listeners, either of which can itself be a
+ * multicaster, so that a write-ahead log and standing aggregates can observe the same intersection.  A
+ * multicaster is never changed: adding or removing a listener gives a new chain.
+ *
+ * @see com.ram.ds.cds.stores.StoreWriteMulticaster
+ */
+public final class CubeWriteMulticaster implements ICubeWriteListener {
+
+    private final ICubeWriteListener first;
+    private final ICubeWriteListener second;
+
+    private CubeWriteMulticaster(ICubeWriteListener first, ICubeWriteListener second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @param current the current listener, or null.
+     * @param listener the listener to add, or null.
+     * @return the listener to set.
+     */
+    public static ICubeWriteListener add(ICubeWriteListener current, ICubeWriteListener listener) {
+        if (current == null) {
+            return listener;
+        }
+        if (listener == null) {
+            return current;
+        }
+        return new CubeWriteMulticaster(current, listener);
+    }
+
+    /**
+     * @param current the current listener, or null.
+     * @param listener the listener to remove.
+     * @return the listener to set, null if there are none left.
+     */
+    public static ICubeWriteListener remove(ICubeWriteListener current, ICubeWriteListener listener) {
+        if (current == listener) {
+            return null;
+        }
+        if (!(current instanceof CubeWriteMulticaster)) {
+            return current;
+        }
+        CubeWriteMulticaster multicaster = (CubeWriteMulticaster) current;
+        ICubeWriteListener first = remove(multicaster.first, listener);
+        ICubeWriteListener second = remove(multicaster.second, listener);
+        if (first == multicaster.first && second == multicaster.second) {
+            return current;
+        }
+        return add(first, second);
+    }
+
+    @Override
+    public void memberWritten(HierarchyLevel level, int memberId) {
+        first.memberWritten(level, memberId);
+        second.memberWritten(level, memberId);
+    }
+
+    @Override
+    public void keyWritten(Intersection intersection, int index) {
+        first.keyWritten(intersection, index);
+        second.keyWritten(intersection, index);
+    }
+
+    @Override
+    public void itemsDeleted(Intersection intersection, BitSet items) {
+        first.itemsDeleted(intersection, items);
+        second.itemsDeleted(intersection, items);
+    }
+
+    @Override
+    public String toString() {
+        return "CubeWriteMulticaster{" +
+                "first=" + first +
+                ", second=" + second +
+                '}';
+    }
+}
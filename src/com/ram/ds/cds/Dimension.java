@@ -4,20 +4,27 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.ram.ds.cds.aggregator.Aggregator;
-import com.ram.ds.cds.aggregator.ShadowAggregator;
+import com.ram.ds.cds.events.ChildMembersEvent;
+import com.ram.ds.cds.events.SelectorEvent;
 import com.ram.ds.cds.filters.BitSetFilter;
 import com.ram.ds.cds.filters.ElementFilter;
 import com.ram.ds.cds.filters.IFilter;
 import com.ram.ds.cds.filters.LevelFilter;
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.memory.MemoryUsage;
+import com.ram.ds.cds.query.QueryCancelledException;
+import com.ram.ds.cds.query.QueryContext;
 import com.ram.ds.cds.stores.IIntStore;
 import com.ram.ds.cds.util.ArrayOps;
-import com.ram.ds.cds.util.BitVector;
 
 /**
  *  Represents a collection of levels that pertain to a meaningful characteristic of data items, such as
@@ -31,7 +38,10 @@ public class Dimension implements Serializable
     
     private String name;
     private HashMap<String, HierarchyLevel> levels = new HashMap<>();
-    private HashMap<String, List<HierarchyLevel>> hierarchyMap = new HashMap<>();
+    /**
+     * The hierarchies, in the order they were added; the first is the default hierarchy.
+     */
+    private HashMap<String, List<HierarchyLevel>> hierarchyMap = new LinkedHashMap<>();
 
     /**
      * Create a dimension with the given name.
@@ -110,11 +120,45 @@ public class Dimension implements Serializable
      * @return 
      *      A bit set selector that is defined on the target level, with the bits set to true for
      *      members matching all the filters.
+     * @throws QueryCancelledException if the query context of the calling thread is cancelled or past its
+     *      deadline.  Selectors are never returned partially.
      *      
      * @since 8.2
      */
     public BitSetSelector getSelector(String hierarchyName, String targetLevelName, List<IFilter> levelFilters,
     		boolean includeLowerLevel){
+        SelectorEvent event = new SelectorEvent();
+        event.start();
+        BitSetSelector selector = null;
+        try {
+            selector = buildSelector(hierarchyName, targetLevelName, levelFilters, includeLowerLevel);
+            return selector;
+        } finally {
+            if (event.isEnabled()) {
+                HierarchyLevel targetLevel = getLevel(targetLevelName);
+                event.dimension = name;
+                event.hierarchy = hierarchyName;
+                event.targetLevel = targetLevelName;
+                event.filterCount = levelFilters == null ? 0 : levelFilters.size();
+                event.rowsScanned = targetLevel == null ? 0 : targetLevel.getMemberCount();
+                event.rowsMatched = selector == null ? 0 : selector.getBitSet().cardinality();
+            }
+            event.finish();
+        }
+    }
+
+    /**
+     * Selectors are never returned partially, so stop the query here if its context says so.
+     */
+    private static void checkQueryContext() {
+        QueryContext queryContext = QueryContext.current();
+        if (queryContext != null) {
+            queryContext.check();
+        }
+    }
+
+    private BitSetSelector buildSelector(String hierarchyName, String targetLevelName, List<IFilter> levelFilters,
+    		boolean includeLowerLevel){
         List<HierarchyLevel> hierarchy = hierarchyMap.get(hierarchyName);
 
         Map<IAttributeContainer, List<IFilter>> hierarchyLevelToFiltersMap = new IdentityHashMap<>();
@@ -192,6 +236,7 @@ public class Dimension implements Serializable
 	    		// and replace them with a equivalent filter on the parent level.
 	            HierarchyLevel parentLevel = hierarchy.get(i-1);
 	    		BitSet parentBitSet = currentLevel.getParentSelector(filtersForLevel, parentLevel.getName());
+	    		checkQueryContext();
 	    		LevelFilter parentFilter = new LevelFilter(parentLevel, parentBitSet);
 	    		
 	            // add the current selector to the list of filters for the parent level
@@ -219,6 +264,7 @@ public class Dimension implements Serializable
             // gets the selector for all of the members that fits all the 
             // filters on this level.
             BitSetSelector selector = currentLevel.getSelector(filtersForLevel);
+            checkQueryContext();
             
             if (currentLevel == targetLevel) {
                 // we have the selector for the target level, so we're done
@@ -287,6 +333,17 @@ public class Dimension implements Serializable
     public List<String> getHierarchyNames(){
     	return new ArrayList<>(hierarchyMap.keySet());
     }
+
+    /**
+     * @return the name of the default hierarchy, the first one added, used where no hierarchy is named.
+     * @throws CdsException if the dimension has no hierarchy.
+     */
+    public String getDefaultHierarchyName() {
+        if (hierarchyMap.isEmpty()) {
+            throw new CdsException("Dimension " + name + " has no hierarchy");
+        }
+        return hierarchyMap.keySet().iterator().next();
+    }
     
     /**
      * Get the immediate children of the given element according to the given hierarchy.
@@ -415,6 +472,21 @@ public class Dimension implements Serializable
      *         doesn't contain any levels.
      */
     public List<Element> getDescendantElements(String hierarchyName, Element element, HierarchyLevel targetLevel){
+    	List<Element> descendantElements = new ArrayList<Element>();
+    	getDescendantElementIterator(hierarchyName, element, targetLevel).forEachRemaining(descendantElements::add);
+    	return descendantElements;
+    }
+
+    /**
+     * Iterate over the elements that {@link #getDescendantElements(String, Element, HierarchyLevel)} returns, in
+     * the same order.  The arguments are checked and the descendants selected when this method is called, but each
+     * element is only created when the iterator reaches it, so a caller can show the first elements of a large
+     * result without holding all of them.
+     *
+     * @throws IllegalArgumentException as getDescendantElements does.
+     * @throws IllegalStateException as getDescendantElements does.
+     */
+    public Iterator<Element> getDescendantElementIterator(String hierarchyName, Element element, HierarchyLevel targetLevel){
     	// Sanity check on "hierarchyName" parameter
     	if(hierarchyMap.containsKey(hierarchyName) != true){
     		throw new IllegalArgumentException("Hierarchy " + hierarchyName + 
@@ -525,13 +597,13 @@ public class Dimension implements Serializable
     	
     	// This could be true if the element is at leaf level and the target level is null.
     	if(descendantLevel == null){
-    		return new ArrayList<Element>();
+    		return Collections.emptyIterator();
     	}
     	
     	// If the target level is the same as the level of the given ancestor element,
-    	// then return empty list.
+    	// then there are none.
     	if(ancestorLevel == descendantLevel){
-    		return new ArrayList<Element>();
+    		return Collections.emptyIterator();
     	}
     	
     	List<IFilter> filters = new ArrayList<IFilter>(1);
@@ -544,14 +616,8 @@ public class Dimension implements Serializable
     			descendantLevel.getName(), filters, false);
     	
     	BitSet descendantBits = descendantBitSelector.getBitSet();
-    	
-    	List<Element> descendantElements = new ArrayList<Element>();
-    	for (int i = descendantBits.nextSetBit(0); i >= 0; i = descendantBits.nextSetBit(i+1)) {
-			Element childElement = new Element(this.name, descendantLevel.getName(), i);
-			descendantElements.add(childElement);
-    	 }
-    	
-    	return descendantElements;
+    	String descendantLevelName = descendantLevel.getName();
+    	return descendantBits.stream().mapToObj(i -> new Element(this.name, descendantLevelName, i)).iterator();
     }
     
     /**
@@ -985,6 +1051,8 @@ public class Dimension implements Serializable
      * @return Array of LevelMemberInfo indicating the level and member Id and also whether or not the member
      *    has children at the grandchild level.  If excludeEmpty is true and grandchildren are empty, then
      *    hasChildren will be false.
+     * @throws QueryCancelledException if the query context of the calling thread is cancelled or past its
+     *    deadline.  The list of children is never returned partially.
      */
     public LevelMemberInfo[] getChildMembers( CubeDs collector,
             Map<Intersection, BitSet> intersectionViews,
@@ -996,10 +1064,101 @@ public class Dimension implements Serializable
             List<IFilter> levelFilters, // filter on levels in the same dimension
             Collection<Intersection> intersections,
             boolean excludeEmpty  ) {
+        ChildMembers selection = selectChildMembers(collector, intersectionViews, parentLevel, parentMemberId,
+                childLevel, grandchildLevel, context, levelFilters, intersections, excludeEmpty);
+        LevelMemberInfo[] children = new LevelMemberInfo[selection.children.cardinality()];
+        int childCount = 0;
+        for(int ci = selection.children.nextSetBit(0); ci >= 0; ci = selection.children.nextSetBit(ci+1)){
+            children[childCount++] = new LevelMemberInfo(childLevel, ci, selection.withChildren.get(ci));
+        }
+        return children;
+    }
+
+    /**
+     * Iterate over the children that {@link #getChildMembers(CubeDs, Map, HierarchyLevel, int, HierarchyLevel,
+     * HierarchyLevel, LevelMemberTuple, List, Collection, boolean)} returns, in the same order.  The children are
+     * selected, and the intersections scanned if excludeEmpty is true, when this method is called; each
+     * LevelMemberInfo is only created when the iterator reaches it, so that the first children of a large level
+     * can be shown without holding all of them.
+     *
+     * @throws QueryCancelledException if the query context of the calling thread is cancelled or past its
+     *    deadline while the children are selected.
+     */
+    public Iterator<LevelMemberInfo> getChildMemberIterator( CubeDs collector,
+            Map<Intersection, BitSet> intersectionViews,
+            HierarchyLevel parentLevel,
+            int parentMemberId,
+            HierarchyLevel childLevel,
+            HierarchyLevel grandchildLevel,
+            LevelMemberTuple context,
+            List<IFilter> levelFilters,
+            Collection<Intersection> intersections,
+            boolean excludeEmpty  ) {
+        ChildMembers selection = selectChildMembers(collector, intersectionViews, parentLevel, parentMemberId,
+                childLevel, grandchildLevel, context, levelFilters, intersections, excludeEmpty);
+        return selection.children.stream()
+                .mapToObj(ci -> new LevelMemberInfo(childLevel, ci, selection.withChildren.get(ci)))
+                .iterator();
+    }
+
+    /**
+     * The children selected by {@link #collectChildMembers}, and those of them that have children.
+     */
+    private static final class ChildMembers {
+        final BitSet children;
+        final BitSet withChildren;
+
+        ChildMembers(BitSet children, BitSet withChildren) {
+            this.children = children;
+            this.withChildren = withChildren;
+        }
+    }
+
+    private ChildMembers selectChildMembers( CubeDs collector,
+            Map<Intersection, BitSet> intersectionViews,
+            HierarchyLevel parentLevel,
+            int parentMemberId,
+            HierarchyLevel childLevel,
+            HierarchyLevel grandchildLevel,
+            LevelMemberTuple context,
+            List<IFilter> levelFilters,
+            Collection<Intersection> intersections,
+            boolean excludeEmpty  ) {
+        ChildMembersEvent event = new ChildMembersEvent();
+        event.start();
+        ChildMembers selection = null;
+        try {
+            selection = collectChildMembers(collector, intersectionViews, parentLevel, parentMemberId, childLevel,
+                    grandchildLevel, context, levelFilters, intersections, excludeEmpty);
+            return selection;
+        } finally {
+            if (event.isEnabled()) {
+                event.dimension = name;
+                event.childLevel = childLevel == null ? null : childLevel.getName();
+                event.excludeEmpty = excludeEmpty;
+                event.intersectionCount = intersections == null ? 0 : intersections.size();
+                event.filterCount = levelFilters == null ? 0 : levelFilters.size();
+                event.rowsScanned = childLevel == null ? 0 : childLevel.getMemberCount();
+                event.rowsMatched = selection == null ? 0 : selection.children.cardinality();
+            }
+            event.finish();
+        }
+    }
+
+    private ChildMembers collectChildMembers( CubeDs collector,
+            Map<Intersection, BitSet> intersectionViews,
+            HierarchyLevel parentLevel,
+            int parentMemberId,
+            HierarchyLevel childLevel,
+            HierarchyLevel grandchildLevel,
+            LevelMemberTuple context,
+            List<IFilter> levelFilters,
+            Collection<Intersection> intersections,
+            boolean excludeEmpty  ) {
 
         if ( childLevel == null ) {
         	// just in case, should never happen.
-            return new LevelMemberInfo[0];
+            return new ChildMembers(new BitSet(), new BitSet());
         }
         
         // Some of the extra filters could be defined on a level within this dimension, 
@@ -1037,15 +1196,12 @@ public class Dimension implements Serializable
         }
         
         // FIX- can't assume the first one.
-        String hierarchyName = this.getHierarchyNames().get(0);
+        String hierarchyName = this.getDefaultHierarchyName();
         
-        // collect the children that match all the filters into an index->member map.
-        HashMap<Integer, LevelMemberInfo> childMap = new HashMap<Integer, LevelMemberInfo>();
+        // collect the children that match all the filters, and those that have grandchildren matching the filters.
     	BitSetSelector childSelector = this.getSelector(hierarchyName, childLevel.getName(), filtersForThisDimension, true);
-    	BitSet childBitset = childSelector.getBitSet();
-    	for(int ci = childBitset.nextSetBit(0); ci >= 0; ci = childBitset.nextSetBit(ci+1)){
-    		childMap.put(ci, new LevelMemberInfo(childLevel, ci, false)); // pass false to assume no children.
-    	}
+    	BitSet childBitset = (BitSet) childSelector.getBitSet().clone();
+    	BitSet withChildren = new BitSet();
         
     	// get the grand children that match all the filters and the index of their parents
     	// at the child level.
@@ -1056,16 +1212,10 @@ public class Dimension implements Serializable
             // set the parents of the matched grand children to "have children".
             int[] grandchildMapping = getLevelMapping( hierarchyName, childLevel.getName(), grandchildLevel.getName());
             for(int gi = gChildBitset.nextSetBit(0); gi >= 0; gi = gChildBitset.nextSetBit(gi+1)){
-            	int ci = grandchildMapping[gi];
-            	if(childMap.containsKey(ci) == false){
-            		childMap.put(ci, new LevelMemberInfo(childLevel, ci, true));
-            	} else {
-            		childMap.get(ci).hasChildren = true;
-            	}
+            	withChildren.set(grandchildMapping[gi]);
             }
+            childBitset.or(withChildren);
         }
-        
-        LevelMemberInfo[] children = childMap.values().toArray(new LevelMemberInfo[childMap.size()]);
 
         // excludeEmpty means that we should not return any children that do not map to a item on any
         // intersection.  Similarly, the hasChildren should be false if none the grandchildren under a
@@ -1077,12 +1227,12 @@ public class Dimension implements Serializable
         	Map<String, String> dimensionHierarchyMap = new HashMap<>();
         	for(Dimension dimension : collector.getDimensions()){
         		String dimensionName = dimension.getName();
-        		String hierName = dimension.getHierarchyNames().get(0);
+        		String hierName = dimension.getDefaultHierarchyName();
         		dimensionHierarchyMap.put(dimensionName, hierName);
         	}
         	
-        	// gather all the filters on other dimensions we need to take into consideration when deciding 
-        	// if the children or grand children have a shadow on the intersections. This includes:
+        	// gather all the filters on other dimensions that decide whether the children or grand children
+        	// have items on the intersections. This includes:
         	// 1. The filters on the level members in the context.
         	// 2. The extra level filters that were defined on other dimensions.
             if (context != null) {
@@ -1092,111 +1242,19 @@ public class Dimension implements Serializable
             		filtersForOtherDimensions.add(new ElementFilter(contextLevel, contextMemberId));
             	}
             }
-        	
-            // Calculate the shadow of these context filters (i.e. the filters on other dimensions) on the 
-            // intersections.
-            Map<String, BitVector> contextShadows = new HashMap<>();
-            if(!filtersForOtherDimensions.isEmpty()){
-                for( Intersection intersection: intersections ) {
-                	String intersectionName = intersection.getName();
-
-                    ShadowAggregator aggr = new ShadowAggregator(intersection.size());
-                    Aggregator[] aggregators = new Aggregator[1];
-                    aggregators[0] = aggr;
-                    
-                    IFilter[] filters = filtersForOtherDimensions.toArray(new IFilter[filtersForOtherDimensions.size()]);
-                    collector.aggregate(dimensionHierarchyMap, intersectionName, aggregators, filters);
-                    
-                	BitVector shadow = aggr.getShadow();
-                    if(contextShadows.containsKey(intersectionName)){
-                    	contextShadows.get(intersectionName).and(shadow);
-                    } else {
-                    	contextShadows.put(intersectionName, shadow);
-                    }
-                }
-            }
-
-            // Get the depth of the child level and grandchild level in the hierarchy.
-            List<HierarchyLevel> hierarchy = this.getHierarchy(hierarchyName);
-            int childDepth =  hierarchy.indexOf(childLevel);
-            int grandChildDepth = grandchildLevel==null ? 999999 : hierarchy.indexOf(grandchildLevel); // 999999 = effectively infinity for hierarchy depth
-            
-            // Get the depth of the related level for this dimension in all the intersections.
-            HashMap<String,Integer> intersectionDepths = new HashMap<String, Integer>();
-            for( Intersection intersection : intersections ) {
-                HierarchyLevel intersectionLevel = intersection.getRelatedLevel( this.getName());
-                int intersectionDepth = hierarchy.indexOf(intersectionLevel);
-                intersectionDepths.put( intersection.getName(), intersectionDepth );
-            }
-
-            // Find out if intersections are at the same level or deeper
-            boolean[] nonEmpty = new boolean[children.length];
-            boolean[] nonEmptyGrandchildren = new boolean[children.length];
-            for( int i = 0; i < children.length; i ++ ) {
-                // if true, then this member appears on at least one intersection where child is a related level
-                boolean childPresentOnIntersection = false;
-                // if true, then there are descendants of this child on at least one intersection that may aggregate to child level
-                boolean hasDeeperShadow = false;
-                // if true, then there descendants at or below grandchild level
-                boolean hasNonEmptyGrandchildren = false;
-
-                for( Intersection intersection : intersections ) {
-                    BitVector contextShadow  = contextShadows.get(intersection.getName());
-                    if(contextShadow == null) {
-                        // FIX: this can be optimized away; no need to materialize this bit vector
-                        contextShadow = new BitVector( intersection.size());
-                        contextShadow.setAll(true);
-                    }
-                    
-                 // apply intersection views if defined.
-                    if (intersectionViews != null) {
-                        BitSet bitSet = intersectionViews.get(intersection);
-                        if (bitSet != null) {
-                            contextShadow.getBitSet().and(bitSet);
-                        }
-                    }
 
-                    BitVector childShadow = intersection.getTupleShadow( collector, makeTuple( children[i]));
-
-                    boolean intersects = contextShadow.intersects(childShadow);
-
-                    if ( !intersects ) {
-                    	// If the shadow casted by the child has nothing in common with the shadow
-                    	// casted by the context, then together, they don't have any matching entries
-                    	// in the intersection.
-                        continue;
-                    }
-
-                    // reach here if there are entries in the intersection that are formed by the 
-                    // descendants of the child and the descendants of the members in the context.
-                    int intersectionDepth = intersectionDepths.get( intersection.getName());
-                    childPresentOnIntersection = childPresentOnIntersection || intersectionDepth == childDepth;
-                    hasDeeperShadow = hasDeeperShadow ||  intersectionDepth > childDepth;
-                    hasNonEmptyGrandchildren = hasNonEmptyGrandchildren || intersectionDepth >= grandChildDepth;
-
-                }
-                
-                // For this child, record whether we have found its descendants in any of the intersections,
-                // taking into consideration of the context.
-                nonEmpty[i] = childPresentOnIntersection || hasDeeperShadow;
-                // For this child, record whether we have found in any of the intersections its descendants
-                // that are lower in hierarchy, taking into consideration of the context.
-                nonEmptyGrandchildren[i] = hasNonEmptyGrandchildren;
-            }
-
-            List<LevelMemberInfo> subset = new ArrayList<LevelMemberInfo>( children.length );
-            for( int i=0; i<children.length; i++ ) {
-                if ( nonEmpty[i] ) {
-                    subset.add( children[i] );
-                }
-                if ( !nonEmptyGrandchildren[i] ) {
-                    children[i].hasChildren = false;
-                }
-            }
-            children = subset.toArray( new LevelMemberInfo[ subset.size() ] );
+            // One pass over each intersection finds the children with items in the context, and those with
+            // items at or below the grandchild level.
+            NonEmptyMemberScan scan = new NonEmptyMemberScan(collector, this, hierarchyName,
+                    childLevel, grandchildLevel);
+            scan.scan(intersections, dimensionHierarchyMap,
+                    filtersForOtherDimensions.toArray(new IFilter[filtersForOtherDimensions.size()]),
+                    intersectionViews);
+            childBitset.and(scan.getNonEmptyChildren());
+            withChildren.and(scan.getChildrenWithGrandchildren());
         }
 
-        return children;
+        return new ChildMembers(childBitset, withChildren);
     }
 
 //    /**
@@ -1218,15 +1276,6 @@ public class Dimension implements Serializable
 //        return childList.toArray( new LevelMemberInfo[childList.size()]);
 //    }
 
-    // Create a member tuple with only one level member
-    private LevelMemberTuple makeTuple( LevelMemberInfo child ) {
-        LevelMember member = new LevelMember(child.getLevel(), child.getMemberId());
-        ArrayList<LevelMember> members = new ArrayList<LevelMember>();
-        members.add(member);
-        LevelMemberTuple childTuple = new LevelMemberTuple(members);
-        return childTuple;
-    }
-
     /**
      * Return the lowest level in the default hierarchy (the one with the same name as the dimension)
      * @return The leaf level
@@ -1237,6 +1286,20 @@ public class Dimension implements Serializable
 
     }
 
+    /**
+     * Measure the heap retained by this dimension.  Each level is reported as a child.
+     *
+     * @return the memory usage of the dimension and its levels.
+     */
+    public MemoryUsage getMemoryUsage() {
+        long ownBytes = MemoryEstimator.sizeOfObject(3, 0) + MemoryEstimator.sizeOfString(name)
+                + MemoryEstimator.sizeOfHashMap(levels.size()) + MemoryEstimator.sizeOfHashMap(hierarchyMap.size());
+        MemoryUsage usage = new MemoryUsage(name, MemoryUsage.Kind.DIMENSION, ownBytes, 0);
+        for (HierarchyLevel level : levels.values()) {
+            usage.addChild(level.getMemoryUsage());
+        }
+        return usage;
+    }
 }
 
 
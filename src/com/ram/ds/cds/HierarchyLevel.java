@@ -3,6 +3,8 @@ package com.ram.ds.cds;
 import java.io.Serializable;
 import java.util.HashMap;
 
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.memory.MemoryUsage;
 import com.ram.ds.cds.stores.IIntStore;
 import com.ram.ds.cds.stores.IStringStore;
 
@@ -34,6 +36,8 @@ public class HierarchyLevel extends AttributeContainer  implements Serializable
         return identityAttributeName;
     }
 
+    private transient ICubeWriteListener writeListener;
+
     /**
      * Construct using the level's name as its identity attribute name.
      * @param name
@@ -82,13 +86,19 @@ public class HierarchyLevel extends AttributeContainer  implements Serializable
      * Add a member to the level.  The name must be distinct from any existing members in the level.
      * @param name Name of the member, which will be stored in the identity attribute
      * @return The memberId of the newly added member
-     * @throws CdsException If the name is already used by an existing member.
+     * @throws CdsException If the name is already used by an existing member, or the cube is past the limit
+     *         of its memory budget.
      */
     public int addMember( String name ) {
         if ( identityToIndexMap.keySet().contains(name))
             throw new CdsException("Duplicate member name '" + name + "' cannot be added to level " + this.getName());
+        checkItemGrowth();
         int memberId = identityAttribute().addElement( name );
         identityToIndexMap.put(name,memberId);
+        recordItemGrowth( MemoryEstimator.sizeOfHashMap( identityToIndexMap.size() )
+                - MemoryEstimator.sizeOfHashMap( identityToIndexMap.size() - 1 ) + MemoryEstimator.sizeOfBoxed( memberId ));
+        if ( writeListener != null )
+            writeListener.memberWritten( this, memberId );
         return memberId;
     }
 
@@ -110,9 +120,37 @@ public class HierarchyLevel extends AttributeContainer  implements Serializable
         String previousName = identityAttribute().setElementAt( index, name );
         identityToIndexMap.remove(previousName);
         identityToIndexMap.put( name, index );
+        if ( writeListener != null )
+            writeListener.memberWritten( this, index );
         return previousName;
     }
 
+    /**
+     * @param listener the listener to tell about added and renamed members, or null to remove it.  The
+     *                 listener is not serialized with the level.
+     */
+    public void setWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = listener;
+    }
+
+    public ICubeWriteListener getWriteListener() {
+        return writeListener;
+    }
+
+    /**
+     * Add a listener alongside the current one, if any; see {@link CubeWriteMulticaster}.
+     */
+    public synchronized void addWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = CubeWriteMulticaster.add( writeListener, listener );
+    }
+
+    /**
+     * Remove a listener, leaving the others in place.
+     */
+    public synchronized void removeWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = CubeWriteMulticaster.remove( writeListener, listener );
+    }
+
 
     private IStringStore identityAttribute() {
         return getStringAttribute(identityAttributeName);
@@ -136,5 +174,22 @@ public class HierarchyLevel extends AttributeContainer  implements Serializable
                 ", memberCount=" + getMemberCount() +
                 '}';
     }
+
+    @Override
+    public MemoryUsage getMemoryUsage() {
+        MemoryUsage usage = super.getMemoryUsage();
+        // the map shares its String keys with the identity store.
+        long mapBytes = MemoryEstimator.sizeOfHashMap(identityToIndexMap.size());
+        for (Integer index : identityToIndexMap.values()) {
+            mapBytes += MemoryEstimator.sizeOfBoxed(index);
+        }
+        usage.addChild(new MemoryUsage("identityToIndexMap", MemoryUsage.Kind.CACHE, mapBytes, 0));
+        return usage;
+    }
+
+    @Override
+    protected MemoryUsage.Kind getMemoryKind() {
+        return MemoryUsage.Kind.LEVEL;
+    }
 }
 
@@ -0,0 +1,35 @@
+package com.ram.ds.cds;
+
+import java.util.BitSet;
+
+/**
+ * Notified of the changes to the members of a level and the items of an intersection, for example so that
+ * they can be logged.  The values of the measures are reported separately by the stores, see
+ * {@link com.ram.ds.cds.stores.IObservableStore}, and compactions by {@link IRowRemapListener}.
+ */
+public interface ICubeWriteListener {
+
+    /**
+     * Called after a member has been added to a level or renamed.
+     *
+     * @param level the level.
+     * @param memberId the id of the member, whose name can be read back from the level.
+     */
+    void memberWritten(HierarchyLevel level, int memberId);
+
+    /**
+     * Called after the tuple of related level members of an item has been added or set.
+     *
+     * @param intersection the intersection.
+     * @param index the position of the item, whose key can be read back from the intersection.
+     */
+    void keyWritten(Intersection intersection, int index);
+
+    /**
+     * Called after items of an intersection have been deleted.
+     *
+     * @param intersection the intersection.
+     * @param items the positions of the items newly deleted.  The set must not be modified.
+     */
+    void itemsDeleted(Intersection intersection, BitSet items);
+}
@@ -0,0 +1,17 @@
+package com.ram.ds.cds;
+
+/**
+ * Notified when the items of an intersection move, so that anyone holding item positions (row ids) on the
+ * intersection, such as views or selections, can translate them.
+ */
+public interface IRowRemapListener {
+
+    /**
+     * Called after {@link Intersection#compact()} has removed the deleted items, before it returns.
+     *
+     * @param intersection the compacted intersection.
+     * @param remap for each position before the compaction, the new position of the item, or -1 if the item
+     *              was deleted.  Positions keep their order.
+     */
+    void rowsRemapped(Intersection intersection, int[] remap);
+}
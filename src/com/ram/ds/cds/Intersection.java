@@ -1,16 +1,30 @@
 package com.ram.ds.cds;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import com.ram.ds.cds.aggregation.Cartesian;
+import com.ram.ds.cds.events.LevelMappingEvent;
+import com.ram.ds.cds.events.RecalculateLookupKeysEvent;
+import com.ram.ds.cds.events.SpreadEvent;
+import com.ram.ds.cds.events.TupleShadowEvent;
 import com.ram.ds.cds.filters.IFilter;
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.memory.MemoryUsage;
+import com.ram.ds.cds.stores.Constants;
+import com.ram.ds.cds.stores.EncodedIntStore;
 import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IDoubleArrayStore;
+import com.ram.ds.cds.stores.IDoubleStore;
 import com.ram.ds.cds.stores.IIntStore;
 import com.ram.ds.cds.util.ArrayOps;
 import com.ram.ds.cds.util.BitMatrix;
 import com.ram.ds.cds.util.BitVector;
+import com.ram.ds.cds.util.CompositeIndex;
 import com.ram.ds.cds.util.Sequence;
+import com.ram.ds.cds.util.TupleIndex;
 
 /**
  * <p>Represents the intersection of one or more HierarchyLevels from different dimensions, providing a place to
@@ -61,10 +75,13 @@ public class Intersection extends AttributeContainer implements Serializable {
 
     /**
      * Cache of mappings from a hierarchy level, which can be a higher level in the dimension than the
-     * related level, to the items on the intersection.  Key is the level name, value is int[] of same length
-     * as the intersection, where each value is a memberId in the level.
+     * related level, to the items on the intersection.  Key is the names of the levels from the target level
+     * down to the related level, so that the hierarchies sharing those levels share the mapping; value is
+     * int[] of same length as the intersection, where each value is a memberId in the level.  Guarded by its
+     * own lock, since concurrent queries fill it.  It is not serialized, since it is as large as a store for
+     * each level.
      */
-    private HashMap<String,int[]> cache = cacheLevelMappings ? new HashMap<String, int[]>() : null;
+    private transient HashMap<List<String>,int[]> cache = cacheLevelMappings ? new HashMap<List<String>, int[]>() : null;
 
     /**
      * Mapping of a level to the store that holds its memberIds.
@@ -82,9 +99,45 @@ public class Intersection extends AttributeContainer implements Serializable {
     private int[] relatedLevelsCardinality;
 
     /**
-     * Maps the packed cartesian index for each tuple on the intersection to its position in the intersection.
+     * Maps the tuple of related level member ids of each item to its position in the intersection.  It is
+     * not serialized; it is built on first use.
      */
-    private HashMap<Long,Integer> cartesianTupleMap = new HashMap<Long, Integer>();
+    private transient TupleIndex tupleIndex;
+
+    /**
+     * Members of a level that have at least one item on the intersection, keyed by the names of the levels
+     * from the level down to the related level, as the level mappings are.  Each entry records how many items
+     * it covers, so that items added directly to the stores are noticed.
+     */
+    private transient HashMap<List<String>, NonEmptyMembers> nonEmptyMembersCache;
+
+    /**
+     * Secondary indexes declared with {@link #addSecondaryIndex(HierarchyLevel...)}, keyed by the names of their
+     * levels in index order.  Null until the first index is declared.
+     */
+    private LinkedHashMap<List<String>, CompositeIndex> secondaryIndexes;
+
+    /**
+     * Positions of the items deleted since the last compaction, or null if there are none.  The items stay in
+     * the stores, and every scan skips them, until {@link #compact()} removes them.
+     */
+    private BitSet deletedItems;
+
+    /**
+     * Listeners told about the new positions of the items after a compaction.
+     */
+    private transient List<IRowRemapListener> rowRemapListeners;
+
+    /**
+     * Listener told about added, set and deleted items.
+     */
+    private transient ICubeWriteListener writeListener;
+
+    /**
+     * An indexed selection is only used when it probes the indexes at most once for every this many items;
+     * a larger selection is cheaper to evaluate by scanning.
+     */
+    private static final int ITEMS_PER_INDEX_PROBE = 4;
 
     /**
      * Get the number of elements in the intersection. Because the intersection may
@@ -143,6 +196,7 @@ public class Intersection extends AttributeContainer implements Serializable {
             relatedLevelsCardinality[irelatedLevel] = level.getMemberCount();
             irelatedLevel++;
         }
+        tupleIndex = null; // the key columns have changed
     }
 
     /**
@@ -177,6 +231,7 @@ public class Intersection extends AttributeContainer implements Serializable {
         	this.relatedLevelsStores[levelIndex] = this.levelToAttributeMap.get(relatedLevel);
     		levelIndex ++;
     	}
+    	tupleIndex = null; // the key columns have changed
     }
     
     /**
@@ -237,6 +292,10 @@ public class Intersection extends AttributeContainer implements Serializable {
         	result = new BitVector(size);
         	result.setAll(true);
             for( int i=0; i<size; i++ ) {
+                if ( isDeleted(i) ) {
+                    result.set(i, false);
+                    continue;
+                }
                 for( IFilter filter : filters ) {
                     if (result.get(i)) {
                         result.set(i, filter.isMatch(i));
@@ -253,8 +312,11 @@ public class Intersection extends AttributeContainer implements Serializable {
      */
     public void clearLevelMappingCache(){ 
     	if ( cacheLevelMappings ) {
-    		cache.clear();
+    		synchronized ( cache ) {
+    			cache.clear();
+    		}
     	}
+    	clearNonEmptyMembers();
     }
     
     /**
@@ -280,28 +342,24 @@ public class Intersection extends AttributeContainer implements Serializable {
 
     	// update the tuple index to intersection index map for all the existing
     	// elements in the intersection.
-		this.cartesianTupleMap.clear();
-    	int[] elementKey = new int[numLevels];
-    	for(int i = 0, n = size(); i < n; i ++){
-    		for(int k = 0; k < this.relatedLevelsStores.length; k ++){
-    			elementKey[k] = this.relatedLevelsStores[k].getElement(i);
-    		}
-    		long tupleKey = packRelatedLevelsInds(elementKey);
-    		this.cartesianTupleMap.put(tupleKey, i);
-    	}
+    	rebuildTupleIndex();
+    	rebuildSecondaryIndexes();
 
     	if ( cacheLevelMappings ) {
     		// we can just clear it, its content will be rebuilt upon the next
     		// aggregation operation.
-    		cache.clear();
+    		synchronized ( cache ) {
+    			cache.clear();
+    		}
     	}
-    	
+    	clearNonEmptyMembers();
     }
 
     /**
      * Which members in the target level have entries in the intersection?
      * 
-     * Create a mapping between the members of the intersection and the members of a level.
+     * Create a mapping between the members of the intersection and the members of a level, through the
+     * default hierarchy of the level's dimension.
      * @param collector  It's actually stupid to have to pass this, but we need it to find the Dimension because
      *                   a HierarchyLevel only holds the dimension's name, not a reference to it
      * @param targetLevel
@@ -310,47 +368,128 @@ public class Intersection extends AttributeContainer implements Serializable {
      */
     public int[] getTargetAggregationInds( CubeDs collector, HierarchyLevel targetLevel )
     {
-        // This method really should have a hierarchy name to select how the level maps to the leaf of the dimension
-        if ( cacheLevelMappings ) {
-            int[] cachedInds = cache.get( targetLevel.getName());
-            if ( cachedInds != null )
-                return ArrayOps.copy( cachedInds ); // so in-place adjustments to the indices do not clobber the cache
+        return getTargetAggregationInds( collector, null, targetLevel );
+    }
+
+    /**
+     * Create a mapping between the members of the intersection and the members of a level, through the
+     * given hierarchy of the level's dimension.  Hierarchies that share the levels from the related level up
+     * to the target level, such as a fiscal and a calendar hierarchy that only differ above the week, share
+     * one cached mapping.
+     *
+     * @param collector Collector instance containing the dimension of the level.
+     * @param hierarchyName the hierarchy that relates the target level to the related level of the dimension,
+     *                      or null for the default hierarchy.
+     * @param targetLevel the level to map to.
+     * @return target level ancestor indices for all the members in the intersection, -1 for the deleted items,
+     * or -1 for every item if the target level is not at or above the related level in the hierarchy.
+     * @throws CdsException if the dimension has no hierarchy of the given name.
+     */
+    public int[] getTargetAggregationInds( CubeDs collector, String hierarchyName, HierarchyLevel targetLevel )
+    {
+        LevelMappingEvent event = new LevelMappingEvent();
+        event.start();
+        if (event.isEnabled()) {
+            event.intersection = getName();
+            event.hierarchy = hierarchyName;
+            event.targetLevel = targetLevel.getName();
+            event.rowsScanned = size();
         }
+        try {
+            return mapToTargetLevel( collector, hierarchyName, targetLevel, event );
+        } finally {
+            event.finish();
+        }
+    }
 
-        // Map the bottom level to the leaf level of the dimension
-        int[] inds = Sequence.getSequence(targetLevel.getMemberCount());
+    private int[] mapToTargetLevel( CubeDs collector, String hierarchyName, HierarchyLevel targetLevel,
+                                    LevelMappingEvent event )
+    {
         Dimension dimension = collector.getDimension(targetLevel.getDimensionName());
-
-        inds = projectToIntersection(dimension, null, targetLevel.name, inds);  // todo:  need explicit hierarchy
-
-        if ( inds == null ){
-            // THere is no mapping to this level; return -1 for all positions
-            inds = new int[this.size()];
-            for( int i=0; i<inds.length; i++ )
-                inds[i] = -1;
+        List<String> path = getMappingPath( dimension, hierarchyName, targetLevel );
+        if ( path == null ) {
+            // There is no mapping to this level; return -1 for all positions
+            int[] inds = new int[this.size()];
+            Arrays.fill( inds, -1 );
             return inds;
         }
 
-
-        // Get the level name on this intersection that's part of the same dimension( future hierarchy ) as targetLevel
-        String intersectionAttrName = null;
-        for( HierarchyLevel level : getRelatedLevels() ) {
-            if ( level.getDimensionName().equals( targetLevel.getDimensionName() ) ) {
-                intersectionAttrName = level.getName();
+        // Start from the mapping of the lowest level of the path that is cached, or from the related level
+        int start = path.size() - 1;
+        int[] baseInds = null;
+        if ( cacheLevelMappings ) {
+            synchronized ( cache ) {
+                for( int k = 0; k < path.size() && baseInds == null; k++ ) {
+                    baseInds = cache.get( path.subList( k, path.size()));
+                    if ( baseInds != null && baseInds.length != size())
+                        baseInds = null; // it predates the items added since
+                    start = k;
+                }
+            }
+            if ( baseInds != null && start == 0 ) {
+                event.cacheHit = true;
+                return ArrayOps.copy( baseInds ); // so in-place adjustments to the indices do not clobber the cache
             }
         }
-        if ( intersectionAttrName == null ) {
-            String errmsg = "Intersection does not contain a level from the same dimension as target level " + targetLevel.getName();
-            //Trace.write( Trace.error, errmsg );
-            throw new CdsException(errmsg);
+        if ( baseInds == null ) {
+            start = path.size() - 1;
+            baseInds = getRelatedLevelInds( path.get( start ));
         }
 
-        IIntStore intersectionInds = getIntAttribute( intersectionAttrName );
-        inds = ArrayOps.index( inds, intersectionInds );
+        // Map the members of the starting level up the path to the target level, then the items through them
+        int[] memberInds = null;
+        for( int k = start - 1; k >= 0; k-- ) {
+            int[] parentInds = getParentInds( dimension.getLevel( path.get( k + 1 )), dimension.getLevel( path.get( k )));
+            memberInds = memberInds == null ? parentInds : ArrayOps.index( parentInds, memberInds );
+        }
+        int[] inds = memberInds == null ? ArrayOps.copy( baseInds ) : ArrayOps.index( memberInds, baseInds );
 
         //  Add this mapping to the intersection so we don't need to traverse the hierarchy next time
         if ( cacheLevelMappings ) {
-            cache.put( targetLevel.getName(), ArrayOps.copy(inds) );
+            synchronized ( cache ) {
+                cache.put( path, ArrayOps.copy(inds) );
+            }
+        }
+        return inds;
+    }
+
+    /**
+     * @return the names of the levels of the hierarchy from the target level down to the related level on the
+     * same dimension, which identify a level mapping independently of the hierarchy it was made through, or
+     * null if the target level is not at or above the related level in the hierarchy.
+     */
+    private List<String> getMappingPath( Dimension dimension, String hierarchyName, HierarchyLevel targetLevel ) {
+        if ( hierarchyName == null )
+            hierarchyName = dimension.getDefaultHierarchyName();
+        List<HierarchyLevel> hierarchy = dimension.getHierarchy( hierarchyName );
+        if ( hierarchy == null )
+            throw new CdsException( "Dimension " + dimension.getName() + " has no hierarchy " + hierarchyName );
+        HierarchyLevel relatedLevel = getRelatedLevel( dimension.getName());
+        if ( relatedLevel == null )
+            return null;
+        List<String> path = new ArrayList<String>();
+        for( HierarchyLevel level : hierarchy ) {  // going from top towards the bottom.
+            if ( path.isEmpty() && !level.getName().equals( targetLevel.getName()))
+                continue;
+            path.add( level.getName());
+            if ( level.getName().equals( relatedLevel.getName()))
+                return path;
+        }
+        return null;
+    }
+
+    /**
+     * @return the member id of each item in the given related level, -1 for the deleted items.
+     */
+    private int[] getRelatedLevelInds( String relatedLevelName ) {
+        IIntStore intersectionInds = getIntAttribute( relatedLevelName );
+        int[] inds = new int[intersectionInds.size()];
+        intersectionInds.getRange( 0, inds.length, inds, 0 );
+        if ( deletedItems != null ) {
+            // deleted items do not map to any member
+            for( int i = deletedItems.nextSetBit(0); i >= 0 && i < inds.length; i = deletedItems.nextSetBit(i + 1) ) {
+                inds[i] = -1;
+            }
         }
         return inds;
     }
@@ -363,7 +502,15 @@ public class Intersection extends AttributeContainer implements Serializable {
      * @return Mapping from each item at this intersection to the items of the attribute.
      */
     public int[] getTargetAggregationInds( CubeDs collector, LevelAttribute attribute ) {
-        int[] intersectionMemberInds = getTargetAggregationInds( collector, attribute.getLevel());
+        return getTargetAggregationInds( collector, null, attribute );
+    }
+
+    /**
+     * Return the attribute id (ordinal) for each item at the intersection, mapping the items to the level of
+     * the attribute through the given hierarchy, or the default hierarchy if it is null.
+     */
+    public int[] getTargetAggregationInds( CubeDs collector, String hierarchyName, LevelAttribute attribute ) {
+        int[] intersectionMemberInds = getTargetAggregationInds( collector, hierarchyName, attribute.getLevel());
         int[] levelMemberAttributeInds = attribute.getAttributeInds();
         return ArrayOps.index( levelMemberAttributeInds, intersectionMemberInds );
     }
@@ -389,10 +536,11 @@ public class Intersection extends AttributeContainer implements Serializable {
      */
     public int[] projectToIntersection(Dimension dimension, String hierarchyName, String upperLevelName, int[] values) {
         if ( hierarchyName == null ) {
-            // use the default hierarchy (first one in the list).
-            hierarchyName = dimension.getHierarchyNames().get(0);
-            // todo: throw exception here if hierarchy is null
+            // use the default hierarchy (first one added).
+            hierarchyName = dimension.getDefaultHierarchyName();
         }
+        if ( dimension.getHierarchy( hierarchyName ) == null )
+            throw new CdsException( "Dimension " + dimension.getName() + " has no hierarchy " + hierarchyName );
         
         // Find the level in this intersection that belongs to the given dimension.
         String dimensionName = dimension.getName();
@@ -480,6 +628,9 @@ public class Intersection extends AttributeContainer implements Serializable {
 
         if ( relatedLevelsMap.containsKey( level.getDimensionName())) {
             relatedLevelsMap.remove( level.getDimensionName());
+            if ( secondaryIndexes != null ) {
+                secondaryIndexes.keySet().removeIf( levelNames -> levelNames.contains( level.getName()));
+            }
             recalculateLookupKeys();
         }
 
@@ -496,15 +647,62 @@ public class Intersection extends AttributeContainer implements Serializable {
      * @return BitVector that is true for every item on the intersection that is a child of param tuple.
      */
     public BitVector getTupleShadow( CubeDs collector, LevelMemberTuple tuple ) {
+        return getTupleShadow( collector, Collections.<String, String>emptyMap(), tuple );
+    }
+
+    /**
+     * Returns a BitVector that marks the positions on the intersection that are children of a tuple of members
+     * of hierarchy levels, relating each member to the intersection through the given hierarchy of its dimension.
+     * @param dimensionHierarchyMap the hierarchy to use for each dimension; the default hierarchy is used for a
+     *                              dimension that is not in the map.
+     * @see #getTupleShadow(CubeDs, LevelMemberTuple)
+     */
+    public BitVector getTupleShadow( CubeDs collector, Map<String, String> dimensionHierarchyMap, LevelMemberTuple tuple ) {
+        TupleShadowEvent event = new TupleShadowEvent();
+        event.start();
+        BitVector shadow = null;
+        try {
+            shadow = computeTupleShadow( collector, dimensionHierarchyMap, tuple );
+            return shadow;
+        } finally {
+            if (event.isEnabled()) {
+                event.intersection = getName();
+                event.filterCount = tuple.getLevelMembers().size();
+                event.rowsScanned = size();
+                event.rowsMatched = shadow == null ? 0 : shadow.getBitSet().cardinality();
+            }
+            event.finish();
+        }
+    }
+
+    private BitVector computeTupleShadow( CubeDs collector, Map<String, String> dimensionHierarchyMap, LevelMemberTuple tuple ) {
         Set<LevelMember> members = tuple.getLevelMembers();
         if ( members.size() == 0 )
             return new BitVector( this.size());
 
+        // a tuple of related level members is a point or slice query, which an index may answer
+        Map<String, BitSet> memberIdsByLevel = new HashMap<String, BitSet>();
+        for( LevelMember member : members ) {
+            if ( relatedLevelPosition( member.getLevel()) < 0 ) {
+                memberIdsByLevel = null;
+                break;
+            }
+            BitSet memberIds = new BitSet();
+            memberIds.set( member.getMemberId());
+            memberIdsByLevel.put( member.getLevel().getName(), memberIds );
+        }
+        if ( memberIdsByLevel != null ) {
+            BitSet rows = selectIndexed( memberIdsByLevel );
+            if ( rows != null )
+                return new BitVector( rows, this.size());
+        }
+
         BitVector shadow = null;
         for( LevelMember member : members ) {
             BitVector selected = new BitVector(member.getLevel().getMemberCount());
             selected.set( member.getMemberId(), true );
-            int[] mapping = this.getTargetAggregationInds(collector, member.getLevel());
+            String hierarchyName = dimensionHierarchyMap.get( member.getLevel().getDimensionName());
+            int[] mapping = this.getTargetAggregationInds(collector, hierarchyName, member.getLevel());
             if ( ArrayOps.eq(mapping,-1).all())
                 return new BitVector(this.size()); // all false
             selected = ArrayOps.index( selected, mapping);
@@ -536,6 +734,101 @@ public class Intersection extends AttributeContainer implements Serializable {
         return result;
     }
 
+    /**
+     * Spread a value to the items under a tuple of level members, such as an edit made at Category x Region
+     * pushed down to the items, so that the values of the items sum to it.  The rows under the tuple are
+     * found once, and are then read and written a chunk at a time by parallel threads, first to total the
+     * weights and then to write the shares; see {@link SpreadMethod} for the weights.  If the weights total
+     * zero, the value is spread evenly instead.  Spreading the empty value clears the items.
+     *
+     * @param collector the cube the intersection belongs to.
+     * @param tuple the level members whose items receive the value.
+     * @param measure a measure of this intersection.
+     * @param value the value to spread.
+     * @param method how the value is divided.
+     * @param basis the measure the value is spread in proportion to, for {@link SpreadMethod#BASIS}; may be
+     *              null otherwise.
+     * @return the number of items the value was spread to.
+     */
+    public int spread( CubeDs collector, LevelMemberTuple tuple, IDoubleStore measure, double value,
+                       SpreadMethod method, IDoubleStore basis )
+    {
+        checkSpread( measure, method, basis );
+        SpreadEvent event = new SpreadEvent();
+        event.start();
+        try {
+            MeasureSpreader spreader = new MeasureSpreader( getSpreadRows( collector, tuple ));
+            spreader.spread( measure, value, method, basis );
+            if ( event.isEnabled()) {
+                event.intersection = getName();
+                event.method = method.name();
+                event.filterCount = tuple.getLevelMembers().size();
+                event.rowsScanned = size();
+                event.rowsMatched = spreader.getRowCount();
+            }
+            return spreader.getRowCount();
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Spread a value for each of the given periods to the items under a tuple of level members, on a time
+     * series measure.  Each period is spread separately, as by
+     * {@link #spread(CubeDs, LevelMemberTuple, IDoubleStore, double, SpreadMethod, IDoubleStore)}, with the
+     * weights taken from the same period; the other periods of the items are kept.  A series shorter than a
+     * period it receives a share for is lengthened with zeros.
+     *
+     * @param periods the periods to spread.
+     * @param values the value to spread for each period, indexed by period.
+     * @return the number of items the values were spread to.
+     */
+    public int spread( CubeDs collector, LevelMemberTuple tuple, IDoubleArrayStore measure, BitSet periods,
+                       double[] values, SpreadMethod method, IDoubleArrayStore basis )
+    {
+        checkSpread( measure, method, basis );
+        if ( values.length < periods.length())
+            throw new IllegalArgumentException( "Intersection.spread(): no value for period " + ( periods.length() - 1 ));
+        SpreadEvent event = new SpreadEvent();
+        event.start();
+        try {
+            MeasureSpreader spreader = new MeasureSpreader( getSpreadRows( collector, tuple ));
+            spreader.spread( measure, periods, values, method, basis );
+            if ( event.isEnabled()) {
+                event.intersection = getName();
+                event.method = method.name();
+                event.periodCount = periods.cardinality();
+                event.filterCount = tuple.getLevelMembers().size();
+                event.rowsScanned = size();
+                event.rowsMatched = spreader.getRowCount();
+            }
+            return spreader.getRowCount();
+        } finally {
+            event.finish();
+        }
+    }
+
+    private static void checkSpread( Object measure, SpreadMethod method, Object basis ) {
+        if ( measure == null )
+            throw new IllegalArgumentException( "Intersection.spread(): measure must not be null" );
+        if ( method == null )
+            throw new IllegalArgumentException( "Intersection.spread(): method must not be null" );
+        if ( method == SpreadMethod.BASIS && basis == null )
+            throw new IllegalArgumentException( "Intersection.spread(): a basis is required to spread by basis" );
+    }
+
+    /**
+     * @return the items under the tuple, without the deleted items.
+     */
+    private BitSet getSpreadRows( CubeDs collector, LevelMemberTuple tuple ) {
+        BitSet rows = (BitSet) getTupleShadow( collector, tuple ).getBitSet().clone();
+        if ( deletedItems != null )
+            rows.andNot( deletedItems );
+        if ( rows.length() > size())
+            rows.clear( size(), rows.length());
+        return rows;
+    }
+
 
     /**
      * Returns the total size in bytes occupied by this intersection, including all attributes and 
@@ -545,16 +838,53 @@ public class Intersection extends AttributeContainer implements Serializable {
      * @return  Approximate data size in bytes.
      */
     public long getTotalDataSize() {
-    	// FIXME the javadoc claims this will include also the space taken by the caches and maps.
-    	// but we are not doing that.
-        long total = 0;
-        Set<String> allAttributes = getAttributes().keySet();
-        for( String attrName : allAttributes ) {
-            IDataStore store = getAttribute(attrName);
-            total += store.getDataSize();
+        return getMemoryUsage().getTotalBytes();
+    }
+
+    @Override
+    public MemoryUsage getMemoryUsage() {
+        MemoryUsage usage = super.getMemoryUsage();
+        if ( cache != null ) {
+            long cacheBytes;
+            synchronized ( cache ) {
+                cacheBytes = MemoryEstimator.sizeOfHashMap(cache.size());
+                for( Map.Entry<List<String>, int[]> entry : cache.entrySet() ) {
+                    // the level names in the key are shared with the levels
+                    cacheBytes += MemoryEstimator.sizeOfObject(1, 8) + MemoryEstimator.sizeOfArray(entry.getKey().toArray())
+                            + MemoryEstimator.sizeOfArray(entry.getValue());
+                }
+            }
+            usage.addChild(new MemoryUsage("levelMappingCache", MemoryUsage.Kind.CACHE, cacheBytes, 0));
         }
+        if ( deletedItems != null ) {
+            usage.addChild(new MemoryUsage("deletedItems", MemoryUsage.Kind.ATTRIBUTE, MemoryEstimator.sizeOfBitSet(deletedItems), 0));
+        }
+        if ( tupleIndex != null ) {
+            usage.addChild(new MemoryUsage("tupleIndex", MemoryUsage.Kind.CACHE, tupleIndex.getRetainedSize(), 0));
+        }
+        if ( secondaryIndexes != null ) {
+            for( Map.Entry<List<String>, CompositeIndex> entry : secondaryIndexes.entrySet() ) {
+                usage.addChild(new MemoryUsage("secondaryIndex" + entry.getKey(), MemoryUsage.Kind.CACHE,
+                        entry.getValue().getRetainedSize(), 0));
+            }
+        }
+        synchronized ( this ) {
+            if ( nonEmptyMembersCache != null ) {
+                long membersBytes = MemoryEstimator.sizeOfHashMap(nonEmptyMembersCache.size());
+                for( Map.Entry<List<String>, NonEmptyMembers> entry : nonEmptyMembersCache.entrySet() ) {
+                    membersBytes += MemoryEstimator.sizeOfObject(1, 8) + MemoryEstimator.sizeOfArray(entry.getKey().toArray())
+                            + MemoryEstimator.sizeOfObject(1, Integer.BYTES)
+                            + MemoryEstimator.sizeOfBitSet(entry.getValue().members);
+                }
+                usage.addChild(new MemoryUsage("nonEmptyMembers", MemoryUsage.Kind.CACHE, membersBytes, 0));
+            }
+        }
+        return usage;
+    }
 
-        return total;
+    @Override
+    protected MemoryUsage.Kind getMemoryKind() {
+        return MemoryUsage.Kind.INTERSECTION;
     }
 
 
@@ -594,14 +924,26 @@ public class Intersection extends AttributeContainer implements Serializable {
      * @return The position in the intersection if the tuple exists, or -1 if it does not.
      */
     public int lookup( int[] relatedLevelsIndices ) {
-        long key = packRelatedLevelsInds( relatedLevelsIndices );
-        Integer index = cartesianTupleMap.get(key);
-        return index == null ? -1 : index;
+        int index = getTupleIndex().get( relatedLevelsIndices );
+        return index >= 0 && isDeleted( index ) ? -1 : index;
     }
 
+    private TupleIndex getTupleIndex() {
+        if ( tupleIndex == null ) {
+            rebuildTupleIndex();
+        }
+        return tupleIndex;
+    }
 
-    private long packRelatedLevelsInds( int[] relatedLevelsIds ) {
-        return Cartesian.pack( relatedLevelsCardinality, relatedLevelsIds );
+    private void rebuildTupleIndex() {
+        int itemCount = size();
+        TupleIndex index = new TupleIndex( relatedLevelsStores, itemCount );
+        int[] relatedLevelsInds = new int[relatedLevelsStores.length];
+        for( int row = 0; row < itemCount; row++ ) {
+            if ( !isDeleted( row ))
+                index.put( getKey( row, relatedLevelsInds ), row );
+        }
+        tupleIndex = index;
     }
 
     /**
@@ -611,29 +953,675 @@ public class Intersection extends AttributeContainer implements Serializable {
      *                         related level on this intersection.  The order must correspond to the order
      *                         returned in getRelatedLevels().
      * @return The position in the intersection of the existing or newly added tuple.
+     * @throws CdsException if the tuple is new and the cube is past the limit of its memory budget.
      */
     public int lookupOrAdd(int[] relatedLevelsInds ) {
         int index = lookup( relatedLevelsInds );
         if ( index == -1 ) {
             // Not found; add it to the intersection
+            checkItemGrowth();
             for( int i=0; i<relatedLevelsInds.length; i++ ) {
                 index = relatedLevelsStores[i].addElement( relatedLevelsInds[i] );
             }
-            long key = packRelatedLevelsInds( relatedLevelsInds );
-            this.cartesianTupleMap.put(key,index);
+            putTuple( relatedLevelsInds, index );
+            updateNonEmptyMembers( index, relatedLevelsInds );
+            updateSecondaryIndexes( index );
+            if ( writeListener != null )
+                writeListener.keyWritten( this, index );
         }
         return index;
     }
 
     public int addKey(int index, int[] relatedLevelsInds ) {
+        int itemCount = size();
+        if ( index >= itemCount )
+            checkItemGrowth();
+        // the key the item had, if it is being replaced
+        int[] replacedInds = null;
+        if ( index < itemCount ) {
+            replacedInds = getStoredKey( index, new int[relatedLevelsInds.length] );
+            // the old tuple no longer leads to this item
+            if ( tupleIndex != null )
+                tupleIndex.remove( replacedInds, index );
+            if ( isDeleted( index ))
+                Arrays.fill( replacedInds, -1 );
+        }
+        if ( isDeleted( index )) {
+            // the position is reused by a new item; its mapping to the levels was cleared on deletion
+            deletedItems.clear( index );
+            if ( deletedItems.isEmpty() )
+                deletedItems = null;
+            clearLevelMappingCache();
+        }
+        if ( secondaryIndexes != null ) {
+            for( CompositeIndex secondaryIndex : secondaryIndexes.values() ) {
+                secondaryIndex.removeRow( index );
+            }
+        }
         for( int i=0; i<relatedLevelsInds.length; i++ ) {
             relatedLevelsStores[i].setElementAt(index, relatedLevelsInds[i]);
         }
-        long key = packRelatedLevelsInds(relatedLevelsInds);
-        this.cartesianTupleMap.put(key,index);
+        putTuple( relatedLevelsInds, index );
+        if ( replacedInds != null )
+            keyReplaced( replacedInds, relatedLevelsInds );
+        else
+            updateNonEmptyMembers( index, relatedLevelsInds );
+        updateSecondaryIndexes( index );
+        if ( writeListener != null )
+            writeListener.keyWritten( this, index );
         return index;
     }
 
+    /**
+     * Read the key of an item as far as the key columns hold it.  A key column can be shorter than the
+     * intersection, after ensureSize on another store or a partial write of a key; it gives -1 for the item.
+     */
+    private int[] getStoredKey( int index, int[] relatedLevelsInds ) {
+        for( int i=0; i<relatedLevelsInds.length; i++ ) {
+            IIntStore relatedLevelStore = relatedLevelsStores[i];
+            relatedLevelsInds[i] = index < relatedLevelStore.size() ? relatedLevelStore.getElement( index ) : -1;
+        }
+        return relatedLevelsInds;
+    }
+
+    /**
+     * Add a tuple to the tuple index, recording the growth of the index.
+     */
+    private void putTuple( int[] relatedLevelsInds, int index ) {
+        TupleIndex tuples = getTupleIndex();
+        long indexBytes = tuples.getRetainedSize();
+        tuples.put( relatedLevelsInds, index );
+        recordItemGrowth( tuples.getRetainedSize() - indexBytes );
+    }
+
+    /**
+     * Delete an item.  The item stays in the stores until {@link #compact()}, so the positions of the other
+     * items do not change, but every scan, lookup, level mapping and index skips it.  Adding its tuple again
+     * with {@link #lookupOrAdd(int[])} creates a new item.
+     *
+     * @param index the position of the item.
+     * @return true if the item was deleted, false if it already was.
+     */
+    public boolean deleteItem( int index ) {
+        BitSet items = new BitSet();
+        items.set( index );
+        return deleteItems( items ) == 1;
+    }
+
+    /**
+     * Delete a set of items, see {@link #deleteItem(int)}.
+     *
+     * @param items the positions of the items.  Positions past the end of the intersection are ignored.
+     * @return the number of items that were deleted, not counting the ones that already were.
+     */
+    public synchronized int deleteItems( BitSet items ) {
+        BitSet newlyDeleted = items.get( 0, size());
+        if ( deletedItems != null )
+            newlyDeleted.andNot( deletedItems );
+        int count = newlyDeleted.cardinality();
+        if ( count == 0 )
+            return 0;
+        if ( deletedItems == null )
+            deletedItems = new BitSet( size());
+        deletedItems.or( newlyDeleted );
+
+        if ( cacheLevelMappings ) {
+            synchronized ( cache ) {
+                for( int[] mapping : cache.values() ) {
+                    for( int i = newlyDeleted.nextSetBit(0); i >= 0 && i < mapping.length; i = newlyDeleted.nextSetBit(i + 1) ) {
+                        mapping[i] = -1;
+                    }
+                }
+            }
+        }
+        clearNonEmptyMembers(); // a member may have lost its last item
+        if ( writeListener != null )
+            writeListener.itemsDeleted( this, newlyDeleted );
+        return count;
+    }
+
+    /**
+     * @param index the position of an item.
+     * @return true if the item has been deleted and not yet compacted away.
+     */
+    public boolean isDeleted( int index ) {
+        return deletedItems != null && deletedItems.get( index );
+    }
+
+    /**
+     * @return the number of deleted items still held in the stores.
+     */
+    public int getDeletedItemCount() {
+        return deletedItems == null ? 0 : deletedItems.cardinality();
+    }
+
+    @Override
+    protected BitSet getDeletedItems() {
+        return deletedItems;
+    }
+
+    /**
+     * Remove the deleted items from every attribute store, including the related level stores, moving the
+     * remaining items down in order.  The tuple index, the secondary indexes and the level mapping caches are
+     * rewritten for the new positions, and the {@link IRowRemapListener}s are told about them.
+     * <p>
+     * The intersection must not be read while it is being compacted; see
+     * {@link com.ram.ds.cds.query.CubeQueryExecutor#compact(String, com.ram.ds.cds.query.QueryPriority)} to
+     * compact in the background between queries.
+     *
+     * @return for each position before the compaction, the new position of the item, or -1 if it was deleted.
+     */
+    public synchronized int[] compact() {
+        int itemCount = size();
+        int[] remap = new int[itemCount];
+        int newIndex = 0;
+        for( int i=0; i<itemCount; i++ ) {
+            remap[i] = isDeleted(i) ? -1 : newIndex++;
+        }
+        if ( deletedItems == null )
+            return remap;
+
+        BitSet removed = deletedItems;
+        removeItems( removed );
+        deletedItems = null;
+
+        if ( cacheLevelMappings ) {
+            synchronized ( cache ) {
+                for( Map.Entry<List<String>, int[]> entry : cache.entrySet() ) {
+                    int[] mapping = entry.getValue();
+                    int[] compacted = new int[newIndex];
+                    for( int i=0; i<mapping.length; i++ ) {
+                        if ( i < remap.length && remap[i] >= 0 )
+                            compacted[remap[i]] = mapping[i];
+                    }
+                    entry.setValue( compacted );
+                }
+            }
+        }
+        clearNonEmptyMembers();
+        rebuildTupleIndex();
+        rebuildSecondaryIndexes();
+
+        if ( rowRemapListeners != null ) {
+            for( IRowRemapListener listener : rowRemapListeners ) {
+                listener.rowsRemapped( this, remap );
+            }
+        }
+        return remap;
+    }
+
+    /**
+     * @param listener a listener to tell about the new positions of the items after each compaction.
+     */
+    public synchronized void addRowRemapListener( IRowRemapListener listener ) {
+        if ( rowRemapListeners == null )
+            rowRemapListeners = new CopyOnWriteArrayList<IRowRemapListener>();
+        rowRemapListeners.add( listener );
+    }
+
+    public synchronized void removeRowRemapListener( IRowRemapListener listener ) {
+        if ( rowRemapListeners != null )
+            rowRemapListeners.remove( listener );
+    }
+
+    /**
+     * Register a standing aggregate of a double measure of this intersection by the given target levels, which
+     * is kept up to date as the measure and the keys of the items are written, and as items are deleted and
+     * compacted; see {@link StandingAggregate}.
+     *
+     * @param collector the cube holding the dimensions of the target levels.
+     * @param measureName the name of a double attribute of this intersection.
+     * @param targetLevels a level of each dimension to aggregate by, each at or above the related level of
+     *                     this intersection in the default hierarchy of its dimension.
+     * @return the aggregate, already computed.
+     * @throws IllegalArgumentException if there is no such measure, or a target level cannot be reached.
+     */
+    public StandingAggregate addStandingAggregate( CubeDs collector, String measureName, HierarchyLevel... targetLevels ) {
+        return addStandingAggregate( collector, null, measureName, targetLevels );
+    }
+
+    /**
+     * Register a standing aggregate of a double measure of this intersection by target levels of the given
+     * hierarchies; see {@link #addStandingAggregate(CubeDs, String, HierarchyLevel...)}.
+     *
+     * @param collector the cube holding the dimensions of the target levels.
+     * @param dimensionHierarchyMap the name of the hierarchy to roll each dimension up by, keyed by the name of
+     *                              the dimension.  A dimension that is missing, or a null map, uses the default
+     *                              hierarchy.
+     * @param measureName the name of a double attribute of this intersection.
+     * @param targetLevels a level of each dimension to aggregate by, each at or above the related level of
+     *                     this intersection in the chosen hierarchy of its dimension.
+     * @return the aggregate, already computed.
+     * @throws IllegalArgumentException if there is no such measure, or a target level cannot be reached.
+     * @throws CdsException if a dimension has no hierarchy of the given name.
+     */
+    public StandingAggregate addStandingAggregate( CubeDs collector, Map<String, String> dimensionHierarchyMap,
+                                                   String measureName, HierarchyLevel... targetLevels ) {
+        StandingAggregate aggregate = new StandingAggregate( collector, this, dimensionHierarchyMap, measureName,
+                targetLevels );
+        getDoubleAttribute( measureName ).addWriteListener( aggregate );
+        addWriteListener( aggregate );
+        addRowRemapListener( aggregate );
+        return aggregate;
+    }
+
+    /**
+     * Stop updating a standing aggregate registered with {@link #addStandingAggregate(CubeDs, String,
+     * HierarchyLevel...)}.
+     */
+    public void removeStandingAggregate( StandingAggregate aggregate ) {
+        IDoubleStore measure = getDoubleAttribute( aggregate.getMeasureName() );
+        if ( measure != null )
+            measure.removeWriteListener( aggregate );
+        removeWriteListener( aggregate );
+        removeRowRemapListener( aggregate );
+    }
+
+    /**
+     * @param listener the listener to tell about added, set and deleted items, or null to remove it.  The
+     *                 listener is not serialized with the intersection.
+     */
+    public void setWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = listener;
+    }
+
+    public ICubeWriteListener getWriteListener() {
+        return writeListener;
+    }
+
+    /**
+     * Add a listener alongside the current one, if any; see {@link CubeWriteMulticaster}.
+     */
+    public synchronized void addWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = CubeWriteMulticaster.add( writeListener, listener );
+    }
+
+    /**
+     * Remove a listener, leaving the others in place.
+     */
+    public synchronized void removeWriteListener( ICubeWriteListener listener ) {
+        this.writeListener = CubeWriteMulticaster.remove( writeListener, listener );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if ( cacheLevelMappings )
+            cache = new HashMap<List<String>, int[]>();
+    }
+
+    /**
+     * Declare a secondary index over some of the related levels, so that the items of a slice of the
+     * intersection, such as all the stores of one item, can be found without scanning.  The index is built
+     * at once and kept up to date by {@link #lookupOrAdd(int[])}, {@link #addKey(int, int[])} and
+     * {@link #recalculateLookupKeys()}.  It is used by {@link #lookupAll(HierarchyLevel[], int[])},
+     * {@link #getTupleShadow(CubeDs, LevelMemberTuple)} and the aggregations of {@link CubeDs} whenever the
+     * query selects members of all of its levels.
+     *
+     * @param levels an ordered subset of the related levels.
+     * @throws CdsException if a level is not a related level, or appears twice.
+     */
+    public void addSecondaryIndex( HierarchyLevel... levels ) {
+        List<String> levelNames = getIndexLevelNames( "addSecondaryIndex", levels );
+        IIntStore[] keyColumns = new IIntStore[levels.length];
+        for( int i=0; i<levels.length; i++ ) {
+            keyColumns[i] = relatedLevelsStores[relatedLevelPosition( levels[i] )];
+        }
+        CompositeIndex index = new CompositeIndex( keyColumns );
+        index.indexRows( size());
+        if ( secondaryIndexes == null ) {
+            secondaryIndexes = new LinkedHashMap<List<String>, CompositeIndex>();
+        }
+        secondaryIndexes.put( levelNames, index );
+    }
+
+    /**
+     * Drop a secondary index declared with {@link #addSecondaryIndex(HierarchyLevel...)}.
+     *
+     * @param levels the levels of the index, in index order.
+     * @return true if the index existed.
+     */
+    public boolean removeSecondaryIndex( HierarchyLevel... levels ) {
+        List<String> levelNames = getIndexLevelNames( "removeSecondaryIndex", levels );
+        return secondaryIndexes != null && secondaryIndexes.remove( levelNames ) != null;
+    }
+
+    /**
+     * @return the level names of each secondary index, in index order.
+     */
+    public Collection<List<String>> getSecondaryIndexes() {
+        if ( secondaryIndexes == null )
+            return Collections.emptyList();
+        return Collections.unmodifiableCollection( secondaryIndexes.keySet());
+    }
+
+    /**
+     * Replace the stores that hold the member ids of the related levels by {@link EncodedIntStore}s, which
+     * pack each chunk in as many bits as its member ids need: 9 bits a value for a level of 300 members, say,
+     * instead of 32.  Best called once the intersection is loaded, since items added later are only packed
+     * a chunk at a time.  The tuple index and the secondary indexes are rebuilt on the new stores.
+     *
+     * @return the number of heap bytes saved, negative if the stores grew.
+     */
+    public synchronized long encodeKeyColumns() {
+        long savedBytes = 0;
+        for( Map.Entry<HierarchyLevel, IIntStore> entry : levelToAttributeMap.entrySet() ) {
+            IIntStore store = entry.getValue();
+            if ( store instanceof EncodedIntStore )
+                continue;
+            EncodedIntStore encoded = EncodedIntStore.copyOf( store, Constants.DEF_CHNK_SIZE );
+            savedBytes += store.getRetainedSize() - encoded.getRetainedSize();
+            entry.setValue( encoded );
+            addAttributeStore( entry.getKey().getName(), encoded );
+        }
+        initializeRelatedLevelsStores();
+        if ( secondaryIndexes != null ) {
+            for( Map.Entry<List<String>, CompositeIndex> entry : secondaryIndexes.entrySet() ) {
+                List<String> levelNames = entry.getKey();
+                IIntStore[] keyColumns = new IIntStore[levelNames.size()];
+                for( int i=0; i<keyColumns.length; i++ ) {
+                    keyColumns[i] = getIntAttribute( levelNames.get(i));
+                }
+                CompositeIndex index = new CompositeIndex( keyColumns );
+                index.indexRows( size());
+                entry.setValue( index );
+            }
+        }
+        return savedBytes;
+    }
+
+    /**
+     * Locate all the items of a slice of the intersection, given by a member of some of the related levels.
+     * The slice is found through the secondary index with the most levels among the given ones, or through
+     * {@link #lookup(int[])} if a member is given for every related level; otherwise the items are scanned.
+     *
+     * @param levels some of the related levels, in any order.
+     * @param memberIds a member id for each of the levels.
+     * @return the positions of the items in the slice, in ascending order.
+     * @throws CdsException if a level is not a related level.
+     */
+    public int[] lookupAll( HierarchyLevel[] levels, int[] memberIds ) {
+        if ( levels.length != memberIds.length )
+            throw new CdsException("Intersection.lookupAll(): requires one member id for each level");
+        Map<String, BitSet> memberIdsByLevel = new HashMap<String, BitSet>();
+        for( int i=0; i<levels.length; i++ ) {
+            if ( relatedLevelPosition( levels[i] ) < 0 )
+                throw new CdsException("Intersection.lookupAll(): " + levels[i].getName() + " is not a related level of " + getName());
+            BitSet ids = new BitSet();
+            if ( memberIds[i] >= 0 )
+                ids.set( memberIds[i] );
+            BitSet previous = memberIdsByLevel.put( levels[i].getName(), ids );
+            if ( previous != null )
+                ids.and( previous );
+        }
+        BitSet rows = selectIndexed( memberIdsByLevel );
+        if ( rows == null ) {
+            rows = new BitSet( size());
+            rows.set( 0, size());
+            if ( deletedItems != null )
+                rows.andNot( deletedItems );
+            retainMembers( rows, memberIdsByLevel );
+        }
+        int[] result = new int[rows.cardinality()];
+        int k = 0;
+        for( int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1) ) {
+            result[k++] = row;
+        }
+        return result;
+    }
+
+    /**
+     * Select the items whose related level members are in the given sets through an index: the tuple index
+     * if there is a set for every related level, otherwise the secondary index with the most levels among
+     * the levels with a set.  The index is probed once for each combination of the members of its levels,
+     * and the items found are checked against the sets of the other levels.
+     *
+     * @param memberIdsByLevel the selected member ids, keyed by the name of a related level.
+     * @return the selected items, or null if no index covers the levels, or the selection is too large to be
+     * worth probing for.
+     */
+    BitSet selectIndexed( Map<String, BitSet> memberIdsByLevel ) {
+        List<String> bestLevels = null;
+        CompositeIndex bestIndex = null;
+        if ( memberIdsByLevel.size() == relatedLevelsMap.size() && memberIdsByLevel.keySet().containsAll( relatedLevelNames())) {
+            bestLevels = relatedLevelNames();
+        }
+        else if ( secondaryIndexes != null ) {
+            for( Map.Entry<List<String>, CompositeIndex> entry : secondaryIndexes.entrySet() ) {
+                List<String> levelNames = entry.getKey();
+                if ( memberIdsByLevel.keySet().containsAll( levelNames )
+                        && ( bestLevels == null || levelNames.size() > bestLevels.size())) {
+                    bestLevels = levelNames;
+                    bestIndex = entry.getValue();
+                }
+            }
+        }
+        if ( bestLevels == null )
+            return null;
+
+        long probeCount = 1;
+        long maxProbeCount = Math.max( 1, size() / ITEMS_PER_INDEX_PROBE );
+        int[][] ids = new int[bestLevels.size()][];
+        for( int k=0; k<ids.length; k++ ) {
+            BitSet levelIds = memberIdsByLevel.get( bestLevels.get(k));
+            ids[k] = levelIds.stream().toArray();
+            probeCount *= ids[k].length;
+            if ( probeCount == 0 )
+                return new BitSet();
+            if ( probeCount > maxProbeCount )
+                return null;
+        }
+
+        BitSet rows = new BitSet( size());
+        if ( bestIndex != null ) {
+            bestIndex.indexRows( size());
+        }
+        int[] tuple = new int[ids.length];
+        int[] positions = new int[ids.length];
+        for( int probe = 0; probe < probeCount; probe++ ) {
+            for( int k=0; k<ids.length; k++ ) {
+                tuple[k] = ids[k][positions[k]];
+            }
+            if ( bestIndex != null ) {
+                bestIndex.addRows( tuple, rows );
+            }
+            else {
+                int row = lookup( tuple );
+                if ( row >= 0 )
+                    rows.set( row );
+            }
+            // advance to the next combination, the last level fastest
+            for( int k = ids.length-1; k >= 0 && ++positions[k] == ids[k].length; k-- ) {
+                positions[k] = 0;
+            }
+        }
+        if ( memberIdsByLevel.size() > ids.length ) {
+            Map<String, BitSet> otherLevels = new HashMap<String, BitSet>( memberIdsByLevel );
+            otherLevels.keySet().removeAll( bestLevels );
+            retainMembers( rows, otherLevels );
+        }
+        if ( deletedItems != null )
+            rows.andNot( deletedItems );
+        return rows;
+    }
+
+    /**
+     * Clear the items whose member of one of the given levels is not selected.
+     */
+    private void retainMembers( BitSet rows, Map<String, BitSet> memberIdsByLevel ) {
+        for( Map.Entry<String, BitSet> entry : memberIdsByLevel.entrySet() ) {
+            IIntStore column = getIntAttribute( entry.getKey());
+            BitSet memberIds = entry.getValue();
+            for( int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1) ) {
+                int memberId = column.getElement( row );
+                if ( column.isEmptyValue( memberId ) || !memberIds.get( memberId ))
+                    rows.clear( row );
+            }
+        }
+    }
+
+    private List<String> getIndexLevelNames( String method, HierarchyLevel[] levels ) {
+        if ( levels.length == 0 )
+            throw new CdsException("Intersection." + method + "(): at least one level is required");
+        List<String> levelNames = new ArrayList<String>( levels.length );
+        for( HierarchyLevel level : levels ) {
+            if ( relatedLevelPosition( level ) < 0 )
+                throw new CdsException("Intersection." + method + "(): " + level.getName() + " is not a related level of " + getName());
+            if ( levelNames.contains( level.getName()))
+                throw new CdsException("Intersection." + method + "(): " + level.getName() + " appears more than once");
+            levelNames.add( level.getName());
+        }
+        return levelNames;
+    }
+
+    private List<String> relatedLevelNames() {
+        List<String> levelNames = new ArrayList<String>( relatedLevelsMap.size());
+        for( HierarchyLevel level : relatedLevelsMap.values() ) {
+            levelNames.add( level.getName());
+        }
+        return levelNames;
+    }
+
+    /**
+     * @return the position of the level among the related levels, or -1 if it is not a related level.
+     */
+    private int relatedLevelPosition( HierarchyLevel level ) {
+        int position = 0;
+        for( HierarchyLevel relatedLevel : relatedLevelsMap.values() ) {
+            if ( relatedLevel.getName().equals( level.getName())
+                    && relatedLevel.getDimensionName().equals( level.getDimensionName()))
+                return position;
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Keep the secondary indexes up to date after the key of the item at the given index was set.  An item
+     * that replaces another was taken out of the postings of its old key by {@link #addKey(int, int[])}.
+     */
+    private void updateSecondaryIndexes( int index ) {
+        if ( secondaryIndexes == null )
+            return;
+        for( CompositeIndex secondaryIndex : secondaryIndexes.values() ) {
+            secondaryIndex.indexRow( index );
+        }
+    }
+
+    private void rebuildSecondaryIndexes() {
+        if ( secondaryIndexes == null )
+            return;
+        for( CompositeIndex secondaryIndex : secondaryIndexes.values() ) {
+            secondaryIndex.clear();
+            secondaryIndex.indexRows( size());
+        }
+    }
+
+    /**
+     * Get the members of a level that have at least one item on this intersection.  The level can be a related
+     * level or a level above one.  The result is cached until the level mappings are cleared; items added with
+     * {@link #lookupOrAdd(int[])} or {@link #addKey(int, int[])} keep the entries for the related levels up to
+     * date, and the other entries are rebuilt when the number of items changes.
+     *
+     * @param collector Collector instance containing the dimension of the level.
+     * @param level a level on one of the dimensions of the intersection.
+     * @return the ids of the members with items.  The set is shared and must not be modified.
+     */
+    public BitSet getNonEmptyMembers( CubeDs collector, HierarchyLevel level ) {
+        return getNonEmptyMembers( collector, null, level );
+    }
+
+    /**
+     * Get the members of a level that have at least one item on this intersection, relating the items to the
+     * level through the given hierarchy.
+     *
+     * @param hierarchyName a hierarchy of the level's dimension, or null for the default hierarchy.
+     * @see #getNonEmptyMembers(CubeDs, HierarchyLevel)
+     */
+    public synchronized BitSet getNonEmptyMembers( CubeDs collector, String hierarchyName, HierarchyLevel level ) {
+        if ( nonEmptyMembersCache == null ) {
+            nonEmptyMembersCache = new HashMap<List<String>, NonEmptyMembers>();
+        }
+        int itemCount = size();
+        List<String> path = getMappingPath( collector.getDimension( level.getDimensionName()), hierarchyName, level );
+        if ( path == null )
+            return new BitSet(); // no item maps to the level
+        NonEmptyMembers entry = nonEmptyMembersCache.get( path );
+        if ( entry == null || entry.itemCount != itemCount ) {
+            int[] mapping = getTargetAggregationInds( collector, hierarchyName, level );
+            BitSet members = new BitSet( level.getMemberCount());
+            for( int memberId : mapping ) {
+                if ( memberId >= 0 )
+                    members.set( memberId );
+            }
+            entry = new NonEmptyMembers( members, itemCount );
+            nonEmptyMembersCache.put( path, entry );
+        }
+        return entry.members;
+    }
+
+    /**
+     * Record the item added at the given index in the cached members of the related levels.  The entries for
+     * the levels above them are recomputed on their next use, since their item count no longer matches.
+     */
+    private synchronized void updateNonEmptyMembers( int index, int[] relatedLevelsInds ) {
+        if ( nonEmptyMembersCache == null || nonEmptyMembersCache.isEmpty() )
+            return;
+        int levelIndex = 0;
+        for( HierarchyLevel level : relatedLevelsMap.values() ) {
+            NonEmptyMembers entry = nonEmptyMembersCache.get( Collections.singletonList( level.getName()));
+            if ( entry != null ) {
+                if ( index < entry.itemCount ) {
+                    nonEmptyMembersCache.clear();
+                    return;
+                }
+                if ( index == entry.itemCount ) {
+                    entry.members.set( relatedLevelsInds[levelIndex] );
+                    entry.itemCount++;
+                }
+            }
+            levelIndex++;
+        }
+    }
+
+    /**
+     * Drop what is cached about an item whose key was replaced: all of the non-empty members, since the old
+     * members may have no items left on any level above them, and the level mappings that start from the
+     * related levels whose member changed.
+     */
+    private void keyReplaced( int[] replacedInds, int[] relatedLevelsInds ) {
+        clearNonEmptyMembers();
+        if ( !cacheLevelMappings )
+            return;
+        Set<String> changedLevels = new HashSet<String>();
+        int levelIndex = 0;
+        for( HierarchyLevel level : relatedLevelsMap.values() ) {
+            if ( replacedInds[levelIndex] != relatedLevelsInds[levelIndex] )
+                changedLevels.add( level.getName());
+            levelIndex++;
+        }
+        if ( changedLevels.isEmpty() )
+            return;
+        synchronized ( cache ) {
+            // each mapping path ends with the related level it starts from
+            cache.keySet().removeIf( path -> changedLevels.contains( path.get( path.size() - 1 )));
+        }
+    }
+
+    private synchronized void clearNonEmptyMembers() {
+        if ( nonEmptyMembersCache != null )
+            nonEmptyMembersCache.clear();
+    }
+
+    private static final class NonEmptyMembers {
+        final BitSet members;
+        int itemCount;
+
+        NonEmptyMembers( BitSet members, int itemCount ) {
+            this.members = members;
+            this.itemCount = itemCount;
+        }
+    }
+
 	/**
 	 * Returns key.
 	 * 
@@ -651,35 +1639,33 @@ public class Intersection extends AttributeContainer implements Serializable {
 	}
 
     /**
-	 * Recalculate related stores and map used by lookup method. This method
-	 * msut be invoked in two cases
-	 * <ul>
-	 * <li>When we added dimension members after intersection was created.
-	 * Intersection gets dimension sizes during construction and creates lookup
-	 * map which is based on these sizes. So if a dimension size increased after
-	 * intersection was created then we would need to invoke this method. If
-	 * dimension size decreased then recalculation is not required.
-	 * <li>If intersection stores with indexes to dimensions were populated
-	 * directly without using method {@linkplain #addKey(int, int[])}, but we
-	 * still want to use lookup methods after intersection is populated. In this
-	 * case lookup will not find any entry until this method is invoked.
-	 * </ul>
+	 * Recalculate related stores, the tuple index used by lookup method and
+	 * the secondary indexes. This method must be invoked if intersection stores
+	 * with indexes to dimensions were populated directly without using method
+	 * {@linkplain #addKey(int, int[])}, but we still want to use lookup methods
+	 * after intersection is populated. In this case lookup may not find the
+	 * entries until this method is invoked. The tuple index does not depend on
+	 * the dimension sizes, so adding dimension members after the intersection
+	 * was created does not require it.
 	 */
     public void recalculateLookupKeys() {
+        RecalculateLookupKeysEvent event = new RecalculateLookupKeysEvent();
+        event.start();
+
         // Recalculate cardinality
         initializeRelatedLevelsStores();
         
         // Recalculate lookup keys
-        this.cartesianTupleMap.clear();
-        int relatedLevelCount = relatedLevelsMap.size();
-        int[] relatedLevelsInds = new int[relatedLevelCount];
-        for (int iRow = 0, iRowN = this.getMemberCount(); iRow < iRowN; iRow++) {
-            for (int iRelatedLevel = 0; iRelatedLevel < relatedLevelCount; iRelatedLevel++) {
-                relatedLevelsInds[iRelatedLevel] = relatedLevelsStores[iRelatedLevel].getElement(iRow);
-            }
-            long key = packRelatedLevelsInds(relatedLevelsInds);
-            this.cartesianTupleMap.put(key, iRow);
+        clearNonEmptyMembers();
+        rebuildTupleIndex();
+        rebuildSecondaryIndexes();
+
+        if (event.isEnabled()) {
+            event.intersection = getName();
+            event.rowsScanned = getMemberCount();
+            event.rowsMatched = tupleIndex.size();
         }
+        event.finish();
     }
 }
 
@@ -0,0 +1,282 @@
+package com.ram.ds.cds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import com.ram.ds.cds.stores.Constants;
+import com.ram.ds.cds.stores.IDoubleArrayStore;
+import com.ram.ds.cds.stores.IDoubleStore;
+
+/**
+ * Spreads a value to a set of rows of a measure, see {@link Intersection#spread}.  The rows are divided into
+ * ranges on chunk boundaries, and the ranges are processed in parallel in two passes: the first sums the
+ * weights of the rows, the second computes the share of each row a chunk at a time and writes the chunk back
+ * with one bulk write.  The writes are made holding the monitor of the measure store, so that only the
+ * arithmetic runs concurrently with them.
+ */
+final class MeasureSpreader {
+
+    private final BitSet rows;
+    private final int rowCount;
+    private final int[] bounds;   // the ranges processed in parallel, range i is bounds[i] to bounds[i + 1]
+
+    /**
+     * @param rows the rows to spread to.  It must not change while spreading.
+     */
+    MeasureSpreader(BitSet rows) {
+        this.rows = rows;
+        this.rowCount = rows.cardinality();
+        this.bounds = rowCount == 0 ? new int[]{0} : split(rows.nextSetBit(0), rows.length());
+    }
+
+    /**
+     * @return the number of rows spread to.
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Spread a value over the rows of a scalar measure.
+     *
+     * @param basis the weights for {@link SpreadMethod#BASIS}; ignored otherwise.
+     */
+    void spread(IDoubleStore measure, double value, SpreadMethod method, IDoubleStore basis) {
+        if (rowCount == 0) {
+            return;
+        }
+        IDoubleStore weights = method == SpreadMethod.PROPORTIONAL ? measure : basis;
+        double weightTotal = 0;
+        if (method != SpreadMethod.EVEN) {
+            for (double[] sum : runRanges((from, to) -> new double[]{sumWeights(weights, from, to)})) {
+                weightTotal += sum[0];
+            }
+        }
+        // spread evenly when there is nothing to be proportional to
+        SpreadMethod effectiveMethod = weightTotal == 0 ? SpreadMethod.EVEN : method;
+        double factor = effectiveMethod == SpreadMethod.EVEN ? value / rowCount : value / weightTotal;
+        synchronized (measure) {
+            measure.ensureSize(rows.length());
+        }
+        runRanges((from, to) -> {
+            writeShares(measure, weights, effectiveMethod, factor, from, to);
+            return null;
+        });
+    }
+
+    /**
+     * Spread a value for each of the given periods over the rows of a time series measure, each period as a
+     * separate spread.  The other periods of the series are kept.
+     *
+     * @param values the value to spread for each period, indexed by period.
+     * @param basis the weights for {@link SpreadMethod#BASIS}; ignored otherwise.
+     */
+    void spread(IDoubleArrayStore measure, BitSet periods, double[] values, SpreadMethod method,
+                IDoubleArrayStore basis) {
+        if (rowCount == 0 || periods.isEmpty()) {
+            return;
+        }
+        int[] periodIds = periods.stream().toArray();
+        IDoubleArrayStore weights = method == SpreadMethod.PROPORTIONAL ? measure : basis;
+        double[] weightTotals = new double[periodIds.length];
+        if (method != SpreadMethod.EVEN) {
+            for (double[] sums : runRanges((from, to) -> sumWeights(weights, periodIds, from, to))) {
+                for (int p = 0; p < periodIds.length; p++) {
+                    weightTotals[p] += sums[p];
+                }
+            }
+        }
+        double[] factors = new double[periodIds.length];
+        boolean[] even = new boolean[periodIds.length];
+        for (int p = 0; p < periodIds.length; p++) {
+            even[p] = method == SpreadMethod.EVEN || weightTotals[p] == 0;
+            factors[p] = even[p] ? values[periodIds[p]] / rowCount : values[periodIds[p]] / weightTotals[p];
+        }
+        synchronized (measure) {
+            measure.ensureSize(rows.length());
+        }
+        runRanges((from, to) -> {
+            writeShares(measure, weights, periodIds, even, factors, from, to);
+            return null;
+        });
+    }
+
+    private double sumWeights(IDoubleStore weights, int from, int to) {
+        double[] sum = new double[1];
+        weights.forEachChunk(from, Math.min(to, weights.size()), (fromIndex, values, offset, length) -> {
+            int end = fromIndex + length;
+            for (int row = rows.nextSetBit(fromIndex); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+                double weight = values[offset + row - fromIndex];
+                if (!weights.isEmptyValue(weight)) {
+                    sum[0] += weight;
+                }
+            }
+        });
+        return sum[0];
+    }
+
+    private double[] sumWeights(IDoubleArrayStore weights, int[] periodIds, int from, int to) {
+        double[] sums = new double[periodIds.length];
+        int end = Math.min(to, weights.size());
+        for (int row = rows.nextSetBit(from); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+            double[] series = weights.getElement(row);
+            if (weights.isEmptyValue(series)) {
+                continue;
+            }
+            for (int p = 0; p < periodIds.length && periodIds[p] < series.length; p++) {
+                if (!Double.isNaN(series[periodIds[p]])) {
+                    sums[p] += series[periodIds[p]];
+                }
+            }
+        }
+        return sums;
+    }
+
+    private void writeShares(IDoubleStore measure, IDoubleStore weights, SpreadMethod method, double factor,
+                             int from, int to) {
+        double[] shares = new double[Constants.DEF_CHNK_SIZE];
+        double[] weightValues = method == SpreadMethod.BASIS ? new double[Constants.DEF_CHNK_SIZE] : null;
+        for (int start = from; start < to; start += shares.length) {
+            int end = Math.min(start + shares.length, to);
+            if (rows.nextSetBit(start) >= end) {
+                continue;
+            }
+            // the rows not spread to are written back as they are
+            measure.getRange(start, end, shares, 0);
+            if (weightValues != null) {
+                int weightEnd = Math.max(start, Math.min(end, weights.size()));
+                weights.getRange(start, weightEnd, weightValues, 0);
+                Arrays.fill(weightValues, weightEnd - start, end - start, weights.getEmptyValue());
+            }
+            for (int row = rows.nextSetBit(start); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+                int i = row - start;
+                if (method == SpreadMethod.EVEN) {
+                    shares[i] = factor;
+                } else if (method == SpreadMethod.PROPORTIONAL) {
+                    if (!measure.isEmptyValue(shares[i])) {
+                        shares[i] *= factor;
+                    }
+                } else {
+                    shares[i] = weights.isEmptyValue(weightValues[i]) ? 0 : weightValues[i] * factor;
+                }
+            }
+            synchronized (measure) {
+                if (measure.getWriteListener() == null) {
+                    measure.setRange(start, shares, 0, end - start);
+                } else {
+                    // only the rows spread to are reported to the listener
+                    for (int row = rows.nextSetBit(start); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+                        measure.setElementAt(row, shares[row - start]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeShares(IDoubleArrayStore measure, IDoubleArrayStore weights, int[] periodIds,
+                             boolean[] even, double[] factors, int from, int to) {
+        int length = periodIds[periodIds.length - 1] + 1;
+        int[] chunkRows = new int[Constants.DEF_CHNK_SIZE];
+        double[][] chunkSeries = new double[Constants.DEF_CHNK_SIZE][];
+        for (int start = from; start < to; start += Constants.DEF_CHNK_SIZE) {
+            int end = Math.min(start + Constants.DEF_CHNK_SIZE, to);
+            int count = 0;
+            for (int row = rows.nextSetBit(start); row >= 0 && row < end; row = rows.nextSetBit(row + 1)) {
+                double[] current = measure.getElement(row);
+                double[] weightSeries = weights == null || weights == measure ? current
+                        : row < weights.size() ? weights.getElement(row) : weights.getEmptyValue();
+                boolean noWeights = weights == null || weights.isEmptyValue(weightSeries);
+                double[] series = measure.isEmptyValue(current) ? new double[length]
+                        : Arrays.copyOf(current, Math.max(current.length, length));
+                boolean written = false;
+                for (int p = 0; p < periodIds.length; p++) {
+                    int period = periodIds[p];
+                    if (even[p]) {
+                        series[period] = factors[p];
+                        written = true;
+                    } else if (weights == measure) {
+                        // proportional: an empty series, or an empty period, stays empty
+                        if (!noWeights && period < current.length && !Double.isNaN(current[period])) {
+                            series[period] = current[period] * factors[p];
+                            written = true;
+                        }
+                    } else {
+                        double weight = noWeights || period >= weightSeries.length ? 0 : weightSeries[period];
+                        series[period] = Double.isNaN(weight) ? 0 : weight * factors[p];
+                        written = true;
+                    }
+                }
+                if (written) {
+                    chunkRows[count] = row;
+                    chunkSeries[count++] = series;
+                }
+            }
+            if (count > 0) {
+                synchronized (measure) {
+                    for (int i = 0; i < count; i++) {
+                        measure.setElementAt(chunkRows[i], chunkSeries[i]);
+                    }
+                }
+                Arrays.fill(chunkSeries, 0, count, null);
+            }
+        }
+    }
+
+    /**
+     * Divide the rows from <code>from</code> to <code>to</code> into a range for each thread of the common pool,
+     * on chunk boundaries.
+     */
+    private static int[] split(int from, int to) {
+        int chunkSize = Constants.DEF_CHNK_SIZE;
+        int firstChunk = from / chunkSize;
+        int chunkCount = (to - 1) / chunkSize - firstChunk + 1;
+        int rangeCount = Math.max(1, Math.min(chunkCount, ForkJoinPool.getCommonPoolParallelism()));
+        int[] bounds = new int[rangeCount + 1];
+        bounds[0] = from;
+        for (int i = 1; i < rangeCount; i++) {
+            bounds[i] = (int) ((firstChunk + (long) chunkCount * i / rangeCount) * chunkSize);
+        }
+        bounds[rangeCount] = to;
+        return bounds;
+    }
+
+    private interface RangeTask<T> {
+        T run(int from, int to);
+    }
+
+    /**
+     * Run the task over each range, in parallel if there is more than one.
+     *
+     * @return the results, in the order of the ranges.
+     */
+    private <T> List<T> runRanges(RangeTask<T> task) {
+        int rangeCount = bounds.length - 1;
+        List<T> results = new ArrayList<T>(rangeCount);
+        if (rangeCount == 1) {
+            results.add(task.run(bounds[0], bounds[1]));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            futures.add(CompletableFuture.supplyAsync(() -> task.run(from, to)));
+        }
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+}
@@ -1,6 +1,9 @@
 package com.ram.ds.cds;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.TreeMap;
 
 import com.ram.ds.cds.aggregator.AggregatedMeasure;
@@ -91,6 +94,89 @@ public class MeasureValueSorter {
         }
     }
 
+    /**
+     * Iterate over the rows in sorted order, as {@link #getSortOrder()} gives them, without sorting every row
+     * first.  The rows are put in a heap, which takes linear time, and each row is taken from the heap when the
+     * iterator reaches it, so the first rows of a large result are ready long before a full sort would be.  If
+     * the sort order has already been computed, it is used instead.
+     * <p>
+     * The measure values and sort measures must not change while the iterator is in use.
+     *
+     * @return the position in the original of each value, in sorted order.
+     */
+    public PrimitiveIterator.OfInt getSortedRows() {
+        if ( sortOrder != null )
+            return Arrays.stream( sortOrder ).iterator();
+        return new RowHeap( this );
+    }
+
+    /**
+     * Compare two rows by the sort measures, from most to least significant, and then by position.
+     */
+    int compareRows( int row, int otherRow ) {
+        int result = 0;
+
+        for( AggregatedMeasure measure : sortMeasures ) {
+            result = measure.compareItems( row, otherRow );
+            if ( result != 0 )
+                break;
+        }
+
+        if ( result == 0 ) // all measure values were identical in all rows
+            return row <= otherRow ? -1 : 1;
+        else
+            return result;
+    }
+
+    /**
+     * A binary heap of rows, smallest first, that takes a row off the heap at each step of the iteration.
+     */
+    static class RowHeap implements PrimitiveIterator.OfInt {
+        private final MeasureValueSorter measures;
+        private final int[] heap;
+        private int size;
+
+        RowHeap( MeasureValueSorter measures ) {
+            this.measures = measures;
+            this.size = measures.ntuples;
+            this.heap = new int[size];
+            for( int i=0; i<size; i++ )
+                heap[i] = i;
+            for( int i=(size >>> 1) - 1; i>=0; i-- )
+                siftDown( i );
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if ( size == 0 )
+                throw new NoSuchElementException();
+            int row = heap[0];
+            heap[0] = heap[--size];
+            siftDown( 0 );
+            return row;
+        }
+
+        private void siftDown( int i ) {
+            int row = heap[i];
+            int half = size >>> 1;
+            while ( i < half ) {
+                int child = 2*i + 1;
+                if ( child + 1 < size && measures.compareRows( heap[child+1], heap[child] ) < 0 )
+                    child++;
+                if ( measures.compareRows( row, heap[child] ) < 0 )
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = row;
+        }
+    }
+
     /**
      * Represents one row of the collection of measures.
      */
@@ -105,19 +191,7 @@ public class MeasureValueSorter {
 
         @Override
         public int compareTo(ChildRow o) {
-
-            int result = 0;
-
-            for( AggregatedMeasure measure : measures.sortMeasures ) {
-                result = measure.compareItems( this.row, o.row );
-                if ( result != 0 )
-                    break;
-            }
-
-            if ( result == 0 ) // all measure values were identical in all rows
-                return this.row <= o.row ? -1 : 1;
-            else
-                return result;
+            return measures.compareRows( this.row, o.row );
         }
 
 
@@ -0,0 +1,152 @@
+package com.ram.ds.cds;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.filters.IFilter;
+import com.ram.ds.cds.query.QueryContext;
+
+/**
+ * Finds the members of a child level that have items on a set of intersections under a context, and those
+ * of them that also have items at or below a grandchild level.  Each intersection is read in one pass that
+ * maps every item in the context to its member at the child level, and the intersections are scanned in
+ * parallel.  Without a context, the members come from the cache kept by each intersection.
+ */
+final class NonEmptyMemberScan {
+
+    private final CubeDs collector;
+    private final String dimensionName;
+    private final String hierarchyName;
+    private final List<HierarchyLevel> hierarchy;
+    private final HierarchyLevel childLevel;
+    private final int childDepth;
+    private final int grandchildDepth;
+
+    private final BitSet nonEmptyChildren;
+    private final BitSet childrenWithGrandchildren;
+
+    /**
+     * @param grandchildLevel the grandchild level, or null if grandchildren are not of interest.
+     */
+    NonEmptyMemberScan(CubeDs collector, Dimension dimension, String hierarchyName,
+                       HierarchyLevel childLevel, HierarchyLevel grandchildLevel) {
+        this.collector = collector;
+        this.dimensionName = dimension.getName();
+        this.hierarchyName = hierarchyName;
+        this.hierarchy = dimension.getHierarchy(hierarchyName);
+        this.childLevel = childLevel;
+        this.childDepth = hierarchy.indexOf(childLevel);
+        this.grandchildDepth = grandchildLevel == null ? Integer.MAX_VALUE : hierarchy.indexOf(grandchildLevel);
+        this.nonEmptyChildren = new BitSet(childLevel.getMemberCount());
+        this.childrenWithGrandchildren = new BitSet(childLevel.getMemberCount());
+    }
+
+    /**
+     * Scan the intersections.  An intersection counts only if its related level on the dimension is at or
+     * below the child level.
+     *
+     * @param intersections the intersections to scan.
+     * @param dimensionHierarchyMap the hierarchy to use for each dimension when applying the context filters.
+     * @param contextFilters filters on the other dimensions that define the context; may be empty.
+     * @param intersectionViews optional subset of the items of each intersection to consider; may be null.
+     */
+    @SuppressWarnings("try")
+    void scan(Collection<Intersection> intersections,
+              Map<String, String> dimensionHierarchyMap,
+              IFilter[] contextFilters,
+              Map<Intersection, BitSet> intersectionViews) {
+        List<Intersection> scanned = new ArrayList<Intersection>(intersections.size());
+        for (Intersection intersection : intersections) {
+            if (hierarchy.indexOf(intersection.getRelatedLevel(dimensionName)) >= childDepth) {
+                scanned.add(intersection);
+            }
+        }
+        if (scanned.size() == 1) {
+            Intersection intersection = scanned.get(0);
+            addMembers(intersection, scanIntersection(intersection, dimensionHierarchyMap, contextFilters,
+                    intersectionViews == null ? null : intersectionViews.get(intersection)));
+            return;
+        }
+
+        QueryContext queryContext = QueryContext.current();
+        List<CompletableFuture<BitSet>> scans = new ArrayList<CompletableFuture<BitSet>>(scanned.size());
+        for (Intersection intersection : scanned) {
+            BitSet view = intersectionViews == null ? null : intersectionViews.get(intersection);
+            scans.add(CompletableFuture.supplyAsync(() -> {
+                if (queryContext == null) {
+                    return scanIntersection(intersection, dimensionHierarchyMap, contextFilters, view);
+                }
+                try (QueryContext.Scope scope = queryContext.enter()) {
+                    return scanIntersection(intersection, dimensionHierarchyMap, contextFilters, view);
+                }
+            }));
+        }
+        for (int i = 0; i < scans.size(); i++) {
+            try {
+                addMembers(scanned.get(i), scans.get(i).join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the child members that have items on at least one of the intersections.
+     */
+    BitSet getNonEmptyChildren() {
+        return nonEmptyChildren;
+    }
+
+    /**
+     * @return the child members that have items on at least one intersection at or below the grandchild level.
+     */
+    BitSet getChildrenWithGrandchildren() {
+        return childrenWithGrandchildren;
+    }
+
+    private void addMembers(Intersection intersection, BitSet members) {
+        nonEmptyChildren.or(members);
+        if (hierarchy.indexOf(intersection.getRelatedLevel(dimensionName)) >= grandchildDepth) {
+            childrenWithGrandchildren.or(members);
+        }
+    }
+
+    private BitSet scanIntersection(Intersection intersection,
+                                    Map<String, String> dimensionHierarchyMap,
+                                    IFilter[] contextFilters,
+                                    BitSet view) {
+        if (contextFilters.length == 0 && view == null) {
+            return intersection.getNonEmptyMembers(collector, hierarchyName, childLevel);
+        }
+        int[] childInds = intersection.getTargetAggregationInds(collector, hierarchyName, childLevel);
+        BitSet members = new BitSet(childLevel.getMemberCount());
+        if (contextFilters.length == 0) {
+            for (int row = view.nextSetBit(0); row >= 0 && row < childInds.length; row = view.nextSetBit(row + 1)) {
+                if (childInds[row] >= 0) {
+                    members.set(childInds[row]);
+                }
+            }
+            return members;
+        }
+        Aggregator marker = row -> {
+            if (row < childInds.length && childInds[row] >= 0 && (view == null || view.get(row))) {
+                members.set(childInds[row]);
+            }
+        };
+        collector.aggregate(dimensionHierarchyMap, intersection.getName(), new Aggregator[]{marker}, contextFilters);
+        QueryContext queryContext = QueryContext.current();
+        if (queryContext != null) {
+            queryContext.check(); // the members are incomplete if the scan stopped early
+        }
+        return members;
+    }
+}
@@ -0,0 +1,23 @@
+package com.ram.ds.cds;
+
+/**
+ * How {@link Intersection#spread} divides a value among the items under a tuple of level members.
+ */
+public enum SpreadMethod {
+
+    /**
+     * In proportion to the values the items already hold.  Items without a value are left empty.
+     */
+    PROPORTIONAL,
+
+    /**
+     * The same share to every item.
+     */
+    EVEN,
+
+    /**
+     * In proportion to the values of the items in another measure, the basis.  Items without a basis value get
+     * a share of zero.
+     */
+    BASIS
+}
@@ -0,0 +1,419 @@
+package com.ram.ds.cds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.stores.IIntStore;
+import com.ram.ds.cds.stores.IObservableStore;
+import com.ram.ds.cds.stores.IStoreWriteListener;
+import com.ram.ds.cds.util.Sequence;
+
+/**
+ * The sum, count, minimum and maximum of a double measure of an intersection for each tuple of members of a set
+ * of target levels, kept up to date as the intersection is written, so that reading a total after an edit does
+ * not scan the intersection again.  It is created by
+ * {@link Intersection#addStandingAggregate(CubeDs, Map, String, HierarchyLevel...)}, which scans the
+ * intersection once, and from then on it listens to:
+ * <ul>
+ * <li>the measure store, applying the difference between the new and the previous value of each element;</li>
+ * <li>the intersection, moving an item between tuples when its key is set and removing the deleted items;</li>
+ * <li>compactions, which only move the items.</li>
+ * </ul>
+ * Lowering the minimum or raising the maximum of a tuple is applied at once; removing the value that was the
+ * minimum or maximum only marks the tuple, and the marked tuples are recomputed together, with one pass over the
+ * items, when one of them is next read.
+ * <p>
+ * Empty values of the measure are not counted.  Changes to the hierarchies, such as moving a member to another
+ * parent, are not seen; call {@link #rebuild()} after them.  Sums are kept by adding and subtracting, so after
+ * many edits they can differ from a fresh aggregation in the last bits.
+ */
+public class StandingAggregate implements IStoreWriteListener, ICubeWriteListener, IRowRemapListener {
+
+    private final Intersection intersection;
+    private final String measureName;
+    private final IDoubleStore measure;
+    private final HierarchyLevel[] targetLevels;
+    private final String[] keyLevelNames;      // the related level of the intersection for each target level
+    private final Dimension[] dimensions;
+    private final String[] hierarchyNames;     // the hierarchy of each target level, or null for the default
+    private final int[][] memberMappings;      // for each target level, the target member of each key member
+
+    private int[] itemTuples = new int[0];      // the tuple of each item, or -1
+    private final Map<TupleKey, Integer> tupleIds = new HashMap<TupleKey, Integer>();
+    private final List<int[]> tuples = new ArrayList<int[]>();
+    private double[] sums = new double[16];
+    private long[] counts = new long[16];
+    private long[] itemCounts = new long[16];
+    private double[] minimums = new double[16];
+    private double[] maximums = new double[16];
+    private final BitSet staleExtremes = new BitSet();
+    private boolean stale;
+
+    StandingAggregate( CubeDs cube, Intersection intersection, Map<String, String> dimensionHierarchyMap,
+                       String measureName, HierarchyLevel[] targetLevels ) {
+        IDoubleStore measure = intersection.getDoubleAttribute( measureName );
+        if ( measure == null )
+            throw new IllegalArgumentException( "No double attribute " + measureName + " on " + intersection.getName() );
+        if ( targetLevels == null || targetLevels.length == 0 )
+            throw new IllegalArgumentException( "At least one target level is required" );
+        this.intersection = intersection;
+        this.measureName = measureName;
+        this.measure = measure;
+        this.targetLevels = targetLevels.clone();
+        this.keyLevelNames = new String[targetLevels.length];
+        this.dimensions = new Dimension[targetLevels.length];
+        this.hierarchyNames = new String[targetLevels.length];
+        this.memberMappings = new int[targetLevels.length][];
+        for ( int i = 0; i < targetLevels.length; i++ ) {
+            HierarchyLevel targetLevel = targetLevels[i];
+            for ( HierarchyLevel level : intersection.getRelatedLevels() ) {
+                if ( level.getDimensionName().equals( targetLevel.getDimensionName() ) )
+                    keyLevelNames[i] = level.getName();
+            }
+            dimensions[i] = cube.getDimension( targetLevel.getDimensionName() );
+            if ( dimensionHierarchyMap != null )
+                hierarchyNames[i] = dimensionHierarchyMap.get( targetLevel.getDimensionName() );
+            if ( keyLevelNames[i] == null || dimensions[i] == null )
+                throw new IllegalArgumentException( "Intersection " + intersection.getName()
+                        + " does not contain a level from the same dimension as target level " + targetLevel.getName() );
+            memberMappings[i] = mapMembers( i );
+            if ( memberMappings[i] == null )
+                throw new IllegalArgumentException( "Target level " + targetLevel.getName()
+                        + " is not at or above the level of " + intersection.getName() );
+        }
+        rebuild();
+    }
+
+    public Intersection getIntersection() {
+        return intersection;
+    }
+
+    public String getMeasureName() {
+        return measureName;
+    }
+
+    public HierarchyLevel[] getTargetLevels() {
+        return targetLevels.clone();
+    }
+
+    /**
+     * Recompute every tuple with a full pass over the intersection, for example after the hierarchies have
+     * changed.
+     */
+    public synchronized void rebuild() {
+        for ( int i = 0; i < memberMappings.length; i++ )
+            memberMappings[i] = mapMembers( i );
+        tupleIds.clear();
+        tuples.clear();
+        staleExtremes.clear();
+        int size = intersection.size();
+        itemTuples = new int[size];
+        for ( int index = 0; index < size; index++ ) {
+            int tuple = intersection.isDeleted( index ) ? -1 : findTuple( index );
+            itemTuples[index] = tuple;
+            if ( tuple >= 0 ) {
+                itemCounts[tuple]++;
+                addValue( tuple, getValue( index ) );
+            }
+        }
+        stale = false;
+    }
+
+    /**
+     * @param memberIds a member id of each target level, in the order the levels were given.
+     * @return the index of the tuple, for the other getters, or -1 if no item of the intersection maps to it.
+     *         The index stays the same until the next {@link #rebuild()}.
+     */
+    public synchronized int getTuple( int... memberIds ) {
+        refresh();
+        Integer tuple = tupleIds.get( new TupleKey( memberIds ) );
+        return tuple == null ? -1 : tuple;
+    }
+
+    /**
+     * @return the number of tuples that items map to, or have mapped to.  Tuples are numbered from 0.
+     */
+    public synchronized int getTupleCount() {
+        refresh();
+        return tuples.size();
+    }
+
+    /**
+     * @return the member ids of the tuple with the given index.
+     */
+    public synchronized int[] getMemberIds( int tuple ) {
+        refresh();
+        return tuples.get( tuple ).clone();
+    }
+
+    /**
+     * @return the sum of the non-empty values of the tuple, 0 if there are none.
+     */
+    public synchronized double getSum( int tuple ) {
+        refresh();
+        return sums[tuple];
+    }
+
+    /**
+     * @return the number of non-empty values of the tuple.
+     */
+    public synchronized long getCount( int tuple ) {
+        refresh();
+        return counts[tuple];
+    }
+
+    /**
+     * @return the number of items of the tuple, with or without a value.
+     */
+    public synchronized long getItemCount( int tuple ) {
+        refresh();
+        return itemCounts[tuple];
+    }
+
+    /**
+     * @return the smallest non-empty value of the tuple, or NaN if there is none.
+     */
+    public synchronized double getMinimum( int tuple ) {
+        refresh();
+        refreshExtremes( tuple );
+        return minimums[tuple];
+    }
+
+    /**
+     * @return the largest non-empty value of the tuple, or NaN if there is none.
+     */
+    public synchronized double getMaximum( int tuple ) {
+        refresh();
+        refreshExtremes( tuple );
+        return maximums[tuple];
+    }
+
+    // ---------------------- Listeners ----------------------------
+
+    /**
+     * Called by stores that do not report the previous value; the totals are rebuilt when next read.
+     */
+    @Override
+    public synchronized void elementWritten( IObservableStore store, int index ) {
+        if ( store == measure )
+            stale = true;
+    }
+
+    @Override
+    public synchronized void doubleWritten( IDoubleStore store, int index, double oldValue ) {
+        if ( store != measure || index >= itemTuples.length || itemTuples[index] < 0 )
+            return; // not keyed yet; its value is picked up when its key is written
+        int tuple = itemTuples[index];
+        removeValue( tuple, oldValue );
+        addValue( tuple, measure.getElement( index ) );
+    }
+
+    @Override
+    public void memberWritten( HierarchyLevel level, int memberId ) {
+        // new members are mapped when an item first refers to them
+    }
+
+    @Override
+    public synchronized void keyWritten( Intersection intersection, int index ) {
+        if ( intersection != this.intersection )
+            return;
+        if ( index >= itemTuples.length ) {
+            int length = itemTuples.length;
+            itemTuples = Arrays.copyOf( itemTuples, Math.max( index + 1, length + ( length >> 1 ) + 16 ) );
+            Arrays.fill( itemTuples, length, itemTuples.length, -1 );
+        }
+        double value = getValue( index );
+        int previous = itemTuples[index];
+        if ( previous >= 0 ) {
+            itemCounts[previous]--;
+            removeValue( previous, value );
+        }
+        int tuple = findTuple( index );
+        itemTuples[index] = tuple;
+        if ( tuple >= 0 ) {
+            itemCounts[tuple]++;
+            addValue( tuple, value );
+        }
+    }
+
+    @Override
+    public synchronized void itemsDeleted( Intersection intersection, BitSet items ) {
+        if ( intersection != this.intersection )
+            return;
+        for ( int index = items.nextSetBit( 0 ); index >= 0 && index < itemTuples.length; index = items.nextSetBit( index + 1 ) ) {
+            int tuple = itemTuples[index];
+            if ( tuple >= 0 ) {
+                itemCounts[tuple]--;
+                removeValue( tuple, getValue( index ) );
+                itemTuples[index] = -1;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void rowsRemapped( Intersection intersection, int[] remap ) {
+        if ( intersection != this.intersection )
+            return;
+        int[] remapped = new int[intersection.size()];
+        Arrays.fill( remapped, -1 );
+        for ( int index = 0; index < remap.length && index < itemTuples.length; index++ ) {
+            if ( remap[index] >= 0 && remap[index] < remapped.length )
+                remapped[remap[index]] = itemTuples[index];
+        }
+        itemTuples = remapped;
+    }
+
+    // ---------------------- Totals ----------------------------
+
+    private void addValue( int tuple, double value ) {
+        if ( measure.isEmptyValue( value ) || Double.isNaN( value ) )
+            return;
+        sums[tuple] += value;
+        if ( counts[tuple]++ == 0 ) {
+            minimums[tuple] = value;
+            maximums[tuple] = value;
+        } else if ( !staleExtremes.get( tuple ) ) {
+            minimums[tuple] = Math.min( minimums[tuple], value );
+            maximums[tuple] = Math.max( maximums[tuple], value );
+        }
+    }
+
+    private void removeValue( int tuple, double value ) {
+        if ( measure.isEmptyValue( value ) || Double.isNaN( value ) )
+            return;
+        if ( --counts[tuple] == 0 ) {
+            sums[tuple] = 0.0;
+            minimums[tuple] = Double.NaN;
+            maximums[tuple] = Double.NaN;
+            staleExtremes.clear( tuple );
+            return;
+        }
+        sums[tuple] -= value;
+        if ( value <= minimums[tuple] || value >= maximums[tuple] )
+            staleExtremes.set( tuple );
+    }
+
+    private void refresh() {
+        if ( stale )
+            rebuild();
+    }
+
+    /**
+     * Recompute the minimum and maximum of every marked tuple, if the given one is marked.
+     */
+    private void refreshExtremes( int tuple ) {
+        if ( !staleExtremes.get( tuple ) )
+            return;
+        for ( int t = staleExtremes.nextSetBit( 0 ); t >= 0; t = staleExtremes.nextSetBit( t + 1 ) ) {
+            minimums[t] = Double.POSITIVE_INFINITY;
+            maximums[t] = Double.NEGATIVE_INFINITY;
+        }
+        for ( int index = 0; index < itemTuples.length; index++ ) {
+            int t = itemTuples[index];
+            if ( t >= 0 && staleExtremes.get( t ) ) {
+                double value = getValue( index );
+                if ( !measure.isEmptyValue( value ) && !Double.isNaN( value ) ) {
+                    minimums[t] = Math.min( minimums[t], value );
+                    maximums[t] = Math.max( maximums[t], value );
+                }
+            }
+        }
+        staleExtremes.clear();
+    }
+
+    private double getValue( int index ) {
+        return index < measure.size() ? measure.getElement( index ) : measure.getEmptyValue();
+    }
+
+    // ---------------------- Tuples ----------------------------
+
+    /**
+     * @return the tuple of the item at the given index, adding it if it is new, or -1 if the item does not map
+     *         to a member of every target level.
+     */
+    private int findTuple( int index ) {
+        int[] memberIds = new int[targetLevels.length];
+        for ( int i = 0; i < targetLevels.length; i++ ) {
+            // looked up each time, since Intersection.encodeKeyColumns() replaces the stores
+            IIntStore keyColumn = intersection.getIntAttribute( keyLevelNames[i] );
+            if ( index >= keyColumn.size() )
+                return -1;
+            int keyMember = keyColumn.getElement( index );
+            if ( keyMember < 0 )
+                return -1;
+            if ( keyMember >= memberMappings[i].length )
+                memberMappings[i] = mapMembers( i ); // members added since the mapping was made
+            if ( keyMember >= memberMappings[i].length || memberMappings[i][keyMember] < 0 )
+                return -1;
+            memberIds[i] = memberMappings[i][keyMember];
+        }
+        TupleKey key = new TupleKey( memberIds );
+        Integer tuple = tupleIds.get( key );
+        if ( tuple != null )
+            return tuple;
+        int added = tuples.size();
+        tuples.add( memberIds );
+        tupleIds.put( key, added );
+        if ( added == sums.length ) {
+            int length = added * 2;
+            sums = Arrays.copyOf( sums, length );
+            counts = Arrays.copyOf( counts, length );
+            itemCounts = Arrays.copyOf( itemCounts, length );
+            minimums = Arrays.copyOf( minimums, length );
+            maximums = Arrays.copyOf( maximums, length );
+        }
+        sums[added] = 0.0;
+        counts[added] = 0;
+        itemCounts[added] = 0;
+        minimums[added] = Double.NaN;
+        maximums[added] = Double.NaN;
+        return added;
+    }
+
+    /**
+     * @return for each member of the related level of the intersection, its ancestor at the target level in
+     *         the hierarchy chosen for it.
+     */
+    private int[] mapMembers( int i ) {
+        HierarchyLevel targetLevel = targetLevels[i];
+        return intersection.projectToIntersection( dimensions[i], hierarchyNames[i], targetLevel.getName(),
+                Sequence.getSequence( targetLevel.getMemberCount() ) );
+    }
+
+    /**
+     * A tuple of member ids as a hash key.
+     */
+    private static final class TupleKey {
+        private final int[] memberIds;
+        private final int hash;
+
+        TupleKey( int[] memberIds ) {
+            this.memberIds = memberIds;
+            this.hash = Arrays.hashCode( memberIds );
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof TupleKey && Arrays.equals( memberIds, ((TupleKey) o).memberIds );
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StandingAggregate{" +
+                "intersection=" + intersection.getName() +
+                ", measureName='" + measureName + '\'' +
+                ", tuples=" + tuples.size() +
+                '}';
+    }
+}
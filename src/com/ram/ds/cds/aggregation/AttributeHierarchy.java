@@ -1,8 +1,10 @@
 package com.ram.ds.cds.aggregation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.ram.ds.cds.CdsException;
 import com.ram.ds.cds.CubeDs;
@@ -38,9 +40,26 @@ public class AttributeHierarchy  {
      */
     HashMap<String,Integer> intersectionDepths = new HashMap<String, Integer>();
 
+    /**
+     * The hierarchy that relates the levels of the attributes to the intersections, for each dimension.  The
+     * default hierarchy is used for a dimension that is not in the map.
+     */
+    Map<String,String> dimensionHierarchyMap;
+
     public AttributeHierarchy( List<LevelAttribute> inattributeList, CubeDs collector, List<Intersection> intersections)  {
+        this( inattributeList, collector, intersections, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param dimensionHierarchyMap the hierarchy to relate the level of each attribute to the intersections
+     *                              through, by dimension name; the default hierarchy is used for a dimension
+     *                              that is not in the map.
+     */
+    public AttributeHierarchy( List<LevelAttribute> inattributeList, CubeDs collector, List<Intersection> intersections,
+                               Map<String,String> dimensionHierarchyMap )  {
         this.attributeList = new ArrayList<LevelAttribute>( inattributeList );
         this.collector = collector;
+        this.dimensionHierarchyMap = new HashMap<String, String>( dimensionHierarchyMap );
         groupings = new AttributeGrouping[ attributeList.size()];
 
         // Initialize groupings
@@ -94,7 +113,9 @@ public class AttributeHierarchy  {
                 }
                 else {
                 	// this is a single-level attribute.
-                    int[] levelMemberInds = intersection.getTargetAggregationInds(collector, levelAttribute.getLevel());
+                    HierarchyLevel attributeLevel = levelAttribute.getLevel();
+                    int[] levelMemberInds = intersection.getTargetAggregationInds(collector,
+                            dimensionHierarchyMap.get(attributeLevel.getDimensionName()), attributeLevel);
 
                     if ( levelAttribute.getAttrname().equals( levelAttribute.getLevel().getIdentityAttributeName())) {
                         // the attribute ID is the member ID itself
@@ -105,7 +126,9 @@ public class AttributeHierarchy  {
                         // of the attribute
                         attributeInds = new int[ levelMemberInds.length];
                         for( int j=0; j<attributeInds.length; j++ ) {
-                            attributeInds[j] = levelAttribute.getAttributeKeyForMember( levelMemberInds[j] );
+                            attributeInds[j] = levelMemberInds[j] < 0
+                                    ? -1 // a deleted item
+                                    : levelAttribute.getAttributeKeyForMember( levelMemberInds[j] );
                         }
                     }
                 }
@@ -386,23 +409,27 @@ public class AttributeHierarchy  {
      */
     private boolean attributeIsOnSameLevelOrAncestor( CubeDs collector, LevelAttribute attr, HierarchyLevel level ) {
         Dimension dimension = collector.getDimension( level.getDimensionName() );
-        // FIXME using the first hierarchy as the only hierarchy.
-        List<HierarchyLevel> defaultHierarchy = dimension.getHierarchy( dimension.getHierarchyNames().get(0));
+        String hierarchyName = dimensionHierarchyMap.get( dimension.getName());
+        List<HierarchyLevel> hierarchy = dimension.getHierarchy(
+                hierarchyName != null ? hierarchyName : dimension.getDefaultHierarchyName());
+        if ( hierarchy == null ) {
+            throw new CdsException("AttributeHierarchy: dimension " + dimension.getName() + " has no hierarchy " + hierarchyName );
+        }
         
-        int levelPosition = -1;  // depth of the given level
-        for( levelPosition=0; levelPosition<defaultHierarchy.size(); levelPosition++ ) {
-            if ( defaultHierarchy.get(levelPosition).getName().equals( level.getName()))
+        int levelPosition;  // depth of the given level
+        for( levelPosition=0; levelPosition<hierarchy.size(); levelPosition++ ) {
+            if ( hierarchy.get(levelPosition).getName().equals( level.getName()))
                 break;
         }
-        if ( levelPosition == -1 ) {
-            throw new CdsException("Attribute does not occur on level"); // foo
+        if ( levelPosition == hierarchy.size() ) {
+            return false; // the intersection is not reached through the hierarchy
         }
 
         // starting from the given level, loop upwards along the hierarchy to compare the hierarchy level name with 
         // the attribute level name. If found, then the attribute must be on or above the given level.
         HierarchyLevel attrlevel = attr.getLevel();
         while ( levelPosition >= 0 ) {
-            if ( attrlevel.getName().equals( defaultHierarchy.get(levelPosition).getName() ) ) {
+            if ( attrlevel.getName().equals( hierarchy.get(levelPosition).getName() ) ) {
                 return true;
             }
             levelPosition--;
@@ -6,8 +6,10 @@ import com.ram.ds.cds.CdsException;
 /**
  * Utilities for manipulating Cartesian spaces mapped to a linear array offset.
  *
- * <p>Offsets in each of the dimensions must fit within a positive 32-bit integer, therefore the total size of the
- * state space must be no larger than 2**31-1.  </p>
+ * <p>Offsets in each of the dimensions must fit within a positive 32-bit integer.  Packed offsets are longs, so the
+ * total size of the state space must be no larger than 2**63-1; packing a larger space throws rather than
+ * wrapping around.  Callers whose spaces may be larger should key on the positions themselves, see
+ * {@link com.ram.ds.cds.util.TupleIndex}.</p>
  * @author James Wheeler
  *  @author  Last updated by $Author: misong $
  *  @version $Revision: 1.6.2.1 $
@@ -40,6 +42,25 @@ public class Cartesian {
         return true;
     }
 
+    /**
+     * Validate that the state space described by a set of dimensions fits within the 64-bit Long domain.
+     *
+     * @param cardinalities
+     * @return  True if the state space is in the valid domain; false if it may overflow a 64-bit Long.
+     * @throws CdsException if any of the cardinalities passed is negative.
+     */
+    public static boolean fitsInLong( int[] cardinalities ) {
+        long prod = 1;
+        for( int cardinality : cardinalities ) {
+            if ( cardinality < 0 )
+                throw new CdsException("Cartesian:  Negative value for cardinality is not allowed");
+            if ( cardinality != 0 && prod > Long.MAX_VALUE / cardinality )
+                return false;
+            prod *= cardinality;
+        }
+        return true;
+    }
+
     /**
      * Given a set of attribute cardinalities and positions, pack each position into a
      * 
@@ -58,10 +79,10 @@ public class Cartesian {
         }
         
         /** 
-         * Make sure the state space fits within a 32-bit Integer.
+         * Make sure the state space fits within a 64-bit Long.
          */
-        if ( !checkDimensionality( cardinalities ))
-            throw new CdsException("Cartesian.pack: Total cardinality overflows 32-bit integer.");
+        if ( !fitsInLong( cardinalities ))
+            throw new CdsException("Cartesian.pack: Total cardinality overflows 64-bit long.");
 
 
         // All coefficient vectors must be the same length
@@ -77,7 +98,7 @@ public class Cartesian {
         long[] weights = unitPoly( cardinalities );
         long[] result = new long[resultLength];
         for( int i=0; i<resultLength; i++ ) {
-            int packed = 0;
+            long packed = 0;
             for( int axis=0; axis<cardinalities.length; axis++ ) {
                 packed += weights[axis] * coefficients[axis][i];
             }
@@ -96,6 +117,7 @@ public class Cartesian {
      * @param cardinalities the cardinalities of the dimensions.
      * @param positions an int for each dimension, i.e. the position in the dimension
      * @return packed coefficient.
+     * @throws CdsException if the packed value overflows a 64-bit long.
      */
     public static long pack( int[] cardinalities, int[] positions ) {
         if (cardinalities.length != positions.length )
@@ -104,10 +126,15 @@ public class Cartesian {
             throw new CdsException("Cartesian.pack(): weights and coefficients must have length > 0");
         
         long result =  0;
-        int weight = 1;
-        for( int i= positions.length-1; i >= 0; i -- ) {
-            result += positions[i] * weight;
-            weight *= cardinalities[i];
+        long weight = 1;
+        try {
+            for( int i= positions.length-1; i >= 0; i -- ) {
+                result = Math.addExact( result, Math.multiplyExact( (long) positions[i], weight ) );
+                if ( i > 0 )
+                    weight = Math.multiplyExact( weight, cardinalities[i] );
+            }
+        } catch (ArithmeticException e) {
+            throw new CdsException("Cartesian.pack(): packed value overflows 64-bit long.");
         }
         return result;
     }
@@ -137,14 +164,20 @@ public class Cartesian {
      * @param lengths
      * @return The weighted increment for each dimension. The size of the result equals to the
      * size of the given array.
+     * @throws CdsException if the size of the space overflows a 64-bit long.
      */
     public static long[] unitPoly( int[] cardinalities ) {
         long[] offsets = new long[cardinalities.length];
         for( int i = offsets.length-1; i >= 0; i -- ) {
             if ( i== offsets.length-1)
             	offsets[i] = 1;
-            else
-            	offsets[i] = cardinalities[i+1] * offsets[i+1];
+            else {
+                try {
+                    offsets[i] = Math.multiplyExact( (long) cardinalities[i+1], offsets[i+1] );
+                } catch (ArithmeticException e) {
+                    throw new CdsException("Cartesian.unitPoly(): size of the space overflows 64-bit long.");
+                }
+            }
         }
         return offsets;
     }
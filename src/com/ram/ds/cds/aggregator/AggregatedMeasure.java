@@ -1,5 +1,7 @@
 package com.ram.ds.cds.aggregator;
 
+import java.util.BitSet;
+
 import com.ram.ds.cds.CdsException;
 
 
@@ -12,8 +14,9 @@ import com.ram.ds.cds.CdsException;
  *     the <i>Type</i> does not match the type of the measure.
  * </p>
  * <p>
- *     Measures can optionally be <b>nullable</b>, in which case an internal boolean[] array tracks which
- *     values are null and which are not.  Null values can be set or detected by setIsNull() and getIsNull(),
+ *     Measures can optionally be <b>nullable</b>, in which case an internal bit set tracks which
+ *     values are null and which are not, as the validity bitmaps of the stores do.  Null values can be set or
+ *     detected by setIsNull() and getIsNull(), or all at once by setNulls() and getNulls().
  * </p>
  */
 public class AggregatedMeasure {
@@ -58,7 +61,7 @@ public class AggregatedMeasure {
     boolean sortAscending = true; // applies only if sortable; true means sort ascending order; false means descending
 
     boolean isNullable = true;
-    boolean[] isNull;
+    BitSet isNull;
 
 
     /**
@@ -97,12 +100,31 @@ public class AggregatedMeasure {
     public void setAt( int i, boolean  v ) { booleanValues[i] = v; }
     public String getStringAt( int i ) { return stringValues[i]; }
     public void setAt( int i, String v ) { stringValues[i] = v; }
-    public boolean getIsNull( int i ) { return isNullable && isNull[i]; }
+    public boolean getIsNull( int i ) { return isNullable && isNull.get(i); }
     public void setIsNull( int i, boolean b ) {
-        if ( isNullable ) isNull[i] = b;
+        if ( isNullable ) isNull.set(i, b);
         else throw new CdsException("AggregatedMeasure.setIsNull(): Measure is not nullable");
     }
 
+    /**
+     * @return a copy of the positions of the null values, or null if the measure is not nullable.
+     */
+    public BitSet getNulls() {
+        return isNullable ? (BitSet) isNull.clone() : null;
+    }
+
+    /**
+     * Make the measure nullable, with null values at the given positions.
+     * @param nulls  The positions of the null values, below the length of the measure.  The bit set is copied.
+     */
+    public void setNulls( BitSet nulls ) {
+        if ( nulls.length() > length ) {
+            throw new CdsException( "AggregatedMeasure.setNulls: null position beyond data length");
+        }
+        isNullable = true;
+        isNull = (BitSet) nulls.clone();
+    }
+
     /**
      * Initialize String measure without nullability
      * @param name
@@ -230,8 +252,8 @@ public class AggregatedMeasure {
      */
     public int compareItems( int a, int b ) {
         if ( isNullable ) {
-            if ( isNull[a] ) {
-                if ( isNull[b]) { // both null
+            if ( isNull.get(a) ) {
+                if ( isNull.get(b) ) { // both null
                     return 0;
                 }
                 else { // apply the null sort order rule
@@ -242,7 +264,7 @@ public class AggregatedMeasure {
                     }
                 }
             }
-            else if ( isNull[b] ) {
+            else if ( isNull.get(b) ) {
                 switch( nullSortRule ) {
                     case NULLS_COME_LAST:  return -1;  // b is null, so comes after any non-null
                     case NULLS_COME_FIRST: return 1;  // b is null, so comes before any non-null
@@ -369,9 +391,9 @@ public class AggregatedMeasure {
             if ( nulls.length != length ) {
                 throw new CdsException( "AggregatedMeasure.setNullability: length of nulls does not match data length");
             }
-            isNull = new boolean[nulls.length];
+            isNull = new BitSet(nulls.length);
             for( int i=0; i<nulls.length; i++ ) {
-                isNull[i] = nulls[i];
+                isNull.set(i, nulls[i]);
             }
         }
     }
@@ -384,7 +406,7 @@ public class AggregatedMeasure {
      */
     boolean bothNull( int a, int b ) {
         if ( isNullable ) {
-            return isNull[a] && isNull[b];
+            return isNull.get(a) && isNull.get(b);
         }
         else return false;
     }
@@ -1,17 +1,25 @@
 package com.ram.ds.cds.aggregator;
 
+import java.util.BitSet;
+
 import com.ram.ds.cds.stores.IBooleanStore;
+import com.ram.ds.cds.stores.PackedBooleanStore;
 
 
 /**
  * Computes the logical AND of a succession of booleans.  Result will be true if all the values
- * are true or the aggregator has never been applied.
+ * are true or the aggregator has never been applied.  Empty values are skipped.  A
+ * {@link PackedBooleanStore} is tested 64 values at a time.
  */
-public class BooleanAndAggregator implements Aggregator {
+public class BooleanAndAggregator implements IBlockAggregator {
     IBooleanStore source;
+    PackedBooleanStore packedSource;
     boolean result;
     public BooleanAndAggregator( IBooleanStore source ) {
         this.source = source;
+        if ( source instanceof PackedBooleanStore ) {
+            packedSource = (PackedBooleanStore) source;
+        }
         reset();
     }
 
@@ -22,6 +30,35 @@ public class BooleanAndAggregator implements Aggregator {
     public boolean getResult() { return result; }
 
     public void accumulate( int i ) {
-        result = result && source.getElement(i);
+        Boolean value = source.getElement(i);
+        if ( !source.isEmptyValue( value ) ) {
+            result = result && value;
+        }
+    }
+
+    public void accumulateBlock( int fromIndex, int toIndex, BitSet matches ) {
+        if ( !result ) {
+            return;
+        }
+        if ( packedSource == null || ( fromIndex & 63 ) != 0 ) {
+            for ( int i = matches == null ? fromIndex : matches.nextSetBit( fromIndex ); i >= 0 && i < toIndex && result;
+                  i = matches == null ? i + 1 : matches.nextSetBit( i + 1 ) ) {
+                accumulate( i );
+            }
+            return;
+        }
+        long[] matchWords = matches == null ? null : matches.get( fromIndex, toIndex ).toLongArray();
+        for ( int start = fromIndex; start < toIndex; start += 64 ) {
+            long mask = toIndex - start >= 64 ? -1L : ( 1L << ( toIndex - start ) ) - 1;
+            if ( matchWords != null ) {
+                int matchWord = ( start - fromIndex ) >> 6;
+                mask &= matchWord < matchWords.length ? matchWords[matchWord] : 0L;
+            }
+            int wordIndex = start >> 6;
+            if ( ( mask & packedSource.getValidWord( wordIndex ) & ~packedSource.getWord( wordIndex ) ) != 0 ) {
+                result = false;
+                return;
+            }
+        }
     }
 }
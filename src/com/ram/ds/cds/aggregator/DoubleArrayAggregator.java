@@ -1,20 +1,30 @@
 package com.ram.ds.cds.aggregator;
 
+import com.ram.ds.cds.stores.CompressedDoubleArrayStore;
 import com.ram.ds.cds.stores.IDoubleArrayStore;
 
 /**
- * Factored into separate class for use in unit tests
+ * Factored into separate class for use in unit tests.  A {@link CompressedDoubleArrayStore} is summed without
+ * decoding each series into a new array.
  */
 public class DoubleArrayAggregator implements Aggregator  {
     double[] result;
     IDoubleArrayStore store;
+    CompressedDoubleArrayStore compressedStore;
 
     public DoubleArrayAggregator( IDoubleArrayStore store, int resultSize ) {
         this.store = store;
+        if ( store instanceof CompressedDoubleArrayStore ) {
+            compressedStore = (CompressedDoubleArrayStore) store;
+        }
         result = new double[resultSize];
     }
 
     public void accumulate( int posn ) {
+        if ( compressedStore != null ) {
+            compressedStore.addElementTo( posn, result );
+            return;
+        }
         double[] storeValues = store.getElement( posn );
         for( int i=0; i<storeValues.length; i++ ) {
             result[i] += storeValues[i];
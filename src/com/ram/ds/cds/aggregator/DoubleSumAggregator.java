@@ -1,15 +1,41 @@
 package com.ram.ds.cds.aggregator;
 
+import java.util.BitSet;
+
+import com.ram.ds.cds.stores.Constants;
 import com.ram.ds.cds.stores.IDoubleStore;
 
  /**
-  * Aggregates the sum of a single double value for each item on an intersection
+  * Aggregates the sum of a single double value for each item on an intersection.  Blocks are read from the
+  * store a range at a time, and summed in index order so that the result is the same as one item at a time.
   */
-public class DoubleSumAggregator implements Aggregator {
+public class DoubleSumAggregator implements IBlockAggregator {
     double result;
     public double getResult() { return result; }
     IDoubleStore source;
+    private double[] buffer;
     public DoubleSumAggregator(IDoubleStore store) { this.source = store; this.result = 0.0; }
     public void accumulate( int i ) {  result += source.getElement(i); }
+    public void accumulateBlock( int fromIndex, int toIndex, BitSet matches ) {
+        if ( matches == null ) {
+            source.forEachChunk( fromIndex, toIndex, ( from, values, offset, length ) -> {
+                for ( int i = offset, end = offset + length; i < end; i++ ) {
+                    result += values[i];
+                }
+            } );
+            return;
+        }
+        int first = matches.nextSetBit( fromIndex );
+        if ( first < 0 || first >= toIndex ) {
+            return;
+        }
+        if ( buffer == null || buffer.length < toIndex - first ) {
+            buffer = new double[Math.max( toIndex - first, Constants.DEF_CHNK_SIZE )];
+        }
+        source.getRange( first, toIndex, buffer, 0 );
+        for ( int i = first; i >= 0 && i < toIndex; i = matches.nextSetBit( i + 1 ) ) {
+            result += buffer[i - first];
+        }
+    }
     public String toString() { return "DoubleSumAggregator result=" + result; }
 }
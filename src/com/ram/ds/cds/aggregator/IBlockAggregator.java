@@ -0,0 +1,22 @@
+package com.ram.ds.cds.aggregator;
+
+import java.util.BitSet;
+
+/**
+ * An aggregator that can accumulate a block of indices in one call, rather than one index at a time
+ * through {@link #accumulate(int)}, for example a word of a bit-packed store at a time.  The scans of
+ * {@link com.ram.ds.cds.AttributeContainer} call it once per block, after every filter has been applied.
+ */
+public interface IBlockAggregator extends Aggregator {
+
+    /**
+     * Accumulate the matching indices from <code>fromIndex</code> (inclusive) to <code>toIndex</code>
+     * (exclusive).
+     *
+     * @param fromIndex the first index of the block, inclusive.
+     * @param toIndex the last index of the block, exclusive.
+     * @param matches the indices of the block to accumulate, or null to accumulate every index of the block.
+     *                Bits outside of the block are ignored.
+     */
+    void accumulateBlock(int fromIndex, int toIndex, BitSet matches);
+}
@@ -0,0 +1,66 @@
+package com.ram.ds.cds.aggregator;
+
+import java.util.BitSet;
+
+import com.ram.ds.cds.stores.IValidityMappedStore;
+import com.ram.ds.cds.stores.ValidityBitmap;
+
+/**
+ * Counts the matching indices that hold a non-empty value in a store.  If the store keeps a validity bitmap,
+ * a block is counted a word at a time.
+ */
+public class NonEmptyCountAggregator implements IBlockAggregator {
+    private final IValidityMappedStore source;
+    private int result = 0;
+
+    public NonEmptyCountAggregator( IValidityMappedStore source ) {
+        this.source = source;
+    }
+
+    public void accumulate( int i ) {
+        if ( !source.isEmptyAt( i ) ) {
+            result++;
+        }
+    }
+
+    public void accumulateBlock( int fromIndex, int toIndex, BitSet matches ) {
+        ValidityBitmap validity = source.getValidity();
+        if ( validity == null ) {
+            for ( int i = matches == null ? fromIndex : matches.nextSetBit( fromIndex ); i >= 0 && i < toIndex;
+                  i = matches == null ? i + 1 : matches.nextSetBit( i + 1 ) ) {
+                accumulate( i );
+            }
+            return;
+        }
+        toIndex = Math.min( toIndex, source.size() );
+        if ( fromIndex >= toIndex ) {
+            return;
+        }
+        if ( matches == null ) {
+            result += validity.countValid( fromIndex, toIndex );
+            return;
+        }
+        long[] matchWords = matches.get( fromIndex, toIndex ).toLongArray();
+        for ( int word = 0; word < matchWords.length; word++ ) {
+            int start = fromIndex + ( word << 6 );
+            long valid = ( start & 63 ) == 0 ? validity.getWord( start >> 6 )
+                    : validity.getWord( start >> 6 ) >>> start | validity.getWord( ( start >> 6 ) + 1 ) << ( 64 - ( start & 63 ) );
+            result += Long.bitCount( matchWords[word] & valid );
+        }
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public void clearResult() {
+        result = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "NonEmptyCountAggregator{" +
+                "result=" + result +
+                '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Aggregation over an intersection, CubeDs.aggregate.
+ */
+@Name("com.ram.ds.cds.Aggregate")
+@Label("Cube Aggregate")
+@Description("Aggregation over an intersection, CubeDs.aggregate")
+public class AggregateEvent extends CubeEvent {
+
+    @Label("Intersection")
+    public String intersection;
+}
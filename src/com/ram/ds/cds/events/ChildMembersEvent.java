@@ -0,0 +1,27 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Enumeration of the children of a level member, Dimension.getChildMembers.  Rows scanned counts the
+ * candidate children, and rows matched the children returned.
+ */
+@Name("com.ram.ds.cds.ChildMembers")
+@Label("Dimension Child Members")
+@Description("Enumeration of the children of a level member, Dimension.getChildMembers")
+public class ChildMembersEvent extends CubeEvent {
+
+    @Label("Dimension")
+    public String dimension;
+
+    @Label("Child Level")
+    public String childLevel;
+
+    @Label("Exclude Empty")
+    public boolean excludeEmpty;
+
+    @Label("Intersection Count")
+    public int intersectionCount;
+}
@@ -0,0 +1,102 @@
+package com.ram.ds.cds.events;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.aggregator.CountAggregator;
+
+/**
+ * Base class for the events recorded around cube operations.  The elapsed time is the duration of the
+ * event.  Use {@link #start()} and {@link #finish()} instead of begin() and commit() so that the bytes
+ * allocated by the current thread are recorded as well.  Fields that are expensive to compute should be
+ * set only if {@link #isEnabled()} returns true.
+ */
+@Category({"Cube"})
+@StackTrace(false)
+public abstract class CubeEvent extends Event {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = getAllocationBean();
+
+    @Label("Rows Scanned")
+    @Description("Number of rows examined by the operation")
+    public long rowsScanned;
+
+    @Label("Rows Matched")
+    @Description("Number of rows that passed all the filters")
+    public long rowsMatched;
+
+    @Label("Filter Count")
+    public int filterCount;
+
+    @Label("Bytes Allocated")
+    @Description("Bytes allocated by the thread during the operation")
+    @DataAmount
+    public long bytesAllocated;
+
+    private transient long allocationStart = -1;
+    private transient CountAggregator matchCounter;
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean;
+            }
+        }
+        return null;
+    }
+
+    static long getAllocatedBytes() {
+        return ALLOCATION_BEAN == null ? 0 : ALLOCATION_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Start timing the event.
+     */
+    public void start() {
+        if (isEnabled()) {
+            allocationStart = getAllocatedBytes();
+        }
+        begin();
+    }
+
+    /**
+     * If the event is enabled, return a copy of the aggregators with a counter added, so that the number
+     * of rows they accumulate is recorded as the rows matched.  Otherwise return the aggregators as given.
+     */
+    public Aggregator[] countMatches(Aggregator[] aggregators) {
+        if (!isEnabled()) {
+            return aggregators;
+        }
+        matchCounter = new CountAggregator();
+        Aggregator[] countedAggregators = Arrays.copyOf(aggregators, aggregators.length + 1);
+        countedAggregators[aggregators.length] = matchCounter;
+        return countedAggregators;
+    }
+
+    /**
+     * Stop timing the event and record it, if it is enabled and passes the recording's threshold.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            if (allocationStart >= 0) {
+                bytesAllocated = getAllocatedBytes() - allocationStart;
+            }
+            if (matchCounter != null) {
+                rowsMatched = matchCounter.getResult();
+            }
+            commit();
+        }
+    }
+}
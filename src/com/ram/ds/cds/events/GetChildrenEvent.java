@@ -0,0 +1,26 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Aggregation over the children of a level member, CubeDs.getChildren.
+ */
+@Name("com.ram.ds.cds.GetChildren")
+@Label("Cube Get Children")
+@Description("Aggregation over the children of a level member, CubeDs.getChildren")
+public class GetChildrenEvent extends CubeEvent {
+
+    @Label("Parent Level")
+    public String parentLevel;
+
+    @Label("Dimension")
+    public String dimension;
+
+    @Label("Hierarchy")
+    public String hierarchy;
+
+    @Label("Target Level")
+    public String targetLevel;
+}
@@ -0,0 +1,28 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Mapping of the rows of an intersection to the members of a level, Intersection.getTargetAggregationInds.
+ */
+@Name("com.ram.ds.cds.LevelMapping")
+@Label("Intersection Level Mapping")
+@Description("Mapping of the rows of an intersection to the members of a level, Intersection.getTargetAggregationInds")
+public class LevelMappingEvent extends CubeEvent {
+
+    @Label("Intersection")
+    public String intersection;
+
+    @Label("Hierarchy")
+    @Description("The hierarchy the mapping was made through, or null for the default hierarchy")
+    public String hierarchy;
+
+    @Label("Target Level")
+    public String targetLevel;
+
+    @Label("Cache Hit")
+    @Description("True if the mapping was found in the level mapping cache")
+    public boolean cacheHit;
+}
@@ -0,0 +1,17 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Rebuild of the tuple lookup map of an intersection, Intersection.recalculateLookupKeys.
+ */
+@Name("com.ram.ds.cds.RecalculateLookupKeys")
+@Label("Recalculate Lookup Keys")
+@Description("Rebuild of the tuple lookup map of an intersection, Intersection.recalculateLookupKeys")
+public class RecalculateLookupKeysEvent extends CubeEvent {
+
+    @Label("Intersection")
+    public String intersection;
+}
@@ -0,0 +1,23 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Selection of the members of a level that match a set of filters, Dimension.getSelector.
+ */
+@Name("com.ram.ds.cds.Selector")
+@Label("Dimension Selector")
+@Description("Selection of the members of a level that match a set of filters, Dimension.getSelector")
+public class SelectorEvent extends CubeEvent {
+
+    @Label("Target Level")
+    public String targetLevel;
+
+    @Label("Dimension")
+    public String dimension;
+
+    @Label("Hierarchy")
+    public String hierarchy;
+}
@@ -0,0 +1,25 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Spreading of a value to the items of an intersection under a tuple of level members, Intersection.spread.
+ * The rows matched are the items under the tuple.
+ */
+@Name("com.ram.ds.cds.Spread")
+@Label("Intersection Spread")
+@Description("Spreading of a value to the items of an intersection under a tuple of level members, Intersection.spread")
+public class SpreadEvent extends CubeEvent {
+
+    @Label("Intersection")
+    public String intersection;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Periods")
+    @Description("Number of periods spread, for a time series measure")
+    public int periodCount;
+}
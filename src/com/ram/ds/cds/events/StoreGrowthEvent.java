@@ -0,0 +1,63 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import com.ram.ds.cds.stores.IDataStore;
+
+/**
+ * Reallocation of the array of chunks of a store, when the store grows past the chunks it can reference.
+ */
+@Name("com.ram.ds.cds.StoreGrowth")
+@Label("Store Growth")
+@Description("Reallocation of the array of chunks of a store")
+@Category({"Cube"})
+public class StoreGrowthEvent extends Event {
+
+    @Label("Store Class")
+    public String storeClass;
+
+    @Label("Old Chunk Count")
+    public int oldChunkCount;
+
+    @Label("New Chunk Count")
+    public int newChunkCount;
+
+    @Label("Store Size")
+    @Description("Number of elements in the store when it grew")
+    public int storeSize;
+
+    @Label("Bytes Allocated")
+    @DataAmount
+    public long bytesAllocated;
+
+    private transient long allocationStart = -1;
+
+    public void start() {
+        if (isEnabled()) {
+            allocationStart = CubeEvent.getAllocatedBytes();
+        }
+        begin();
+    }
+
+    /**
+     * Stop timing the event and record it, if it is enabled.
+     */
+    public void finish(IDataStore store, int oldChunks, int newChunks) {
+        end();
+        if (shouldCommit()) {
+            storeClass = store.getClass().getName();
+            oldChunkCount = oldChunks;
+            newChunkCount = newChunks;
+            storeSize = store.size();
+            if (allocationStart >= 0) {
+                bytesAllocated = CubeEvent.getAllocatedBytes() - allocationStart;
+            }
+            commit();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ram.ds.cds.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Computation of the rows of an intersection under a tuple of level members, Intersection.getTupleShadow.
+ * The filter count is the number of members in the tuple.
+ */
+@Name("com.ram.ds.cds.TupleShadow")
+@Label("Intersection Tuple Shadow")
+@Description("Computation of the rows of an intersection under a tuple of level members, Intersection.getTupleShadow")
+public class TupleShadowEvent extends CubeEvent {
+
+    @Label("Intersection")
+    public String intersection;
+}
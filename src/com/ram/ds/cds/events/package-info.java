@@ -0,0 +1,6 @@
+/**
+ * Java Flight Recorder events emitted by cube operations.  The events are recorded only while a recording
+ * has them enabled; otherwise creating and committing them costs next to nothing, so the instrumentation
+ * can stay in place in production.
+ */
+package com.ram.ds.cds.events;
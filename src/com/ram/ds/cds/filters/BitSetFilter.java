@@ -4,15 +4,18 @@ import java.util.BitSet;
 
 import com.ram.ds.cds.IAttributeContainer;
 import com.ram.ds.cds.stores.IIntStore;
+import com.ram.ds.cds.stores.IValidityMappedStore;
+import com.ram.ds.cds.stores.ValidityBitmap;
 
 /**
  * A filter that matches an integer store (typically a store holding the
  * indices into another attribute store) by a bit set. It will not match
  * an index where the integer is an empty value, which is identified by 
- * the IIntStore.isEmptyValue() call.
+ * the IIntStore.isEmptyValue() call.  If the integer store keeps a validity bitmap, a block is first
+ * narrowed to the non-empty values a word at a time.
  * 
  */
-public class BitSetFilter extends Filter {
+public class BitSetFilter extends Filter implements IBlockFilter {
 
     private BitSet selectedBits;
     private IIntStore correspondingIDStore;
@@ -43,6 +46,30 @@ public class BitSetFilter extends Filter {
         return (selectedBits.get(id));
     }
 
+    @Override
+    public void matchBlock(int fromIndex, int toIndex, BitSet matches) {
+        ValidityBitmap validity = null;
+        if (correspondingIDStore instanceof IValidityMappedStore) {
+            validity = ((IValidityMappedStore) correspondingIDStore).getValidity();
+        }
+        if (validity == null) {
+            for (int index = matches.nextSetBit(fromIndex); index >= 0 && index < toIndex;
+                 index = matches.nextSetBit(index + 1)) {
+                if (!isMatch(index)) {
+                    matches.clear(index);
+                }
+            }
+            return;
+        }
+        validity.and(fromIndex, toIndex, matches);
+        for (int index = matches.nextSetBit(fromIndex); index >= 0 && index < toIndex;
+             index = matches.nextSetBit(index + 1)) {
+            if (!selectedBits.get(correspondingIDStore.getElement(index))) {
+                matches.clear(index);
+            }
+        }
+    }
+
     public void setBit(int bitNum) {
         selectedBits.set(bitNum);
     }
@@ -0,0 +1,66 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IBooleanStore;
+import com.ram.ds.cds.stores.PackedBooleanStore;
+
+/**
+ * Matches the elements of a boolean store that hold the given value.  Empty values never match.  A
+ * {@link PackedBooleanStore} is evaluated 64 elements at a time when the filter is applied to a block.
+ */
+public class BooleanFilter extends Filter implements IBlockFilter {
+
+    private final IBooleanStore store;
+    private final PackedBooleanStore packedStore;
+    private final boolean value;
+
+    public BooleanFilter(IAttributeContainer iAttributeContainer, String iAttrName, boolean iValue) {
+        super(iAttributeContainer);
+        store = iAttributeContainer.getBooleanAttribute(iAttrName);
+        if (store == null) {
+            throw new IllegalArgumentException("No boolean attribute named " + iAttrName);
+        }
+        packedStore = store instanceof PackedBooleanStore ? (PackedBooleanStore) store : null;
+        value = iValue;
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        Boolean element = store.getElement(iIndex);
+        return !store.isEmptyValue(element) && element == value;
+    }
+
+    @Override
+    public void matchBlock(int fromIndex, int toIndex, BitSet matches) {
+        if (packedStore == null || (fromIndex & 63) != 0) {
+            for (int index = matches.nextSetBit(fromIndex); index >= 0 && index < toIndex;
+                 index = matches.nextSetBit(index + 1)) {
+                if (!isMatch(index)) {
+                    matches.clear(index);
+                }
+            }
+            return;
+        }
+        long[] matchWords = matches.get(fromIndex, toIndex).toLongArray();
+        for (int word = 0; word < matchWords.length; word++) {
+            int start = fromIndex + (word << 6);
+            long bits = packedStore.getWord(start >> 6);
+            long kept = packedStore.getValidWord(start >> 6) & (value ? bits : ~bits);
+            long rejected = matchWords[word] & ~kept;
+            while (rejected != 0) {
+                matches.clear(start + Long.numberOfTrailingZeros(rejected));
+                rejected &= rejected - 1;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BooleanFilter{" +
+                "value=" + value +
+                ", store=" + store + ", " + super.toString() +
+                '}';
+    }
+}
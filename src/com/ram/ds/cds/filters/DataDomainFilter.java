@@ -1,30 +1,46 @@
 package com.ram.ds.cds.filters;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDictionaryStore;
 
 /**
+ * Matches the elements of a dictionary encoded store whose value key is one of the selected keys.
+ * Negative keys, as returned for values that are not in the dictionary, never match.
  */
-public class DataDomainFilter extends Filter {
+public class DataDomainFilter extends DictionaryFilter {
 
     int[] selectedValues;
     int currentIndex = 0;
 
     public DataDomainFilter(IAttributeContainer iContainer,
+                            IDictionaryStore iStore,
                             int numberOfSelectedValues) {
-    	super (iContainer);
+    	super (iContainer, iStore, false);
         selectedValues = new int[numberOfSelectedValues];
     }
 
     public void setSelectedValue(int selectedValue) {
         selectedValues[currentIndex] = selectedValue;
         currentIndex++;
+        resetKeys();
     }
 
     @Override
-    public boolean isMatch(int iIndex) {
-        throw new RuntimeException("DataDomainFilter.isMatch() is not yet implemented");
+    protected void selectKeys(int fromKey, int toKey, BitSet keys) {
+        for (int i = 0; i < currentIndex; i++) {
+            int key = selectedValues[i];
+            if (key >= fromKey && key < toKey) {
+                keys.set(key);
+            }
+        }
+    }
+
+    @Override
+    protected boolean isEmptyMatch() {
+        return false;
     }
 
     @Override
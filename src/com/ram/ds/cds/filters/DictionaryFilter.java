@@ -0,0 +1,137 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IDictionaryStore;
+
+/**
+ * Base class for filters on a dictionary encoded String store.  The filter decides once for each distinct
+ * value in the dictionary whether it matches, and records the result in a bit set indexed by key.  Testing
+ * an element is then a key lookup and a bit probe, without touching the String.
+ * <p>
+ * Values added to the dictionary after the filter was created are decided the first time an element with
+ * one of their keys is tested.  A negated filter matches exactly the elements that the filter would not
+ * match otherwise, including the empty ones.
+ */
+public abstract class DictionaryFilter extends Filter implements IBlockFilter {
+
+    private IDictionaryStore attrStore;
+    private boolean negate;
+    private BitSet selectedKeys;    // bit k is set if the value with key k matches
+    private int resolvedKeyCount;   // keys below this have been decided, -1 if nothing has been decided yet
+    private boolean isEmptyMatch;
+
+    protected DictionaryFilter(IAttributeContainer iAttributeContainer,
+                               IDictionaryStore iStore,
+                               boolean iNegate) {
+        super(iAttributeContainer);
+        attrStore = iStore;
+        negate = iNegate;
+        selectedKeys = new BitSet();
+        resolvedKeyCount = -1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the attribute is not held in a dictionary encoded store.
+     */
+    protected static IDictionaryStore getDictionaryStore(IAttributeContainer iAttributeContainer, String iAttrName) {
+        IDataStore store = iAttributeContainer.getAttributeStore(iAttrName);
+        if ((store instanceof IDictionaryStore) == false) {
+            throw new IllegalArgumentException("Attribute " + iAttrName + " is not dictionary encoded: " + store);
+        }
+        return (IDictionaryStore) store;
+    }
+
+    /**
+     * Set the bits of the keys from <code>fromKey</code> (inclusive) to <code>toKey</code> (exclusive) whose
+     * values match the filter, ignoring negation.  Bits outside of the range must be left alone.  The key of
+     * the empty value, if the dictionary has one, is handled by the caller.
+     *
+     * @param fromKey the first key to decide.
+     * @param toKey one more than the last key to decide.
+     * @param keys output, the bit set to update.
+     */
+    protected abstract void selectKeys(int fromKey, int toKey, BitSet keys);
+
+    /**
+     * @return true if the elements with no value match the filter, ignoring negation.
+     */
+    protected abstract boolean isEmptyMatch();
+
+    /**
+     * Helper for {@link #selectKeys(int, int, BitSet)}: test each non-empty value in a range of keys.
+     */
+    protected void selectValues(int fromKey, int toKey, BitSet keys, Predicate<String> valueTest) {
+        for (int key = fromKey; key < toKey; key++) {
+            String value = attrStore.getValidValueForKey(key);
+            if (!attrStore.isEmptyValue(value) && valueTest.test(value)) {
+                keys.set(key);
+            }
+        }
+    }
+
+    /**
+     * Forget the decisions made so far, so that they are made again on the next match.  Subclasses call
+     * this when the values they select have changed.
+     */
+    protected void resetKeys() {
+        selectedKeys.clear();
+        resolvedKeyCount = -1;
+    }
+
+    private void resolveKeys() {
+        int fromKey = Math.max(0, resolvedKeyCount);
+        int toKey = attrStore.getKeyCount();
+        if (resolvedKeyCount < 0) {
+            isEmptyMatch = isEmptyMatch() != negate;
+        }
+        selectKeys(fromKey, toKey, selectedKeys);
+        if (negate) {
+            selectedKeys.flip(fromKey, toKey);
+        }
+        // the lookup stores give the empty value a key of its own once it has been stored.
+        int emptyKey = attrStore.getKeyForValidValue(attrStore.getEmptyValue());
+        if (emptyKey >= fromKey && emptyKey < toKey) {
+            selectedKeys.set(emptyKey, isEmptyMatch);
+        }
+        resolvedKeyCount = toKey;
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        int key = attrStore.getKeyAt(iIndex);
+        if (key >= resolvedKeyCount) {
+            resolveKeys();
+        }
+        return key < 0 ? isEmptyMatch : selectedKeys.get(key);
+    }
+
+    @Override
+    public void matchBlock(int fromIndex, int toIndex, BitSet matches) {
+        resolveKeys();
+        for (int i = matches.nextSetBit(fromIndex); i >= 0 && i < toIndex; i = matches.nextSetBit(i + 1)) {
+            if (!isMatch(i)) {
+                matches.clear(i);
+            }
+        }
+    }
+
+    public IDictionaryStore getStore() {
+        return attrStore;
+    }
+
+    public boolean isNegated() {
+        return negate;
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryFilter{" +
+                "negate=" + negate +
+                ", resolvedKeyCount=" + resolvedKeyCount +
+                "} " + super.toString();
+    }
+}
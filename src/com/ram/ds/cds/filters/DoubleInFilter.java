@@ -0,0 +1,88 @@
+package com.ram.ds.cds.filters;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.stores.IDoubleZoneMappedStore;
+
+/**
+ * Matches the elements whose double value is one of a given set of values.  Empty values never match,
+ * even if the empty value is in the set.  As with ==, -0.0 and 0.0 are treated as the same value.
+ */
+public class DoubleInFilter extends ValueFilter {
+
+    private IDoubleStore attrStore;
+    private IDoubleZoneMappedStore zoneStore;
+    private double[] values;  // sorted, distinct, without the empty value and without -0.0
+
+    public DoubleInFilter(IAttributeContainer iAttributeContainer,
+                          String iAttrName,
+                          double... iValues) {
+        this(iAttributeContainer, iAttributeContainer.getDoubleAttribute(iAttrName), iValues);
+    }
+
+    public DoubleInFilter(IAttributeContainer iAttributeContainer,
+                          IDoubleStore iStore,
+                          double... iValues) {
+        super(iAttributeContainer, iStore, new ValuePredicate(ValuePredicate.Operator.IN, toOperands(iValues)));
+        attrStore = iStore;
+        if (iStore instanceof IDoubleZoneMappedStore) {
+            zoneStore = (IDoubleZoneMappedStore) iStore;
+        }
+        // adding 0.0 turns -0.0 into 0.0, so that the binary search agrees with ==.
+        values = Arrays.stream(iValues).filter(value -> !iStore.isEmptyValue(value) && !Double.isNaN(value))
+                       .map(value -> value + 0.0d).sorted().distinct().toArray();
+    }
+
+    private static Number[] toOperands(double[] iValues) {
+        return Arrays.stream(iValues).boxed().toArray(Number[]::new);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        double value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return Arrays.binarySearch(values, value + 0.0d) >= 0;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return values.length == 0;
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        double zoneMin = zoneStore.getZoneMin(zoneIndex);
+        double zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax) {
+            return NO_MATCH;
+        }
+        // find the smallest value in the set that is not below the zone minimum.
+        int position = Arrays.binarySearch(values, zoneMin + 0.0d);
+        if (position >= 0) {
+            return (zoneMin == zoneMax && isZoneFull(zoneIndex)) ? FULL_MATCH : PARTIAL_MATCH;
+        }
+        position = -position - 1;
+        if (position == values.length || values[position] > zoneMax) {
+            return NO_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    /**
+     * @return a copy of the values matched by this filter, sorted and without duplicates.
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "DoubleInFilter{" +
+                "values=" + Arrays.toString(values) +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.stores.IDoubleZoneMappedStore;
+
+/**
+ * Matches the elements whose double value lies between a lower and an upper bound, both inclusive.
+ * Empty values never match, and neither does any value if a bound is NaN.  The comparisons =, &lt;,
+ * &lt;=, &gt; and &gt;= are created by the static factory methods, and are reported as such by
+ * {@link #getPredicate()}.
+ */
+public class DoubleRangeFilter extends ValueFilter {
+
+    private IDoubleStore attrStore;
+    private IDoubleZoneMappedStore zoneStore;
+    private double lowerBound;
+    private double upperBound;
+
+    public DoubleRangeFilter(IAttributeContainer iAttributeContainer,
+                             String iAttrName,
+                             double iLowerBound,
+                             double iUpperBound) {
+        this(iAttributeContainer, iAttributeContainer.getDoubleAttribute(iAttrName), iLowerBound, iUpperBound);
+    }
+
+    public DoubleRangeFilter(IAttributeContainer iAttributeContainer,
+                             IDoubleStore iStore,
+                             double iLowerBound,
+                             double iUpperBound) {
+        this(iAttributeContainer, iStore, iLowerBound, iUpperBound,
+             new ValuePredicate(ValuePredicate.Operator.BETWEEN, iLowerBound, iUpperBound));
+    }
+
+    private DoubleRangeFilter(IAttributeContainer iAttributeContainer,
+                              IDoubleStore iStore,
+                              double iLowerBound,
+                              double iUpperBound,
+                              ValuePredicate iPredicate) {
+        super(iAttributeContainer, iStore, iPredicate);
+        attrStore = iStore;
+        if (iStore instanceof IDoubleZoneMappedStore) {
+            zoneStore = (IDoubleZoneMappedStore) iStore;
+        }
+        lowerBound = iLowerBound;
+        upperBound = iUpperBound;
+    }
+
+    public static DoubleRangeFilter equalTo(IAttributeContainer iAttributeContainer, IDoubleStore iStore, double iValue) {
+        return new DoubleRangeFilter(iAttributeContainer, iStore, iValue, iValue,
+                                     new ValuePredicate(ValuePredicate.Operator.EQUAL, iValue));
+    }
+
+    public static DoubleRangeFilter lessThan(IAttributeContainer iAttributeContainer, IDoubleStore iStore, double iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.LESS_THAN, iValue);
+        if (iValue == Double.NEGATIVE_INFINITY) {
+            return new DoubleRangeFilter(iAttributeContainer, iStore, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, predicate);
+        }
+        return new DoubleRangeFilter(iAttributeContainer, iStore, Double.NEGATIVE_INFINITY, Math.nextDown(iValue), predicate);
+    }
+
+    public static DoubleRangeFilter lessOrEqual(IAttributeContainer iAttributeContainer, IDoubleStore iStore, double iValue) {
+        return new DoubleRangeFilter(iAttributeContainer, iStore, Double.NEGATIVE_INFINITY, iValue,
+                                     new ValuePredicate(ValuePredicate.Operator.LESS_OR_EQUAL, iValue));
+    }
+
+    public static DoubleRangeFilter greaterThan(IAttributeContainer iAttributeContainer, IDoubleStore iStore, double iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.GREATER_THAN, iValue);
+        if (iValue == Double.POSITIVE_INFINITY) {
+            return new DoubleRangeFilter(iAttributeContainer, iStore, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, predicate);
+        }
+        return new DoubleRangeFilter(iAttributeContainer, iStore, Math.nextUp(iValue), Double.POSITIVE_INFINITY, predicate);
+    }
+
+    public static DoubleRangeFilter greaterOrEqual(IAttributeContainer iAttributeContainer, IDoubleStore iStore, double iValue) {
+        return new DoubleRangeFilter(iAttributeContainer, iStore, iValue, Double.POSITIVE_INFINITY,
+                                     new ValuePredicate(ValuePredicate.Operator.GREATER_OR_EQUAL, iValue));
+    }
+
+    public static DoubleRangeFilter between(IAttributeContainer iAttributeContainer, IDoubleStore iStore,
+                                            double iLowerBound, double iUpperBound) {
+        return new DoubleRangeFilter(iAttributeContainer, iStore, iLowerBound, iUpperBound);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        double value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return value >= lowerBound && value <= upperBound;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return !(lowerBound <= upperBound);
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        double zoneMin = zoneStore.getZoneMin(zoneIndex);
+        double zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax || zoneMax < lowerBound || zoneMin > upperBound) {
+            // no values, or all the values are outside the range.
+            return NO_MATCH;
+        }
+        if (zoneMin >= lowerBound && zoneMax <= upperBound && isZoneFull(zoneIndex)) {
+            return FULL_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return "DoubleRangeFilter{" +
+                "lowerBound=" + lowerBound +
+                ", upperBound=" + upperBound +
+                "} " + super.toString();
+    }
+}
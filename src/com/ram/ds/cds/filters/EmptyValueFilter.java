@@ -0,0 +1,79 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.stores.IFloatStore;
+import com.ram.ds.cds.stores.IIntStore;
+import com.ram.ds.cds.stores.ILongStore;
+
+/**
+ * Matches the elements that hold the empty value of an int, long, float or double store.  With zone maps,
+ * a zone is decided from its empty count alone, and with a validity bitmap a block is decided a word at a time.
+ */
+public class EmptyValueFilter extends ValueFilter {
+
+    private IIntStore intStore;
+    private ILongStore longStore;
+    private IFloatStore floatStore;
+    private IDoubleStore doubleStore;
+
+    public EmptyValueFilter(IAttributeContainer iAttributeContainer,
+                            String iAttrName) {
+        this(iAttributeContainer, iAttributeContainer.getAttributeStore(iAttrName));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the store is not an int, long, float or double store.
+     */
+    public EmptyValueFilter(IAttributeContainer iAttributeContainer,
+                            IDataStore iStore) {
+        super(iAttributeContainer, iStore, new ValuePredicate(ValuePredicate.Operator.IS_EMPTY));
+        if (iStore instanceof IIntStore) {
+            intStore = (IIntStore) iStore;
+        } else if (iStore instanceof ILongStore) {
+            longStore = (ILongStore) iStore;
+        } else if (iStore instanceof IFloatStore) {
+            floatStore = (IFloatStore) iStore;
+        } else if (iStore instanceof IDoubleStore) {
+            doubleStore = (IDoubleStore) iStore;
+        } else {
+            throw new IllegalArgumentException("Not a numeric store: " + iStore);
+        }
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        if (intStore != null) {
+            return intStore.isEmptyValue(intStore.getElement(iIndex));
+        }
+        if (longStore != null) {
+            return longStore.isEmptyValue(longStore.getElement(iIndex));
+        }
+        if (floatStore != null) {
+            return floatStore.isEmptyValue(floatStore.getElement(iIndex));
+        }
+        return doubleStore.isEmptyValue(doubleStore.getElement(iIndex));
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return false;
+    }
+
+    @Override
+    protected boolean isEmptyTest() {
+        return true;
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        if (isZoneFull(zoneIndex)) {
+            return NO_MATCH;
+        }
+        if (isZoneEmpty(zoneIndex)) {
+            return FULL_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+}
@@ -0,0 +1,105 @@
+package com.ram.ds.cds.filters;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IFloatStore;
+import com.ram.ds.cds.stores.IFloatZoneMappedStore;
+
+/**
+ * Matches the elements whose float value is one of a given set of values.  Empty values never match,
+ * even if the empty value is in the set.  As with ==, -0.0 and 0.0 are treated as the same value.
+ */
+public class FloatInFilter extends ValueFilter {
+
+    private IFloatStore attrStore;
+    private IFloatZoneMappedStore zoneStore;
+    private float[] values;  // sorted, distinct, without the empty value and without -0.0
+
+    public FloatInFilter(IAttributeContainer iAttributeContainer,
+                         String iAttrName,
+                         float... iValues) {
+        this(iAttributeContainer, iAttributeContainer.getFloatAttribute(iAttrName), iValues);
+    }
+
+    public FloatInFilter(IAttributeContainer iAttributeContainer,
+                         IFloatStore iStore,
+                         float... iValues) {
+        super(iAttributeContainer, iStore, new ValuePredicate(ValuePredicate.Operator.IN, toOperands(iValues)));
+        attrStore = iStore;
+        if (iStore instanceof IFloatZoneMappedStore) {
+            zoneStore = (IFloatZoneMappedStore) iStore;
+        }
+        // adding 0.0 turns -0.0 into 0.0, so that the binary search agrees with ==.
+        float[] sorted = new float[iValues.length];
+        int count = 0;
+        for (float value : iValues) {
+            if (!iStore.isEmptyValue(value) && !Float.isNaN(value)) {
+                sorted[count++] = value + 0.0f;
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        values = Arrays.copyOf(sorted, distinct);
+    }
+
+    private static Number[] toOperands(float[] iValues) {
+        Number[] operands = new Number[iValues.length];
+        for (int i = 0; i < iValues.length; i++) {
+            operands[i] = iValues[i];
+        }
+        return operands;
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        float value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return Arrays.binarySearch(values, value + 0.0f) >= 0;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return values.length == 0;
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        float zoneMin = zoneStore.getZoneMin(zoneIndex);
+        float zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax) {
+            return NO_MATCH;
+        }
+        // find the smallest value in the set that is not below the zone minimum.
+        int position = Arrays.binarySearch(values, zoneMin + 0.0f);
+        if (position >= 0) {
+            return (zoneMin == zoneMax && isZoneFull(zoneIndex)) ? FULL_MATCH : PARTIAL_MATCH;
+        }
+        position = -position - 1;
+        if (position == values.length || values[position] > zoneMax) {
+            return NO_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    /**
+     * @return a copy of the values matched by this filter, sorted and without duplicates.
+     */
+    public float[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "FloatInFilter{" +
+                "values=" + Arrays.toString(values) +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IFloatStore;
+import com.ram.ds.cds.stores.IFloatZoneMappedStore;
+
+/**
+ * Matches the elements whose float value lies between a lower and an upper bound, both inclusive.
+ * Empty values never match, and neither does any value if a bound is NaN.  The comparisons =, &lt;,
+ * &lt;=, &gt; and &gt;= are created by the static factory methods, and are reported as such by
+ * {@link #getPredicate()}.
+ */
+public class FloatRangeFilter extends ValueFilter {
+
+    private IFloatStore attrStore;
+    private IFloatZoneMappedStore zoneStore;
+    private float lowerBound;
+    private float upperBound;
+
+    public FloatRangeFilter(IAttributeContainer iAttributeContainer,
+                            String iAttrName,
+                            float iLowerBound,
+                            float iUpperBound) {
+        this(iAttributeContainer, iAttributeContainer.getFloatAttribute(iAttrName), iLowerBound, iUpperBound);
+    }
+
+    public FloatRangeFilter(IAttributeContainer iAttributeContainer,
+                            IFloatStore iStore,
+                            float iLowerBound,
+                            float iUpperBound) {
+        this(iAttributeContainer, iStore, iLowerBound, iUpperBound,
+             new ValuePredicate(ValuePredicate.Operator.BETWEEN, iLowerBound, iUpperBound));
+    }
+
+    private FloatRangeFilter(IAttributeContainer iAttributeContainer,
+                             IFloatStore iStore,
+                             float iLowerBound,
+                             float iUpperBound,
+                             ValuePredicate iPredicate) {
+        super(iAttributeContainer, iStore, iPredicate);
+        attrStore = iStore;
+        if (iStore instanceof IFloatZoneMappedStore) {
+            zoneStore = (IFloatZoneMappedStore) iStore;
+        }
+        lowerBound = iLowerBound;
+        upperBound = iUpperBound;
+    }
+
+    public static FloatRangeFilter equalTo(IAttributeContainer iAttributeContainer, IFloatStore iStore, float iValue) {
+        return new FloatRangeFilter(iAttributeContainer, iStore, iValue, iValue,
+                                    new ValuePredicate(ValuePredicate.Operator.EQUAL, iValue));
+    }
+
+    public static FloatRangeFilter lessThan(IAttributeContainer iAttributeContainer, IFloatStore iStore, float iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.LESS_THAN, iValue);
+        if (iValue == Float.NEGATIVE_INFINITY) {
+            return new FloatRangeFilter(iAttributeContainer, iStore, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, predicate);
+        }
+        return new FloatRangeFilter(iAttributeContainer, iStore, Float.NEGATIVE_INFINITY, Math.nextDown(iValue), predicate);
+    }
+
+    public static FloatRangeFilter lessOrEqual(IAttributeContainer iAttributeContainer, IFloatStore iStore, float iValue) {
+        return new FloatRangeFilter(iAttributeContainer, iStore, Float.NEGATIVE_INFINITY, iValue,
+                                    new ValuePredicate(ValuePredicate.Operator.LESS_OR_EQUAL, iValue));
+    }
+
+    public static FloatRangeFilter greaterThan(IAttributeContainer iAttributeContainer, IFloatStore iStore, float iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.GREATER_THAN, iValue);
+        if (iValue == Float.POSITIVE_INFINITY) {
+            return new FloatRangeFilter(iAttributeContainer, iStore, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, predicate);
+        }
+        return new FloatRangeFilter(iAttributeContainer, iStore, Math.nextUp(iValue), Float.POSITIVE_INFINITY, predicate);
+    }
+
+    public static FloatRangeFilter greaterOrEqual(IAttributeContainer iAttributeContainer, IFloatStore iStore, float iValue) {
+        return new FloatRangeFilter(iAttributeContainer, iStore, iValue, Float.POSITIVE_INFINITY,
+                                    new ValuePredicate(ValuePredicate.Operator.GREATER_OR_EQUAL, iValue));
+    }
+
+    public static FloatRangeFilter between(IAttributeContainer iAttributeContainer, IFloatStore iStore,
+                                           float iLowerBound, float iUpperBound) {
+        return new FloatRangeFilter(iAttributeContainer, iStore, iLowerBound, iUpperBound);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        float value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return value >= lowerBound && value <= upperBound;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return !(lowerBound <= upperBound);
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        float zoneMin = zoneStore.getZoneMin(zoneIndex);
+        float zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax || zoneMax < lowerBound || zoneMin > upperBound) {
+            // no values, or all the values are outside the range.
+            return NO_MATCH;
+        }
+        if (zoneMin >= lowerBound && zoneMax <= upperBound && isZoneFull(zoneIndex)) {
+            return FULL_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    public float getLowerBound() {
+        return lowerBound;
+    }
+
+    public float getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return "FloatRangeFilter{" +
+                "lowerBound=" + lowerBound +
+                ", upperBound=" + upperBound +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+
+/**
+ * A filter that can be evaluated for a block of indices in one call, rather than one index at a time
+ * through {@link #isMatch(int)}.
+ */
+public interface IBlockFilter extends IFilter {
+
+    /**
+     * Evaluate the filter for the indices from <code>fromIndex</code> (inclusive) to <code>toIndex</code>
+     * (exclusive).  Each bit in that range of <code>matches</code> that is set but does not match the filter
+     * is cleared.  Bits that are already clear are not tested, and bits outside of the range are left alone,
+     * so several block filters can be applied to the same bit set in turn.
+     *
+     * @param fromIndex the first index of the block, inclusive.
+     * @param toIndex the last index of the block, exclusive.
+     * @param matches input/output, the candidate indices.
+     */
+    void matchBlock(int fromIndex, int toIndex, BitSet matches);
+}
@@ -0,0 +1,21 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.stores.IDataStore;
+
+/**
+ * A filter that matches the values of a single store against a predicate.  The store and the predicate
+ * are exposed so that other components, such as indexes and caches, can recognize the filter and answer
+ * it in their own way.
+ */
+public interface IValueFilter extends IFilter {
+
+    /**
+     * @return the store whose values are tested by this filter.
+     */
+    IDataStore getStore();
+
+    /**
+     * @return the predicate applied to each value in the store.
+     */
+    ValuePredicate getPredicate();
+}
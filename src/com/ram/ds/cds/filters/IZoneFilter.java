@@ -0,0 +1,35 @@
+package com.ram.ds.cds.filters;
+
+/**
+ * A filter that can decide for a whole range of indices at once, typically by consulting the zone maps
+ * of the store it is defined on (see {@link com.ram.ds.cds.stores.IZoneMappedStore}).  Scan loops ask
+ * the filter to classify a range before evaluating it element by element, so that ranges which cannot
+ * match are skipped, and ranges which match entirely are accepted without calling {@link #isMatch(int)}.
+ */
+public interface IZoneFilter extends IFilter {
+
+    /**
+     * None of the indices in the range match the filter.
+     */
+    int NO_MATCH = 0;
+
+    /**
+     * Some of the indices in the range may match the filter; each index must be tested.
+     */
+    int PARTIAL_MATCH = 1;
+
+    /**
+     * All of the indices in the range match the filter.
+     */
+    int FULL_MATCH = 2;
+
+    /**
+     * Classify a range of indices in the attribute container.  The answer must be conservative:
+     * return {@link #PARTIAL_MATCH} whenever the outcome is not known for certain.
+     *
+     * @param fromIndex the first index of the range, inclusive.
+     * @param toIndex the last index of the range, exclusive.
+     * @return {@link #NO_MATCH}, {@link #PARTIAL_MATCH} or {@link #FULL_MATCH}.
+     */
+    int classifyRange(int fromIndex, int toIndex);
+}
@@ -0,0 +1,101 @@
+package com.ram.ds.cds.filters;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IIntStore;
+import com.ram.ds.cds.stores.IIntZoneMappedStore;
+
+/**
+ * Matches the elements whose int value is one of a given set of values.  Empty values never match,
+ * even if the empty value is in the set.
+ */
+public class IntInFilter extends ValueFilter {
+
+    // sets spanning at most this many values are probed through a bit set instead of a binary search.
+    private static final int MAX_BITSET_SPAN = 1 << 16;
+
+    private IIntStore attrStore;
+    private IIntZoneMappedStore zoneStore;
+    private int[] values;      // sorted, distinct, without the empty value
+    private BitSet valueBits;  // bit (value - values[0]) is set for each value, if the span is small enough
+
+    public IntInFilter(IAttributeContainer iAttributeContainer,
+                       String iAttrName,
+                       int... iValues) {
+        this(iAttributeContainer, iAttributeContainer.getIntAttribute(iAttrName), iValues);
+    }
+
+    public IntInFilter(IAttributeContainer iAttributeContainer,
+                       IIntStore iStore,
+                       int... iValues) {
+        super(iAttributeContainer, iStore, new ValuePredicate(ValuePredicate.Operator.IN, toOperands(iValues)));
+        attrStore = iStore;
+        if (iStore instanceof IIntZoneMappedStore) {
+            zoneStore = (IIntZoneMappedStore) iStore;
+        }
+        values = Arrays.stream(iValues).filter(value -> !iStore.isEmptyValue(value)).sorted().distinct().toArray();
+        if (values.length > 1 && (long) values[values.length - 1] - values[0] < MAX_BITSET_SPAN) {
+            valueBits = new BitSet(values[values.length - 1] - values[0] + 1);
+            for (int value : values) {
+                valueBits.set(value - values[0]);
+            }
+        }
+    }
+
+    private static Number[] toOperands(int[] iValues) {
+        return Arrays.stream(iValues).boxed().toArray(Number[]::new);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        int value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        if (valueBits != null) {
+            long offset = (long) value - values[0];
+            return offset >= 0 && offset < valueBits.length() && valueBits.get((int) offset);
+        }
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return values.length == 0;
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        int zoneMin = zoneStore.getZoneMin(zoneIndex);
+        int zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax) {
+            return NO_MATCH;
+        }
+        // find the smallest value in the set that is not below the zone minimum.
+        int position = Arrays.binarySearch(values, zoneMin);
+        if (position >= 0) {
+            return (zoneMin == zoneMax && isZoneFull(zoneIndex)) ? FULL_MATCH : PARTIAL_MATCH;
+        }
+        position = -position - 1;
+        if (position == values.length || values[position] > zoneMax) {
+            return NO_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    /**
+     * @return a copy of the values matched by this filter, sorted and without duplicates.
+     */
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "IntInFilter{" +
+                "values=" + Arrays.toString(values) +
+                "} " + super.toString();
+    }
+}
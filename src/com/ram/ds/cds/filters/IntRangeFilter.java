@@ -0,0 +1,127 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IIntStore;
+import com.ram.ds.cds.stores.IIntZoneMappedStore;
+
+/**
+ * Matches the elements whose int value lies between a lower and an upper bound, both inclusive.
+ * Empty values never match.  The comparisons =, &lt;, &lt;=, &gt; and &gt;= are created by the static
+ * factory methods, and are reported as such by {@link #getPredicate()}.
+ */
+public class IntRangeFilter extends ValueFilter {
+
+    private IIntStore attrStore;
+    private IIntZoneMappedStore zoneStore;
+    private int lowerBound;
+    private int upperBound;
+
+    public IntRangeFilter(IAttributeContainer iAttributeContainer,
+                          String iAttrName,
+                          int iLowerBound,
+                          int iUpperBound) {
+        this(iAttributeContainer, iAttributeContainer.getIntAttribute(iAttrName), iLowerBound, iUpperBound);
+    }
+
+    public IntRangeFilter(IAttributeContainer iAttributeContainer,
+                          IIntStore iStore,
+                          int iLowerBound,
+                          int iUpperBound) {
+        this(iAttributeContainer, iStore, iLowerBound, iUpperBound,
+             new ValuePredicate(ValuePredicate.Operator.BETWEEN, iLowerBound, iUpperBound));
+    }
+
+    private IntRangeFilter(IAttributeContainer iAttributeContainer,
+                           IIntStore iStore,
+                           int iLowerBound,
+                           int iUpperBound,
+                           ValuePredicate iPredicate) {
+        super(iAttributeContainer, iStore, iPredicate);
+        attrStore = iStore;
+        if (iStore instanceof IIntZoneMappedStore) {
+            zoneStore = (IIntZoneMappedStore) iStore;
+        }
+        lowerBound = iLowerBound;
+        upperBound = iUpperBound;
+    }
+
+    public static IntRangeFilter equalTo(IAttributeContainer iAttributeContainer, IIntStore iStore, int iValue) {
+        return new IntRangeFilter(iAttributeContainer, iStore, iValue, iValue,
+                                  new ValuePredicate(ValuePredicate.Operator.EQUAL, iValue));
+    }
+
+    public static IntRangeFilter lessThan(IAttributeContainer iAttributeContainer, IIntStore iStore, int iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.LESS_THAN, iValue);
+        if (iValue == Integer.MIN_VALUE) {
+            return new IntRangeFilter(iAttributeContainer, iStore, Integer.MAX_VALUE, Integer.MIN_VALUE, predicate);
+        }
+        return new IntRangeFilter(iAttributeContainer, iStore, Integer.MIN_VALUE, iValue - 1, predicate);
+    }
+
+    public static IntRangeFilter lessOrEqual(IAttributeContainer iAttributeContainer, IIntStore iStore, int iValue) {
+        return new IntRangeFilter(iAttributeContainer, iStore, Integer.MIN_VALUE, iValue,
+                                  new ValuePredicate(ValuePredicate.Operator.LESS_OR_EQUAL, iValue));
+    }
+
+    public static IntRangeFilter greaterThan(IAttributeContainer iAttributeContainer, IIntStore iStore, int iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.GREATER_THAN, iValue);
+        if (iValue == Integer.MAX_VALUE) {
+            return new IntRangeFilter(iAttributeContainer, iStore, Integer.MAX_VALUE, Integer.MIN_VALUE, predicate);
+        }
+        return new IntRangeFilter(iAttributeContainer, iStore, iValue + 1, Integer.MAX_VALUE, predicate);
+    }
+
+    public static IntRangeFilter greaterOrEqual(IAttributeContainer iAttributeContainer, IIntStore iStore, int iValue) {
+        return new IntRangeFilter(iAttributeContainer, iStore, iValue, Integer.MAX_VALUE,
+                                  new ValuePredicate(ValuePredicate.Operator.GREATER_OR_EQUAL, iValue));
+    }
+
+    public static IntRangeFilter between(IAttributeContainer iAttributeContainer, IIntStore iStore,
+                                         int iLowerBound, int iUpperBound) {
+        return new IntRangeFilter(iAttributeContainer, iStore, iLowerBound, iUpperBound);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        int value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return value >= lowerBound && value <= upperBound;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return !(lowerBound <= upperBound);
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        int zoneMin = zoneStore.getZoneMin(zoneIndex);
+        int zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax || zoneMax < lowerBound || zoneMin > upperBound) {
+            // no values, or all the values are outside the range.
+            return NO_MATCH;
+        }
+        if (zoneMin >= lowerBound && zoneMax <= upperBound && isZoneFull(zoneIndex)) {
+            return FULL_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return "IntRangeFilter{" +
+                "lowerBound=" + lowerBound +
+                ", upperBound=" + upperBound +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.ram.ds.cds.filters;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.ILongStore;
+import com.ram.ds.cds.stores.ILongZoneMappedStore;
+
+/**
+ * Matches the elements whose long value is one of a given set of values.  Empty values never match,
+ * even if the empty value is in the set.
+ */
+public class LongInFilter extends ValueFilter {
+
+    private ILongStore attrStore;
+    private ILongZoneMappedStore zoneStore;
+    private long[] values;  // sorted, distinct, without the empty value
+
+    public LongInFilter(IAttributeContainer iAttributeContainer,
+                        String iAttrName,
+                        long... iValues) {
+        this(iAttributeContainer, iAttributeContainer.getLongAttribute(iAttrName), iValues);
+    }
+
+    public LongInFilter(IAttributeContainer iAttributeContainer,
+                        ILongStore iStore,
+                        long... iValues) {
+        super(iAttributeContainer, iStore, new ValuePredicate(ValuePredicate.Operator.IN, toOperands(iValues)));
+        attrStore = iStore;
+        if (iStore instanceof ILongZoneMappedStore) {
+            zoneStore = (ILongZoneMappedStore) iStore;
+        }
+        values = Arrays.stream(iValues).filter(value -> !iStore.isEmptyValue(value)).sorted().distinct().toArray();
+    }
+
+    private static Number[] toOperands(long[] iValues) {
+        return Arrays.stream(iValues).boxed().toArray(Number[]::new);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        long value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return values.length == 0;
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        long zoneMin = zoneStore.getZoneMin(zoneIndex);
+        long zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax) {
+            return NO_MATCH;
+        }
+        // find the smallest value in the set that is not below the zone minimum.
+        int position = Arrays.binarySearch(values, zoneMin);
+        if (position >= 0) {
+            return (zoneMin == zoneMax && isZoneFull(zoneIndex)) ? FULL_MATCH : PARTIAL_MATCH;
+        }
+        position = -position - 1;
+        if (position == values.length || values[position] > zoneMax) {
+            return NO_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    /**
+     * @return a copy of the values matched by this filter, sorted and without duplicates.
+     */
+    public long[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "LongInFilter{" +
+                "values=" + Arrays.toString(values) +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package com.ram.ds.cds.filters;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.ILongStore;
+import com.ram.ds.cds.stores.ILongZoneMappedStore;
+
+/**
+ * Matches the elements whose long value lies between a lower and an upper bound, both inclusive.
+ * Empty values never match.  The comparisons =, &lt;, &lt;=, &gt; and &gt;= are created by the static
+ * factory methods, and are reported as such by {@link #getPredicate()}.
+ */
+public class LongRangeFilter extends ValueFilter {
+
+    private ILongStore attrStore;
+    private ILongZoneMappedStore zoneStore;
+    private long lowerBound;
+    private long upperBound;
+
+    public LongRangeFilter(IAttributeContainer iAttributeContainer,
+                           String iAttrName,
+                           long iLowerBound,
+                           long iUpperBound) {
+        this(iAttributeContainer, iAttributeContainer.getLongAttribute(iAttrName), iLowerBound, iUpperBound);
+    }
+
+    public LongRangeFilter(IAttributeContainer iAttributeContainer,
+                           ILongStore iStore,
+                           long iLowerBound,
+                           long iUpperBound) {
+        this(iAttributeContainer, iStore, iLowerBound, iUpperBound,
+             new ValuePredicate(ValuePredicate.Operator.BETWEEN, iLowerBound, iUpperBound));
+    }
+
+    private LongRangeFilter(IAttributeContainer iAttributeContainer,
+                            ILongStore iStore,
+                            long iLowerBound,
+                            long iUpperBound,
+                            ValuePredicate iPredicate) {
+        super(iAttributeContainer, iStore, iPredicate);
+        attrStore = iStore;
+        if (iStore instanceof ILongZoneMappedStore) {
+            zoneStore = (ILongZoneMappedStore) iStore;
+        }
+        lowerBound = iLowerBound;
+        upperBound = iUpperBound;
+    }
+
+    public static LongRangeFilter equalTo(IAttributeContainer iAttributeContainer, ILongStore iStore, long iValue) {
+        return new LongRangeFilter(iAttributeContainer, iStore, iValue, iValue,
+                                   new ValuePredicate(ValuePredicate.Operator.EQUAL, iValue));
+    }
+
+    public static LongRangeFilter lessThan(IAttributeContainer iAttributeContainer, ILongStore iStore, long iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.LESS_THAN, iValue);
+        if (iValue == Long.MIN_VALUE) {
+            return new LongRangeFilter(iAttributeContainer, iStore, Long.MAX_VALUE, Long.MIN_VALUE, predicate);
+        }
+        return new LongRangeFilter(iAttributeContainer, iStore, Long.MIN_VALUE, iValue - 1, predicate);
+    }
+
+    public static LongRangeFilter lessOrEqual(IAttributeContainer iAttributeContainer, ILongStore iStore, long iValue) {
+        return new LongRangeFilter(iAttributeContainer, iStore, Long.MIN_VALUE, iValue,
+                                   new ValuePredicate(ValuePredicate.Operator.LESS_OR_EQUAL, iValue));
+    }
+
+    public static LongRangeFilter greaterThan(IAttributeContainer iAttributeContainer, ILongStore iStore, long iValue) {
+        ValuePredicate predicate = new ValuePredicate(ValuePredicate.Operator.GREATER_THAN, iValue);
+        if (iValue == Long.MAX_VALUE) {
+            return new LongRangeFilter(iAttributeContainer, iStore, Long.MAX_VALUE, Long.MIN_VALUE, predicate);
+        }
+        return new LongRangeFilter(iAttributeContainer, iStore, iValue + 1, Long.MAX_VALUE, predicate);
+    }
+
+    public static LongRangeFilter greaterOrEqual(IAttributeContainer iAttributeContainer, ILongStore iStore, long iValue) {
+        return new LongRangeFilter(iAttributeContainer, iStore, iValue, Long.MAX_VALUE,
+                                   new ValuePredicate(ValuePredicate.Operator.GREATER_OR_EQUAL, iValue));
+    }
+
+    public static LongRangeFilter between(IAttributeContainer iAttributeContainer, ILongStore iStore,
+                                          long iLowerBound, long iUpperBound) {
+        return new LongRangeFilter(iAttributeContainer, iStore, iLowerBound, iUpperBound);
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        long value = attrStore.getElement(iIndex);
+        if (attrStore.isEmptyValue(value)) {
+            return false;
+        }
+        return value >= lowerBound && value <= upperBound;
+    }
+
+    @Override
+    protected boolean matchesNothing() {
+        return !(lowerBound <= upperBound);
+    }
+
+    @Override
+    protected int classifyZone(int zoneIndex) {
+        long zoneMin = zoneStore.getZoneMin(zoneIndex);
+        long zoneMax = zoneStore.getZoneMax(zoneIndex);
+        if (zoneMin > zoneMax || zoneMax < lowerBound || zoneMin > upperBound) {
+            // no values, or all the values are outside the range.
+            return NO_MATCH;
+        }
+        if (zoneMin >= lowerBound && zoneMax <= upperBound && isZoneFull(zoneIndex)) {
+            return FULL_MATCH;
+        }
+        return PARTIAL_MATCH;
+    }
+
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return "LongRangeFilter{" +
+                "lowerBound=" + lowerBound +
+                ", upperBound=" + upperBound +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+
+/**
+ * A filter that matches the indices in a set, typically the rows found through an index of the container.
+ * Blocks without any of the indices are skipped by the scan, and the other blocks are narrowed to the
+ * indices in the set before any other filter is evaluated.
+ */
+public class RowSetFilter extends Filter implements IZoneFilter, IBlockFilter {
+
+    private final BitSet rows;
+
+    public RowSetFilter(IAttributeContainer iAttributeContainer, BitSet iRows) {
+        super(iAttributeContainer);
+        rows = iRows;
+    }
+
+    public BitSet getRows() {
+        return rows;
+    }
+
+    @Override
+    public boolean isMatch(int iIndex) {
+        return rows.get(iIndex);
+    }
+
+    @Override
+    public int classifyRange(int fromIndex, int toIndex) {
+        int first = rows.nextSetBit(fromIndex);
+        if (first < 0 || first >= toIndex) {
+            return NO_MATCH;
+        }
+        if (first == fromIndex) {
+            int firstClear = rows.nextClearBit(fromIndex);
+            if (firstClear >= toIndex) {
+                return FULL_MATCH;
+            }
+        }
+        return PARTIAL_MATCH;
+    }
+
+    @Override
+    public void matchBlock(int fromIndex, int toIndex, BitSet matches) {
+        for (int index = matches.nextSetBit(fromIndex); index >= 0 && index < toIndex;
+             index = matches.nextSetBit(index + 1)) {
+            if (!rows.get(index)) {
+                matches.clear(index);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RowSetFilter{" +
+                "rows=" + rows.cardinality() + ", " + super.toString() +
+                '}';
+    }
+}
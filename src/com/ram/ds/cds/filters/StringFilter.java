@@ -1,28 +1,40 @@
 package com.ram.ds.cds.filters;
 
 import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDictionaryStore;
 import com.ram.ds.cds.stores.IStringStore;
 
 /**
+ * Matches the elements whose value equals the target String.  If the store is dictionary encoded, the
+ * target is resolved to its key and the elements are matched by key.
  */
 public class StringFilter extends Filter {
 
     private IStringStore attrStore;
     private boolean isTargetEmpty;
     private String target;
+    private IDictionaryStore dictionaryStore;  // the same as attrStore if it is dictionary encoded, else null
+    private int targetKey;                     // key of the target, -1 if it is not in the dictionary
+    private int resolvedKeyCount;              // dictionary size when targetKey was looked up
 
     public StringFilter(IAttributeContainer iAttributeContainer,
                         String iAttrName,
                         String iTargetString) {
         super(iAttributeContainer);
         attrStore = iAttributeContainer.getStringAttribute(iAttrName);
-        target = iTargetString;
-        isTargetEmpty = attrStore.isEmptyValue(target);
+        if (attrStore instanceof IDictionaryStore) {
+            dictionaryStore = (IDictionaryStore) attrStore;
+        }
+        setTarget(iTargetString);
     }
 
     @Override
     public boolean isMatch(int iIndex)
     {
+    	if (dictionaryStore != null) {
+    		return isKeyMatch(iIndex);
+    	}
+
     	boolean isMatch = false;
     	
     	String value = attrStore.getElement(iIndex);
@@ -39,6 +51,25 @@ public class StringFilter extends Filter {
     	return isMatch;
     }
 
+    private boolean isKeyMatch(int iIndex)
+    {
+    	if (targetKey < 0 && dictionaryStore.getKeyCount() != resolvedKeyCount) {
+    		// the target may have been added to the dictionary since it was looked up.
+    		resolveTargetKey();
+    	}
+    	int key = dictionaryStore.getKeyAt(iIndex);
+    	if (key < 0) {
+    		return isTargetEmpty;
+    	}
+    	return key == targetKey;
+    }
+
+    private void resolveTargetKey()
+    {
+    	resolvedKeyCount = dictionaryStore.getKeyCount();
+    	targetKey = dictionaryStore.getKeyForValidValue(target);
+    }
+
     /**
      * replaces the current target with the new target
      * @param iNewTarget   the new target string
@@ -47,6 +78,9 @@ public class StringFilter extends Filter {
     {
         target = iNewTarget;
         isTargetEmpty = attrStore.isEmptyValue(target);
+        if (dictionaryStore != null) {
+            resolveTargetKey();
+        }
     }
 
     @Override
@@ -0,0 +1,63 @@
+package com.ram.ds.cds.filters;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDictionaryStore;
+
+/**
+ * Matches the elements of a dictionary encoded String store whose value is one of a given list of values,
+ * or, if negated, is none of them.  The values are resolved to their keys through the dictionary, so the
+ * elements are matched by key.  Including the empty value in the list selects the elements with no value.
+ */
+public class StringInFilter extends DictionaryFilter {
+
+    private String[] targets;
+    private boolean isTargetEmpty;
+
+    public StringInFilter(IAttributeContainer iAttributeContainer,
+                          String iAttrName,
+                          boolean iNegate,
+                          String... iTargets) {
+        this(iAttributeContainer, getDictionaryStore(iAttributeContainer, iAttrName), iNegate, iTargets);
+    }
+
+    public StringInFilter(IAttributeContainer iAttributeContainer,
+                          IDictionaryStore iStore,
+                          boolean iNegate,
+                          String... iTargets) {
+        super(iAttributeContainer, iStore, iNegate);
+        targets = iTargets.clone();
+        for (String target : targets) {
+            if (iStore.isEmptyValue(target)) {
+                isTargetEmpty = true;
+            }
+        }
+    }
+
+    @Override
+    protected void selectKeys(int fromKey, int toKey, BitSet keys) {
+        for (String target : targets) {
+            if (getStore().isEmptyValue(target)) {
+                continue;
+            }
+            int key = getStore().getKeyForValidValue(target);
+            if (key >= fromKey && key < toKey) {
+                keys.set(key);
+            }
+        }
+    }
+
+    @Override
+    protected boolean isEmptyMatch() {
+        return isTargetEmpty;
+    }
+
+    @Override
+    public String toString() {
+        return "StringInFilter{" +
+                "targets=" + Arrays.toString(targets) +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDictionaryStore;
+
+/**
+ * Matches the elements of a dictionary encoded String store whose entire value matches a regular
+ * expression, or, if negated, does not.  Each distinct value is tested once.  Elements with no value do
+ * not match the expression.
+ */
+public class StringPatternFilter extends DictionaryFilter {
+
+    private Pattern pattern;
+
+    public StringPatternFilter(IAttributeContainer iAttributeContainer,
+                               String iAttrName,
+                               boolean iNegate,
+                               String iRegex) {
+        this(iAttributeContainer, getDictionaryStore(iAttributeContainer, iAttrName), iNegate, Pattern.compile(iRegex));
+    }
+
+    public StringPatternFilter(IAttributeContainer iAttributeContainer,
+                               IDictionaryStore iStore,
+                               boolean iNegate,
+                               Pattern iPattern) {
+        super(iAttributeContainer, iStore, iNegate);
+        pattern = iPattern;
+    }
+
+    @Override
+    protected void selectKeys(int fromKey, int toKey, BitSet keys) {
+        selectValues(fromKey, toKey, keys, value -> pattern.matcher(value).matches());
+    }
+
+    @Override
+    protected boolean isEmptyMatch() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "StringPatternFilter{" +
+                "pattern=" + pattern +
+                "} " + super.toString();
+    }
+}
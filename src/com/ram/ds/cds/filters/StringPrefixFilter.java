@@ -0,0 +1,48 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDictionaryStore;
+
+/**
+ * Matches the elements of a dictionary encoded String store whose value starts with a given prefix, or,
+ * if negated, does not.  Each distinct value is tested once.  Elements with no value do not match the
+ * prefix.
+ */
+public class StringPrefixFilter extends DictionaryFilter {
+
+    private String prefix;
+
+    public StringPrefixFilter(IAttributeContainer iAttributeContainer,
+                              String iAttrName,
+                              boolean iNegate,
+                              String iPrefix) {
+        this(iAttributeContainer, getDictionaryStore(iAttributeContainer, iAttrName), iNegate, iPrefix);
+    }
+
+    public StringPrefixFilter(IAttributeContainer iAttributeContainer,
+                              IDictionaryStore iStore,
+                              boolean iNegate,
+                              String iPrefix) {
+        super(iAttributeContainer, iStore, iNegate);
+        prefix = iPrefix;
+    }
+
+    @Override
+    protected void selectKeys(int fromKey, int toKey, BitSet keys) {
+        selectValues(fromKey, toKey, keys, value -> value.startsWith(prefix));
+    }
+
+    @Override
+    protected boolean isEmptyMatch() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "StringPrefixFilter{" +
+                "prefix='" + prefix + '\'' +
+                "} " + super.toString();
+    }
+}
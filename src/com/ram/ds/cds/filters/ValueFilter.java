@@ -0,0 +1,156 @@
+package com.ram.ds.cds.filters;
+
+import java.util.BitSet;
+
+import com.ram.ds.cds.IAttributeContainer;
+import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IValidityMappedStore;
+import com.ram.ds.cds.stores.IZoneMappedStore;
+import com.ram.ds.cds.stores.ValidityBitmap;
+
+/**
+ * Base class for filters that test the values of a single numeric store.  If the store keeps zone maps,
+ * whole zones are classified from their summaries, both by {@link #classifyRange(int, int)} and by the
+ * block evaluation in {@link #matchBlock(int, int, BitSet)}.  If the store keeps a validity bitmap, the
+ * block evaluation drops the empty values a word at a time before testing the others.
+ */
+public abstract class ValueFilter extends Filter implements IValueFilter, IZoneFilter, IBlockFilter {
+
+    private IDataStore store;
+    private IZoneMappedStore zoneStore;
+    private IValidityMappedStore validityStore;
+    private ValuePredicate predicate;
+
+    protected ValueFilter(IAttributeContainer iAttributeContainer, IDataStore iStore, ValuePredicate iPredicate) {
+        super(iAttributeContainer);
+        store = iStore;
+        if (iStore instanceof IZoneMappedStore) {
+            zoneStore = (IZoneMappedStore) iStore;
+        }
+        if (iStore instanceof IValidityMappedStore) {
+            validityStore = (IValidityMappedStore) iStore;
+        }
+        predicate = iPredicate;
+    }
+
+    @Override
+    public IDataStore getStore() {
+        return store;
+    }
+
+    @Override
+    public ValuePredicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Classify a single zone of the store from its summary.  Only called when the store keeps zone maps.
+     *
+     * @param zoneIndex a zone of the store.
+     * @return {@link #NO_MATCH}, {@link #PARTIAL_MATCH} or {@link #FULL_MATCH}.
+     */
+    protected abstract int classifyZone(int zoneIndex);
+
+    /**
+     * @return true if the filter cannot match any value, e.g. a range whose lower bound is above
+     * its upper bound.
+     */
+    protected abstract boolean matchesNothing();
+
+    /**
+     * @return true if the filter matches the empty values and nothing else.  Every other filter is taken not
+     * to match the empty values.
+     */
+    protected boolean isEmptyTest() {
+        return false;
+    }
+
+    @Override
+    public int classifyRange(int fromIndex, int toIndex) {
+        if (matchesNothing()) {
+            return NO_MATCH;
+        }
+        if (zoneStore == null || fromIndex >= toIndex) {
+            return PARTIAL_MATCH;
+        }
+
+        if (toIndex > zoneStore.size()) {
+            // the range runs past the end of the store.
+            return PARTIAL_MATCH;
+        }
+        int zoneSizeLog = zoneStore.getZoneSizeLog();
+        int firstZone = fromIndex >> zoneSizeLog;
+        int lastZone = (toIndex - 1) >> zoneSizeLog;
+
+        // A zone that covers more than the range still gives a valid answer for it. A range
+        // that covers several zones is known only if all of them agree.
+        int result = classifyZone(firstZone);
+        for (int zone = firstZone + 1; zone <= lastZone && result != PARTIAL_MATCH; zone++) {
+            if (classifyZone(zone) != result) {
+                result = PARTIAL_MATCH;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void matchBlock(int fromIndex, int toIndex, BitSet matches) {
+        if (matchesNothing()) {
+            matches.clear(fromIndex, toIndex);
+            return;
+        }
+
+        // Work one zone at a time so that each zone is decided from its summary when possible.
+        int segmentSize = (zoneStore == null) ? Integer.MAX_VALUE : 1 << zoneStore.getZoneSizeLog();
+        ValidityBitmap validity = (validityStore == null) ? null : validityStore.getValidity();
+        int segmentStart = fromIndex;
+        while (segmentStart < toIndex) {
+            int segmentEnd = (int) Math.min((long) toIndex, ((long) segmentStart / segmentSize + 1) * segmentSize);
+            int segmentMatch = classifyRange(segmentStart, segmentEnd);
+            if (segmentMatch == NO_MATCH) {
+                matches.clear(segmentStart, segmentEnd);
+            } else if (segmentMatch == PARTIAL_MATCH) {
+                if (validity != null) {
+                    if (isEmptyTest()) {
+                        validity.andNot(segmentStart, segmentEnd, matches);
+                        segmentStart = segmentEnd;
+                        continue;
+                    }
+                    validity.and(segmentStart, segmentEnd, matches);
+                }
+                for (int i = matches.nextSetBit(segmentStart); i >= 0 && i < segmentEnd; i = matches.nextSetBit(i + 1)) {
+                    if (!isMatch(i)) {
+                        matches.clear(i);
+                    }
+                }
+            }
+            segmentStart = segmentEnd;
+        }
+    }
+
+    /**
+     * @param zoneIndex a zone of the store.
+     * @return true if every index in the zone holds a non-empty value.
+     */
+    protected boolean isZoneFull(int zoneIndex) {
+        return zoneStore.getZoneEmptyCount(zoneIndex) == 0;
+    }
+
+    /**
+     * @param zoneIndex a zone of the store.
+     * @return true if every index in the zone holds the empty value.
+     */
+    protected boolean isZoneEmpty(int zoneIndex) {
+        int zoneSizeLog = zoneStore.getZoneSizeLog();
+        int zoneStart = zoneIndex << zoneSizeLog;
+        int zoneRows = Math.min(1 << zoneSizeLog, zoneStore.size() - zoneStart);
+        return zoneStore.getZoneEmptyCount(zoneIndex) == zoneRows;
+    }
+
+    @Override
+    public String toString() {
+        return "ValueFilter{" +
+                "predicate=" + predicate +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ram.ds.cds.filters;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable description of a test on a single value, as applied by an {@link IValueFilter}.  Two
+ * predicates are equal if they have the same operator and operands, so a predicate can be used as part
+ * of a cache key.
+ */
+public final class ValuePredicate implements Serializable {
+
+    private static final long serialVersionUID = 2749158364028716453L;
+
+    public enum Operator {
+        EQUAL,
+        LESS_THAN,
+        LESS_OR_EQUAL,
+        GREATER_THAN,
+        GREATER_OR_EQUAL,
+        BETWEEN,      // two operands, both inclusive
+        IN,           // any number of operands
+        IS_EMPTY      // no operands
+    }
+
+    private final Operator operator;
+    private final Number[] operands;
+
+    public ValuePredicate(Operator operator, Number... operands) {
+        this.operator = operator;
+        this.operands = operands.clone();
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return a copy of the operands, in the order they were given.
+     */
+    public Number[] getOperands() {
+        return operands.clone();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
+        if ((object instanceof ValuePredicate) == false) {
+            return false;
+        }
+        ValuePredicate other = (ValuePredicate) object;
+        return other.operator == this.operator && Arrays.equals(other.operands, this.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return operator.hashCode() * 31 + Arrays.hashCode(operands);
+    }
+
+    @Override
+    public String toString() {
+        return operator + Arrays.toString(operands);
+    }
+}
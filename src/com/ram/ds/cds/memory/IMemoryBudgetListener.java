@@ -0,0 +1,18 @@
+package com.ram.ds.cds.memory;
+
+/**
+ * Receives warnings from a {@link MemoryBudget}.
+ */
+public interface IMemoryBudgetListener {
+
+    /**
+     * Called when a check finds the cube above the warning level of the budget, or when its running estimate
+     * crosses the warning level.
+     *
+     * @param budget the budget that was checked.
+     * @param usage the memory usage of the cube at the time of the check; when it comes from the running
+     *              estimate, a single total with no breakdown.
+     * @param requestedBytes the additional bytes requested by a load, 0 for a periodic check.
+     */
+    void budgetWarning(MemoryBudget budget, MemoryUsage usage, long requestedBytes);
+}
@@ -0,0 +1,165 @@
+package com.ram.ds.cds.memory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ram.ds.cds.CdsException;
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IStoreGrowthListener;
+
+/**
+ * A limit on the memory retained by a cube, with a lower warning level.  The budget keeps a running estimate
+ * of the bytes retained: each {@link #check(CubeDs) check} measures the whole cube and resets it, and in
+ * between it grows with the bytes {@link #record(long) recorded}, for example by the stores of the cube as
+ * they allocate chunks.  Loads are checked against the estimate, and are refused with a {@link CdsException}
+ * if they would take the cube past the limit.  Listeners are notified when a check finds the cube above the
+ * warning level, and when the estimate crosses it.
+ */
+public class MemoryBudget implements IStoreGrowthListener {
+
+    private final long limitBytes;
+    private final long warningBytes;
+    private final List<IMemoryBudgetListener> listeners = new CopyOnWriteArrayList<IMemoryBudgetListener>();
+
+    /**
+     * The estimated bytes retained by the cube, -1 until it is first measured.
+     */
+    private final AtomicLong retainedBytes = new AtomicLong(-1);
+
+    /**
+     * @param limitBytes the maximum number of bytes, heap and off-heap, the cube may retain.
+     * @param warningFraction the fraction of the limit above which listeners are warned, between 0 and 1.
+     * @throws IllegalArgumentException if the limit is negative or the fraction is out of range.
+     */
+    public MemoryBudget(long limitBytes, double warningFraction) {
+        if (limitBytes < 0) {
+            throw new IllegalArgumentException("Negative memory limit: " + limitBytes);
+        }
+        if (!(warningFraction >= 0 && warningFraction <= 1)) {
+            throw new IllegalArgumentException("Warning fraction must be between 0 and 1: " + warningFraction);
+        }
+        this.limitBytes = limitBytes;
+        this.warningBytes = (long) (limitBytes * warningFraction);
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public long getWarningBytes() {
+        return warningBytes;
+    }
+
+    /**
+     * @return the running estimate of the bytes retained by the cube, or -1 if it has not been measured yet.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    public void addListener(IMemoryBudgetListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IMemoryBudgetListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Measure the whole cube, reset the running estimate to the measurement, and warn the listeners if the
+     * cube is above the warning level.
+     *
+     * @return the measured usage.
+     */
+    public MemoryUsage check(CubeDs cube) {
+        MemoryUsage usage = cube.getMemoryUsage();
+        retainedBytes.set(usage.getTotalBytes());
+        if (usage.getTotalBytes() > warningBytes) {
+            notifyListeners(usage, 0);
+        }
+        return usage;
+    }
+
+    /**
+     * Check that the cube can take a load of the given size, against the running estimate.  The cube is only
+     * measured if it has not been yet.  Listeners are warned if the load takes the cube above the warning
+     * level.  The load itself is not recorded: the stores record what they allocate as it is loaded.
+     *
+     * @param cube the cube to load into.
+     * @param requestedBytes the estimated bytes the load will add.
+     * @return the estimated bytes retained before the load.
+     * @throws CdsException if the load would take the cube past the limit.
+     */
+    public long checkLoad(CubeDs cube, long requestedBytes) {
+        long retained = retainedBytes.get();
+        if (retained < 0) {
+            retained = cube.getMemoryUsage().getTotalBytes();
+            retainedBytes.compareAndSet(-1, retained);
+        }
+        checkLimit(retained, requestedBytes);
+        if (retained + requestedBytes > warningBytes) {
+            notifyListeners(estimatedUsage(retained), requestedBytes);
+        }
+        return retained;
+    }
+
+    /**
+     * Check that the cube can grow by the given number of bytes, against the running estimate, without
+     * warning the listeners.  Used as items are added, so it costs no more than a read.
+     *
+     * @param requestedBytes the estimated bytes the growth will add, 0 to check that the cube is not past
+     *            the limit already.
+     * @throws CdsException if the growth would take the cube past the limit.
+     */
+    public void checkGrowth(long requestedBytes) {
+        checkLimit(Math.max(retainedBytes.get(), 0), requestedBytes);
+    }
+
+    /**
+     * Add bytes that the cube has taken to the running estimate.  Listeners are warned if this takes the
+     * estimate across the warning level.
+     *
+     * @param bytes the bytes added.
+     */
+    public void record(long bytes) {
+        long retained = retainedBytes.addAndGet(bytes);
+        if (retained > warningBytes && retained - bytes <= warningBytes) {
+            notifyListeners(estimatedUsage(retained), 0);
+        }
+    }
+
+    /**
+     * Records the growth of a store of the cube.
+     */
+    @Override
+    public void storeGrown(IDataStore store, long bytes) {
+        record(bytes);
+    }
+
+    private void checkLimit(long retained, long requestedBytes) {
+        if (retained + requestedBytes > limitBytes) {
+            throw new CdsException("Load of " + requestedBytes + " bytes refused: the cube retains an estimated "
+                    + retained + " bytes and its memory limit is " + limitBytes + " bytes");
+        }
+    }
+
+    private static MemoryUsage estimatedUsage(long retained) {
+        return new MemoryUsage("cube", MemoryUsage.Kind.CUBE, retained, 0);
+    }
+
+    private void notifyListeners(MemoryUsage usage, long requestedBytes) {
+        for (IMemoryBudgetListener listener : listeners) {
+            listener.budgetWarning(this, usage, requestedBytes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryBudget{" +
+                "limitBytes=" + limitBytes +
+                ", warningBytes=" + warningBytes +
+                '}';
+    }
+}
@@ -0,0 +1,151 @@
+package com.ram.ds.cds.memory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.util.BitSet;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Estimates the heap size of the objects that the stores and containers are built from.  The estimates
+ * follow the layout of a 64-bit HotSpot JVM, with or without compressed references, and assume compact
+ * (Latin-1) Strings.  They never walk the heap, so they are cheap enough to run periodically.
+ */
+public final class MemoryEstimator {
+
+    public static final int REFERENCE_SIZE = isCompressedOops() ? 4 : 8;
+    public static final int OBJECT_HEADER_SIZE = isCompressedOops() ? 12 : 16;
+    public static final int ARRAY_HEADER_SIZE = isCompressedOops() ? 16 : 24;
+    private static final int ALIGNMENT = 8;
+
+    // HashMap: the map object, one node per entry, and a table sized to keep the load factor under 0.75.
+    private static final long HASH_MAP_SIZE = align(OBJECT_HEADER_SIZE + 6 * REFERENCE_SIZE + 4 * Integer.BYTES);
+    private static final long HASH_MAP_NODE_SIZE = align(OBJECT_HEADER_SIZE + 3 * REFERENCE_SIZE + Integer.BYTES);
+    private static final long STRING_SIZE = align(OBJECT_HEADER_SIZE + REFERENCE_SIZE + Integer.BYTES + 2);
+    private static final long BOXED_SIZE = align(OBJECT_HEADER_SIZE + Long.BYTES);
+
+    private MemoryEstimator() {
+    }
+
+    private static boolean isCompressedOops() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return bean == null || Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+        } catch (RuntimeException e) {
+            return true;  // the default on heaps under 32GB
+        }
+    }
+
+    public static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * @param referenceFields the number of reference fields in the object.
+     * @param primitiveBytes the total size of the primitive fields in the object.
+     * @return the shallow size of an object.
+     */
+    public static long sizeOfObject(int referenceFields, int primitiveBytes) {
+        return align(OBJECT_HEADER_SIZE + (long) referenceFields * REFERENCE_SIZE + primitiveBytes);
+    }
+
+    /**
+     * Estimate the size of an array, including the arrays, Strings and BitSets it references, recursively.
+     * Boxed values are counted as references only, since the stores use the shared Boolean constants.
+     *
+     * @param array an array of any type, or null.
+     * @return the size in bytes, 0 for null.
+     */
+    public static long sizeOfArray(Object array) {
+        if (array == null) {
+            return 0;
+        }
+        Class<?> componentType = array.getClass().getComponentType();
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER_SIZE + (long) length * sizeOfPrimitive(componentType));
+        }
+        long size = align(ARRAY_HEADER_SIZE + (long) length * REFERENCE_SIZE);
+        if (componentType.isArray()) {
+            for (Object element : (Object[]) array) {
+                size += sizeOfArray(element);
+            }
+        } else if (componentType == String.class) {
+            for (Object element : (Object[]) array) {
+                size += sizeOfString((String) element);
+            }
+        } else if (componentType == BitSet.class) {
+            for (Object element : (Object[]) array) {
+                size += sizeOfBitSet((BitSet) element);
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOfPrimitive(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * @return the size of a String and its character array, 0 for null.
+     */
+    public static long sizeOfString(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return STRING_SIZE + align(ARRAY_HEADER_SIZE + value.length());
+    }
+
+    /**
+     * @return the size of a BitSet and its word array, 0 for null.
+     */
+    public static long sizeOfBitSet(BitSet bitSet) {
+        if (bitSet == null) {
+            return 0;
+        }
+        return sizeOfObject(1, Integer.BYTES + 1) + align(ARRAY_HEADER_SIZE + (long) bitSet.size() / Byte.SIZE);
+    }
+
+    /**
+     * Estimate the size of a HashMap, excluding its keys and values.
+     *
+     * @param entryCount the number of entries in the map.
+     */
+    public static long sizeOfHashMap(int entryCount) {
+        long tableSize = 0;
+        if (entryCount > 0) {
+            long capacity = Long.highestOneBit(Math.max(16, (long) (entryCount / 0.75f) + 1) - 1) << 1;
+            tableSize = align(ARRAY_HEADER_SIZE + capacity * REFERENCE_SIZE);
+        }
+        return HASH_MAP_SIZE + tableSize + entryCount * HASH_MAP_NODE_SIZE;
+    }
+
+    /**
+     * Estimate the size of an open addressing hash map, such as the Trove maps, excluding its keys.
+     *
+     * @param entryCount the number of entries in the map.
+     * @param valueBytes the size of each primitive value.
+     */
+    public static long sizeOfOpenHashMap(int entryCount, int valueBytes) {
+        long capacity = Math.max(11, 2L * entryCount + 1);  // default load factor of 0.5
+        return sizeOfObject(4, 4 * Integer.BYTES)
+                + align(ARRAY_HEADER_SIZE + capacity * REFERENCE_SIZE)
+                + align(ARRAY_HEADER_SIZE + capacity * valueBytes);
+    }
+
+    /**
+     * @return the size of a boxed Integer or Long, 0 if the value comes from the shared cache.
+     */
+    public static long sizeOfBoxed(long value) {
+        return (value >= -128 && value <= 127) ? 0 : BOXED_SIZE;
+    }
+}
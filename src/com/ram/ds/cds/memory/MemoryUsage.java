@@ -0,0 +1,129 @@
+package com.ram.ds.cds.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The memory retained by one part of a cube, and by each of its parts.  The own bytes are those held
+ * directly by this part; the totals include the parts below it.
+ */
+public class MemoryUsage {
+
+    public enum Kind {
+        CUBE,
+        DIMENSION,
+        LEVEL,
+        INTERSECTION,
+        ATTRIBUTE,
+        CACHE
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final long heapBytes;
+    private final long offHeapBytes;
+    private final List<MemoryUsage> children = new ArrayList<MemoryUsage>();
+
+    public MemoryUsage(String name, Kind kind, long heapBytes, long offHeapBytes) {
+        this.name = name;
+        this.kind = kind;
+        this.heapBytes = heapBytes;
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    public void addChild(MemoryUsage child) {
+        children.add(child);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the heap bytes held directly by this part, not including its children.
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * @return the off-heap bytes held directly by this part, not including its children.
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public List<MemoryUsage> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * @param childName the name of a direct child.
+     * @return the child, or null if there is none with that name.
+     */
+    public MemoryUsage getChild(String childName) {
+        for (MemoryUsage child : children) {
+            if (child.name.equals(childName)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    public long getTotalHeapBytes() {
+        long total = heapBytes;
+        for (MemoryUsage child : children) {
+            total += child.getTotalHeapBytes();
+        }
+        return total;
+    }
+
+    public long getTotalOffHeapBytes() {
+        long total = offHeapBytes;
+        for (MemoryUsage child : children) {
+            total += child.getTotalOffHeapBytes();
+        }
+        return total;
+    }
+
+    public long getTotalBytes() {
+        return getTotalHeapBytes() + getTotalOffHeapBytes();
+    }
+
+    /**
+     * @return an indented report of this part and all the parts below it.
+     */
+    public String toReport() {
+        StringBuilder report = new StringBuilder();
+        appendReport(report, 0);
+        return report.toString();
+    }
+
+    private void appendReport(StringBuilder report, int depth) {
+        for (int i = 0; i < depth; i++) {
+            report.append("  ");
+        }
+        report.append(kind).append(' ').append(name)
+              .append(": heap=").append(getTotalHeapBytes())
+              .append(", offHeap=").append(getTotalOffHeapBytes())
+              .append('\n');
+        for (MemoryUsage child : children) {
+            child.appendReport(report, depth + 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryUsage{" +
+                "name='" + name + '\'' +
+                ", kind=" + kind +
+                ", totalHeapBytes=" + getTotalHeapBytes() +
+                ", totalOffHeapBytes=" + getTotalOffHeapBytes() +
+                '}';
+    }
+}
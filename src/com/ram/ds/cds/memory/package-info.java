@@ -0,0 +1,5 @@
+/**
+ * Memory accounting: estimates of the bytes retained by stores, levels, dimensions, intersections and
+ * their caches, and budgets that warn about or refuse growth beyond a limit.
+ */
+package com.ram.ds.cds.memory;
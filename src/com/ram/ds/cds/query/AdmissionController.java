@@ -0,0 +1,151 @@
+package com.ram.ds.cds.query;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ram.ds.cds.CdsException;
+
+/**
+ * Runs heavy scans on a bounded pool of platform threads.  At most maxConcurrentScans scans run at once; the
+ * others wait in a queue ordered by {@link QueryPriority}, then by arrival.  A scan submitted while the queue
+ * is full is refused with a CdsException rather than left to wait indefinitely.
+ */
+public class AdmissionController implements AutoCloseable {
+
+    private final ThreadPoolExecutor scanPool;
+    private final int maxQueuedScans;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Create a controller that runs one scan per available processor and queues up to 1000 scans.
+     */
+    public AdmissionController() {
+        this(Runtime.getRuntime().availableProcessors(), 1000);
+    }
+
+    /**
+     * @param maxConcurrentScans the number of scans that may run at once, also the number of pool threads.
+     * @param maxQueuedScans the number of scans that may wait for admission.
+     */
+    public AdmissionController(int maxConcurrentScans, int maxQueuedScans) {
+        if (maxConcurrentScans < 1) {
+            throw new IllegalArgumentException("maxConcurrentScans must be at least 1: " + maxConcurrentScans);
+        }
+        if (maxQueuedScans < 0) {
+            throw new IllegalArgumentException("maxQueuedScans must not be negative: " + maxQueuedScans);
+        }
+        this.maxQueuedScans = maxQueuedScans;
+        this.scanPool = new ThreadPoolExecutor(maxConcurrentScans, maxConcurrentScans, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ScanThreadFactory());
+    }
+
+    /**
+     * Queue a scan for admission.
+     *
+     * @param scan the scan to run.
+     * @param priority the priority of the scan in the queue.
+     * @return a future completed with the result of the scan.  Cancelling it before the scan is admitted keeps
+     *         the scan from running.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> scan, QueryPriority priority) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        if (scanPool.getQueue().size() >= maxQueuedScans) {
+            result.completeExceptionally(new CdsException("Scan refused: " + maxQueuedScans + " scans are already queued"));
+            return result;
+        }
+        try {
+            scanPool.execute(new ScanTask<T>(scan, priority, sequence.getAndIncrement(), result));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new CdsException("Scan refused: the admission controller is closed"));
+        }
+        return result;
+    }
+
+    public int getMaxConcurrentScans() {
+        return scanPool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of scans currently running.
+     */
+    public int getRunningScans() {
+        return scanPool.getActiveCount();
+    }
+
+    /**
+     * @return the number of scans waiting for admission.
+     */
+    public int getQueuedScans() {
+        return scanPool.getQueue().size();
+    }
+
+    /**
+     * Stop admitting scans.  Scans already queued still run.
+     */
+    @Override
+    public void close() {
+        scanPool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "maxConcurrentScans=" + getMaxConcurrentScans() +
+                ", maxQueuedScans=" + maxQueuedScans +
+                ", runningScans=" + getRunningScans() +
+                ", queuedScans=" + getQueuedScans() +
+                '}';
+    }
+
+    private static class ScanTask<T> implements Runnable, Comparable<ScanTask<?>> {
+
+        private final Callable<T> scan;
+        private final QueryPriority priority;
+        private final long sequence;
+        private final CompletableFuture<T> result;
+
+        ScanTask(Callable<T> scan, QueryPriority priority, long sequence, CompletableFuture<T> result) {
+            this.scan = scan;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return; // cancelled while queued
+            }
+            try {
+                result.complete(scan.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        @Override
+        public int compareTo(ScanTask<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class ScanThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cube-scan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.ram.ds.cds.query;
+
+import java.lang.reflect.Method;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ram.ds.cds.AggregationRequest;
+import com.ram.ds.cds.CdsException;
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.Dimension;
+import com.ram.ds.cds.Element;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.LevelMemberInfo;
+import com.ram.ds.cds.LevelMemberTuple;
+import com.ram.ds.cds.MeasureValueSorter;
+import com.ram.ds.cds.aggregator.Aggregator;
+import com.ram.ds.cds.filters.IFilter;
+
+/**
+ * Asynchronous facade over a {@link CubeDs}.  Each query returns a CompletableFuture instead of blocking the
+ * caller.
+ *
+ * <p>A query that scans fewer rows than the scan threshold runs at once on its own thread: a virtual thread
+ * when the runtime provides them, otherwise a thread from a cached pool.  Larger scans go through the
+ * {@link AdmissionController}, which runs a bounded number of them at a time in priority order, so that
+ * small queries keep their latency while large rollups run.</p>
+ *
+ * <p>Queries only read the cube.  Loading data or changing the dimensions while queries are running is not
+ * supported.  The one exception is {@link #compact(String, QueryPriority)}, which waits for the running queries
+ * to finish and holds back new ones while it rewrites an intersection.</p>
+ *
+ * <p>Large results can also be published as a {@link java.util.concurrent.Flow.Publisher}, see
+ * {@link ResultPublisher}, which sends them a page at a time as the subscriber requests them.</p>
+ */
+public class CubeQueryExecutor implements AutoCloseable {
+
+    /**
+     * Default number of intersection rows at which a query is treated as a heavy scan.
+     */
+    public static final int DEFAULT_SCAN_THRESHOLD = 1 << 18;
+
+    private final CubeDs cube;
+    private final AdmissionController admissionController;
+    private final boolean ownsAdmissionController;
+    private final ExecutorService queryExecutor;
+    private volatile int scanThreshold = DEFAULT_SCAN_THRESHOLD;
+
+    /**
+     * Held shared by every query, and exclusively by maintenance such as compaction.
+     */
+    private final ReentrantReadWriteLock maintenanceLock = new ReentrantReadWriteLock();
+
+    /**
+     * Create an executor with its own admission controller, sized to the available processors.
+     */
+    public CubeQueryExecutor(CubeDs cube) {
+        this(cube, new AdmissionController(), true);
+    }
+
+    /**
+     * Create an executor that shares the given admission controller, for example with the executors of other
+     * cubes.  Closing this executor does not close the controller.
+     */
+    public CubeQueryExecutor(CubeDs cube, AdmissionController admissionController) {
+        this(cube, admissionController, false);
+    }
+
+    private CubeQueryExecutor(CubeDs cube, AdmissionController admissionController, boolean ownsAdmissionController) {
+        if (cube == null) {
+            throw new IllegalArgumentException("cube must not be null");
+        }
+        if (admissionController == null) {
+            throw new IllegalArgumentException("admissionController must not be null");
+        }
+        this.cube = cube;
+        this.admissionController = admissionController;
+        this.ownsAdmissionController = ownsAdmissionController;
+        this.queryExecutor = newQueryExecutor();
+    }
+
+    public CubeDs getCube() {
+        return cube;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public int getScanThreshold() {
+        return scanThreshold;
+    }
+
+    /**
+     * @param scanThreshold the number of intersection rows at which a query is sent to the admission controller.
+     */
+    public void setScanThreshold(int scanThreshold) {
+        if (scanThreshold < 0) {
+            throw new IllegalArgumentException("scanThreshold must not be negative: " + scanThreshold);
+        }
+        this.scanThreshold = scanThreshold;
+    }
+
+    /**
+     * Asynchronous version of {@link CubeDs#aggregate(Map, String, Aggregator[], IFilter[])}.
+     *
+     * @return a future completed with the given aggregators once they have seen every matching element.
+     */
+    public CompletableFuture<Aggregator[]> aggregate(Map<String, String> iDimensionNameToHierarchyNameMap,
+                                                     String iIntersectionName,
+                                                     Aggregator[] aggregators,
+                                                     IFilter[] iFilters,
+                                                     QueryPriority priority) {
+        return submit(() -> {
+            cube.aggregate(iDimensionNameToHierarchyNameMap, iIntersectionName, aggregators, iFilters);
+            return aggregators;
+        }, priority, isFullScan(cube.getIntersection(iIntersectionName)));
+    }
+
+    /**
+     * Asynchronous version of {@link CubeDs#aggregate(Map, String, List)}, which serves a batch of aggregations
+     * with one scan of the intersection.
+     *
+     * @return a future completed with the given requests once their aggregators have seen every matching element.
+     */
+    public CompletableFuture<List<AggregationRequest>> aggregate(Map<String, String> iDimensionNameToHierarchyNameMap,
+                                                                 String iIntersectionName,
+                                                                 List<AggregationRequest> requests,
+                                                                 QueryPriority priority) {
+        return submit(() -> {
+            cube.aggregate(iDimensionNameToHierarchyNameMap, iIntersectionName, requests);
+            return requests;
+        }, priority, isFullScan(cube.getIntersection(iIntersectionName)));
+    }
+
+    /**
+     * Asynchronous version of {@link CubeDs#aggregate(String, Aggregator[])}.
+     *
+     * @return a future completed with the given aggregators once they have seen every element.
+     */
+    public CompletableFuture<Aggregator[]> aggregate(String iIntersectionName,
+                                                     Aggregator[] aggregators,
+                                                     QueryPriority priority) {
+        return submit(() -> {
+            cube.aggregate(iIntersectionName, aggregators);
+            return aggregators;
+        }, priority, isFullScan(cube.getIntersection(iIntersectionName)));
+    }
+
+    /**
+     * Asynchronous version of {@link Dimension#getChildMembers(CubeDs, Map, HierarchyLevel, int, HierarchyLevel,
+     * HierarchyLevel, LevelMemberTuple, List, Collection, boolean)}.  Only a query that excludes empty members
+     * scans the intersections, so only such a query can count as a heavy scan.
+     */
+    public CompletableFuture<LevelMemberInfo[]> getChildMembers(Dimension dimension,
+                                                                Map<Intersection, BitSet> intersectionViews,
+                                                                HierarchyLevel parentLevel,
+                                                                int parentMemberId,
+                                                                HierarchyLevel childLevel,
+                                                                HierarchyLevel grandchildLevel,
+                                                                LevelMemberTuple context,
+                                                                List<IFilter> levelFilters,
+                                                                Collection<Intersection> intersections,
+                                                                boolean excludeEmpty,
+                                                                QueryPriority priority) {
+        boolean fullScan = false;
+        if (excludeEmpty && intersections != null) {
+            long rows = 0;
+            for (Intersection intersection : intersections) {
+                rows += intersection.size();
+            }
+            fullScan = rows >= scanThreshold;
+        }
+        return submit(() -> dimension.getChildMembers(cube, intersectionViews, parentLevel, parentMemberId,
+                childLevel, grandchildLevel, context, levelFilters, intersections, excludeEmpty), priority, fullScan);
+    }
+
+    /**
+     * Asynchronous version of {@link Dimension#getChildMembers(CubeDs, HierarchyLevel, int, HierarchyLevel,
+     * HierarchyLevel, LevelMemberTuple, Collection, boolean)}.
+     */
+    public CompletableFuture<LevelMemberInfo[]> getChildMembers(Dimension dimension,
+                                                                HierarchyLevel parentLevel,
+                                                                int parentMemberId,
+                                                                HierarchyLevel childLevel,
+                                                                HierarchyLevel grandchildLevel,
+                                                                LevelMemberTuple context,
+                                                                Collection<Intersection> intersections,
+                                                                boolean excludeEmpty,
+                                                                QueryPriority priority) {
+        return getChildMembers(dimension, null, parentLevel, parentMemberId, childLevel, grandchildLevel, context,
+                null, intersections, excludeEmpty, priority);
+    }
+
+    /**
+     * Streaming version of {@link Dimension#getChildMembers(CubeDs, Map, HierarchyLevel, int, HierarchyLevel,
+     * HierarchyLevel, LevelMemberTuple, List, Collection, boolean)}: the children are selected when a subscriber
+     * first requests results, then sent to it as it requests them, so that the first page of a large level can
+     * be shown before the rest has been created.  When excludeEmpty is set, the scan for the non-empty
+     * children still runs in full before the first child is sent.
+     *
+     * @return a publisher that runs the query once for each subscriber.
+     */
+    public Flow.Publisher<LevelMemberInfo> publishChildMembers(Dimension dimension,
+                                                              Map<Intersection, BitSet> intersectionViews,
+                                                              HierarchyLevel parentLevel,
+                                                              int parentMemberId,
+                                                              HierarchyLevel childLevel,
+                                                              HierarchyLevel grandchildLevel,
+                                                              LevelMemberTuple context,
+                                                              List<IFilter> levelFilters,
+                                                              Collection<Intersection> intersections,
+                                                              boolean excludeEmpty) {
+        return publish(() -> dimension.getChildMemberIterator(cube, intersectionViews, parentLevel, parentMemberId,
+                childLevel, grandchildLevel, context, levelFilters, intersections, excludeEmpty));
+    }
+
+    /**
+     * Streaming version of {@link Dimension#getDescendantElements(String, Element, HierarchyLevel)}; see
+     * {@link #publishChildMembers}.
+     */
+    public Flow.Publisher<Element> publishDescendantElements(Dimension dimension,
+                                                            String hierarchyName,
+                                                            Element element,
+                                                            HierarchyLevel targetLevel) {
+        return publish(() -> dimension.getDescendantElementIterator(hierarchyName, element, targetLevel));
+    }
+
+    /**
+     * Publish the rows of the sorter in sorted order, see {@link MeasureValueSorter#getSortedRows()}, so that
+     * the first page of a large result is sent without waiting for every row to be sorted.
+     */
+    public Flow.Publisher<Integer> publishSortedRows(MeasureValueSorter sorter) {
+        return publish(sorter::getSortedRows);
+    }
+
+    /**
+     * Publish the results of an arbitrary query against the cube, as the subscriber requests them.  Results are
+     * taken from the iterator on the query threads of this executor, holding off compaction meanwhile.
+     *
+     * @param query gives an iterator over the results; it is called once for each subscriber.
+     * @return a publisher of the results.
+     */
+    public <T> Flow.Publisher<T> publish(Callable<? extends Iterator<? extends T>> query) {
+        return new ResultPublisher<T>(query, queryExecutor, maintenanceLock.readLock());
+    }
+
+    /**
+     * Run an arbitrary query against the cube.  Cancelling the returned future also cancels the scan it
+     * started.
+     *
+     * @param query the query.
+     * @param priority the priority of the query if it has to wait for admission.
+     * @param fullScan true if the query is a heavy scan that should go through the admission controller.
+     * @return a future completed with the result of the query.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> query, QueryPriority priority, boolean fullScan) {
+        return submit(query, priority, fullScan, new QueryContext());
+    }
+
+    /**
+     * Run an arbitrary query against the cube under the given context, for example one with a deadline.  The
+     * context is entered on the thread that runs the query, and is cancelled if the returned future is.
+     *
+     * @param query the query.
+     * @param priority the priority of the query if it has to wait for admission.
+     * @param fullScan true if the query is a heavy scan that should go through the admission controller.
+     * @param context the context the query runs under.
+     * @return a future completed with the result of the query.
+     */
+    @SuppressWarnings("try")
+    public <T> CompletableFuture<T> submit(Callable<T> query, QueryPriority priority, boolean fullScan,
+                                           QueryContext context) {
+        Callable<T> contextQuery = () -> {
+            context.check(); // may have been cancelled or expired while queued
+            maintenanceLock.readLock().lock();
+            try (QueryContext.Scope scope = context.enter()) {
+                return query.call();
+            } finally {
+                maintenanceLock.readLock().unlock();
+            }
+        };
+        CompletableFuture<T> result = fullScan
+                ? admissionController.submit(contextQuery, priority)
+                : runQuery(contextQuery);
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                context.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Compact an intersection in the background: remove its deleted items, see {@link Intersection#compact()}.
+     * The compaction waits for admission like a full scan, then for the queries running on this executor to
+     * finish; queries submitted meanwhile wait for it.  Nothing is done if the intersection has no deleted
+     * items.
+     *
+     * @param iIntersectionName the name of the intersection.
+     * @param priority the priority of the compaction while it waits for admission, typically LOW.
+     * @return a future completed with the new position of each item, or -1 for the items removed.
+     */
+    public CompletableFuture<int[]> compact(String iIntersectionName, QueryPriority priority) {
+        Intersection intersection = cube.getIntersection(iIntersectionName);
+        if (intersection == null) {
+            throw new IllegalArgumentException("No intersection named " + iIntersectionName);
+        }
+        return admissionController.submit(() -> {
+            if (intersection.getDeletedItemCount() == 0) {
+                return intersection.compact(); // the identity mapping
+            }
+            maintenanceLock.writeLock().lock();
+            try {
+                return intersection.compact();
+            } finally {
+                maintenanceLock.writeLock().unlock();
+            }
+        }, priority);
+    }
+
+    private <T> CompletableFuture<T> runQuery(Callable<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        try {
+            queryExecutor.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(query.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new CdsException("Query refused: the query executor is closed"));
+        }
+        return result;
+    }
+
+    /**
+     * Stop accepting queries.  Queries already submitted still run.
+     */
+    @Override
+    public void close() {
+        queryExecutor.shutdown();
+        if (ownsAdmissionController) {
+            admissionController.close();
+        }
+    }
+
+    private boolean isFullScan(Intersection intersection) {
+        return intersection != null && intersection.size() >= scanThreshold;
+    }
+
+    /**
+     * Use a thread per query: virtual threads when the runtime has them (Java 21 and later), otherwise a
+     * cached pool of daemon threads.
+     */
+    private static ExecutorService newQueryExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "cube-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CubeQueryExecutor{" +
+                "scanThreshold=" + scanThreshold +
+                ", admissionController=" + admissionController +
+                '}';
+    }
+}
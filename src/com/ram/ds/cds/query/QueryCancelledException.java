@@ -0,0 +1,15 @@
+package com.ram.ds.cds.query;
+
+import com.ram.ds.cds.CdsException;
+
+/**
+ * Thrown from a scan that stops because its {@link QueryContext} was cancelled or ran past its deadline.
+ */
+public class QueryCancelledException extends CdsException {
+
+    private static final long serialVersionUID = 4212386529761305542L;
+
+    public QueryCancelledException(String message) {
+        super(message);
+    }
+}
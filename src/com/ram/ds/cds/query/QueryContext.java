@@ -0,0 +1,170 @@
+package com.ram.ds.cds.query;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline and cancellation token for a query.  The context is entered on the thread that runs the query;
+ * the scans check it at chunk boundaries and stop once it is cancelled or past its deadline.
+ *
+ * <p>A scan that stops throws a {@link QueryCancelledException}, unless the context was created to accept
+ * partial results.  In that case an aggregation returns normally with what it accumulated so far and
+ * {@link #isPartial()} is set.  Selectors and child member lists are never returned partially, since an
+ * incomplete selector would silently drop members.</p>
+ *
+ * <pre>
+ * QueryContext context = new QueryContext(2, TimeUnit.SECONDS, true);
+ * try (QueryContext.Scope scope = context.enter()) {
+ *     cube.aggregate(hierarchies, "ProductStore", aggregators, filters);
+ * }
+ * if (context.isPartial()) ...
+ * </pre>
+ */
+public class QueryContext {
+
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<QueryContext>();
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final boolean partialResults;
+    private volatile boolean cancelled;
+    private volatile boolean partial;
+
+    /**
+     * Create a context with no deadline, that can only be cancelled.
+     */
+    public QueryContext() {
+        this.deadlineNanos = 0;
+        this.hasDeadline = false;
+        this.partialResults = false;
+    }
+
+    /**
+     * @param timeout the time the query may run, from now.
+     * @param unit the unit of the timeout.
+     * @param partialResults true if an aggregation that stops should return what it has accumulated instead of
+     *                       throwing.
+     */
+    public QueryContext(long timeout, TimeUnit unit, boolean partialResults) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+        }
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+        this.partialResults = partialResults;
+    }
+
+    /**
+     * @return the context entered on the current thread, or null if there is none.
+     */
+    public static QueryContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make this the current context of the calling thread until the returned scope is closed.
+     */
+    public Scope enter() {
+        QueryContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return new Scope(previous);
+    }
+
+    /**
+     * Ask the query to stop.  Scans notice at their next chunk boundary.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @return true if the query should stop, because it was cancelled or is past its deadline.
+     */
+    public boolean isStopped() {
+        return cancelled || isExpired();
+    }
+
+    public boolean isPartialResults() {
+        return partialResults;
+    }
+
+    /**
+     * @return true if an aggregation stopped early and returned partial results.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return the time left before the deadline, in nanoseconds; Long.MAX_VALUE if there is no deadline.
+     */
+    public long getRemainingNanos() {
+        return hasDeadline ? Math.max(0, deadlineNanos - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Called at a chunk boundary by a scan that cannot return partial results.
+     *
+     * @throws QueryCancelledException if the query should stop.
+     */
+    public void check() {
+        if (isStopped()) {
+            throw new QueryCancelledException(cancelled ? "Query cancelled" : "Query deadline exceeded");
+        }
+    }
+
+    /**
+     * Called at a chunk boundary by an aggregation.
+     *
+     * @return true if the aggregation should stop and return what it has accumulated.
+     * @throws QueryCancelledException if the query should stop and partial results were not requested.
+     */
+    public boolean stopScan() {
+        if (!isStopped()) {
+            return false;
+        }
+        if (!partialResults) {
+            check();
+        }
+        partial = true;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryContext{" +
+                "remainingNanos=" + getRemainingNanos() +
+                ", partialResults=" + partialResults +
+                ", cancelled=" + cancelled +
+                ", partial=" + partial +
+                '}';
+    }
+
+    /**
+     * Restores the previous context of the thread when closed.
+     */
+    public static class Scope implements AutoCloseable {
+
+        private final QueryContext previous;
+
+        private Scope(QueryContext previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ram.ds.cds.query;
+
+/**
+ * Order in which queued scans are admitted.  Scans of the same priority are admitted in the order they
+ * were submitted.
+ */
+public enum QueryPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
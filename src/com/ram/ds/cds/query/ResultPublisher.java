@@ -0,0 +1,230 @@
+package com.ram.ds.cds.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import com.ram.ds.cds.CdsException;
+
+/**
+ * Publishes the results of a query to a {@link Flow.Subscriber} as the subscriber asks for them, rather than
+ * returning them all at once.  The query gives an iterator over its results, such as
+ * {@link com.ram.ds.cds.Dimension#getChildMemberIterator}, and results are only taken from it as far as the
+ * subscriber has requested; a subscriber that requests a page of rows and then cancels never has the rest of
+ * the rows created.
+ * <p>
+ * Each subscriber gets its own run of the query.  The query starts on the executor when the subscriber first
+ * requests results, under a {@link QueryContext} that is cancelled if the subscriber cancels, so that a scan
+ * in progress stops at its next chunk.  A failure of the query is sent to the subscriber's onError.
+ * <p>
+ * When the publisher has a lock, it is only held while a batch of results is taken from the iterator; the
+ * batch is sent to the subscriber after the lock has been released, so a slow subscriber does not hold off
+ * the writers, and a subscriber may itself start work that takes the lock exclusively.
+ *
+ * @param <T> the type of the results.
+ */
+public class ResultPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Most results taken from the query under the lock at a time, so that a large request does not hold the
+     * lock until every result has been created.
+     */
+    static final int MAX_BATCH_SIZE = 1024;
+
+    private final Callable<? extends Iterator<? extends T>> query;
+    private final Executor executor;
+    private final Lock lock;
+
+    /**
+     * @param query gives an iterator over the results; it is called once for each subscriber.
+     * @param executor the executor the query and the calls to the subscriber run on.
+     */
+    public ResultPublisher(Callable<? extends Iterator<? extends T>> query, Executor executor) {
+        this(query, executor, null);
+    }
+
+    /**
+     * @param lock held while results are taken from the query, or null.  It is never held while the
+     *             subscriber is called.
+     */
+    ResultPublisher(Callable<? extends Iterator<? extends T>> query, Executor executor, Lock lock) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.query = query;
+        this.executor = executor;
+        this.lock = lock;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new ResultSubscription<T>(this, subscriber));
+    }
+
+    @Override
+    public String toString() {
+        return "ResultPublisher{" +
+                "query=" + query +
+                '}';
+    }
+
+    /**
+     * Delivers the results to one subscriber.  The calls to the subscriber are made by one drain at a time;
+     * requests and cancellation made meanwhile are picked up by that drain before it stops.
+     */
+    private static final class ResultSubscription<T> implements Flow.Subscription {
+        private final ResultPublisher<T> publisher;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final QueryContext context = new QueryContext();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean done;
+        private volatile Throwable badRequest;
+        private Iterator<? extends T> results;   // only used by the drain
+
+        ResultSubscription(ResultPublisher<T> publisher, Flow.Subscriber<? super T> subscriber) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("The number of results requested must be positive: " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            context.cancel();
+            schedule(); // to release the results
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    publisher.executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    pendingDrains.set(0);
+                    fail(new CdsException("Query refused: the executor is closed"));
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    emit();
+                }
+                if (done) {
+                    results = null;
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Send as many results as have been requested, and complete if there are no more.  The results are
+         * taken from the query a batch at a time under the lock, then sent with the lock released.
+         */
+        private void emit() {
+            if (badRequest != null) {
+                fail(badRequest);
+                return;
+            }
+            long requested = demand.get();
+            if (requested == 0 && results != null) {
+                return;
+            }
+            List<T> batch = new ArrayList<T>((int) Math.min(requested, MAX_BATCH_SIZE));
+            while (!done) {
+                batch.clear();
+                boolean more;
+                try {
+                    more = take(batch, (int) Math.min(requested, MAX_BATCH_SIZE));
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+                try {
+                    for (T result : batch) {
+                        if (done) {
+                            return;
+                        }
+                        subscriber.onNext(result);
+                    }
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+                if (!more) {
+                    complete();
+                    return;
+                }
+                requested = demand.addAndGet(-batch.size());
+                if (requested == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Take up to the given number of results from the query into the batch, starting the query if it has
+         * not been started yet, holding the lock meanwhile.
+         *
+         * @return false if the query has no more results.
+         */
+        @SuppressWarnings("try")
+        private boolean take(List<T> batch, int count) throws Exception {
+            Lock lock = publisher.lock;
+            if (lock != null) {
+                lock.lock();
+            }
+            try (QueryContext.Scope scope = context.enter()) {
+                if (results == null) {
+                    results = publisher.query.call();
+                }
+                while (batch.size() < count && results.hasNext()) {
+                    batch.add(results.next());
+                }
+                return results.hasNext();
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void complete() {
+            if (!done) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (!done) {
+                done = true;
+                context.cancel();
+                subscriber.onError(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Asynchronous queries over a cube.  Small queries run right away, each on its own thread; heavy scans are
+ * admitted to a bounded pool in priority order, so that large rollups do not hold up interactive requests.
+ * A {@link com.ram.ds.cds.query.QueryContext} carries a deadline and a cancellation token that the scans check
+ * at chunk boundaries.
+ */
+package com.ram.ds.cds.query;
@@ -3,6 +3,8 @@ package com.ram.ds.cds.stores;
 import java.util.Arrays;
 import java.util.BitSet;
 
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
 /**
  * Stores one BitSet for each item in the store.
  * @see BooleanArrayStore and BitMatrix for other variations on storing multiple boolean values per item.
@@ -109,18 +111,7 @@ public class BitSetStore extends GenericStore implements IBitSetStore
         }
 		int chunkno = nextIndex >> chunkSizeLog;
 		int pos = nextIndex & chunkSizeMask;
-		if ( numChunks <= chunkno )
-		{
-            int newNumChunks = numChunks + Constants.INITIAL_CHNK_CNT;
-			BitSet[][] newAllocate = new BitSet[newNumChunks][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newNumChunks;
-		}
+		reserveChunks(chunkno);
 
 		BitSet[] chunk = chunks[chunkno];
 		if (chunk == null)
@@ -129,6 +120,7 @@ public class BitSetStore extends GenericStore implements IBitSetStore
         }
 
         chunks[chunkno][pos] = value;
+        markChunkDirty(chunkno);
         ++validIndex;
         return validIndex;
 	}
@@ -164,27 +156,8 @@ public class BitSetStore extends GenericStore implements IBitSetStore
         int chunkIndex = index >> chunkSizeLog;
         int pos = index & chunkSizeMask;
 
-        // Allocate the chunk if it has not been allocated yet.
-    	if (chunkIndex >= numChunks)
-		{
-    		// Get the number of chunks we need to hold the value at the the given index, 
-    		// rounded up to the closest multiple of the chunk count.
-    		// 
-    		// minimal needed chunk count = chunk index + 1;
-    		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-    		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-    		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-    		//
-    		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-    		BitSet[][] newAllocate = new BitSet[newChunkCount][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newChunkCount;
-		}
+        // Make room in the outer array for the chunk if it is too short.
+    	reserveChunks(chunkIndex);
 
     	validIndex = (index > validIndex) ? index : validIndex;
     	
@@ -195,6 +168,7 @@ public class BitSetStore extends GenericStore implements IBitSetStore
 
         BitSet oldvalue = chunks[chunkIndex][pos];
         chunks[chunkIndex][pos] = value;
+        markChunkDirty(chunkIndex);
         return oldvalue;
     }
 
@@ -221,27 +195,9 @@ public class BitSetStore extends GenericStore implements IBitSetStore
     	int index = minimumSize-1;
     	if(index > validIndex){
     		int chunkIndex = index >> chunkSizeLog;
-        	if (chunkIndex >= numChunks)
-    		{
-        		// Get the number of chunks we need to hold the value at the the given index, 
-        		// rounded up to the closest multiple of the chunk count.
-        		// 
-        		// minimal needed chunk count = chunk index + 1;
-        		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-        		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-        		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-        		//
-        		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-        		BitSet[][] newAllocate = new BitSet[newChunkCount][];
-    			/* want to reuse the chunks which were allocated earlier.
-    			   	hence allocating only the outer array and copying the
-    			   	earlier positions.*/
-                System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-    			
-                chunks = newAllocate;
-    			numChunks = newChunkCount;
-    		}
+        	reserveChunks(chunkIndex);
 
+        	markChunksDirty(validIndex + 1, index + 1);
         	validIndex = index;
     	}
     	
@@ -249,6 +205,21 @@ public class BitSetStore extends GenericStore implements IBitSetStore
     	return validIndex+1;
     }
 
+    /**
+     * Make room in the outer array for the chunk with the given index, growing the chunk count geometrically.
+     */
+    private void reserveChunks(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newNumChunks = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newNumChunks);
+            growthEvent.finish(this, numChunks, newNumChunks);
+            chunkArrayGrown(numChunks, newNumChunks);
+            numChunks = newNumChunks;
+        }
+    }
+
     /**
      * Get the value of the bit with the specified bit index, in the bit 
      * set stored at the given element index.
@@ -330,5 +301,15 @@ public class BitSetStore extends GenericStore implements IBitSetStore
         }
         return bytes;
     }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
 }
 
@@ -2,6 +2,8 @@ package com.ram.ds.cds.stores;
 
 import java.util.Arrays;
 
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
 /**
  * Stores a Boolean[] for each item in the store.
  * @see BitSetStore for packing logical booleans into one bit.
@@ -114,18 +116,7 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
         }
 		int chunkno = nextIndex >> chunkSizeLog;
 		int pos = nextIndex & chunkSizeMask;
-		if ( numChunks <= chunkno )
-		{
-            int newNumChunks = numChunks + Constants.INITIAL_CHNK_CNT;
-            Boolean[][][] newAllocate = new Boolean[newNumChunks][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newNumChunks;
-		}
+		reserveChunks(chunkno);
 
 		Boolean[][] chunk = chunks[chunkno];
 		if (chunk == null)
@@ -134,6 +125,7 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
         }
 
         chunks[chunkno][pos] = value;
+        markChunkDirty(chunkno);
         ++validIndex;
         return validIndex;
 	}
@@ -169,27 +161,8 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
         int chunkIndex = index >> chunkSizeLog;
         int pos = index & chunkSizeMask;
         
-        // Allocate the chunk if it has not been allocated yet.
-    	if (chunkIndex >= numChunks)
-		{
-    		// Get the number of chunks we need to hold the value at the the given index, 
-    		// rounded up to the closest multiple of the chunk count.
-    		// 
-    		// minimal needed chunk count = chunk index + 1;
-    		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-    		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-    		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-    		//
-    		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-			Boolean[][][] newAllocate = new Boolean[newChunkCount][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newChunkCount;
-		}
+        // Make room in the outer array for the chunk if it is too short.
+    	reserveChunks(chunkIndex);
 
     	validIndex = (index > validIndex) ? index : validIndex;
     	
@@ -200,6 +173,7 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
 
 		Boolean[] oldvalue = chunks[chunkIndex][pos];
         chunks[chunkIndex][pos] = value;
+        markChunkDirty(chunkIndex);
         return oldvalue;
     }
 	
@@ -226,33 +200,30 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
     	int index = minimumSize-1;
     	if(index > validIndex){
     		int chunkIndex = index >> chunkSizeLog;
-        	if (chunkIndex >= numChunks)
-    		{
-        		// Get the number of chunks we need to hold the value at the the given index, 
-        		// rounded up to the closest multiple of the chunk count.
-        		// 
-        		// minimal needed chunk count = chunk index + 1;
-        		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-        		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-        		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-        		//
-        		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-        		Boolean[][][] newAllocate = new Boolean[newChunkCount][][];
-    			/* want to reuse the chunks which were allocated earlier.
-    			   	hence allocating only the outer array and copying the
-    			   	earlier positions.*/
-                System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-    			
-                chunks = newAllocate;
-    			numChunks = newChunkCount;
-    		}
+        	reserveChunks(chunkIndex);
 
+        	markChunksDirty(validIndex + 1, index + 1);
         	validIndex = index;
     	}
     	
     	return validIndex+1;
     }
 
+    /**
+     * Make room in the outer array for the chunk with the given index, growing the chunk count geometrically.
+     */
+    private void reserveChunks(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newNumChunks = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newNumChunks);
+            growthEvent.finish(this, numChunks, newNumChunks);
+            chunkArrayGrown(numChunks, newNumChunks);
+            numChunks = newNumChunks;
+        }
+    }
+
     @Override
     public String toString() {
         return "BooleanArrayStore{" +
@@ -266,6 +237,30 @@ public class BooleanArrayStore extends GenericStore implements IBooleanArrayStor
     	// is already BooleanArrayStore.EMPTY;
     	return chunk;
     }
+
+    @Override
+    public long getDataSize() {
+        long size = 0;
+        for( Boolean[][] chunk : chunks ) {
+            if ( chunk != null ) {
+                for ( Boolean[] data : chunk ) {
+                    if ( ! isEmptyValue( data ))
+                        size += data.length * 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
 }
 
 
@@ -0,0 +1,326 @@
+package com.ram.ds.cds.stores;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
+/**
+ * Stores a compressed double[] for each item, for time series measures such as forecasts, history or plan
+ * versions.  Each series is encoded when it is added, as a constant, as runs of equal values, with the XOR of
+ * consecutive values or raw, whichever is smallest; see {@link TimeSeriesCodec}.  Series that are constant,
+ * repeat values or change slowly take a fraction of the memory of a {@link DoubleArrayStore}.
+ * <p>
+ * {@link #getElement(int)} decodes the series into a new array, so changing that array does not change the
+ * store.  Aggregations should use {@link #addElementTo(int, double[])} or {@link #getElementSum(int)}, which
+ * add constant and run series without decoding them, and decode the other series a period at a time.
+ */
+public class CompressedDoubleArrayStore extends GenericStore implements IDoubleArrayStore
+{
+    private static final long serialVersionUID = 4712218897357712450L;
+
+    private static final double[] EMPTY = null;
+
+    private long[][][] chunks;
+
+    private transient IStoreWriteListener writeListener;
+
+    public CompressedDoubleArrayStore()
+    {
+        super();
+    }
+
+    public CompressedDoubleArrayStore(int initialChunkCount, int inputChunkSize)
+    {
+        super(initialChunkCount, inputChunkSize);
+    }
+
+    /**
+     * @return a compressed copy of the given store.
+     */
+    public static CompressedDoubleArrayStore copyOf(IDoubleArrayStore source)
+    {
+        CompressedDoubleArrayStore store = new CompressedDoubleArrayStore(0, Constants.DEF_CHNK_SIZE);
+        for (int index = 0, size = source.size(); index < size; index++) {
+            double[] value = source.getElement(index);
+            store.appendElement(source.isEmptyValue(value) ? EMPTY : value);
+        }
+        return store;
+    }
+
+    @Override
+    protected void allocateStore(int chunkCount, int inputChunkSize)
+    {
+        super.allocateStore(chunkCount, inputChunkSize);
+        chunks = new long[numChunks][][];
+    }
+
+    /**
+     * Get the value at the given index, decoded into a new array. If the index is less than the
+     * current size of the store, a value will be returned, even if it
+     * doesn't exist. Use the {@link #isEmptyValue(double[])} method to check
+     * if the returned value is an indication that the value doesn't
+     * exist.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @return a value, could be the empty value.
+     * @throws ArrayIndexOutOfBoundsException if the index is equal to or
+     * greater than the current size of the store.
+     */
+    @Override
+    public double[] getElement(int index)
+    {
+        long[] encoded = getEncodedElement(index);
+        if (encoded == null) {
+            return EMPTY;
+        }
+        double[] value = new double[TimeSeriesCodec.length(encoded)];
+        TimeSeriesCodec.decode(encoded, value, 0);
+        return value;
+    }
+
+    /**
+     * Decode the value at the given index into the given array, so that a scan can reuse one array.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @param target an array with room for the series from the given position.
+     * @param targetPos the position of the first period in the target.
+     * @return the number of periods decoded, or -1 if the value is empty.
+     */
+    public int getElement(int index, double[] target, int targetPos)
+    {
+        long[] encoded = getEncodedElement(index);
+        return encoded == null ? -1 : TimeSeriesCodec.decode(encoded, target, targetPos);
+    }
+
+    /**
+     * @return the number of periods of the value at the given index, or -1 if the value is empty.
+     */
+    public int getElementLength(int index)
+    {
+        long[] encoded = getEncodedElement(index);
+        return encoded == null ? -1 : TimeSeriesCodec.length(encoded);
+    }
+
+    /**
+     * Add each period of the value at the given index to the matching position of the given array.  Nothing is
+     * added if the value is empty.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @param result an array at least as long as the value.
+     */
+    public void addElementTo(int index, double[] result)
+    {
+        long[] encoded = getEncodedElement(index);
+        if (encoded != null) {
+            TimeSeriesCodec.addTo(encoded, result);
+        }
+    }
+
+    /**
+     * @return the sum of the periods of the value at the given index, or 0 if the value is empty.
+     */
+    public double getElementSum(int index)
+    {
+        long[] encoded = getEncodedElement(index);
+        return encoded == null ? 0.0 : TimeSeriesCodec.sum(encoded);
+    }
+
+    private long[] getEncodedElement(int index)
+    {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond "
+                    + "the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        long[][] chunk = chunks[index >> chunkSizeLog];
+        return chunk == null ? null : chunk[index & chunkSizeMask];
+    }
+
+    @Override
+    public boolean isEmptyValue(double[] value)
+    {
+        return value == EMPTY;
+    }
+
+    @Override
+    public double[] getEmptyValue()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * Encode the given value and add it to the end of the store.  Later changes to the array do not
+     * change the store.
+     */
+    @Override
+    public int addElement(double[] value)
+    {
+        int index = appendElement(value);
+        elementWritten(index);
+        return index;
+    }
+
+    private int appendElement(double[] value)
+    {
+        int nextIndex = validIndex + 1;
+        if (nextIndex >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of " +
+                    "store reached. Cannot Add Further");
+        }
+        int chunkno = nextIndex >> chunkSizeLog;
+        growChunks(chunkno);
+        if (chunks[chunkno] == null) {
+            chunks[chunkno] = new long[chunkSize][];
+        }
+        chunks[chunkno][nextIndex & chunkSizeMask] = value == EMPTY ? null : TimeSeriesCodec.encode(value);
+        markChunkDirty(chunkno);
+        ++validIndex;
+        return validIndex;
+    }
+
+    /**
+     * Encode the given value and set it at the given index, as {@link DoubleArrayStore#setElementAt(int, double[])}
+     * does.
+     *
+     * @return the previous value at the given index, decoded, or the empty value.
+     */
+    @Override
+    public double[] setElementAt(int index, double[] value)
+    {
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + index);
+        }
+        int chunkIndex = index >> chunkSizeLog;
+        growChunks(chunkIndex);
+        double[] oldValue = index <= validIndex ? getElement(index) : EMPTY;
+        validIndex = Math.max(index, validIndex);
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = new long[chunkSize][];
+        }
+        chunks[chunkIndex][index & chunkSizeMask] = value == EMPTY ? null : TimeSeriesCodec.encode(value);
+        markChunkDirty(chunkIndex);
+        elementWritten(index);
+        return oldValue;
+    }
+
+    @Override
+    public int ensureSize(int minimumSize)
+    {
+        int index = minimumSize - 1;
+        if (index > validIndex) {
+            growChunks(index >> chunkSizeLog);
+            markChunksDirty(validIndex + 1, index + 1);
+            validIndex = index;
+        }
+        return validIndex + 1;
+    }
+
+    /**
+     * Make room for the chunk with the given index, growing the chunk count geometrically.
+     */
+    private void growChunks(int chunkIndex)
+    {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newChunkCount = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newChunkCount);
+            growthEvent.finish(this, numChunks, newChunkCount);
+            chunkArrayGrown(numChunks, newChunkCount);
+            numChunks = newChunkCount;
+        }
+    }
+
+    @Override
+    public void setWriteListener(IStoreWriteListener listener) {
+        writeListener = listener;
+    }
+
+    @Override
+    public IStoreWriteListener getWriteListener() {
+        return writeListener;
+    }
+
+    private void elementWritten(int index) {
+        if (writeListener != null) {
+            writeListener.elementWritten(this, index);
+        }
+    }
+
+    /**
+     * @return the number of values held with each encoding, indexed by constant, runs, XOR and raw.
+     */
+    public int[] getEncodingCounts()
+    {
+        int[] counts = new int[4];
+        for (long[][] chunk : chunks) {
+            if (chunk != null) {
+                for (long[] encoded : chunk) {
+                    if (encoded != null) {
+                        counts[TimeSeriesCodec.getEncoding(encoded)]++;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the size of the encoded values, in bytes.
+     */
+    @Override
+    public long getDataSize()
+    {
+        long size = 0;
+        for (long[][] chunk : chunks) {
+            if (chunk != null) {
+                for (long[] encoded : chunk) {
+                    if (encoded != null) {
+                        size += encoded.length * (long) Long.BYTES;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the size the values would take decoded, in bytes, for comparison with {@link #getDataSize()}.
+     */
+    public long getDecodedDataSize()
+    {
+        long size = 0;
+        for (long[][] chunk : chunks) {
+            if (chunk != null) {
+                for (long[] encoded : chunk) {
+                    if (encoded != null) {
+                        size += TimeSeriesCodec.length(encoded) * (long) Double.BYTES;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks()
+    {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk()
+    {
+        return new long[chunkSize][];
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedDoubleArrayStore{" +
+                "size=" + size() +
+                ", dataSize=" + getDataSize() +
+                ", decodedDataSize=" + getDecodedDataSize() +
+                '}';
+    }
+}
@@ -1,8 +1,11 @@
 package com.ram.ds.cds.stores;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Set;
 
+import com.ram.ds.cds.memory.MemoryEstimator;
+
 /**
  * This class manages an attribute storage for attributes which have repeated String values (such as color).  It
  * assigns a key to each possible value, and stores the keys for efficiency.
@@ -60,6 +63,17 @@ public class DataDomainAttrStore implements IDataDomainStore {
     	return value;
     }
 
+    @Override
+    public int getKeyAt(int index) {
+        int valueKey = keyStore.getElement(index);
+        return keyStore.isEmptyValue(valueKey) ? -1 : valueKey;
+    }
+
+    @Override
+    public int getKeyCount() {
+        return currentKey;
+    }
+
 
     /**
      * Sets the value for a given member.  this method is slow because 
@@ -89,7 +103,7 @@ public class DataDomainAttrStore implements IDataDomainStore {
 
     @Override
     public boolean isEmptyValue(String value) {
-        return value.equals( EMPTY );
+        return value == EMPTY;
     }
 
     @Override
@@ -151,6 +165,14 @@ public class DataDomainAttrStore implements IDataDomainStore {
     	return this.keyStore.ensureSize(minimumSize);
     }
 
+    /**
+     * Removes the keys from the key store; the values stay in the dictionary.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        return keyStore.removeElements(removed);
+    }
+
     @Override
     public int getCardinality() {
         Set<String> keys = valueToKeyMap.keySet();
@@ -185,7 +207,22 @@ public class DataDomainAttrStore implements IDataDomainStore {
     @Override
     public long getDataSize() {
         long size = keyStore.getDataSize();
-        // add sizes of the String keys?
+        for ( int key = 0; key < currentKey; key++ ) {
+            String s = keyToValueMap.getElement(key);
+            if ( s != null )
+                size += s.length()*2;
+        }
+        return size;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        // the map shares its String keys with keyToValueMap.
+        long size = MemoryEstimator.sizeOfObject(3, Integer.BYTES) + keyStore.getRetainedSize()
+                + keyToValueMap.getRetainedSize() + MemoryEstimator.sizeOfHashMap(valueToKeyMap.size());
+        for ( int key = 0; key < currentKey; key++ ) {
+            size += MemoryEstimator.sizeOfBoxed(key);
+        }
         return size;
     }
 }
@@ -2,6 +2,8 @@ package com.ram.ds.cds.stores;
 
 import java.util.Arrays;
 
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
 /**
  * Stores a double[] for each item.  This is useful for time series measures, for example, where all
  * items have the same number of items in the series.
@@ -16,6 +18,8 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
     
     private double[][][]     chunks;
 
+    private transient IStoreWriteListener writeListener;
+
     /**
      * Create a store which will store arrays.  This is useful for compact time-phased data.
      * @param bucketCount  the number of buckets in the double array
@@ -106,6 +110,17 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
      */
 	@Override
     public int addElement (double[] value)
+    {
+        int index = appendElement(value);
+        elementWritten(index);
+        return index;
+    }
+
+    /**
+     * Add the given value at the end of the store, as {@link #addElement(double[])} does, without telling
+     * the write listener.
+     */
+    protected int appendElement(double[] value)
     {
 		int nextIndex = validIndex + 1;
         if (nextIndex >= Integer.MAX_VALUE)
@@ -115,18 +130,7 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
         }
 		int chunkno = nextIndex >> chunkSizeLog;
 		int pos = nextIndex & chunkSizeMask;
-		if ( numChunks <= chunkno )
-		{
-            int newNumChunks = numChunks + Constants.INITIAL_CHNK_CNT;
-			double[][][] newAllocate = new double[newNumChunks][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newNumChunks;
-		}
+		reserveChunks(chunkno);
 
 		double[][] chunk = chunks[chunkno];
 		if (chunk == null)
@@ -135,6 +139,7 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
         }
 
         chunks[chunkno][pos] = value;
+        markChunkDirty(chunkno);
         ++validIndex;
         return validIndex;
 	}
@@ -160,6 +165,16 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
      */
 	@Override
     public double[] setElementAt(int index, double[] value){
+        double[] oldValue = replaceElementAt(index, value);
+        elementWritten(index);
+        return oldValue;
+    }
+
+    /**
+     * Set the element at the given index, as {@link #setElementAt(int, double[])} does, without telling
+     * the write listener.
+     */
+    protected double[] replaceElementAt(int index, double[] value){
     	if(index >= Integer.MAX_VALUE){
             throw new IllegalArgumentException("Maximum limit of " +
             	"store reached. Cannot set element at " + index);
@@ -170,27 +185,8 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
         int chunkIndex = index >> chunkSizeLog;
         int pos = index & chunkSizeMask;
         
-        // Allocate the chunk if it has not been allocated yet.
-    	if (chunkIndex >= numChunks)
-		{
-    		// Get the number of chunks we need to hold the value at the the given index, 
-    		// rounded up to the closest multiple of the chunk count.
-    		// 
-    		// minimal needed chunk count = chunk index + 1;
-    		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-    		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-    		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-    		//
-    		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-			double[][][] newAllocate = new double[newChunkCount][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newChunkCount;
-		}
+        // Make room in the outer array for the chunk if it is too short.
+    	reserveChunks(chunkIndex);
 
     	validIndex = (index > validIndex) ? index : validIndex;
     	
@@ -201,6 +197,7 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
 
         double[] oldvalue = chunks[chunkIndex][pos];
         chunks[chunkIndex][pos] = value;
+        markChunkDirty(chunkIndex);
         return oldvalue;
     }
 	
@@ -227,33 +224,49 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
     	int index = minimumSize-1;
     	if(index > validIndex){
     		int chunkIndex = index >> chunkSizeLog;
-        	if (chunkIndex >= numChunks)
-    		{
-        		// Get the number of chunks we need to hold the value at the the given index, 
-        		// rounded up to the closest multiple of the chunk count.
-        		// 
-        		// minimal needed chunk count = chunk index + 1;
-        		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-        		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-        		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-        		//
-        		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-    			double[][][] newAllocate = new double[newChunkCount][][];
-    			/* want to reuse the chunks which were allocated earlier.
-    			   	hence allocating only the outer array and copying the
-    			   	earlier positions.*/
-                System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-    			
-                chunks = newAllocate;
-    			numChunks = newChunkCount;
-    		}
+        	reserveChunks(chunkIndex);
 
+        	markChunksDirty(validIndex + 1, index + 1);
         	validIndex = index;
     	}
     	
     	return validIndex+1;
     }
 
+    /**
+     * Make room in the outer array for the chunk with the given index, growing the chunk count geometrically.
+     */
+    private void reserveChunks(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newNumChunks = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newNumChunks);
+            growthEvent.finish(this, numChunks, newNumChunks);
+            chunkArrayGrown(numChunks, newNumChunks);
+            numChunks = newNumChunks;
+        }
+    }
+
+    @Override
+    public void setWriteListener(IStoreWriteListener listener) {
+        writeListener = listener;
+    }
+
+    @Override
+    public IStoreWriteListener getWriteListener() {
+        return writeListener;
+    }
+
+    /**
+     * Tell the write listener, if any, that the element at the given index has been written.
+     */
+    protected void elementWritten(int index) {
+        if (writeListener != null) {
+            writeListener.elementWritten(this, index);
+        }
+    }
+
     @Override
     public String toString() {
         return "DoubleArrayStore{" +
@@ -281,6 +294,16 @@ public class DoubleArrayStore extends GenericStore implements IDoubleArrayStore
         }
         return size;
     }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
 }
 
 //
@@ -2,6 +2,11 @@
 package com.ram.ds.cds.stores;
 
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.BitSet;
+
 import com.ram.ds.cds.CdsException;
 
 /**
@@ -127,10 +132,11 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
 
 
 
-        int result = super.addElement(trimmedvalues);
+        int result = super.appendElement(trimmedvalues);
         timeSeriesOffsets.setElementAt(result, offset);
         if ( trimmedvalues.length + offset > maxTimeSeriesLength )
             maxTimeSeriesLength = trimmedvalues.length + offset; // stretch the limit
+        elementWritten( result );
         return result;
     }
 
@@ -165,10 +171,11 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
             trimmedvalues[i] = values[i+leadingTrim];
         }
 
-        double[] result = super.setElementAt( index, trimmedvalues ); // or should we return the stretched array?  Is this ever used?
+        double[] result = super.replaceElementAt( index, trimmedvalues ); // or should we return the stretched array?  Is this ever used?
         timeSeriesOffsets.setElementAt( index, offset );
         if ( trimmedvalues.length + offset > maxTimeSeriesLength )
             maxTimeSeriesLength = values.length + offset; // stretch the limit
+        elementWritten( index );
         return result;
     }
 
@@ -200,6 +207,11 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
      * @param value
      */
     public void setElementValueAt( int index, int timeSeriesOffset, double value ) {
+        putElementValueAt( index, timeSeriesOffset, value );
+        elementWritten( index );
+    }
+
+    private void putElementValueAt( int index, int timeSeriesOffset, double value ) {
         if ( timeSeriesOffset < 0 )
             throw new IndexOutOfBoundsException();
         int currentOffset = timeSeriesOffsets.getElement(index);
@@ -214,7 +226,7 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
             for( int iold = 0; iold < currentValues.length; iold++, inew++ ) {
                 newValues[inew] = currentValues[iold];
             }
-            super.setElementAt( index, newValues );
+            super.replaceElementAt( index, newValues );
             this.timeSeriesOffsets.setElementAt( index, timeSeriesOffset );
             currentOffset = timeSeriesOffset;
             currentValues = super.getElement( index );
@@ -230,13 +242,14 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
             for( ; inew < newValues.length; inew++ ) {
                 newValues[inew] =  doubleMissingValue;
             }
-            super.setElementAt( index, newValues );
+            super.replaceElementAt( index, newValues );
             currentValues = newValues;
             if ( currentOffset + currentValues.length > maxTimeSeriesLength )
                 maxTimeSeriesLength = currentOffset + newValues.length;
         }
 
         currentValues[ timeSeriesOffset-currentOffset ] = value;
+        markChunkDirty( index >> chunkSizeLog );
 
     }
 
@@ -247,6 +260,14 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
     }
 
 
+    /**
+     * @param index
+     * @return The position in the time series of the first value of the internal array at the given index.
+     */
+    public int getTimeSeriesOffset(int index) {
+        return timeSeriesOffsets.getElement(index);
+    }
+
     /**
      * Return a mutable reference to the internal array in the store.  Caller is responsible
      * for synchronization and knowing the offset.
@@ -281,8 +302,51 @@ public class DoubleSparseArrayStore extends DoubleArrayStore {
             double current = getElementValueAt( index, timeSeriesOffset+i );
             if ( current != this.doubleMissingValue )
                 newvalue += current;
-            setElementValueAt( index, timeSeriesOffset+i, newvalue );
+            putElementValueAt( index, timeSeriesOffset+i, newvalue );
         }
+        elementWritten( index );
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return super.getRetainedSize() + timeSeriesOffsets.getRetainedSize();
+    }
+
+    @Override
+    public int removeElements(BitSet removed) {
+        timeSeriesOffsets.removeElements(removed);
+        return super.removeElements(removed);
     }
 
+    /**
+     * The chunks of the arrays or of their offsets written since the last save; both have the same chunk size.
+     */
+    @Override
+    public BitSet getDirtyChunks() {
+        BitSet dirty = super.getDirtyChunks();
+        dirty.or( timeSeriesOffsets.getDirtyChunks() );
+        return dirty;
+    }
+
+    @Override
+    public void clearDirtyChunks() {
+        super.clearDirtyChunks();
+        timeSeriesOffsets.clearDirtyChunks();
+    }
+
+    @Override
+    public void writeChunks(ObjectOutput out, BitSet chunkIndices) throws IOException {
+        super.writeChunks( out, chunkIndices );
+        timeSeriesOffsets.writeChunks( out, chunkIndices );
+        out.writeInt( maxTimeSeriesLength );
+        out.writeDouble( doubleMissingValue );
+    }
+
+    @Override
+    public void readChunks(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readChunks( in );
+        timeSeriesOffsets.readChunks( in );
+        maxTimeSeriesLength = in.readInt();
+        doubleMissingValue = in.readDouble();
+    }
 }
@@ -0,0 +1,444 @@
+package com.ram.ds.cds.stores;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+import com.ram.ds.cds.memory.MemoryEstimator;
+
+/**
+ * Holds longs in chunks that are packed in as few bits as their values need, see {@link PackedChunk}.
+ * Suited to keys and timestamps that span a small range within a chunk, or that increase steadily, which
+ * take far fewer than 64 bits a value.
+ * <p>
+ * A chunk is packed when its last element is added, and by {@link #pack()}.  Setting a value that does not
+ * fit in the bits of a packed chunk unpacks the chunk, which stays unpacked until the next {@link #pack()}.
+ * Reading a value from a packed chunk costs a few shifts; {@link #getRange(int, int, long[], int)} unpacks
+ * a range at once for scans.
+ */
+public class EncodedLongStore extends GenericStore implements ILongZoneMappedStore {
+
+    private static final long serialVersionUID = -8203475531262937458L;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Each chunk is null if never written, a long[] while unpacked, or a PackedChunk.
+     */
+    private Object[] chunks;
+
+    /**
+     * Zone map: the bounds and the number of the non-empty values in each chunk.  The arrays
+     * only cover the chunks that have been written to, and grow separately from the outer
+     * chunk array.
+     */
+    private long[] zoneMin;
+    private long[] zoneMax;
+    private int[] zoneValueCount;
+
+    public EncodedLongStore() {
+        super();
+    }
+
+    public EncodedLongStore(int initialChunkCount, int inputChunkSize) {
+        super(initialChunkCount, inputChunkSize);
+    }
+
+    /**
+     * Create a packed copy of a store.
+     *
+     * @param source the store to copy.
+     * @param inputChunkSize the size of the chunks of the copy.
+     * @return the copy, packed.
+     */
+    public static EncodedLongStore copyOf(ILongStore source, int inputChunkSize) {
+        EncodedLongStore store = new EncodedLongStore(0, inputChunkSize);
+        for (int index = 0, size = source.size(); index < size; index++) {
+            long value = source.getElement(index);
+            store.addElement(source.isEmptyValue(value) ? EMPTY : value);
+        }
+        store.pack();
+        return store;
+    }
+
+    @Override
+    protected void allocateStore(int chunkCount, int inputChunkSize) {
+        super.allocateStore(chunkCount, inputChunkSize);
+        chunks = new Object[numChunks];
+        zoneMin = new long[0];
+        zoneMax = new long[0];
+        zoneValueCount = new int[0];
+    }
+
+    /**
+     * Get the value at the given index. If the index is less than the
+     * current size of the store, a value will be returned, even if it
+     * doesn't exist. Use the {@link #isEmptyValue(long)} method to check
+     * if the returned value is an indication that the value doesn't
+     * exist.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @return a value, could be the empty value.
+     * @throws ArrayIndexOutOfBoundsException if the index is equal to or
+     * greater than the current size of the store.
+     */
+    @Override
+    public long getElement(int index) {
+        int chunkno = index >> chunkSizeLog;
+        int pos = index & chunkSizeMask;
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond "
+                    + "the current valid position: " + index
+                    + ".  Currently the maximums are [" + chunkno + "][" + pos + "]");
+        }
+
+        Object chunk = chunks[chunkno];
+        if (chunk == null) {
+            return EMPTY;
+        }
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk)[pos];
+        }
+        return ((PackedChunk) chunk).get(pos);
+    }
+
+    /**
+     * Copy a range of values, unpacking whole runs of each chunk at once.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex the last index, exclusive, no larger than the size of the store.
+     * @param target the array to copy into.
+     * @param targetPos the position in the target of the first value.
+     */
+    @Override
+    public void getRange(int fromIndex, int toIndex, long[] target, int targetPos) {
+        if (toIndex > size()) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + (toIndex - 1));
+        }
+        int index = fromIndex;
+        while (index < toIndex) {
+            int chunkno = index >> chunkSizeLog;
+            int pos = index & chunkSizeMask;
+            int count = Math.min(toIndex - index, chunkSize - pos);
+            Object chunk = chunks[chunkno];
+            if (chunk == null) {
+                Arrays.fill(target, targetPos, targetPos + count, EMPTY);
+            } else if (chunk instanceof long[]) {
+                System.arraycopy(chunk, pos, target, targetPos, count);
+            } else {
+                ((PackedChunk) chunk).unpack(pos, pos + count, target, targetPos);
+            }
+            index += count;
+            targetPos += count;
+        }
+    }
+
+    @Override
+    public boolean isEmptyValue(long value) {
+        return value == EMPTY;
+    }
+
+    @Override
+    public long getEmptyValue() {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(long value) {
+        int nextIndex = validIndex + 1;
+        if (nextIndex >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of " +
+                    "store reached. Cannot Add Further");
+        }
+        int chunkno = nextIndex >> chunkSizeLog;
+        int pos = nextIndex & chunkSizeMask;
+        ensureChunkCount(chunkno);
+
+        long[] chunk = getUnpackedChunk(chunkno);
+        chunk[pos] = value;
+        markChunkDirty(chunkno);
+        updateZone(chunkno, EMPTY, value);
+        ++validIndex;
+        if (pos == chunkSizeMask) {
+            packChunk(chunkno);
+        }
+        return validIndex;
+    }
+
+    @Override
+    public long setElementAt(int index, long value) {
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + index);
+        }
+        int chunkIndex = index >> chunkSizeLog;
+        int pos = index & chunkSizeMask;
+        ensureChunkCount(chunkIndex);
+        if (index > validIndex) {
+            markChunksDirty(validIndex + 1, index + 1);
+            validIndex = index;
+        }
+
+        long oldValue;
+        Object chunk = chunks[chunkIndex];
+        if (chunk instanceof PackedChunk) {
+            PackedChunk packed = (PackedChunk) chunk;
+            oldValue = packed.get(pos);
+            if (!packed.trySet(pos, value)) {
+                getUnpackedChunk(chunkIndex)[pos] = value;
+            }
+        } else {
+            long[] unpacked = getUnpackedChunk(chunkIndex);
+            oldValue = unpacked[pos];
+            unpacked[pos] = value;
+        }
+        markChunkDirty(chunkIndex);
+        updateZone(chunkIndex, oldValue, value);
+        return oldValue;
+    }
+
+    @Override
+    public int ensureSize(int minimumSize) {
+        int index = minimumSize - 1;
+        if (index > validIndex) {
+            ensureChunkCount(index >> chunkSizeLog);
+            markChunksDirty(validIndex + 1, index + 1);
+            validIndex = index;
+        }
+        return validIndex + 1;
+    }
+
+    /**
+     * Pack every chunk that is not packed, including the last one if it is partly filled.  Chunks that would
+     * not get smaller stay unpacked.
+     *
+     * @return the number of chunks packed.
+     */
+    public int pack() {
+        int packed = 0;
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            if (chunks[chunkIndex] instanceof long[] && packChunk(chunkIndex)) {
+                packed++;
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * @return the number of chunks that are packed.
+     */
+    public int getPackedChunkCount() {
+        int count = 0;
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            if (chunks[chunkIndex] instanceof PackedChunk) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean packChunk(int chunkIndex) {
+        long[] chunk = (long[]) chunks[chunkIndex];
+        PackedChunk packed = PackedChunk.pack(chunk, getChunkRowCount(chunkIndex), EMPTY, Long.SIZE);
+        if (packed == null) {
+            return false;
+        }
+        chunks[chunkIndex] = packed;
+        return true;
+    }
+
+    /**
+     * @return the chunk as a long[], unpacking or creating it if needed.
+     */
+    private long[] getUnpackedChunk(int chunkIndex) {
+        Object chunk = chunks[chunkIndex];
+        if (chunk instanceof long[]) {
+            return (long[]) chunk;
+        }
+        long[] unpacked = createChunkWithEmptyValues(chunkSize);
+        if (chunk != null) {
+            PackedChunk packed = (PackedChunk) chunk;
+            packed.unpack(0, packed.length(), unpacked, 0);
+        }
+        chunks[chunkIndex] = unpacked;
+        return unpacked;
+    }
+
+    private void ensureChunkCount(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newChunkCount = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newChunkCount);
+            growthEvent.finish(this, numChunks, newChunkCount);
+            chunkArrayGrown(numChunks, newChunkCount);
+            numChunks = newChunkCount;
+        }
+    }
+
+    @Override
+    public int getZoneSizeLog() {
+        return chunkSizeLog;
+    }
+
+    @Override
+    public int getZoneCount() {
+        return getUsedChunkCount();
+    }
+
+    @Override
+    public int getZoneEmptyCount(int zoneIndex) {
+        int valueCount = (zoneIndex < zoneValueCount.length) ? zoneValueCount[zoneIndex] : 0;
+        return getChunkRowCount(zoneIndex) - valueCount;
+    }
+
+    @Override
+    public long getZoneMin(int zoneIndex) {
+        return (zoneIndex < zoneMin.length) ? zoneMin[zoneIndex] : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long getZoneMax(int zoneIndex) {
+        return (zoneIndex < zoneMax.length) ? zoneMax[zoneIndex] : Long.MIN_VALUE;
+    }
+
+    /**
+     * Unpacks every chunk, moves the elements down as in the base implementation, then packs the chunks
+     * again and rebuilds the zone maps.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            if (chunks[chunkIndex] != null) {
+                getUnpackedChunk(chunkIndex);
+            }
+        }
+        int size = super.removeElements(removed);
+        pack();
+        rebuildZoneMaps();
+        return size;
+    }
+
+    @Override
+    protected void chunksRestored() {
+        rebuildZoneMaps();
+    }
+
+    @Override
+    public void rebuildZoneMaps() {
+        zoneMin = new long[0];
+        zoneMax = new long[0];
+        zoneValueCount = new int[0];
+        long[] values = new long[chunkSize];
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            if (chunks[chunkIndex] == null) {
+                continue;
+            }
+            int rows = getChunkRowCount(chunkIndex);
+            int start = chunkIndex << chunkSizeLog;
+            getRange(start, start + rows, values, 0);
+            for (int pos = 0; pos < rows; pos++) {
+                updateZone(chunkIndex, EMPTY, values[pos]);
+            }
+        }
+    }
+
+    /**
+     * Update the zone map of a chunk for a value being replaced.
+     *
+     * @param chunkIndex the chunk that holds the value
+     * @param oldValue the previous value, could be the empty value
+     * @param value the new value, could be the empty value
+     */
+    private void updateZone(int chunkIndex, long oldValue, long value) {
+        if (chunkIndex >= zoneValueCount.length) {
+            growZones(chunkIndex);
+        }
+
+        boolean wasEmpty = oldValue == EMPTY;
+        if (value == EMPTY) {
+            if (!wasEmpty && --zoneValueCount[chunkIndex] == 0) {
+                // the last value is gone, reset the bounds.
+                zoneMin[chunkIndex] = Long.MAX_VALUE;
+                zoneMax[chunkIndex] = Long.MIN_VALUE;
+            }
+            return;
+        }
+
+        if (wasEmpty) {
+            zoneValueCount[chunkIndex]++;
+        }
+        if (value < zoneMin[chunkIndex]) {
+            zoneMin[chunkIndex] = value;
+        }
+        if (value > zoneMax[chunkIndex]) {
+            zoneMax[chunkIndex] = value;
+        }
+    }
+
+    private void growZones(int chunkIndex) {
+        int oldLength = zoneValueCount.length;
+        int newLength = Math.min(numChunks, Math.max(chunkIndex + 1, oldLength * 2 + 8));
+        zoneMin = Arrays.copyOf(zoneMin, newLength);
+        zoneMax = Arrays.copyOf(zoneMax, newLength);
+        zoneValueCount = Arrays.copyOf(zoneValueCount, newLength);
+        Arrays.fill(zoneMin, oldLength, newLength, Long.MAX_VALUE);
+        Arrays.fill(zoneMax, oldLength, newLength, Long.MIN_VALUE);
+    }
+
+    private static long[] createChunkWithEmptyValues(int size) {
+        long[] chunk = new long[size];
+        Arrays.fill(chunk, EMPTY);
+        return chunk;
+    }
+
+    /**
+     * The bytes of the values: 8 per value in the unpacked chunks, and the packed words of the others.
+     */
+    @Override
+    public long getDataSize() {
+        long size = 0;
+        for (Object chunk : chunks) {
+            if (chunk instanceof long[]) {
+                size += (long) chunkSize * Long.BYTES;
+            } else if (chunk != null) {
+                size += ((PackedChunk) chunk).getDataSize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        long size = super.getRetainedSize() + MemoryEstimator.sizeOfArray(zoneMin) + MemoryEstimator.sizeOfArray(zoneMax)
+                + MemoryEstimator.sizeOfArray(zoneValueCount);
+        for (Object chunk : chunks) {
+            if (chunk instanceof long[]) {
+                size += MemoryEstimator.sizeOfArray(chunk);
+            } else if (chunk != null) {
+                size += ((PackedChunk) chunk).getRetainedSize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedLongStore{" +
+                "size=" + size() +
+                ", chunkSize=" + chunkSize +
+                ", packedChunks=" + getPackedChunkCount() +
+                ", dataSize=" + getDataSize() +
+                '}';
+    }
+}
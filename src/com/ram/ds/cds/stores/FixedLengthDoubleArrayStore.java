@@ -1,6 +1,9 @@
 package com.ram.ds.cds.stores;
 
 import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
 
 /**
  */
@@ -13,6 +16,8 @@ public class FixedLengthDoubleArrayStore implements IDoubleArrayStore
     private double[][] data;
     int validIndex = -1;
 
+    private transient IStoreWriteListener writeListener;
+
     public FixedLengthDoubleArrayStore(int numberOfMembers, int numberOfElementsPerMember)
     {
         data = new double[numberOfMembers][numberOfElementsPerMember];
@@ -88,6 +93,9 @@ public class FixedLengthDoubleArrayStore implements IDoubleArrayStore
         }
         data[nextIndex] = values;
         ++validIndex;
+        if (writeListener != null) {
+            writeListener.elementWritten(this, validIndex);
+        }
         return validIndex;
 	}
 
@@ -129,6 +137,9 @@ public class FixedLengthDoubleArrayStore implements IDoubleArrayStore
     	
         double[] oldValue = data[index];
         data[index] = value;
+        if (writeListener != null) {
+            writeListener.elementWritten(this, index);
+        }
         return oldValue;
     }
 
@@ -173,6 +184,16 @@ public class FixedLengthDoubleArrayStore implements IDoubleArrayStore
     	return validIndex + 1;
     }
 
+    @Override
+    public void setWriteListener(IStoreWriteListener listener) {
+        writeListener = listener;
+    }
+
+    @Override
+    public IStoreWriteListener getWriteListener() {
+        return writeListener;
+    }
+
     @Override
     public String toString() {
         return "FixedLengthDoubleArrayStore{" +
@@ -192,5 +213,22 @@ public class FixedLengthDoubleArrayStore implements IDoubleArrayStore
         }
         return itemcount*itemsize;
     }
-}
 
+    @Override
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(1, Integer.BYTES) + MemoryEstimator.sizeOfArray(data);
+    }
+
+    @Override
+    public int removeElements(BitSet removed) {
+        int target = 0;
+        for (int index = 0; index <= validIndex; index++) {
+            if (!removed.get(index)) {
+                data[target++] = data[index];
+            }
+        }
+        Arrays.fill(data, target, validIndex + 1, FixedLengthDoubleArrayStore.EMPTY);
+        validIndex = target - 1;
+        return target;
+    }
+}
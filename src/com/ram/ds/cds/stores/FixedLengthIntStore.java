@@ -1,6 +1,9 @@
 package com.ram.ds.cds.stores;
 
 import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
 
 /**
  */
@@ -185,5 +188,22 @@ public class FixedLengthIntStore implements IIntStore
     public long getDataSize() {
         return data.length * (Integer.SIZE/Byte.SIZE);
     }
-}
 
+    @Override
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(1, Integer.BYTES) + MemoryEstimator.sizeOfArray(data);
+    }
+
+    @Override
+    public int removeElements(BitSet removed) {
+        int target = 0;
+        for (int index = 0; index <= validIndex; index++) {
+            if (!removed.get(index)) {
+                data[target++] = data[index];
+            }
+        }
+        Arrays.fill(data, target, validIndex + 1, FixedLengthIntStore.EMPTY);
+        validIndex = target - 1;
+        return target;
+    }
+}
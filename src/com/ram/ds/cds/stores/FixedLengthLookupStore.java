@@ -1,5 +1,7 @@
 package com.ram.ds.cds.stores;
 
+import java.util.BitSet;
+
 /**
  * Base class for lookup stores where the maximum number of keys is known in
  * advance.
@@ -27,5 +29,32 @@ public abstract class FixedLengthLookupStore extends GenericStore
                 ", currentID=" + currentID +
                 '}';
     }
+
+    /**
+     * The values are held in the key store rather than in chunks.
+     */
+    @Override
+    protected Object getChunks() {
+        return null;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return null;
+    }
+
+    /**
+     * Removes the keys from the key store; the values stay in the dictionary.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        validIndex = keyStore.removeElements(removed) - 1;
+        return validIndex + 1;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return super.getRetainedSize() + keyStore.getRetainedSize();
+    }
 }
 
@@ -1,6 +1,9 @@
 package com.ram.ds.cds.stores;
 
 import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
 
 /**
  * Holds an ordered collection of Strings.  Internally the data is a simple String[].
@@ -193,5 +196,22 @@ public class FixedLengthStringStore implements IStringStore
         }
         return size;
     }
-}
 
+    @Override
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(1, Integer.BYTES) + MemoryEstimator.sizeOfArray(data);
+    }
+
+    @Override
+    public int removeElements(BitSet removed) {
+        int target = 0;
+        for (int index = 0; index <= validIndex; index++) {
+            if (!removed.get(index)) {
+                data[target++] = data[index];
+            }
+        }
+        Arrays.fill(data, target, validIndex + 1, FixedLengthStringStore.EMPTY);
+        validIndex = target - 1;
+        return target;
+    }
+}
@@ -1,5 +1,9 @@
 package com.ram.ds.cds.stores;
 
+import java.util.Arrays;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
 /**
  */
 public class FloatArrayStore extends GenericStore implements IFloatArrayStore
@@ -109,18 +113,7 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
         }
 		int chunkno = nextIndex >> chunkSizeLog;
 		int pos = nextIndex & chunkSizeMask;
-		if ( numChunks <= chunkno )
-		{
-            int newNumChunks = numChunks + Constants.INITIAL_CHNK_CNT;
-			float[][][] newAllocate = new float[newNumChunks][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newNumChunks;
-		}
+		reserveChunks(chunkno);
 
 		float[][] chunk = chunks[chunkno];
 		if (chunk == null)
@@ -129,6 +122,7 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
         }
 
         chunks[chunkno][pos] = value;
+        markChunkDirty(chunkno);
         ++validIndex;
         return validIndex;
 	}
@@ -164,27 +158,8 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
         int chunkIndex = index >> chunkSizeLog;
         int pos = index & chunkSizeMask;
         
-        // Allocate the chunk if it has not been allocated yet.
-    	if (chunkIndex >= numChunks)
-		{
-    		// Get the number of chunks we need to hold the value at the the given index, 
-    		// rounded up to the closest multiple of the chunk count.
-    		// 
-    		// minimal needed chunk count = chunk index + 1;
-    		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-    		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-    		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-    		//
-    		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-			float[][][] newAllocate = new float[newChunkCount][][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newChunkCount;
-		}
+        // Make room in the outer array for the chunk if it is too short.
+    	reserveChunks(chunkIndex);
 
     	validIndex = (index > validIndex) ? index : validIndex;
     	
@@ -195,6 +170,7 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
 
         float[] oldvalue = chunks[chunkIndex][pos];
         chunks[chunkIndex][pos] = value;
+        markChunkDirty(chunkIndex);
         return oldvalue;
     }
 	
@@ -221,33 +197,30 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
     	int index = minimumSize-1;
     	if(index > validIndex){
     		int chunkIndex = index >> chunkSizeLog;
-        	if (chunkIndex >= numChunks)
-    		{
-        		// Get the number of chunks we need to hold the value at the the given index, 
-        		// rounded up to the closest multiple of the chunk count.
-        		// 
-        		// minimal needed chunk count = chunk index + 1;
-        		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-        		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-        		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-        		//
-        		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-    			float[][][] newAllocate = new float[newChunkCount][][];
-    			/* want to reuse the chunks which were allocated earlier.
-    			   	hence allocating only the outer array and copying the
-    			   	earlier positions.*/
-                System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-    			
-                chunks = newAllocate;
-    			numChunks = newChunkCount;
-    		}
+        	reserveChunks(chunkIndex);
 
+        	markChunksDirty(validIndex + 1, index + 1);
         	validIndex = index;
     	}
     	
     	return validIndex+1;
     }
 
+    /**
+     * Make room in the outer array for the chunk with the given index, growing the chunk count geometrically.
+     */
+    private void reserveChunks(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newNumChunks = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newNumChunks);
+            growthEvent.finish(this, numChunks, newNumChunks);
+            chunkArrayGrown(numChunks, newNumChunks);
+            numChunks = newNumChunks;
+        }
+    }
+
     @Override
     public String toString() {
         return "FloatArrayStore{" +
@@ -293,5 +266,29 @@ public class FloatArrayStore extends GenericStore implements IFloatArrayStore
     	// is already FloatArrayStore.EMPTY;
     	return chunk;
     }
+
+    @Override
+    public long getDataSize() {
+        long size = 0;
+        for( float[][] chunk : chunks ) {
+            if ( chunk != null ) {
+                for ( float[] data : chunk ) {
+                    if ( ! isEmptyValue( data ))
+                        size += data.length * (Float.SIZE/Byte.SIZE);
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
 }
 
@@ -1,10 +1,16 @@
 package com.ram.ds.cds.stores;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+import com.ram.ds.cds.memory.MemoryEstimator;
 
 /**
  */
-public class FloatStore extends GenericStore implements IFloatStore
+public class FloatStore extends GenericStore implements IFloatZoneMappedStore, IValidityMappedStore
 {
     private static final long serialVersionUID = 1167005446234472634L;
     
@@ -12,6 +18,20 @@ public class FloatStore extends GenericStore implements IFloatStore
     
     private float[][]     chunks;
 
+    /**
+     * Zone map: the bounds and the number of the non-empty values in each chunk.  The arrays
+     * only cover the chunks that have been written to, and grow separately from the outer
+     * chunk array.
+     */
+    private float[]       zoneMin;
+    private float[]       zoneMax;
+    private int[]         zoneValueCount;
+
+    /**
+     * The indices holding non-empty values, or null unless validity is tracked.
+     */
+    private ValidityBitmap validity;
+
     public FloatStore()
     {
 		super();
@@ -27,6 +47,9 @@ public class FloatStore extends GenericStore implements IFloatStore
 	{
 		super.allocateStore(chunkCount, inputChunkSize);
 		chunks = new float[numChunks][];
+		zoneMin = new float[0];
+		zoneMax = new float[0];
+		zoneValueCount = new int[0];
 	}
 
 	/**
@@ -106,18 +129,7 @@ public class FloatStore extends GenericStore implements IFloatStore
         }
 		int chunkno = nextIndex >> chunkSizeLog;
 		int pos = nextIndex & chunkSizeMask;
-		if ( numChunks <= chunkno )
-		{
-            int newNumChunks = numChunks + Constants.INITIAL_CHNK_CNT;
-			float[][] newAllocate = new float[newNumChunks][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newNumChunks;
-		}
+		reserveChunks(chunkno);
 
 		float[] chunk = chunks[chunkno];
 		if (chunk == null)
@@ -126,6 +138,9 @@ public class FloatStore extends GenericStore implements IFloatStore
         }
 
         chunks[chunkno][pos] = value;
+        markChunkDirty(chunkno);
+        updateZone(chunkno, FloatStore.EMPTY, value);
+        updateValidity(nextIndex, value);
         ++validIndex;
         return validIndex;
 	}
@@ -161,27 +176,8 @@ public class FloatStore extends GenericStore implements IFloatStore
         int chunkIndex = index >> chunkSizeLog;
         int pos = index & chunkSizeMask;
         
-        // Allocate the chunk if it has not been allocated yet.
-    	if (chunkIndex >= numChunks)
-		{
-    		// Get the number of chunks we need to hold the value at the the given index, 
-    		// rounded up to the closest multiple of the chunk count.
-    		// 
-    		// minimal needed chunk count = chunk index + 1;
-    		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-    		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-    		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-    		//
-    		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-			float[][] newAllocate = new float[newChunkCount][];
-			/* want to reuse the chunks which were allocated earlier.
-			   	hence allocating only the outer array and copying the
-			   	earlier positions.*/
-            System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-			
-            chunks = newAllocate;
-			numChunks = newChunkCount;
-		}
+        // Make room in the outer array for the chunk if it is too short.
+    	reserveChunks(chunkIndex);
 
     	validIndex = (index > validIndex) ? index : validIndex;
     	
@@ -192,6 +188,9 @@ public class FloatStore extends GenericStore implements IFloatStore
 
         float oldvalue = chunks[chunkIndex][pos];
         chunks[chunkIndex][pos] = value;
+        markChunkDirty(chunkIndex);
+        updateZone(chunkIndex, oldvalue, value);
+        updateValidity(index, value);
         return oldvalue;
     }
 
@@ -218,33 +217,302 @@ public class FloatStore extends GenericStore implements IFloatStore
     	int index = minimumSize-1;
     	if(index > validIndex){
     		int chunkIndex = index >> chunkSizeLog;
-        	if (chunkIndex >= numChunks)
-    		{
-        		// Get the number of chunks we need to hold the value at the the given index, 
-        		// rounded up to the closest multiple of the chunk count.
-        		// 
-        		// minimal needed chunk count = chunk index + 1;
-        		// rounded-up chunk count = (chunkIndex + 1 + (Constants.INITIAL_CHNK_CNT - 1)) / 
-        		//                         Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
-        		//    = (chunkIndex / Constants.INITIAL_CHNK_CNT + 1) * Constants.INITIAL_CHNK_CNT;
-        		//
-        		int newChunkCount = (chunkIndex/Constants.INITIAL_CHNK_CNT+1) * Constants.INITIAL_CHNK_CNT;
-    			float[][] newAllocate = new float[newChunkCount][];
-    			/* want to reuse the chunks which were allocated earlier.
-    			   	hence allocating only the outer array and copying the
-    			   	earlier positions.*/
-                System.arraycopy(chunks, 0, newAllocate, 0, numChunks);
-    			
-                chunks = newAllocate;
-    			numChunks = newChunkCount;
-    		}
+        	reserveChunks(chunkIndex);
 
+        	markChunksDirty(validIndex + 1, index + 1);
         	validIndex = index;
     	}
     	
     	return validIndex+1;
     }
 
+    @Override
+    public int getZoneSizeLog() {
+        return chunkSizeLog;
+    }
+
+    @Override
+    public int getZoneCount() {
+        return getUsedChunkCount();
+    }
+
+    @Override
+    public int getZoneEmptyCount(int zoneIndex) {
+        int valueCount = (zoneIndex < zoneValueCount.length) ? zoneValueCount[zoneIndex] : 0;
+        return getChunkRowCount(zoneIndex) - valueCount;
+    }
+
+    @Override
+    public float getZoneMin(int zoneIndex) {
+        return (zoneIndex < zoneMin.length) ? zoneMin[zoneIndex] : Float.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public float getZoneMax(int zoneIndex) {
+        return (zoneIndex < zoneMax.length) ? zoneMax[zoneIndex] : Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Moves the chunk elements down as in the base implementation, then rebuilds the zone maps, as every
+     * chunk from the first removed index on holds different elements.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        int size = super.removeElements(removed);
+        rebuildZoneMaps();
+        rebuildValidity();
+        return size;
+    }
+
+    /**
+     * Copy a range of values a chunk at a time.  A chunk that was never allocated gives empty values.
+     */
+    @Override
+    public void getRange(int fromIndex, int toIndex, float[] target, int targetPos) {
+        if (toIndex > validIndex + 1) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + (toIndex - 1));
+        }
+        int index = fromIndex;
+        while (index < toIndex) {
+            int chunkno = index >> chunkSizeLog;
+            int pos = index & chunkSizeMask;
+            int count = Math.min(toIndex - index, chunkSize - pos);
+            float[] chunk = chunks[chunkno];
+            if (chunk == null) {
+                Arrays.fill(target, targetPos, targetPos + count, FloatStore.EMPTY);
+            } else {
+                System.arraycopy(chunk, pos, target, targetPos, count);
+            }
+            index += count;
+            targetPos += count;
+        }
+    }
+
+    /**
+     * Append the values a chunk at a time, growing the outer array once for all of them.
+     */
+    @Override
+    public int addAll(float[] source, int sourcePos, int length) {
+        int fromIndex = validIndex + 1;
+        if ((long) fromIndex + length >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of " +
+                    "store reached. Cannot Add Further");
+        }
+        writeRange(fromIndex, length, source, sourcePos, FloatStore.EMPTY);
+        return fromIndex;
+    }
+
+    @Override
+    public void setRange(int index, float[] source, int sourcePos, int length) {
+        if ((long) index + length >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + (index + length - 1));
+        }
+        writeRange(index, length, source, sourcePos, FloatStore.EMPTY);
+    }
+
+    @Override
+    public void fill(int fromIndex, int toIndex, float value) {
+        if (toIndex >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + (toIndex - 1));
+        }
+        writeRange(fromIndex, toIndex - fromIndex, null, 0, value);
+    }
+
+    /**
+     * Write a range of values a chunk at a time: from the source, or the fill value if the source is null.
+     */
+    private void writeRange(int fromIndex, int length, float[] source, int sourcePos, float fillValue) {
+        if (length <= 0) {
+            return;
+        }
+        int toIndex = fromIndex + length;
+        reserveChunks((toIndex - 1) >> chunkSizeLog);
+        int index = fromIndex;
+        while (index < toIndex) {
+            int chunkno = index >> chunkSizeLog;
+            int pos = index & chunkSizeMask;
+            int count = Math.min(toIndex - index, chunkSize - pos);
+            if (chunks[chunkno] == null) {
+                chunks[chunkno] = FloatStore.createChunkWithEmptyValues(chunkSize);
+            }
+            float[] chunk = chunks[chunkno];
+            for (int i = 0; i < count; i++) {
+                float value = (source == null) ? fillValue : source[sourcePos + i];
+                updateZone(chunkno, chunk[pos + i], value);
+                updateValidity(index + i, value);
+            }
+            if (source == null) {
+                Arrays.fill(chunk, pos, pos + count, fillValue);
+            } else {
+                System.arraycopy(source, sourcePos, chunk, pos, count);
+                sourcePos += count;
+            }
+            index += count;
+        }
+        markChunksDirty(fromIndex, toIndex);
+        validIndex = Math.max(validIndex, toIndex - 1);
+    }
+
+    /**
+     * Give the chunks themselves to the visitor.  A chunk that was never allocated is given as a chunk of
+     * empty values.
+     */
+    @Override
+    public void forEachChunk(int fromIndex, int toIndex, IChunkVisitor<float[]> visitor) {
+        if (toIndex > validIndex + 1) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + (toIndex - 1));
+        }
+        float[] emptyChunk = null;
+        int index = fromIndex;
+        while (index < toIndex) {
+            int chunkno = index >> chunkSizeLog;
+            int pos = index & chunkSizeMask;
+            int count = Math.min(toIndex - index, chunkSize - pos);
+            float[] chunk = chunks[chunkno];
+            if (chunk == null) {
+                if (emptyChunk == null) {
+                    emptyChunk = FloatStore.createChunkWithEmptyValues(chunkSize);
+                }
+                chunk = emptyChunk;
+            }
+            visitor.visit(index, chunk, pos, count);
+            index += count;
+        }
+    }
+
+    /**
+     * Make room in the outer array for the chunk with the given index.
+     */
+    private void reserveChunks(int chunkIndex) {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newNumChunks = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newNumChunks);
+            growthEvent.finish(this, numChunks, newNumChunks);
+            chunkArrayGrown(numChunks, newNumChunks);
+            numChunks = newNumChunks;
+        }
+    }
+
+    @Override
+    protected void chunksRestored() {
+        rebuildZoneMaps();
+        rebuildValidity();
+    }
+
+    @Override
+    public void setValidityTracked(boolean tracked) {
+        validity = tracked ? new ValidityBitmap(chunkSizeLog) : null;
+        rebuildValidity();
+    }
+
+    @Override
+    public ValidityBitmap getValidity() {
+        return validity;
+    }
+
+    @Override
+    public boolean isEmptyAt(int index) {
+        if (validity != null && index <= validIndex) {
+            return !validity.isValid(index);
+        }
+        return isEmptyValue(getElement(index));
+    }
+
+    private void updateValidity(int index, float value) {
+        if (validity != null) {
+            validity.set(index, !isEmptyValue(value));
+        }
+    }
+
+    private void rebuildValidity() {
+        if (validity == null) {
+            return;
+        }
+        validity.clear();
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            float[] chunk = chunks[chunkIndex];
+            if (chunk == null) {
+                continue;
+            }
+            for (int pos = 0, rows = getChunkRowCount(chunkIndex); pos < rows; pos++) {
+                if (!isEmptyValue(chunk[pos])) {
+                    validity.set((chunkIndex << chunkSizeLog) + pos, true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rebuildZoneMaps() {
+        zoneMin = new float[0];
+        zoneMax = new float[0];
+        zoneValueCount = new int[0];
+        for (int chunkIndex = 0, n = getUsedChunkCount(); chunkIndex < n; chunkIndex++) {
+            float[] chunk = chunks[chunkIndex];
+            if (chunk == null) {
+                continue;
+            }
+            for (int pos = 0, rows = getChunkRowCount(chunkIndex); pos < rows; pos++) {
+                updateZone(chunkIndex, FloatStore.EMPTY, chunk[pos]);
+            }
+        }
+    }
+
+    /**
+     * Update the zone map of a chunk for a value being replaced.
+     *
+     * @param chunkIndex the chunk that holds the value
+     * @param oldValue the previous value, could be the empty value
+     * @param value the new value, could be the empty value
+     */
+    private void updateZone(int chunkIndex, float oldValue, float value) {
+        if (chunkIndex >= zoneValueCount.length) {
+            growZones(chunkIndex);
+        }
+
+        boolean wasEmpty = Float.isNaN(oldValue);
+        if (Float.isNaN(value)) {
+            if (!wasEmpty && --zoneValueCount[chunkIndex] == 0) {
+                // the last value is gone, reset the bounds.
+                zoneMin[chunkIndex] = Float.POSITIVE_INFINITY;
+                zoneMax[chunkIndex] = Float.NEGATIVE_INFINITY;
+            }
+            return;
+        }
+
+        if (wasEmpty) {
+            zoneValueCount[chunkIndex]++;
+        }
+        if (value < zoneMin[chunkIndex]) {
+            zoneMin[chunkIndex] = value;
+        }
+        if (value > zoneMax[chunkIndex]) {
+            zoneMax[chunkIndex] = value;
+        }
+    }
+
+    private void growZones(int chunkIndex) {
+        int oldLength = zoneValueCount.length;
+        int newLength = Math.min(numChunks, Math.max(chunkIndex + 1, oldLength * 2 + 8));
+        zoneMin = Arrays.copyOf(zoneMin, newLength);
+        zoneMax = Arrays.copyOf(zoneMax, newLength);
+        zoneValueCount = Arrays.copyOf(zoneValueCount, newLength);
+        Arrays.fill(zoneMin, oldLength, newLength, Float.POSITIVE_INFINITY);
+        Arrays.fill(zoneMax, oldLength, newLength, Float.NEGATIVE_INFINITY);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (zoneValueCount == null) {
+            // serialized before the zone maps were kept.
+            rebuildZoneMaps();
+        }
+    }
+
     @Override
     public String toString() {
         return "FloatStore{" +
@@ -259,5 +527,31 @@ public class FloatStore extends GenericStore implements IFloatStore
     	}
     	return chunk;
     }
+
+    @Override
+    public long getDataSize() {
+        long size = 0;
+        for( float[] chunk : this.chunks ) {
+            if ( chunk != null ) size += chunk.length * (Float.SIZE/Byte.SIZE);
+        }
+        return size;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return super.getRetainedSize() + MemoryEstimator.sizeOfArray(zoneMin) + MemoryEstimator.sizeOfArray(zoneMax)
+                + MemoryEstimator.sizeOfArray(zoneValueCount)
+                + (validity == null ? 0 : validity.getRetainedSize());
+    }
+
+    @Override
+    protected Object getChunks() {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return createChunkWithEmptyValues(chunkSize);
+    }
 }
 
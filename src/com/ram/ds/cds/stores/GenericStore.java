@@ -1,10 +1,17 @@
 package com.ram.ds.cds.stores;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.BitSet;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
+
 /**
  * Base class for holding a data store composed of multiple chunks.  Each chunk's size is a power of
  * 2.  The store is growable, and ordered.
  */
-public abstract class GenericStore implements IDataStore {
+public abstract class GenericStore implements IChunkedStore {
 
     private static final long serialVersionUID = 1974366288246131347L;
     protected int            numChunks;  // how many chunks have been allocated
@@ -13,6 +20,28 @@ public abstract class GenericStore implements IDataStore {
     protected int            chunkSizeLog;
     protected int            chunkSizeMask;
 
+    /**
+     * Chunks written since the store was last saved, or null if there are none.
+     */
+    protected transient BitSet dirtyChunks;
+
+    /**
+     * Notified as the store takes more memory, or null.
+     */
+    private transient IStoreGrowthListener growthListener;
+
+    /**
+     * Chunks already reported to the growth listener.
+     */
+    private transient BitSet accountedChunks;
+
+    /**
+     * The chunk last reported to the growth listener, and its size when it was reported.  The values a chunk
+     * references are mostly written after its first write, so it is measured again once the next chunk is.
+     */
+    private transient int lastAccountedChunk = -1;
+    private transient long lastAccountedBytes;
+
     public GenericStore()
     {
 		allocateStore (Constants.INITIAL_CHNK_CNT, Constants.DEF_CHNK_SIZE);
@@ -71,6 +100,39 @@ public abstract class GenericStore implements IDataStore {
         return validIndex + 1;
     }
 
+    /**
+     * @return the number of chunks needed to cover the current size of the store.
+     */
+    protected int getUsedChunkCount()
+    {
+        return (validIndex + chunkSize) >> chunkSizeLog;
+    }
+
+    /**
+     * Get the number of chunks to grow the outer array to, so that it holds the chunk with the given index.
+     * The array grows by at least half, so that filling a store copies it a logarithmic number of times, and
+     * its length stays a multiple of {@link Constants#INITIAL_CHNK_CNT}.
+     *
+     * @param chunkIndex the index of a chunk at or beyond the current number of chunks.
+     * @return the new number of chunks.
+     */
+    protected int getGrownChunkCount(int chunkIndex)
+    {
+        long chunkCount = Math.max(chunkIndex + 1L, numChunks + Math.max(numChunks >> 1, Constants.INITIAL_CHNK_CNT));
+        chunkCount = (chunkCount + Constants.INITIAL_CHNK_CNT - 1) / Constants.INITIAL_CHNK_CNT * Constants.INITIAL_CHNK_CNT;
+        return (int) Math.min(chunkCount, Integer.MAX_VALUE >> 1);
+    }
+
+    /**
+     * @param chunkIndex the index of a chunk
+     * @return the number of indices in the given chunk that are below the current size of the store.
+     */
+    protected int getChunkRowCount(int chunkIndex)
+    {
+        int start = chunkIndex << chunkSizeLog;
+        return Math.max(0, Math.min(chunkSize, validIndex + 1 - start));
+    }
+
     @Override
     public String toString() {
         return "GenericStore{" +
@@ -82,9 +144,247 @@ public abstract class GenericStore implements IDataStore {
                 '}';
     }
 
+    /**
+     * Base implementation: the fields of this class and the array of chunks, including the chunks.
+     */
     @Override
-    public long getDataSize() {
-        return 0;  // derived classes should compute their sizes.
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(1, 5 * Integer.BYTES) + MemoryEstimator.sizeOfArray(getChunks());
+    }
+
+    /**
+     * @return the array holding the chunks of the store, or null if the store keeps its values elsewhere.
+     */
+    protected abstract Object getChunks();
+
+    /**
+     * @return a new chunk filled with the empty value, or null if the store keeps its values elsewhere.
+     */
+    protected abstract Object createEmptyChunk();
+
+    /**
+     * Base implementation: copies each run of remaining elements down with System.arraycopy, then fills
+     * the rest of the last chunk with empty values and releases the chunks past it.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        int size = size();
+        int target = removed.nextSetBit(0);
+        if (target < 0 || target >= size) {
+            return size;
+        }
+        Object[] chunks = (Object[]) getChunks();
+        Object emptyChunk = createEmptyChunk();
+        int runStart = removed.nextClearBit(target);
+        while (runStart < size) {
+            int runEnd = removed.nextSetBit(runStart);
+            if (runEnd < 0 || runEnd > size) {
+                runEnd = size;
+            }
+            copyElements(chunks, emptyChunk, runStart, target, runEnd - runStart);
+            target += runEnd - runStart;
+            runStart = runEnd < size ? removed.nextClearBit(runEnd) : size;
+        }
+
+        int tailChunk = target >> chunkSizeLog;
+        int tailPos = target & chunkSizeMask;
+        if (tailPos > 0 && chunks[tailChunk] != null) {
+            System.arraycopy(emptyChunk, tailPos, chunks[tailChunk], tailPos, chunkSize - tailPos);
+            tailChunk++;
+        }
+        for (int chunkIndex = tailChunk; chunkIndex < chunks.length; chunkIndex++) {
+            chunks[chunkIndex] = null;
+        }
+        markChunksDirty(removed.nextSetBit(0), size);
+        validIndex = target - 1;
+        return target;
+    }
+
+    /**
+     * Mark the chunk with the given index as written.
+     */
+    protected final void markChunkDirty(int chunkIndex) {
+        if (dirtyChunks == null) {
+            dirtyChunks = new BitSet();
+        }
+        dirtyChunks.set(chunkIndex);
+        if (growthListener != null && !accountedChunks.get(chunkIndex)) {
+            reportChunks(chunkIndex, chunkIndex + 1);
+        }
+    }
+
+    /**
+     * Mark the chunks holding the given range of element indices as written.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex the last index, exclusive.
+     */
+    protected final void markChunksDirty(int fromIndex, int toIndex) {
+        if (fromIndex < toIndex) {
+            if (dirtyChunks == null) {
+                dirtyChunks = new BitSet();
+            }
+            dirtyChunks.set(fromIndex >> chunkSizeLog, ((toIndex - 1) >> chunkSizeLog) + 1);
+            if (growthListener != null) {
+                reportChunks(fromIndex >> chunkSizeLog, ((toIndex - 1) >> chunkSizeLog) + 1);
+            }
+        }
+    }
+
+    /**
+     * Set the listener notified as the store takes more memory: when a chunk is written for the first time
+     * since the listener was set, and when the array of chunks grows.  The chunks allocated when the listener
+     * is set are taken as already accounted for.  Values referenced from a chunk, such as Strings or arrays,
+     * are counted as they stand when the chunk is first written.
+     *
+     * @param listener the listener, or null to remove it.
+     */
+    public void setGrowthListener(IStoreGrowthListener listener) {
+        growthListener = listener;
+        accountedChunks = null;
+        lastAccountedChunk = -1;
+        if (listener != null) {
+            accountedChunks = new BitSet();
+            Object[] chunks = (Object[]) getChunks();
+            for (int chunkIndex = 0; chunks != null && chunkIndex < chunks.length; chunkIndex++) {
+                if (chunks[chunkIndex] != null) {
+                    accountedChunks.set(chunkIndex);
+                }
+            }
+        }
+    }
+
+    public IStoreGrowthListener getGrowthListener() {
+        return growthListener;
+    }
+
+    /**
+     * Report the growth of the array of chunks to the growth listener, if there is one.  Called by the stores
+     * wherever they record a {@link com.ram.ds.cds.events.StoreGrowthEvent}.
+     */
+    protected final void chunkArrayGrown(int oldChunkCount, int newChunkCount) {
+        if (growthListener != null && newChunkCount > oldChunkCount) {
+            growthListener.storeGrown(this, (long) (newChunkCount - oldChunkCount) * MemoryEstimator.REFERENCE_SIZE);
+        }
+    }
+
+    /**
+     * Report the chunks in the given range that are allocated but not yet accounted for.
+     */
+    private void reportChunks(int fromChunk, int toChunk) {
+        Object[] chunks = (Object[]) getChunks();
+        if (chunks == null) {
+            return;
+        }
+        long bytes = 0;
+        int lastChunk = -1;
+        int end = Math.min(toChunk, chunks.length);
+        for (int chunkIndex = accountedChunks.nextClearBit(fromChunk); chunkIndex < end;
+             chunkIndex = accountedChunks.nextClearBit(chunkIndex + 1)) {
+            if (chunks[chunkIndex] != null) {
+                bytes += sizeOfChunk(chunks[chunkIndex]);
+                accountedChunks.set(chunkIndex);
+                lastChunk = chunkIndex;
+            }
+        }
+        if (lastChunk < 0) {
+            return;
+        }
+        if (lastAccountedChunk >= 0 && lastAccountedChunk < chunks.length) {
+            bytes += Math.max(0, sizeOfChunk(chunks[lastAccountedChunk]) - lastAccountedBytes);
+        }
+        lastAccountedChunk = lastChunk;
+        lastAccountedBytes = sizeOfChunk(chunks[lastChunk]);
+        growthListener.storeGrown(this, bytes);
+    }
+
+    private static long sizeOfChunk(Object chunk) {
+        return chunk instanceof PackedChunk ? ((PackedChunk) chunk).getRetainedSize() : MemoryEstimator.sizeOfArray(chunk);
+    }
+
+    /**
+     * Base implementation: null if the store keeps its values elsewhere than in chunks.
+     */
+    @Override
+    public BitSet getDirtyChunks() {
+        if (getChunks() == null) {
+            return null;
+        }
+        return dirtyChunks == null ? new BitSet() : (BitSet) dirtyChunks.clone();
+    }
+
+    @Override
+    public void clearDirtyChunks() {
+        dirtyChunks = null;
+    }
+
+    /**
+     * Base implementation: the size, then the index and the array of each chunk.  A chunk that was never
+     * allocated is written as null.
+     */
+    @Override
+    public void writeChunks(ObjectOutput out, BitSet chunkIndices) throws IOException {
+        Object[] chunks = (Object[]) getChunks();
+        if (chunks == null) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not keep its values in chunks");
+        }
+        int usedChunkCount = getUsedChunkCount();
+        out.writeInt(size());
+        out.writeInt(chunkIndices.get(0, usedChunkCount).cardinality());
+        for (int chunkIndex = chunkIndices.nextSetBit(0); chunkIndex >= 0 && chunkIndex < usedChunkCount;
+             chunkIndex = chunkIndices.nextSetBit(chunkIndex + 1)) {
+            out.writeInt(chunkIndex);
+            out.writeObject(chunkIndex < chunks.length ? chunks[chunkIndex] : null);
+        }
+    }
+
+    /**
+     * Base implementation: sets the size with {@link #ensureSize(int)}, releasing the chunks past it if the
+     * store shrank, then puts each chunk read in place and calls {@link #chunksRestored()}.  The chunks read
+     * are not marked dirty.
+     */
+    @Override
+    public void readChunks(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        ensureSize(size);
+        validIndex = size - 1;
+        Object[] chunks = (Object[]) getChunks();
+        for (int chunkIndex = getUsedChunkCount(); chunkIndex < chunks.length; chunkIndex++) {
+            chunks[chunkIndex] = null;
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            int chunkIndex = in.readInt();
+            chunks[chunkIndex] = in.readObject();
+        }
+        chunksRestored();
+    }
+
+    /**
+     * Called once chunks have been replaced by {@link #readChunks(ObjectInput)}, so that a store can rebuild
+     * what it derives from them.  The base implementation does nothing.
+     */
+    protected void chunksRestored() {
+    }
+
+    /**
+     * Copy a range of elements to a lower index, a piece at a time so that no piece crosses a chunk
+     * boundary.  A chunk that was never allocated holds empty values.
+     */
+    private void copyElements(Object[] chunks, Object emptyChunk, int from, int to, int length) {
+        while (length > 0) {
+            int fromPos = from & chunkSizeMask;
+            int toPos = to & chunkSizeMask;
+            int count = Math.min(length, chunkSize - Math.max(fromPos, toPos));
+            Object source = chunks[from >> chunkSizeLog];
+            int toChunk = to >> chunkSizeLog;
+            if (chunks[toChunk] == null) {
+                chunks[toChunk] = createEmptyChunk();
+            }
+            System.arraycopy(source == null ? emptyChunk : source, fromPos, chunks[toChunk], toPos, count);
+            from += count;
+            to += count;
+            length -= count;
+        }
     }
 }
 
@@ -0,0 +1,21 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * Receives the values of a store a run at a time, see for example
+ * {@link IIntStore#forEachChunk(int, int, IChunkVisitor)}.  A run never crosses a chunk boundary of the store,
+ * and may be given in the array the store holds its values in, so the visitor must not modify the array nor
+ * keep it once the call returns.
+ *
+ * @param <A> the array type of the values, such as int[].
+ */
+@FunctionalInterface
+public interface IChunkVisitor<A> {
+
+    /**
+     * @param fromIndex the index in the store of the first value of the run.
+     * @param values an array holding the run.
+     * @param offset the position in the array of the first value of the run.
+     * @param length the number of values in the run.
+     */
+    void visit(int fromIndex, A values, int offset, int length);
+}
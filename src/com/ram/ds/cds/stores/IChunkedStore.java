@@ -0,0 +1,43 @@
+package com.ram.ds.cds.stores;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.BitSet;
+
+/**
+ * A store that keeps its values in fixed-size chunks and remembers which chunks have been written since it
+ * was last saved, so that a save only has to write those chunks.  A chunk is marked dirty by the add, set,
+ * ensure-size and remove methods of the store.
+ */
+public interface IChunkedStore extends IDataStore {
+
+    /**
+     * @return the indices of the chunks written since the last {@link #clearDirtyChunks()}, as a copy; or null
+     *         if the store does not keep its values in chunks, in which case it can only be saved whole.
+     */
+    BitSet getDirtyChunks();
+
+    /**
+     * Mark every chunk as clean, typically once the store has been saved.
+     */
+    void clearDirtyChunks();
+
+    /**
+     * Write the size of the store and the given chunks, for {@link #readChunks(ObjectInput)} to apply to a
+     * copy of the store as it was when it was last saved.
+     *
+     * @param out the output.
+     * @param chunkIndices the chunks to write, typically the dirty ones.  Chunks past the size of the store
+     *                     are skipped.
+     */
+    void writeChunks(ObjectOutput out, BitSet chunkIndices) throws IOException;
+
+    /**
+     * Apply chunks written by {@link #writeChunks(ObjectOutput, BitSet)}: set the size of the store and
+     * replace the chunks that were written.
+     *
+     * @param in the input.
+     */
+    void readChunks(ObjectInput in) throws IOException, ClassNotFoundException;
+}
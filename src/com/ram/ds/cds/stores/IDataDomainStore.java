@@ -3,7 +3,7 @@ package com.ram.ds.cds.stores;
 /**
  * Holds an ordered, growable collection of Strings, each of which belongs to a set of possible valid values.
  */
-public interface IDataDomainStore extends IStringStore {    // was based on IDataStore; changed to IStringStore
+public interface IDataDomainStore extends IDictionaryStore {    // was based on IDataStore; changed to IStringStore
 
 	String getValue(int memberID);
 	
@@ -14,21 +14,6 @@ public interface IDataDomainStore extends IStringStore {    // was based on IDat
 	void setValueByKey(int memberID, int valueKey);
 
 
-	/**
-	 * Gets the key for the passed in value
-	 * 
-	 * @param value
-	 * @return the key for the value or -1 if not found
-	 */
-    int getKeyForValidValue(String value);
-
-    /**
-     *
-     * @param valueKey
-     * @return the valid String associated with the key
-     */
-    String getValidValueForKey(int valueKey);
-
     /**
      * Add a String value to the list of possible valid values that can be stored.
      * @param value
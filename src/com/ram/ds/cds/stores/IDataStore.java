@@ -1,6 +1,7 @@
 package com.ram.ds.cds.stores;
 
 import java.io.Serializable;
+import java.util.BitSet;
 
 /**
  * This interface is a placeholder and is the base interface for all DataStore's.  A DataStore is a growable
@@ -33,6 +34,16 @@ public interface IDataStore extends Serializable {
      */
     int ensureSize(int minimumSize);
 
+    /**
+     * Remove the elements at the given indices, moving each remaining element down over the removed ones
+     * while keeping their order: the element at index i moves to i minus the number of removed indices
+     * below i.  Indices at or beyond the size of the store are ignored.
+     *
+     * @param removed the indices of the elements to remove.
+     * @return the updated size of the store.
+     */
+    int removeElements(BitSet removed);
+
 
     /**
      * Return the total size in bytes of the data values contained in the store.  Implementation
@@ -40,5 +51,21 @@ public interface IDataStore extends Serializable {
      * @return Total size.
      */
     long getDataSize();
+
+    /**
+     * Return the approximate number of heap bytes retained by the store.  Unlike {@link #getDataSize()},
+     * this includes everything the store holds on to: the arrays that reference the chunks, unused
+     * capacity, dictionaries and summaries.
+     * @return Retained heap size.
+     */
+    long getRetainedSize();
+
+    /**
+     * Return the number of bytes the store holds outside of the Java heap, such as mapped files.
+     * @return Off-heap size, 0 for stores that are held entirely on the heap.
+     */
+    default long getOffHeapSize() {
+        return 0;
+    }
 }
 
@@ -0,0 +1,39 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * A String store that keeps each distinct value once, in a dictionary, and stores an int key per element.
+ * The keys are dense: they run from 0 to {@link #getKeyCount()} - 1 in the order the values were added to
+ * the dictionary, and a key never changes once assigned.  Filters can therefore decide each distinct value
+ * once and compare keys instead of Strings for each element.
+ */
+public interface IDictionaryStore extends IStringStore {
+
+    /**
+     * Get the dictionary key of the value at the given index.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @return the key of the value, or -1 if there is no value at the index.
+     * @throws ArrayIndexOutOfBoundsException if the index is equal to or
+     * greater than the current size of the store.
+     */
+    int getKeyAt(int index);
+
+    /**
+     * @return the number of keys assigned so far, which is one more than the largest key.
+     */
+    int getKeyCount();
+
+    /**
+     * Gets the key for the passed in value
+     *
+     * @param value
+     * @return the key for the value or -1 if not found
+     */
+    int getKeyForValidValue(String value);
+
+    /**
+     * @param valueKey a key less than {@link #getKeyCount()}.
+     * @return the valid String associated with the key
+     */
+    String getValidValueForKey(int valueKey);
+}
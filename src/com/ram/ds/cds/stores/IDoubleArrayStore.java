@@ -4,7 +4,7 @@ package com.ram.ds.cds.stores;
 /**
  */
 
-public interface IDoubleArrayStore extends IDataStore{
+public interface IDoubleArrayStore extends IObservableStore {
 	/**
 	 * Get the value at the given index. If the index is less than the 
 	 * current size of the store, a value will be returned, even if it 
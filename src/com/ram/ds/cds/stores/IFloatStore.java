@@ -1,5 +1,8 @@
 package com.ram.ds.cds.stores;
 
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
 /**
  */
 public interface IFloatStore extends IDataStore {
@@ -68,5 +71,85 @@ public interface IFloatStore extends IDataStore {
      * @return the previous value at the given index.
      */
     float setElementAt(int index, float value);
-}
 
+    /**
+     * Copy the values from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) into the
+     * given array.  The base implementation copies one value at a time; chunked stores copy a chunk at a time.
+     *
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex the last index, exclusive, no larger than the size of the store.
+     * @param target the array to copy into.
+     * @param targetPos the position in the target of the first value.
+     * @throws ArrayIndexOutOfBoundsException if toIndex is larger than the size of the store.
+     */
+    default void getRange(int fromIndex, int toIndex, float[] target, int targetPos) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            target[targetPos++] = getElement(index);
+        }
+    }
+
+    /**
+     * Add the given values to the end of the store, as {@link #addElement(float)} would one at a time.
+     *
+     * @param source the values to add, could include the empty value.
+     * @param sourcePos the position in the source of the first value.
+     * @param length the number of values to add.
+     * @return the index at which the first value was placed in the store.
+     * @throws IllegalStateException if the store would grow beyond its maximum capacity.
+     */
+    default int addAll(float[] source, int sourcePos, int length) {
+        int fromIndex = size();
+        for (int i = 0; i < length; i++) {
+            addElement(source[sourcePos + i]);
+        }
+        return fromIndex;
+    }
+
+    /**
+     * Set the values from the given index on, as {@link #setElementAt(int, float)} would one at a time.
+     *
+     * @param index the index of the first value to set.
+     * @param source the values to set, could include the empty value.
+     * @param sourcePos the position in the source of the first value.
+     * @param length the number of values to set.
+     */
+    default void setRange(int index, float[] source, int sourcePos, int length) {
+        for (int i = 0; i < length; i++) {
+            setElementAt(index + i, source[sourcePos + i]);
+        }
+    }
+
+    /**
+     * Set every value from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) to the given
+     * value, growing the store if necessary.
+     */
+    default void fill(int fromIndex, int toIndex, float value) {
+        for (int index = fromIndex; index < toIndex; index++) {
+            setElementAt(index, value);
+        }
+    }
+
+    /**
+     * Give the values from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) to the visitor
+     * a run at a time.  The base implementation copies each run into a buffer with
+     * {@link #getRange(int, int, float[], int)}; chunked stores give their chunks directly.
+     *
+     * @throws ArrayIndexOutOfBoundsException if toIndex is larger than the size of the store.
+     */
+    default void forEachChunk(int fromIndex, int toIndex, IChunkVisitor<float[]> visitor) {
+        float[] buffer = new float[Math.max(0, Math.min(toIndex - fromIndex, Constants.DEF_CHNK_SIZE))];
+        for (int index = fromIndex; index < toIndex; index += buffer.length) {
+            int count = Math.min(buffer.length, toIndex - index);
+            getRange(index, index + count, buffer, 0);
+            visitor.visit(index, buffer, 0, count);
+        }
+    }
+
+    /**
+     * @return a stream of the values of the store, empty values included, up to its current size.  A parallel
+     *         stream splits on chunk boundaries; see {@link StoreSpliterators}. Float values are widened to double.
+     */
+    default DoubleStream stream() {
+        return StreamSupport.doubleStream(StoreSpliterators.ofFloats(this, 0, size(), null), false);
+    }
+}
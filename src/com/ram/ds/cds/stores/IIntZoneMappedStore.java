@@ -0,0 +1,27 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * An int store that keeps the bounds of the non-empty values in each of its chunks.
+ *
+ * @see IZoneMappedStore
+ */
+public interface IIntZoneMappedStore extends IIntStore, IZoneMappedStore {
+
+    /**
+     * Get the lower bound of the non-empty values in a zone.  If the zone has no
+     * non-empty values, the result is greater than {@link #getZoneMax(int)}.
+     *
+     * @param zoneIndex a non-negative integer less than {@link #getZoneCount()}.
+     * @return a value no larger than any non-empty value in the zone.
+     */
+    int getZoneMin(int zoneIndex);
+
+    /**
+     * Get the upper bound of the non-empty values in a zone.  If the zone has no
+     * non-empty values, the result is less than {@link #getZoneMin(int)}.
+     *
+     * @param zoneIndex a non-negative integer less than {@link #getZoneCount()}.
+     * @return a value no smaller than any non-empty value in the zone.
+     */
+    int getZoneMax(int zoneIndex);
+}
@@ -0,0 +1,40 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * A store that tells a listener about each element written through its add and set methods, for example so
+ * that the writes can be logged.  Removing elements and growing the store with empty values are not
+ * reported, and neither are changes made directly to arrays held by the store.
+ */
+public interface IObservableStore extends IDataStore {
+
+    /**
+     * @param listener the listener to tell about each written element, or null to remove it.  The listener
+     *                 is not serialized with the store.
+     */
+    void setWriteListener(IStoreWriteListener listener);
+
+    /**
+     * @return the listener, or null if there is none.
+     */
+    IStoreWriteListener getWriteListener();
+
+    /**
+     * Add a listener alongside the current one, if any, so that several listeners can observe the store.
+     *
+     * @param listener the listener to add.
+     * @see StoreWriteMulticaster
+     */
+    default void addWriteListener(IStoreWriteListener listener) {
+        setWriteListener(StoreWriteMulticaster.add(getWriteListener(), listener));
+    }
+
+    /**
+     * Remove a listener added with {@link #addWriteListener(IStoreWriteListener)} or set with
+     * {@link #setWriteListener(IStoreWriteListener)}, leaving the others in place.
+     *
+     * @param listener the listener to remove.
+     */
+    default void removeWriteListener(IStoreWriteListener listener) {
+        setWriteListener(StoreWriteMulticaster.remove(getWriteListener(), listener));
+    }
+}
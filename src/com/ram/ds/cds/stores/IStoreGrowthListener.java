@@ -0,0 +1,16 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * Notified by a {@link GenericStore} as it takes more memory, so that a running estimate of the memory
+ * retained by a cube can be kept between full measurements.
+ */
+public interface IStoreGrowthListener {
+
+    /**
+     * Called on the writing thread after the store has allocated a chunk or grown its array of chunks.
+     *
+     * @param store the store that grew.
+     * @param bytes the estimated bytes added.
+     */
+    void storeGrown(IDataStore store, long bytes);
+}
@@ -0,0 +1,28 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * Notified by an {@link IObservableStore} after an element has been written.
+ */
+public interface IStoreWriteListener {
+
+    /**
+     * Called on the writing thread once the new value is in place, so that it can be read back from the store.
+     *
+     * @param store the store written to.
+     * @param index the index of the element that was added or set.
+     */
+    void elementWritten(IObservableStore store, int index);
+
+    /**
+     * Called by a double store instead of {@link #elementWritten(IObservableStore, int)}, with the value the
+     * element held before, so that a listener keeping totals can apply the difference without reading every
+     * element again.  The base implementation calls elementWritten.
+     *
+     * @param store the store written to.
+     * @param index the index of the element that was added or set.
+     * @param oldValue the previous value of the element, the empty value if it was added.
+     */
+    default void doubleWritten(IDoubleStore store, int index, double oldValue) {
+        elementWritten(store, index);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * A store that can keep a {@link ValidityBitmap} of the indices holding non-empty values, so that filters and
+ * aggregators can skip the empty values a word at a time.  The bitmap is optional: it costs one bit per
+ * index, and is only kept once {@link #setValidityTracked(boolean)} has turned it on.
+ * <p>
+ * Writing the empty value of the store still makes an index empty, so the bitmap and
+ * the zone maps of the store always agree on which indices are empty.
+ */
+public interface IValidityMappedStore extends IDataStore {
+
+    /**
+     * Start or stop keeping the bitmap.  Starting builds it from the values in the store.
+     */
+    void setValidityTracked(boolean tracked);
+
+    /**
+     * @return the bitmap of the non-empty values, kept up to date as values are written; or null if it is
+     *         not kept.
+     */
+    ValidityBitmap getValidity();
+
+    /**
+     * @param index non-negative integer less than the size of the store.
+     * @return true if the store holds the empty value at the given index, whether or not the bitmap is kept.
+     */
+    boolean isEmptyAt(int index);
+}
@@ -0,0 +1,37 @@
+package com.ram.ds.cds.stores;
+
+/**
+ * A store that keeps a summary (zone map) for each of its chunks.  A zone is the range of indices held by
+ * one chunk of the store, and its summary records the bounds of the non-empty values in the zone and the
+ * number of empty values.  Filters use the summaries to skip zones that cannot match, or to accept zones
+ * that match entirely, without reading the individual values.
+ * <p>
+ * The bounds are conservative: every non-empty value in a zone is within them, but after values have been
+ * overwritten they may be wider than the actual values.  Use {@link #rebuildZoneMaps()} to tighten them.
+ * The empty counts are always exact.
+ */
+public interface IZoneMappedStore extends IDataStore {
+
+    /**
+     * @return log2 of the number of indices in a zone, which is the chunk size of the store.
+     */
+    int getZoneSizeLog();
+
+    /**
+     * @return the number of zones needed to cover the current size of the store.
+     */
+    int getZoneCount();
+
+    /**
+     * Get the number of empty values in a zone, including the positions that have never been set.
+     *
+     * @param zoneIndex a non-negative integer less than {@link #getZoneCount()}.
+     * @return a non-negative integer no larger than the number of indices in the zone.
+     */
+    int getZoneEmptyCount(int zoneIndex);
+
+    /**
+     * Recompute the summaries of all the zones from the values in the store, so that the bounds are exact.
+     */
+    void rebuildZoneMaps();
+}
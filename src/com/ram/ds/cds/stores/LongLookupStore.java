@@ -4,6 +4,8 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 
+import com.ram.ds.cds.memory.MemoryEstimator;
+
 /**
  */
 
@@ -205,6 +207,19 @@ public class LongLookupStore extends LookupStore implements ILongLookupStore
                 '}';
     }
 
+    @Override
+    public long getDataSize() {
+        return keyStore.getDataSize() + currentID * (Long.SIZE/Byte.SIZE);
+    }
 
+    @Override
+    public long getRetainedSize() {
+        long size = super.getRetainedSize() + MemoryEstimator.sizeOfArray(keyToValueArray)
+                + MemoryEstimator.sizeOfHashMap(valueToKeyMap.size());
+        for ( int key = 0; key < currentID; key++ ) {
+            size += MemoryEstimator.sizeOfBoxed(keyToValueArray[key]) + MemoryEstimator.sizeOfBoxed(key);
+        }
+        return size;
+    }
 }
 
@@ -0,0 +1,283 @@
+package com.ram.ds.cds.stores;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
+/**
+ * Stores a Boolean[] for each item as bits, rather than as an array of Boolean references as
+ * {@link BooleanArrayStore} does.  Each value is a long[]: a header word holding the length of the array,
+ * then a bit for each element, then, only if some elements are null, a validity bit for each element.
+ * <p>
+ * {@link #getWord(int, int)} and {@link #getValidWord(int, int)} give 64 elements of a value at a time.
+ */
+public class PackedBooleanArrayStore extends GenericStore implements IBooleanArrayStore
+{
+    private static final long serialVersionUID = -2791906442210617345L;
+
+    private static final Boolean[] EMPTY = null;
+
+    private static final long ALL_VALID = 1L << 32;
+
+    private long[][][] chunks;
+
+    public PackedBooleanArrayStore()
+    {
+        super();
+    }
+
+    public PackedBooleanArrayStore(int initialChunkCount, int inputChunkSize)
+    {
+        super(initialChunkCount, inputChunkSize);
+    }
+
+    @Override
+    protected void allocateStore(int chunkCount, int inputChunkSize)
+    {
+        super.allocateStore(chunkCount, inputChunkSize);
+        chunks = new long[numChunks][][];
+    }
+
+    /**
+     * Get the value at the given index, decoded into a new array. If the index is less than the
+     * current size of the store, a value will be returned, even if it
+     * doesn't exist. Use the {@link #isEmptyValue(Boolean[])} method to check
+     * if the returned value is an indication that the value doesn't
+     * exist.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @return a value, could be the empty value.
+     * @throws ArrayIndexOutOfBoundsException if the index is equal to or
+     * greater than the current size of the store.
+     */
+    @Override
+    public Boolean[] getElement(int index)
+    {
+        long[] packed = getPackedElement(index);
+        if (packed == null) {
+            return EMPTY;
+        }
+        int length = (int) packed[0];
+        int wordCount = (length + 63) >> 6;
+        boolean allValid = (packed[0] & ALL_VALID) != 0;
+        Boolean[] value = new Boolean[length];
+        for (int i = 0; i < length; i++) {
+            long bit = 1L << i;
+            if (allValid || (packed[1 + wordCount + (i >> 6)] & bit) != 0) {
+                value[i] = (packed[1 + (i >> 6)] & bit) != 0;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the length of the value at the given index, or -1 if the value is empty.
+     */
+    public int getElementLength(int index)
+    {
+        long[] packed = getPackedElement(index);
+        return packed == null ? -1 : (int) packed[0];
+    }
+
+    /**
+     * @param index non-negative integer less than the size of the store.
+     * @param wordIndex the index of a group of 64 elements of the value, the first being at
+     *                  <code>wordIndex * 64</code>.
+     * @return the elements of the group, one bit each from the least significant; the bit of a null element
+     *         or of an element past the length of the value is clear.
+     */
+    public long getWord(int index, int wordIndex)
+    {
+        long[] packed = getPackedElement(index);
+        if (packed == null || wordIndex >= ((int) packed[0] + 63) >> 6) {
+            return 0L;
+        }
+        return packed[1 + wordIndex];
+    }
+
+    /**
+     * @param index non-negative integer less than the size of the store.
+     * @param wordIndex the index of a group of 64 elements of the value.
+     * @return a bit for each element of the group that is not null, from the least significant.
+     */
+    public long getValidWord(int index, int wordIndex)
+    {
+        long[] packed = getPackedElement(index);
+        if (packed == null) {
+            return 0L;
+        }
+        int length = (int) packed[0];
+        int wordCount = (length + 63) >> 6;
+        if (wordIndex >= wordCount) {
+            return 0L;
+        }
+        if ((packed[0] & ALL_VALID) == 0) {
+            return packed[1 + wordCount + wordIndex];
+        }
+        int remaining = length - (wordIndex << 6);
+        return remaining >= 64 ? -1L : (1L << remaining) - 1;
+    }
+
+    private long[] getPackedElement(int index)
+    {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond "
+                    + "the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        long[][] chunk = chunks[index >> chunkSizeLog];
+        return chunk == null ? null : chunk[index & chunkSizeMask];
+    }
+
+    private static long[] pack(Boolean[] value)
+    {
+        if (value == EMPTY) {
+            return null;
+        }
+        int length = value.length;
+        int wordCount = (length + 63) >> 6;
+        boolean allValid = true;
+        for (Boolean element : value) {
+            if (element == null) {
+                allValid = false;
+                break;
+            }
+        }
+        long[] packed = new long[1 + (allValid ? wordCount : 2 * wordCount)];
+        packed[0] = length | (allValid ? ALL_VALID : 0L);
+        for (int i = 0; i < length; i++) {
+            Boolean element = value[i];
+            if (element != null) {
+                if (element) {
+                    packed[1 + (i >> 6)] |= 1L << i;
+                }
+                if (!allValid) {
+                    packed[1 + wordCount + (i >> 6)] |= 1L << i;
+                }
+            }
+        }
+        return packed;
+    }
+
+    @Override
+    public boolean isEmptyValue(Boolean[] value)
+    {
+        return value == EMPTY;
+    }
+
+    @Override
+    public Boolean[] getEmptyValue()
+    {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(Boolean[] value)
+    {
+        int nextIndex = validIndex + 1;
+        if (nextIndex >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of " +
+                    "store reached. Cannot Add Further");
+        }
+        int chunkno = nextIndex >> chunkSizeLog;
+        growChunks(chunkno);
+        if (chunks[chunkno] == null) {
+            chunks[chunkno] = new long[chunkSize][];
+        }
+        chunks[chunkno][nextIndex & chunkSizeMask] = pack(value);
+        markChunkDirty(chunkno);
+        ++validIndex;
+        return validIndex;
+    }
+
+    /**
+     * Set the element at the given index to be the given value, and get
+     * back the previous value, as {@link BooleanArrayStore#setElementAt(int, Boolean[])} does.
+     *
+     * @param index a non-negative integer less than Integer.MAX_VALUE.
+     * @param value a value, could be the empty value.
+     * @return the previous value at the given index, decoded, or the empty value.
+     */
+    @Override
+    public Boolean[] setElementAt(int index, Boolean[] value)
+    {
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + index);
+        }
+        int chunkIndex = index >> chunkSizeLog;
+        growChunks(chunkIndex);
+        Boolean[] oldValue = index <= validIndex ? getElement(index) : EMPTY;
+        validIndex = Math.max(index, validIndex);
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = new long[chunkSize][];
+        }
+        chunks[chunkIndex][index & chunkSizeMask] = pack(value);
+        markChunkDirty(chunkIndex);
+        return oldValue;
+    }
+
+    @Override
+    public int ensureSize(int minimumSize)
+    {
+        int index = minimumSize - 1;
+        if (index > validIndex) {
+            growChunks(index >> chunkSizeLog);
+            markChunksDirty(validIndex + 1, index + 1);
+            validIndex = index;
+        }
+        return validIndex + 1;
+    }
+
+    private void growChunks(int chunkIndex)
+    {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newChunkCount = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newChunkCount);
+            growthEvent.finish(this, numChunks, newChunkCount);
+            chunkArrayGrown(numChunks, newChunkCount);
+            numChunks = newChunkCount;
+        }
+    }
+
+    /**
+     * @return the size of the packed values, in bytes.
+     */
+    @Override
+    public long getDataSize()
+    {
+        long size = 0;
+        for (long[][] chunk : chunks) {
+            if (chunk != null) {
+                for (long[] packed : chunk) {
+                    if (packed != null) {
+                        size += packed.length * (long) Long.BYTES;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks()
+    {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk()
+    {
+        return new long[chunkSize][];
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBooleanArrayStore{" +
+                "size=" + size() +
+                ", dataSize=" + getDataSize() +
+                '}';
+    }
+}
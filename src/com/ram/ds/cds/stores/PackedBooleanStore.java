@@ -0,0 +1,284 @@
+package com.ram.ds.cds.stores;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.events.StoreGrowthEvent;
+
+/**
+ * Stores one boolean for each item in a single bit, rather than in a Boolean reference as {@link BooleanStore}
+ * does.  Each chunk is a long[] holding the value bits of its items followed by their validity bits; an item
+ * whose validity bit is clear holds the empty value, null.
+ * <p>
+ * {@link #getWord(int)} and {@link #getValidWord(int)} give 64 items at a time, so that aggregators and
+ * filters can process a word per operation.  The chunk size is at least 64.
+ */
+public class PackedBooleanStore extends GenericStore implements IBooleanStore
+{
+    private static final long serialVersionUID = 3108473245127734018L;
+
+    private static final Boolean EMPTY = null;
+
+    private long[][] chunks;
+    private int wordsPerChunk;
+
+    public PackedBooleanStore()
+    {
+        super();
+    }
+
+    public PackedBooleanStore(int initialChunkCount, int inputChunkSize)
+    {
+        super(initialChunkCount, inputChunkSize);
+    }
+
+    @Override
+    protected void allocateStore(int chunkCount, int inputChunkSize)
+    {
+        super.allocateStore(chunkCount, Math.max(inputChunkSize, Long.SIZE));
+        wordsPerChunk = chunkSize >> 6;
+        chunks = new long[numChunks][];
+    }
+
+    /**
+     * Get the value at the given index. If the index is less than the
+     * current size of the store, a value will be returned, even if it
+     * doesn't exist. Use the {@link #isEmptyValue(Boolean)} method to check
+     * if the returned value is an indication that the value doesn't
+     * exist.
+     *
+     * @param index non-negative integer less than the size of the store.
+     * @return a value, could be the empty value.
+     * @throws ArrayIndexOutOfBoundsException if the index is equal to or
+     * greater than the current size of the store.
+     */
+    @Override
+    public Boolean getElement(int index)
+    {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond "
+                    + "the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        long[] chunk = chunks[index >> chunkSizeLog];
+        if (chunk == null) {
+            return EMPTY;
+        }
+        int word = (index & chunkSizeMask) >> 6;
+        long bit = 1L << index;
+        if ((chunk[wordsPerChunk + word] & bit) == 0) {
+            return EMPTY;
+        }
+        return (chunk[word] & bit) != 0;
+    }
+
+    /**
+     * @param wordIndex the index of a group of 64 items, the first being at <code>wordIndex * 64</code>.
+     * @return the values of the items of the group, one bit each from the least significant; the bit of an
+     *         empty item or of an item past the size of the store is clear.
+     */
+    public long getWord(int wordIndex)
+    {
+        int chunkIndex = wordIndex >> (chunkSizeLog - 6);
+        if (chunkIndex >= chunks.length || chunks[chunkIndex] == null) {
+            return 0L;
+        }
+        return chunks[chunkIndex][wordIndex & (wordsPerChunk - 1)];
+    }
+
+    /**
+     * @param wordIndex the index of a group of 64 items, the first being at <code>wordIndex * 64</code>.
+     * @return a bit for each item of the group that is not empty, from the least significant.
+     */
+    public long getValidWord(int wordIndex)
+    {
+        int chunkIndex = wordIndex >> (chunkSizeLog - 6);
+        if (chunkIndex >= chunks.length || chunks[chunkIndex] == null) {
+            return 0L;
+        }
+        return chunks[chunkIndex][wordsPerChunk + (wordIndex & (wordsPerChunk - 1))];
+    }
+
+    @Override
+    public boolean isEmptyValue(Boolean value)
+    {
+        return value == EMPTY;
+    }
+
+    @Override
+    public Boolean getEmptyValue()
+    {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(Boolean value)
+    {
+        int nextIndex = validIndex + 1;
+        if (nextIndex >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of " +
+                    "store reached. Cannot Add Further");
+        }
+        int chunkno = nextIndex >> chunkSizeLog;
+        growChunks(chunkno);
+        ++validIndex;
+        if (value != EMPTY) {
+            writeBits(nextIndex, value);
+        }
+        markChunkDirty(chunkno);
+        return validIndex;
+    }
+
+    /**
+     * Set the element at the given index to be the given value, and get
+     * back the previous value, as {@link BooleanStore#setElementAt(int, Boolean)} does.
+     *
+     * @param index a non-negative integer less than Integer.MAX_VALUE.
+     * @param value a value, could be the empty value.
+     * @return the previous value at the given index.
+     */
+    @Override
+    public Boolean setElementAt(int index, Boolean value)
+    {
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum limit of " +
+                    "store reached. Cannot set element at " + index);
+        }
+        Boolean oldValue = index <= validIndex ? getElement(index) : EMPTY;
+        growChunks(index >> chunkSizeLog);
+        validIndex = Math.max(index, validIndex);
+        if (value != EMPTY) {
+            writeBits(index, value);
+        } else if (oldValue != EMPTY) {
+            long[] chunk = chunks[index >> chunkSizeLog];
+            int word = (index & chunkSizeMask) >> 6;
+            chunk[word] &= ~(1L << index);
+            chunk[wordsPerChunk + word] &= ~(1L << index);
+        }
+        markChunkDirty(index >> chunkSizeLog);
+        return oldValue;
+    }
+
+    private void writeBits(int index, boolean value)
+    {
+        int chunkno = index >> chunkSizeLog;
+        if (chunks[chunkno] == null) {
+            chunks[chunkno] = new long[2 * wordsPerChunk];
+        }
+        long[] chunk = chunks[chunkno];
+        int word = (index & chunkSizeMask) >> 6;
+        long bit = 1L << index;
+        if (value) {
+            chunk[word] |= bit;
+        } else {
+            chunk[word] &= ~bit;
+        }
+        chunk[wordsPerChunk + word] |= bit;
+    }
+
+    @Override
+    public int ensureSize(int minimumSize)
+    {
+        int index = minimumSize - 1;
+        if (index > validIndex) {
+            growChunks(index >> chunkSizeLog);
+            markChunksDirty(validIndex + 1, index + 1);
+            validIndex = index;
+        }
+        return validIndex + 1;
+    }
+
+    private void growChunks(int chunkIndex)
+    {
+        if (chunkIndex >= numChunks) {
+            StoreGrowthEvent growthEvent = new StoreGrowthEvent();
+            growthEvent.start();
+            int newChunkCount = getGrownChunkCount(chunkIndex);
+            chunks = Arrays.copyOf(chunks, newChunkCount);
+            growthEvent.finish(this, numChunks, newChunkCount);
+            chunkArrayGrown(numChunks, newChunkCount);
+            numChunks = newChunkCount;
+        }
+    }
+
+    /**
+     * Moves the bits of the remaining items down one at a time, since items do not take whole array
+     * elements, then clears the bits past the new size and releases the chunks past it.
+     */
+    @Override
+    public int removeElements(BitSet removed)
+    {
+        int size = size();
+        int target = removed.nextSetBit(0);
+        if (target < 0 || target >= size) {
+            return size;
+        }
+        int firstRemoved = target;
+        for (int index = removed.nextClearBit(target); index < size; index = removed.nextClearBit(index + 1)) {
+            Boolean value = getElement(index);
+            if (value != EMPTY) {
+                writeBits(target, value);
+            } else if (chunks[target >> chunkSizeLog] != null) {
+                long[] chunk = chunks[target >> chunkSizeLog];
+                int word = (target & chunkSizeMask) >> 6;
+                chunk[wordsPerChunk + word] &= ~(1L << target);
+                chunk[word] &= ~(1L << target);
+            }
+            target++;
+        }
+
+        int tailChunk = target >> chunkSizeLog;
+        int tailPos = target & chunkSizeMask;
+        if (tailPos > 0 && chunks[tailChunk] != null) {
+            long[] chunk = chunks[tailChunk];
+            int word = tailPos >> 6;
+            long keep = (1L << tailPos) - 1; // none of the word when tailPos is a multiple of 64
+            chunk[word] &= keep;
+            chunk[wordsPerChunk + word] &= keep;
+            Arrays.fill(chunk, word + 1, wordsPerChunk, 0L);
+            Arrays.fill(chunk, wordsPerChunk + word + 1, 2 * wordsPerChunk, 0L);
+            tailChunk++;
+        }
+        for (int chunkIndex = tailChunk; chunkIndex < chunks.length; chunkIndex++) {
+            chunks[chunkIndex] = null;
+        }
+        markChunksDirty(firstRemoved, size);
+        validIndex = target - 1;
+        return target;
+    }
+
+    /**
+     * @return the size of the allocated chunks, in bytes.
+     */
+    @Override
+    public long getDataSize()
+    {
+        long size = 0;
+        for (long[] chunk : chunks) {
+            if (chunk != null) {
+                size += chunk.length * (long) Long.BYTES;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected Object getChunks()
+    {
+        return chunks;
+    }
+
+    @Override
+    protected Object createEmptyChunk()
+    {
+        return new long[2 * wordsPerChunk];
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBooleanStore{" +
+                "size=" + size() +
+                ", dataSize=" + getDataSize() +
+                '}';
+    }
+}
@@ -0,0 +1,305 @@
+package com.ram.ds.cds.stores;
+
+import java.io.Serializable;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
+
+/**
+ * The values of a chunk of an {@link EncodedIntStore} or {@link EncodedLongStore}, packed in as few bits as
+ * the chunk needs.  Two encodings are tried:
+ * <ul>
+ * <li>frame of reference: each value is stored as its difference to the smallest value of the chunk, in
+ * the number of bits needed by the largest difference.  The empty value, if the chunk has any, takes code 0.
+ * A chunk holding a single value needs no bits at all.</li>
+ * <li>delta: each value is stored as its difference to the previous value, less the smallest such
+ * difference, with the first value of every block of 64 kept whole.  This suits runs of increasing ids, and
+ * is only used for chunks without empty values.</li>
+ * </ul>
+ * Frame of reference reads any value in constant time, and delta needs up to 63 additions, so delta is only
+ * chosen when it is at most three quarters of the size of frame of reference.
+ */
+final class PackedChunk implements Serializable {
+
+    private static final long serialVersionUID = -6061870302813893620L;
+
+    private static final byte FRAME_OF_REFERENCE = 0;
+    private static final byte DELTA = 1;
+
+    private static final int DELTA_BLOCK_LOG = 6;
+    private static final int DELTA_BLOCK_MASK = (1 << DELTA_BLOCK_LOG) - 1;
+
+    private final byte encoding;
+    private final int length;       // number of values packed; the positions past it are empty
+    private final long emptyValue;
+    private final boolean hasEmpty; // frame of reference only: code 0 stands for the empty value
+    private final long base;        // the smallest value, or the smallest difference for delta
+    private final int width;        // bits per value
+    private final long[] words;
+    private final long[] anchors;   // delta only: the first value of each block
+
+    private PackedChunk(byte encoding, int length, long emptyValue, boolean hasEmpty, long base, int width,
+                        long[] anchors) {
+        this.encoding = encoding;
+        this.length = length;
+        this.emptyValue = emptyValue;
+        this.hasEmpty = hasEmpty;
+        this.base = base;
+        this.width = width;
+        this.words = new long[(int) (((long) length * width + 63) >>> 6)];
+        this.anchors = anchors;
+    }
+
+    /**
+     * Pack the first values of a chunk.
+     *
+     * @param values the values.
+     * @param length the number of values to pack.
+     * @param emptyValue the empty value of the store.
+     * @param rawBits the bits taken by a value when not packed, 32 or 64.
+     * @return the packed values, or null if packing would not save space.
+     */
+    static PackedChunk pack(long[] values, int length, long emptyValue, int rawBits) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean hasEmpty = false;
+        for (int i = 0; i < length; i++) {
+            long value = values[i];
+            if (value == emptyValue) {
+                hasEmpty = true;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        long forBits = Long.MAX_VALUE;
+        int forWidth = 0;
+        if (min > max) {
+            min = 0; // every value is empty: width 0, everything is code 0
+            forBits = 0;
+        } else {
+            long codes = max - min; // unsigned
+            if (hasEmpty) {
+                codes++;
+            }
+            if (!(hasEmpty && codes == 0)) { // the codes do not overflow 64 bits
+                forWidth = 64 - Long.numberOfLeadingZeros(codes);
+                forBits = (long) forWidth * length;
+            }
+        }
+
+        long deltaBits = Long.MAX_VALUE;
+        int deltaWidth = 0;
+        long minDelta = 0;
+        if (!hasEmpty && length > 1) {
+            minDelta = Long.MAX_VALUE;
+            long maxDelta = Long.MIN_VALUE;
+            for (int i = 1; i < length; i++) {
+                if ((i & DELTA_BLOCK_MASK) != 0) {
+                    long delta = values[i] - values[i - 1];
+                    minDelta = Math.min(minDelta, delta);
+                    maxDelta = Math.max(maxDelta, delta);
+                }
+            }
+            if (minDelta <= maxDelta) {
+                deltaWidth = 64 - Long.numberOfLeadingZeros(maxDelta - minDelta);
+                deltaBits = (long) deltaWidth * length + 64L * (((length - 1) >> DELTA_BLOCK_LOG) + 1);
+            }
+        }
+
+        long rawSize = (long) rawBits * length;
+        if (deltaBits < forBits - (forBits >> 2) && deltaBits < rawSize) {
+            int blockCount = ((length - 1) >> DELTA_BLOCK_LOG) + 1;
+            long[] anchors = new long[blockCount];
+            PackedChunk chunk = new PackedChunk(DELTA, length, emptyValue, false, minDelta, deltaWidth, anchors);
+            for (int i = 0; i < length; i++) {
+                if ((i & DELTA_BLOCK_MASK) == 0) {
+                    anchors[i >> DELTA_BLOCK_LOG] = values[i];
+                } else {
+                    chunk.putCode(i, values[i] - values[i - 1] - minDelta);
+                }
+            }
+            return chunk;
+        }
+        if (forBits < rawSize) {
+            PackedChunk chunk = new PackedChunk(FRAME_OF_REFERENCE, length, emptyValue, hasEmpty, min, forWidth, null);
+            for (int i = 0; i < length; i++) {
+                chunk.putCode(i, chunk.codeOf(values[i]));
+            }
+            return chunk;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of values packed.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @param pos a position in the chunk.
+     * @return the value at the position, the empty value past the values packed.
+     */
+    long get(int pos) {
+        if (pos >= length) {
+            return emptyValue;
+        }
+        if (encoding == FRAME_OF_REFERENCE) {
+            long code = getCode(pos);
+            if (hasEmpty) {
+                return code == 0 ? emptyValue : base + code - 1;
+            }
+            return base + code;
+        }
+        int blockStart = pos & ~DELTA_BLOCK_MASK;
+        long value = anchors[pos >> DELTA_BLOCK_LOG];
+        for (int i = blockStart + 1; i <= pos; i++) {
+            value += base + getCode(i);
+        }
+        return value;
+    }
+
+    /**
+     * Unpack a range of values.
+     *
+     * @param from the first position, inclusive.
+     * @param to the last position, exclusive.
+     * @param target the array to unpack into, at targetPos.
+     */
+    void unpack(int from, int to, long[] target, int targetPos) {
+        int end = Math.min(to, length);
+        if (encoding == FRAME_OF_REFERENCE) {
+            if (width == 0) {
+                long value = hasEmpty ? emptyValue : base;
+                for (int pos = from; pos < end; pos++) {
+                    target[targetPos++] = value;
+                }
+            } else {
+                long mask = width == 64 ? -1L : (1L << width) - 1;
+                long bitPos = (long) from * width;
+                for (int pos = from; pos < end; pos++, bitPos += width) {
+                    long code = extract(bitPos, mask);
+                    target[targetPos++] = hasEmpty ? (code == 0 ? emptyValue : base + code - 1) : base + code;
+                }
+            }
+        } else if (from < end) {
+            long value = get(from);
+            target[targetPos++] = value;
+            for (int pos = from + 1; pos < end; pos++) {
+                value = (pos & DELTA_BLOCK_MASK) == 0 ? anchors[pos >> DELTA_BLOCK_LOG] : value + base + getCode(pos);
+                target[targetPos++] = value;
+            }
+        }
+        for (int pos = Math.max(from, end); pos < to; pos++) {
+            target[targetPos++] = emptyValue;
+        }
+    }
+
+    /**
+     * Unpack a range of values into ints, see {@link #unpack(int, int, long[], int)}.
+     */
+    void unpack(int from, int to, int[] target, int targetPos) {
+        long[] values = new long[to - from];
+        unpack(from, to, values, 0);
+        for (long value : values) {
+            target[targetPos++] = (int) value;
+        }
+    }
+
+    /**
+     * Replace a value in place, if it can be encoded in the bits of the chunk.
+     *
+     * @return true if the value was replaced.
+     */
+    boolean trySet(int pos, long value) {
+        if (encoding != FRAME_OF_REFERENCE || pos >= length) {
+            return false;
+        }
+        long code;
+        if (value == emptyValue) {
+            if (!hasEmpty) {
+                return false;
+            }
+            code = 0;
+        } else {
+            code = codeOf(value);
+            if (hasEmpty && code == 0) { // wrapped around onto the code of the empty value
+                return false;
+            }
+        }
+        if (width < 64 && code >>> width != 0) {
+            return false;
+        }
+        putCode(pos, code);
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of values, not counting the fixed fields.
+     */
+    long getDataSize() {
+        return (long) words.length * Long.BYTES + (anchors == null ? 0 : (long) anchors.length * Long.BYTES);
+    }
+
+    long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(2, 2 * Integer.BYTES + 2 * Long.BYTES + 2)
+                + MemoryEstimator.sizeOfArray(words) + MemoryEstimator.sizeOfArray(anchors);
+    }
+
+    boolean isDelta() {
+        return encoding == DELTA;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    private long codeOf(long value) {
+        if (value == emptyValue && hasEmpty) {
+            return 0;
+        }
+        return hasEmpty ? value - base + 1 : value - base;
+    }
+
+    private long getCode(int pos) {
+        return extract((long) pos * width, width == 64 ? -1L : (1L << width) - 1);
+    }
+
+    private long extract(long bitPos, long mask) {
+        if (width == 0) {
+            return 0;
+        }
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        long bits = words[word] >>> shift;
+        if (shift + width > 64) {
+            bits |= words[word + 1] << (64 - shift);
+        }
+        return bits & mask;
+    }
+
+    private void putCode(int pos, long code) {
+        if (width == 0) {
+            return;
+        }
+        long bitPos = (long) pos * width;
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        words[word] = (words[word] & ~(mask << shift)) | ((code & mask) << shift);
+        if (shift + width > 64) {
+            int spill = 64 - shift;
+            words[word + 1] = (words[word + 1] & ~(mask >>> spill)) | ((code & mask) >>> spill);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackedChunk{" +
+                "encoding=" + (encoding == DELTA ? "delta" : "frameOfReference") +
+                ", length=" + length +
+                ", width=" + width +
+                '}';
+    }
+}
@@ -0,0 +1,299 @@
+package com.ram.ds.cds.stores;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the chunks of {@link PagedStore}s that are in memory, under a budget of bytes shared by all the stores
+ * that use the cache.  When the budget is exceeded, the least recently used chunks are dropped, after writing
+ * those that were modified back to the column file of their store.
+ *
+ * <p>The cache also reads ahead for sequential scans: once a store sees its chunks read in order, the next
+ * chunks are loaded in the background, in a window that doubles with each chunk up to
+ * {@link #getMaxReadAhead()}.</p>
+ *
+ * <p>The column files of the stores are created in the directory of the cache.  Unless a store is created
+ * with a cache of its own, it uses the {@link #getDefault() default cache}, which keeps its files in a
+ * temporary directory and may use a quarter of the maximum heap.</p>
+ */
+public class PageCache implements AutoCloseable {
+
+    /**
+     * Default maximum number of chunks read ahead of a sequential scan.
+     */
+    public static final int DEFAULT_MAX_READ_AHEAD = 8;
+
+    private static PageCache defaultCache;
+
+    private final Path directory;
+    private final long budgetBytes;
+    private volatile int maxReadAhead = DEFAULT_MAX_READ_AHEAD;
+
+    /**
+     * The pages in memory, least recently used first.
+     */
+    private final LinkedHashSet<PagedStore.Page> pages = new LinkedHashSet<PagedStore.Page>();
+    private long residentBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long writeBackCount;
+    private long readAheadCount;
+
+    private final ExecutorService readAheadExecutor;
+
+    /**
+     * @param directory the directory for the column files of the stores, created if needed.
+     * @param budgetBytes the number of heap bytes the chunks in memory may take.
+     */
+    public PageCache(Path directory, long budgetBytes) throws IOException {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("The budget must be positive: " + budgetBytes);
+        }
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        Files.createDirectories(directory);
+        AtomicInteger threadCount = new AtomicInteger();
+        readAheadExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "page-read-ahead-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return the cache used by the paged stores that are not given one, created on first use.
+     */
+    public static synchronized PageCache getDefault() {
+        if (defaultCache == null) {
+            try {
+                defaultCache = new PageCache(Files.createTempDirectory("cube-pages"), Runtime.getRuntime().maxMemory() / 4);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create the default page cache", e);
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Replace the default cache, for the stores created from now on.
+     */
+    public static synchronized void setDefault(PageCache cache) {
+        defaultCache = cache;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public int getMaxReadAhead() {
+        return maxReadAhead;
+    }
+
+    /**
+     * @param maxReadAhead the maximum number of chunks read ahead of a sequential scan, 0 to disable read-ahead.
+     */
+    public void setMaxReadAhead(int maxReadAhead) {
+        if (maxReadAhead < 0) {
+            throw new IllegalArgumentException("maxReadAhead must not be negative: " + maxReadAhead);
+        }
+        this.maxReadAhead = maxReadAhead;
+    }
+
+    /**
+     * @return the number of bytes taken by the chunks in memory.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return the number of chunks in memory.
+     */
+    public synchronized int getResidentPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return the number of times a store found the chunk it needed in memory.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of times a store had to read a chunk from its column file, or to create it.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of chunks loaded ahead of sequential scans.
+     */
+    public synchronized long getReadAheadCount() {
+        return readAheadCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of modified chunks written back to their column file when dropped.
+     */
+    public synchronized long getWriteBackCount() {
+        return writeBackCount;
+    }
+
+    /**
+     * Stop reading ahead.  The stores keep working, without read-ahead.
+     */
+    @Override
+    public void close() {
+        readAheadExecutor.shutdown();
+    }
+
+    /**
+     * Record a use of a page that is in memory.  The page may have been chosen for eviction meanwhile, in
+     * which case it is kept.  Called with the lock of the store held.
+     */
+    synchronized void touch(PagedStore.Page page) {
+        hitCount++;
+        if (pages.remove(page)) {
+            pages.add(page);
+        } else {
+            pages.add(page);
+            residentBytes += page.bytes;
+        }
+    }
+
+    /**
+     * Add a page just loaded.  Called with the lock of the store held.
+     *
+     * @param readAhead true if the page was loaded ahead of a scan rather than on demand.
+     */
+    synchronized void add(PagedStore.Page page, boolean readAhead) {
+        if (readAhead) {
+            readAheadCount++;
+        } else {
+            missCount++;
+        }
+        pages.add(page);
+        residentBytes += page.bytes;
+    }
+
+    /**
+     * Forget a page that its store dropped, for example when the store shrank.  Called with the lock of the
+     * store held.
+     */
+    synchronized void remove(PagedStore.Page page) {
+        if (pages.remove(page)) {
+            residentBytes -= page.bytes;
+        }
+    }
+
+    /**
+     * @return true if the page is still in the cache.  Called with the lock of the store held.
+     */
+    synchronized boolean contains(PagedStore.Page page) {
+        return pages.contains(page);
+    }
+
+    /**
+     * Account for a page whose size changed, for example an array element that was replaced.  Called with the
+     * lock of the store held.
+     */
+    synchronized void resized(PagedStore.Page page, long newBytes) {
+        if (pages.contains(page)) {
+            residentBytes += newBytes - page.bytes;
+        }
+        page.bytes = newBytes;
+    }
+
+    synchronized boolean isOverBudget() {
+        return residentBytes > budgetBytes;
+    }
+
+    synchronized void writtenBack() {
+        writeBackCount++;
+    }
+
+    /**
+     * Drop the least recently used pages until the cache is within its budget.  Must be called without holding
+     * the lock of any store, since the pages dropped are written back under the lock of their store.
+     */
+    void evict() {
+        while (true) {
+            List<PagedStore.Page> victims;
+            synchronized (this) {
+                if (residentBytes <= budgetBytes || pages.isEmpty()) {
+                    return;
+                }
+                victims = new ArrayList<PagedStore.Page>();
+                long excess = residentBytes - budgetBytes;
+                Iterator<PagedStore.Page> iterator = pages.iterator();
+                while (excess > 0 && iterator.hasNext()) {
+                    PagedStore.Page page = iterator.next();
+                    iterator.remove();
+                    residentBytes -= page.bytes;
+                    excess -= page.bytes;
+                    victims.add(page);
+                }
+            }
+            for (PagedStore.Page page : victims) {
+                if (page.store.drop(page)) {
+                    synchronized (this) {
+                        evictionCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Load chunks of a store in the background.
+     */
+    void readAhead(PagedStore store, int fromChunk, int toChunk) {
+        try {
+            readAheadExecutor.execute(() -> {
+                for (int chunkIndex = fromChunk; chunkIndex < toChunk; chunkIndex++) {
+                    store.prefetch(chunkIndex);
+                }
+                evict();
+            });
+        } catch (RejectedExecutionException e) {
+            // closed: no more read-ahead
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PageCache{" +
+                "directory=" + directory +
+                ", budgetBytes=" + budgetBytes +
+                ", residentBytes=" + residentBytes +
+                ", pages=" + pages.size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", readAheadCount=" + readAheadCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+}
@@ -0,0 +1,153 @@
+package com.ram.ds.cds.stores;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a double[] for each item, such as a time series, in chunks that are loaded from a column file on
+ * demand.  The arrays may have different lengths; a chunk is written to the file as the length and the
+ * values of each of its arrays.
+ * @see PagedStore
+ */
+public class PagedDoubleArrayStore extends PagedStore implements IDoubleArrayStore {
+
+    private static final long serialVersionUID = 2794030462958117315L;
+
+    private static final double[] EMPTY = null;
+
+    private transient IStoreWriteListener writeListener;
+
+    /**
+     * Create a store in the default page cache, with the default chunk size.
+     */
+    public PagedDoubleArrayStore() {
+        this(PageCache.getDefault(), DEF_CHNK_SIZE);
+    }
+
+    /**
+     * @param cache the cache to hold the chunks in memory.
+     * @param inputChunkSize the number of elements in a chunk, rounded up to a power of 2.  Since each element
+     *                       is an array, a chunk should be smaller than for the scalar paged stores.
+     */
+    public PagedDoubleArrayStore(PageCache cache, int inputChunkSize) {
+        super(cache, inputChunkSize);
+    }
+
+    /**
+     * The array returned is the one held by the store.  It must not be modified, since the change would not
+     * be written to the column file.
+     */
+    @Override
+    public double[] getElement(int index) {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        return ((double[][]) getChunkForRead(index >> chunkSizeLog))[index & chunkSizeMask];
+    }
+
+    @Override
+    public boolean isEmptyValue(double[] value) {
+        return value == EMPTY;
+    }
+
+    @Override
+    public double[] getEmptyValue() {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(double[] values) {
+        int index;
+        synchronized (this) {
+            index = nextIndex();
+            Page page = getPageForWrite(index >> chunkSizeLog);
+            ((double[][]) page.data)[index & chunkSizeMask] = values;
+            chunkResized(page);
+        }
+        trimCache();
+        if (writeListener != null) {
+            writeListener.elementWritten(this, index);
+        }
+        return index;
+    }
+
+    @Override
+    public double[] setElementAt(int index, double[] value) {
+        double[] previous;
+        synchronized (this) {
+            ensureSize(index + 1);
+            Page page = getPageForWrite(index >> chunkSizeLog);
+            double[][] chunk = (double[][]) page.data;
+            previous = chunk[index & chunkSizeMask];
+            chunk[index & chunkSizeMask] = value;
+            chunkResized(page);
+        }
+        trimCache();
+        if (writeListener != null) {
+            writeListener.elementWritten(this, index);
+        }
+        return previous;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        return new double[chunkSize][];
+    }
+
+    @Override
+    protected ByteBuffer encodeChunk(Object chunk) {
+        double[][] arrays = (double[][]) chunk;
+        int length = arrays.length * Integer.BYTES;
+        for (double[] values : arrays) {
+            if (values != null) {
+                length += values.length * Double.BYTES;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (double[] values : arrays) {
+            if (values == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(values.length);
+                buffer.asDoubleBuffer().put(values);
+                buffer.position(buffer.position() + values.length * Double.BYTES);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    protected Object decodeChunk(ByteBuffer buffer) {
+        double[][] arrays = new double[chunkSize][];
+        for (int pos = 0; pos < chunkSize; pos++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                double[] values = new double[length];
+                buffer.asDoubleBuffer().get(values);
+                buffer.position(buffer.position() + length * Double.BYTES);
+                arrays[pos] = values;
+            }
+        }
+        return arrays;
+    }
+
+    /**
+     * An estimate from the column file, which does not count the changes to the chunks in memory that have
+     * not been written back yet.
+     */
+    @Override
+    public long getDataSize() {
+        return getStoredBytes();
+    }
+
+    @Override
+    public void setWriteListener(IStoreWriteListener listener) {
+        writeListener = listener;
+    }
+
+    @Override
+    public IStoreWriteListener getWriteListener() {
+        return writeListener;
+    }
+}
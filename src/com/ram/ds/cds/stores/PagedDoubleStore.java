@@ -0,0 +1,117 @@
+package com.ram.ds.cds.stores;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores a scalar double for each item, in chunks that are loaded from a column file on demand.
+ * @see PagedStore
+ */
+public class PagedDoubleStore extends PagedStore implements IDoubleStore {
+
+    private static final long serialVersionUID = 8116245860871290563L;
+
+    private static final double EMPTY = Double.NaN;
+
+    private transient IStoreWriteListener writeListener;
+
+    /**
+     * Create a store in the default page cache, with the default chunk size.
+     */
+    public PagedDoubleStore() {
+        this(PageCache.getDefault(), DEF_CHNK_SIZE);
+    }
+
+    /**
+     * @param cache the cache to hold the chunks in memory.
+     * @param inputChunkSize the number of elements in a chunk, rounded up to a power of 2.
+     */
+    public PagedDoubleStore(PageCache cache, int inputChunkSize) {
+        super(cache, inputChunkSize);
+    }
+
+    @Override
+    public double getElement(int index) {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        return ((double[]) getChunkForRead(index >> chunkSizeLog))[index & chunkSizeMask];
+    }
+
+    @Override
+    public boolean isEmptyValue(double value) {
+        return Double.isNaN(value);
+    }
+
+    @Override
+    public double getEmptyValue() {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(double value) {
+        int index;
+        synchronized (this) {
+            index = nextIndex();
+            ((double[]) getPageForWrite(index >> chunkSizeLog).data)[index & chunkSizeMask] = value;
+        }
+        trimCache();
+        if (writeListener != null) {
+            writeListener.doubleWritten(this, index, EMPTY);
+        }
+        return index;
+    }
+
+    @Override
+    public double setElementAt(int index, double value) {
+        double previous;
+        synchronized (this) {
+            ensureSize(index + 1);
+            double[] chunk = (double[]) getPageForWrite(index >> chunkSizeLog).data;
+            previous = chunk[index & chunkSizeMask];
+            chunk[index & chunkSizeMask] = value;
+        }
+        trimCache();
+        if (writeListener != null) {
+            writeListener.doubleWritten(this, index, previous);
+        }
+        return previous;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        double[] chunk = new double[chunkSize];
+        Arrays.fill(chunk, EMPTY);
+        return chunk;
+    }
+
+    @Override
+    protected ByteBuffer encodeChunk(Object chunk) {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize * Double.BYTES);
+        buffer.asDoubleBuffer().put((double[]) chunk);
+        return buffer;
+    }
+
+    @Override
+    protected Object decodeChunk(ByteBuffer buffer) {
+        double[] chunk = new double[chunkSize];
+        buffer.asDoubleBuffer().get(chunk);
+        return chunk;
+    }
+
+    @Override
+    public long getDataSize() {
+        return (long) size() * Double.BYTES;
+    }
+
+    @Override
+    public void setWriteListener(IStoreWriteListener listener) {
+        writeListener = listener;
+    }
+
+    @Override
+    public IStoreWriteListener getWriteListener() {
+        return writeListener;
+    }
+}
@@ -0,0 +1,99 @@
+package com.ram.ds.cds.stores;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores a scalar integer for each item, in chunks that are loaded from a column file on demand.
+ * @see PagedStore
+ */
+public class PagedIntStore extends PagedStore implements IIntStore {
+
+    private static final long serialVersionUID = -5177036540952862931L;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    /**
+     * Create a store in the default page cache, with the default chunk size.
+     */
+    public PagedIntStore() {
+        this(PageCache.getDefault(), DEF_CHNK_SIZE);
+    }
+
+    /**
+     * @param cache the cache to hold the chunks in memory.
+     * @param inputChunkSize the number of elements in a chunk, rounded up to a power of 2.
+     */
+    public PagedIntStore(PageCache cache, int inputChunkSize) {
+        super(cache, inputChunkSize);
+    }
+
+    @Override
+    public int getElement(int index) {
+        if (index > validIndex) {
+            throw new ArrayIndexOutOfBoundsException("Index is beyond the current valid position: " + index
+                    + ".  Currently the maximums are [" + (index >> chunkSizeLog) + "][" + (index & chunkSizeMask) + "]");
+        }
+        return ((int[]) getChunkForRead(index >> chunkSizeLog))[index & chunkSizeMask];
+    }
+
+    @Override
+    public boolean isEmptyValue(int value) {
+        return value == EMPTY;
+    }
+
+    @Override
+    public int getEmptyValue() {
+        return EMPTY;
+    }
+
+    @Override
+    public int addElement(int value) {
+        int index;
+        synchronized (this) {
+            index = nextIndex();
+            ((int[]) getPageForWrite(index >> chunkSizeLog).data)[index & chunkSizeMask] = value;
+        }
+        trimCache();
+        return index;
+    }
+
+    @Override
+    public int setElementAt(int index, int value) {
+        int previous;
+        synchronized (this) {
+            ensureSize(index + 1);
+            int[] chunk = (int[]) getPageForWrite(index >> chunkSizeLog).data;
+            previous = chunk[index & chunkSizeMask];
+            chunk[index & chunkSizeMask] = value;
+        }
+        trimCache();
+        return previous;
+    }
+
+    @Override
+    protected Object createEmptyChunk() {
+        int[] chunk = new int[chunkSize];
+        Arrays.fill(chunk, EMPTY);
+        return chunk;
+    }
+
+    @Override
+    protected ByteBuffer encodeChunk(Object chunk) {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize * Integer.BYTES);
+        buffer.asIntBuffer().put((int[]) chunk);
+        return buffer;
+    }
+
+    @Override
+    protected Object decodeChunk(ByteBuffer buffer) {
+        int[] chunk = new int[chunkSize];
+        buffer.asIntBuffer().get(chunk);
+        return chunk;
+    }
+
+    @Override
+    public long getDataSize() {
+        return (long) size() * Integer.BYTES;
+    }
+}
@@ -0,0 +1,600 @@
+package com.ram.ds.cds.stores;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.CdsException;
+import com.ram.ds.cds.memory.MemoryEstimator;
+
+/**
+ * Base class for stores whose chunks live in a column file on local disk and are only loaded into memory
+ * when they are used, so that a cube can hold more data than fits in the heap.
+ *
+ * <p>The chunks in memory are held by a {@link PageCache}, which may be shared by many stores and drops the
+ * least recently used chunks once its budget is exceeded.  A chunk that was modified is written back to the
+ * column file when it is dropped.  A chunk that was never written is not stored at all, and reads as empty
+ * values.</p>
+ *
+ * <p>The column file is written in place when a chunk keeps its encoded size, and appended to otherwise; the
+ * space of the old copy is not reclaimed until the store is closed.  The file is temporary: serializing the
+ * store writes its chunks into the stream, and deserializing it creates a new file in the directory of the
+ * {@link PageCache#getDefault() default cache}.  {@link #close()} releases the chunks and deletes the
+ * file.</p>
+ *
+ * <p>Reads of the chunk last used take no lock.  Moving to another chunk, and every write, take the lock of
+ * the store.</p>
+ */
+public abstract class PagedStore implements IDataStore, AutoCloseable {
+
+    private static final long serialVersionUID = -3462196584617051923L;
+
+    /**
+     * Default number of elements in a chunk, larger than for heap stores, so that each read from the column
+     * file is worth its cost.
+     */
+    public static final int DEF_CHNK_SIZE = 4096;
+
+    private static final long NO_OFFSET = -1;
+
+    protected final int chunkSize;      // the number of elements each chunk can hold, power of 2.
+    protected final int chunkSizeLog;
+    protected final int chunkSizeMask;
+    protected int validIndex = -1;      // index of the last element in the store, initially -1.
+
+    private transient PageCache cache;
+    private transient Path file;
+    private transient FileChannel channel;
+    private transient long fileEnd;
+    private transient boolean closed;
+
+    /**
+     * Position and length in the column file of each chunk, NO_OFFSET for the chunks that were never written;
+     * and the room the chunk has there.
+     */
+    private transient long[] chunkOffsets;
+    private transient int[] chunkLengths;
+    private transient int[] chunkCapacities;
+
+    /**
+     * The chunks in memory, by index.
+     */
+    private transient Page[] pages;
+
+    /**
+     * The chunk last used, read without locking.
+     */
+    private transient volatile Page lastPage;
+
+    private transient Object emptyChunk;
+    private transient int lastChunkUsed;
+    private transient int readAheadWindow;
+    private transient int readAheadEnd;
+
+    /**
+     * @param cache the cache to hold the chunks in memory, and in whose directory the column file is created.
+     * @param inputChunkSize the number of elements in a chunk, rounded up to a power of 2.
+     */
+    protected PagedStore(PageCache cache, int inputChunkSize) {
+        if (inputChunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive: " + inputChunkSize);
+        }
+        chunkSizeLog = 32 - Integer.numberOfLeadingZeros(inputChunkSize - 1);
+        chunkSize = 1 << chunkSizeLog;
+        chunkSizeMask = chunkSize - 1;
+        open(cache);
+    }
+
+    private void open(PageCache pageCache) {
+        cache = pageCache;
+        try {
+            file = Files.createTempFile(pageCache.getDirectory(), getClass().getSimpleName(), ".col");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new CdsException(e);
+        }
+        File ioFile = file.toFile();
+        ioFile.deleteOnExit();
+        int chunkCount = Math.max(16, getUsedChunkCount());
+        chunkOffsets = new long[chunkCount];
+        Arrays.fill(chunkOffsets, NO_OFFSET);
+        chunkLengths = new int[chunkCount];
+        chunkCapacities = new int[chunkCount];
+        pages = new Page[chunkCount];
+        lastChunkUsed = -2;
+    }
+
+    /**
+     * @return a new chunk filled with the empty value.
+     */
+    protected abstract Object createEmptyChunk();
+
+    /**
+     * @return the bytes to store in the column file for the given chunk.
+     */
+    protected abstract ByteBuffer encodeChunk(Object chunk);
+
+    /**
+     * @param buffer bytes written from {@link #encodeChunk(Object)}.
+     * @return the chunk.
+     */
+    protected abstract Object decodeChunk(ByteBuffer buffer);
+
+    /**
+     * Base implementation: the heap size of the chunk array, including the arrays it refers to.
+     *
+     * @return the heap bytes taken by a chunk, charged to the budget of the cache.
+     */
+    protected long sizeOfChunk(Object chunk) {
+        return MemoryEstimator.sizeOfArray(chunk);
+    }
+
+    public PageCache getCache() {
+        return cache;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes used by the column file, including the space of chunks that moved.
+     */
+    public synchronized long getFileSize() {
+        return fileEnd;
+    }
+
+    /**
+     * @return the number of bytes of the chunks as last written to the column file.
+     */
+    protected synchronized long getStoredBytes() {
+        long bytes = 0;
+        for (int length : chunkLengths) {
+            bytes += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of chunks of this store that are in memory.
+     */
+    public synchronized int getResidentChunkCount() {
+        int count = 0;
+        for (Page page : pages) {
+            if (page != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return validIndex + 1;
+    }
+
+    /**
+     * @return the number of chunks needed to cover the current size of the store.
+     */
+    protected int getUsedChunkCount() {
+        return (validIndex + chunkSize) >> chunkSizeLog;
+    }
+
+    @Override
+    public synchronized int ensureSize(int minimumSize) {
+        checkOpen();
+        if (minimumSize > size()) {
+            validIndex = minimumSize - 1;
+            ensureChunkCapacity(getUsedChunkCount());
+        }
+        return size();
+    }
+
+    /**
+     * Get a chunk to read from.  A chunk that was never written is not loaded: a shared chunk of empty values
+     * is returned, which must not be modified.
+     *
+     * @param chunkIndex the index of a chunk below {@link #getUsedChunkCount()}.
+     * @return the chunk.
+     */
+    protected final Object getChunkForRead(int chunkIndex) {
+        Page page = lastPage;
+        if (page != null && page.chunkIndex == chunkIndex && page.resident) {
+            return page.data;
+        }
+        Object data;
+        synchronized (this) {
+            checkOpen();
+            if (pages[chunkIndex] == null && chunkOffsets[chunkIndex] == NO_OFFSET) {
+                if (emptyChunk == null) {
+                    emptyChunk = createEmptyChunk();
+                }
+                return emptyChunk;
+            }
+            data = use(chunkIndex).data;
+        }
+        cache.evict();
+        return data;
+    }
+
+    /**
+     * Get a chunk to modify, loading or creating it, and mark it as modified.  Must be called with the lock of
+     * the store held; the caller should call {@link #trimCache()} once it has released the lock.
+     *
+     * @param chunkIndex the index of a chunk below {@link #getUsedChunkCount()}.
+     * @return the page holding the chunk.
+     */
+    protected final Page getPageForWrite(int chunkIndex) {
+        Page page = use(chunkIndex);
+        page.dirty = true;
+        return page;
+    }
+
+    /**
+     * Let the cache drop chunks if it is over its budget.  Must be called without holding the lock of any
+     * store.
+     */
+    protected final void trimCache() {
+        cache.evict();
+    }
+
+    /**
+     * Tell the cache that the heap size of a chunk changed.  Must be called with the lock of the store held.
+     */
+    protected final void chunkResized(Page page) {
+        cache.resized(page, sizeOfChunk(page.data));
+    }
+
+    /**
+     * Make the chunk the last used, loading it if needed, and read ahead if the chunks are used in order.
+     */
+    private Page use(int chunkIndex) {
+        Page page = pages[chunkIndex];
+        if (page != null) {
+            cache.touch(page);
+        } else {
+            page = load(chunkIndex);
+            cache.add(page, false);
+        }
+        if (chunkIndex != lastChunkUsed) {
+            if (chunkIndex == lastChunkUsed + 1 && cache.getMaxReadAhead() > 0) {
+                readAheadWindow = Math.min(cache.getMaxReadAhead(), Math.max(1, readAheadWindow << 1));
+                int from = Math.max(chunkIndex + 1, readAheadEnd);
+                int to = Math.min(chunkIndex + 1 + readAheadWindow, getUsedChunkCount());
+                if (from < to) {
+                    readAheadEnd = to;
+                    cache.readAhead(this, from, to);
+                }
+            } else {
+                readAheadWindow = 0;
+                readAheadEnd = 0;
+            }
+            lastChunkUsed = chunkIndex;
+        }
+        lastPage = page;
+        return page;
+    }
+
+    private Page load(int chunkIndex) {
+        Object data = chunkOffsets[chunkIndex] == NO_OFFSET ? createEmptyChunk() : decodeChunk(readChunk(chunkIndex));
+        Page page = new Page(this, chunkIndex, data, sizeOfChunk(data));
+        pages[chunkIndex] = page;
+        return page;
+    }
+
+    /**
+     * Load a chunk ahead of a sequential scan, unless it is in memory or was never written.  Called by the
+     * read-ahead threads of the cache.
+     */
+    void prefetch(int chunkIndex) {
+        synchronized (this) {
+            if (closed || chunkIndex >= getUsedChunkCount() || pages[chunkIndex] != null
+                    || chunkOffsets[chunkIndex] == NO_OFFSET) {
+                return;
+            }
+            cache.add(load(chunkIndex), true);
+        }
+    }
+
+    /**
+     * Drop a page the cache chose to evict, writing it back if it was modified; unless it was used again since
+     * the cache chose it.
+     *
+     * @return true if the page was dropped.
+     */
+    synchronized boolean drop(Page page) {
+        if (closed || pages[page.chunkIndex] != page || cache.contains(page)) {
+            return false;
+        }
+        writeBack(page);
+        release(page);
+        return true;
+    }
+
+    /**
+     * Drop a page that the store is done with while holding its lock, as a long operation goes.
+     */
+    private void dropNow(Page page) {
+        cache.remove(page);
+        writeBack(page);
+        release(page);
+    }
+
+    private void writeBack(Page page) {
+        if (page.dirty) {
+            writeChunk(page.chunkIndex, encodeChunk(page.data));
+            page.dirty = false;
+            cache.writtenBack();
+        }
+    }
+
+    private void release(Page page) {
+        page.resident = false;
+        pages[page.chunkIndex] = null;
+        if (lastPage == page) {
+            lastPage = null;
+        }
+    }
+
+    private ByteBuffer readChunk(int chunkIndex) {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkLengths[chunkIndex]);
+        long position = chunkOffsets[chunkIndex];
+        try {
+            while (buffer.hasRemaining()) {
+                int count = channel.read(buffer, position + buffer.position());
+                if (count < 0) {
+                    throw new CdsException("Column file " + file + " is shorter than chunk " + chunkIndex);
+                }
+            }
+        } catch (IOException e) {
+            throw new CdsException(e);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeChunk(int chunkIndex, ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (chunkOffsets[chunkIndex] == NO_OFFSET || length > chunkCapacities[chunkIndex]) {
+            chunkOffsets[chunkIndex] = fileEnd;
+            chunkCapacities[chunkIndex] = length;
+            fileEnd += length;
+        }
+        chunkLengths[chunkIndex] = length;
+        long position = chunkOffsets[chunkIndex];
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + length - buffer.remaining());
+            }
+        } catch (IOException e) {
+            throw new CdsException(e);
+        }
+    }
+
+    private void ensureChunkCapacity(int chunkCount) {
+        if (chunkCount > pages.length) {
+            int newLength = Math.max(chunkCount, pages.length + (pages.length >> 1));
+            int oldLength = chunkOffsets.length;
+            chunkOffsets = Arrays.copyOf(chunkOffsets, newLength);
+            Arrays.fill(chunkOffsets, oldLength, newLength, NO_OFFSET);
+            chunkLengths = Arrays.copyOf(chunkLengths, newLength);
+            chunkCapacities = Arrays.copyOf(chunkCapacities, newLength);
+            pages = Arrays.copyOf(pages, newLength);
+        }
+    }
+
+    /**
+     * Grow the store by one element for an add.  Must be called with the lock of the store held.
+     *
+     * @return the index of the new element.
+     */
+    protected final int nextIndex() {
+        checkOpen();
+        if (validIndex + 1 >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum limit of store reached. Cannot Add Further");
+        }
+        validIndex++;
+        ensureChunkCapacity(getUsedChunkCount());
+        return validIndex;
+    }
+
+    /**
+     * Copies each run of remaining elements down a piece at a time, then fills the rest of the last chunk
+     * with empty values and forgets the chunks past it.  The pieces that were copied are dropped as the copy
+     * goes, if the cache is over its budget.
+     */
+    @Override
+    public int removeElements(BitSet removed) {
+        synchronized (this) {
+            checkOpen();
+            int size = size();
+            int target = removed.nextSetBit(0);
+            if (target < 0 || target >= size) {
+                return size;
+            }
+            int runStart = removed.nextClearBit(target);
+            while (runStart < size) {
+                int runEnd = removed.nextSetBit(runStart);
+                if (runEnd < 0 || runEnd > size) {
+                    runEnd = size;
+                }
+                while (runStart < runEnd) {
+                    int fromPos = runStart & chunkSizeMask;
+                    int toPos = target & chunkSizeMask;
+                    int count = Math.min(runEnd - runStart, chunkSize - Math.max(fromPos, toPos));
+                    int sourceChunk = runStart >> chunkSizeLog;
+                    Object source = getChunkForCopy(sourceChunk);
+                    Page targetPage = getPageForWrite(target >> chunkSizeLog);
+                    System.arraycopy(source, fromPos, targetPage.data, toPos, count);
+                    runStart += count;
+                    target += count;
+                    if ((target & chunkSizeMask) == 0) {
+                        chunkResized(targetPage);
+                        if (cache.isOverBudget()) {
+                            dropNow(targetPage);
+                        }
+                    }
+                    Page sourcePage = pages[sourceChunk];
+                    if ((runStart & chunkSizeMask) == 0 && sourcePage != null && pages[target >> chunkSizeLog] != sourcePage
+                            && cache.isOverBudget()) {
+                        dropNow(sourcePage);
+                    }
+                }
+                runStart = runEnd < size ? removed.nextClearBit(runEnd) : size;
+            }
+
+            int tailChunk = target >> chunkSizeLog;
+            int tailPos = target & chunkSizeMask;
+            if (tailPos > 0) {
+                Page tailPage = getPageForWrite(tailChunk);
+                System.arraycopy(createEmptyChunk(), tailPos, tailPage.data, tailPos, chunkSize - tailPos);
+                chunkResized(tailPage);
+                tailChunk++;
+            }
+            for (int chunkIndex = tailChunk; chunkIndex < pages.length; chunkIndex++) {
+                forgetChunk(chunkIndex);
+            }
+            validIndex = target - 1;
+        }
+        trimCache();
+        return size();
+    }
+
+    private Object getChunkForCopy(int chunkIndex) {
+        if (pages[chunkIndex] == null && chunkOffsets[chunkIndex] == NO_OFFSET) {
+            if (emptyChunk == null) {
+                emptyChunk = createEmptyChunk();
+            }
+            return emptyChunk;
+        }
+        return use(chunkIndex).data;
+    }
+
+    private void forgetChunk(int chunkIndex) {
+        Page page = pages[chunkIndex];
+        if (page != null) {
+            cache.remove(page);
+            release(page);
+        }
+        chunkOffsets[chunkIndex] = NO_OFFSET;
+        chunkLengths[chunkIndex] = 0;
+        chunkCapacities[chunkIndex] = 0;
+    }
+
+    /**
+     * Release the chunks in memory, close the column file and delete it.  The store cannot be used afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        for (Page page : pages) {
+            if (page != null) {
+                cache.remove(page);
+                release(page);
+            }
+        }
+        closed = true;
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The paged store is closed");
+        }
+    }
+
+    /**
+     * Base implementation: the arrays describing the chunks and the chunks of this store in memory.
+     */
+    @Override
+    public synchronized long getRetainedSize() {
+        long bytes = MemoryEstimator.sizeOfObject(10, 7 * Integer.BYTES + 2 * Long.BYTES)
+                + MemoryEstimator.sizeOfArray(chunkOffsets) + MemoryEstimator.sizeOfArray(chunkLengths)
+                + MemoryEstimator.sizeOfArray(chunkCapacities) + MemoryEstimator.sizeOfArray(pages);
+        for (Page page : pages) {
+            if (page != null) {
+                bytes += page.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the size, then each chunk encoded, without loading the chunks that are not in memory.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        checkOpen();
+        out.defaultWriteObject();
+        int usedChunkCount = getUsedChunkCount();
+        for (int chunkIndex = 0; chunkIndex < usedChunkCount; chunkIndex++) {
+            ByteBuffer buffer;
+            if (pages[chunkIndex] != null) {
+                buffer = encodeChunk(pages[chunkIndex].data);
+            } else if (chunkOffsets[chunkIndex] != NO_OFFSET) {
+                buffer = readChunk(chunkIndex);
+            } else {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(buffer.remaining());
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        open(PageCache.getDefault());
+        int usedChunkCount = getUsedChunkCount();
+        for (int chunkIndex = 0; chunkIndex < usedChunkCount; chunkIndex++) {
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                writeChunk(chunkIndex, ByteBuffer.wrap(bytes));
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{" +
+                "size=" + size() +
+                ", chunkSize=" + chunkSize +
+                ", residentChunks=" + getResidentChunkCount() +
+                ", fileSize=" + fileEnd +
+                ", file=" + file +
+                '}';
+    }
+
+    /**
+     * A chunk in memory.  Its fields other than resident are guarded by the lock of the store; the accounting
+     * of its size by the cache.
+     */
+    protected static final class Page {
+
+        final PagedStore store;
+        final int chunkIndex;
+        final Object data;
+        long bytes;
+        boolean dirty;
+        volatile boolean resident = true;
+
+        Page(PagedStore store, int chunkIndex, Object data, long bytes) {
+            this.store = store;
+            this.chunkIndex = chunkIndex;
+            this.data = data;
+            this.bytes = bytes;
+        }
+    }
+}
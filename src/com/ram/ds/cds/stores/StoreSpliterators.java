@@ -0,0 +1,372 @@
+package com.ram.ds.cds.stores;
+
+import java.util.BitSet;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterators over a range of the values of a store, or of the row ids of a container, for the stream views of
+ * the stores and of {@link com.ram.ds.cds.AttributeContainer}.  They split on the chunk boundaries of the store,
+ * so that the threads of a parallel stream never share a chunk, and traverse a chunk at a time through
+ * {@link IIntStore#forEachChunk(int, int, IChunkVisitor)} and its equivalents, without boxing.
+ * <p>
+ * The range is fixed when the spliterator is created; values added to the store afterwards are not seen.  An
+ * optional set of excluded indices, such as the deleted items of an intersection, is skipped; the spliterators
+ * keep the count exact, so they are always {@link Spliterator#SIZED} and {@link Spliterator#SUBSIZED}.
+ */
+public final class StoreSpliterators {
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+            | Spliterator.NONNULL;
+
+    private StoreSpliterators() {
+    }
+
+    /**
+     * @param store the store to read.
+     * @param fromIndex the first index, inclusive.
+     * @param toIndex the last index, exclusive, no larger than the size of the store.
+     * @param excluded the indices to skip, or null.  It must not change while the spliterator is in use.
+     */
+    public static Spliterator.OfInt ofInts(IIntStore store, int fromIndex, int toIndex, BitSet excluded) {
+        return new IntValues(store, fromIndex, toIndex, excluded, getChunkSizeLog(store));
+    }
+
+    /**
+     * @see #ofInts(IIntStore, int, int, BitSet)
+     */
+    public static Spliterator.OfLong ofLongs(ILongStore store, int fromIndex, int toIndex, BitSet excluded) {
+        return new LongValues(store, fromIndex, toIndex, excluded, getChunkSizeLog(store));
+    }
+
+    /**
+     * @see #ofInts(IIntStore, int, int, BitSet)
+     */
+    public static Spliterator.OfDouble ofDoubles(IDoubleStore store, int fromIndex, int toIndex, BitSet excluded) {
+        return new DoubleValues(store, fromIndex, toIndex, excluded, getChunkSizeLog(store));
+    }
+
+    /**
+     * Float values are widened to double, as there is no stream of floats.
+     *
+     * @see #ofInts(IIntStore, int, int, BitSet)
+     */
+    public static Spliterator.OfDouble ofFloats(IFloatStore store, int fromIndex, int toIndex, BitSet excluded) {
+        return new FloatValues(store, fromIndex, toIndex, excluded, getChunkSizeLog(store));
+    }
+
+    /**
+     * @param fromIndex the first row id, inclusive.
+     * @param toIndex the last row id, exclusive.
+     * @param excluded the row ids to skip, or null.  It must not change while the spliterator is in use.
+     * @param chunkSize the number of rows to split on, a power of 2, typically {@link Constants#DEF_CHNK_SIZE}.
+     */
+    public static Spliterator.OfInt ofRowIds(int fromIndex, int toIndex, BitSet excluded, int chunkSize) {
+        return new RowIds(fromIndex, toIndex, excluded, Integer.numberOfTrailingZeros(Integer.highestOneBit(chunkSize)));
+    }
+
+    /**
+     * @return log2 of the chunk size of the given store, or of {@link Constants#DEF_CHNK_SIZE} if the store is
+     *         not chunked.
+     */
+    static int getChunkSizeLog(IDataStore store) {
+        if (store instanceof GenericStore) {
+            return ((GenericStore) store).chunkSizeLog;
+        }
+        if (store instanceof PagedStore) {
+            return ((PagedStore) store).chunkSizeLog;
+        }
+        return Integer.numberOfTrailingZeros(Constants.DEF_CHNK_SIZE);
+    }
+
+    /**
+     * The range, exclusions and splitting shared by the spliterators.
+     */
+    private abstract static class Range {
+        final BitSet excluded;
+        final int chunkSizeLog;
+        int from;
+        final int to;
+        private long size = -1;   // counted on demand when there are exclusions
+
+        Range(int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            this.from = fromIndex;
+            this.to = Math.max(fromIndex, toIndex);
+            this.excluded = excluded;
+            this.chunkSizeLog = chunkSizeLog;
+        }
+
+        /**
+         * @return the first chunk boundary near the middle of the range, or -1 if the range is within one chunk.
+         */
+        final int split() {
+            int mid = ((from + ((to - from) >>> 1)) >>> chunkSizeLog) << chunkSizeLog;
+            if (mid <= from) {
+                mid = ((from >>> chunkSizeLog) + 1) << chunkSizeLog;
+            }
+            if (mid >= to || mid <= from) {
+                return -1;
+            }
+            size = -1;
+            return mid;
+        }
+
+        /**
+         * @return the index of the next value to traverse, skipping exclusions, or <code>to</code> if there is none.
+         */
+        final int nextIncluded() {
+            if (excluded != null) {
+                from = Math.min(excluded.nextClearBit(from), to);
+            }
+            return from;
+        }
+
+        final boolean isIncluded(int index) {
+            return excluded == null || !excluded.get(index);
+        }
+
+        public final long estimateSize() {
+            if (excluded == null || from >= to) {
+                return to - from;
+            }
+            if (size < 0) {
+                int count = to - from;
+                for (int index = excluded.nextSetBit(from); index >= 0 && index < to; index = excluded.nextSetBit(index + 1)) {
+                    count--;
+                }
+                size = count;
+            }
+            return size;
+        }
+
+        final void advanced() {
+            if (size > 0) {
+                size--;
+            }
+        }
+
+        public final int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    private static final class IntValues extends Range implements Spliterator.OfInt {
+        private final IIntStore store;
+
+        IntValues(IIntStore store, int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            super(fromIndex, toIndex, excluded, chunkSizeLog);
+            this.store = store;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int start = from;
+            int mid = split();
+            if (mid < 0) {
+                return null;
+            }
+            from = mid;
+            return new IntValues(store, start, mid, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            int index = nextIncluded();
+            if (index >= to) {
+                return false;
+            }
+            from = index + 1;
+            advanced();
+            action.accept(store.getElement(index));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int start = from;
+            from = to;
+            store.forEachChunk(start, to, (fromIndex, values, offset, length) -> {
+                for (int i = 0; i < length; i++) {
+                    if (isIncluded(fromIndex + i)) {
+                        action.accept(values[offset + i]);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class LongValues extends Range implements Spliterator.OfLong {
+        private final ILongStore store;
+
+        LongValues(ILongStore store, int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            super(fromIndex, toIndex, excluded, chunkSizeLog);
+            this.store = store;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            int start = from;
+            int mid = split();
+            if (mid < 0) {
+                return null;
+            }
+            from = mid;
+            return new LongValues(store, start, mid, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            int index = nextIncluded();
+            if (index >= to) {
+                return false;
+            }
+            from = index + 1;
+            advanced();
+            action.accept(store.getElement(index));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            int start = from;
+            from = to;
+            store.forEachChunk(start, to, (fromIndex, values, offset, length) -> {
+                for (int i = 0; i < length; i++) {
+                    if (isIncluded(fromIndex + i)) {
+                        action.accept(values[offset + i]);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class DoubleValues extends Range implements Spliterator.OfDouble {
+        private final IDoubleStore store;
+
+        DoubleValues(IDoubleStore store, int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            super(fromIndex, toIndex, excluded, chunkSizeLog);
+            this.store = store;
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            int start = from;
+            int mid = split();
+            if (mid < 0) {
+                return null;
+            }
+            from = mid;
+            return new DoubleValues(store, start, mid, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            int index = nextIncluded();
+            if (index >= to) {
+                return false;
+            }
+            from = index + 1;
+            advanced();
+            action.accept(store.getElement(index));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            int start = from;
+            from = to;
+            store.forEachChunk(start, to, (fromIndex, values, offset, length) -> {
+                for (int i = 0; i < length; i++) {
+                    if (isIncluded(fromIndex + i)) {
+                        action.accept(values[offset + i]);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class FloatValues extends Range implements Spliterator.OfDouble {
+        private final IFloatStore store;
+
+        FloatValues(IFloatStore store, int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            super(fromIndex, toIndex, excluded, chunkSizeLog);
+            this.store = store;
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            int start = from;
+            int mid = split();
+            if (mid < 0) {
+                return null;
+            }
+            from = mid;
+            return new FloatValues(store, start, mid, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            int index = nextIncluded();
+            if (index >= to) {
+                return false;
+            }
+            from = index + 1;
+            advanced();
+            action.accept(store.getElement(index));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            int start = from;
+            from = to;
+            store.forEachChunk(start, to, (fromIndex, values, offset, length) -> {
+                for (int i = 0; i < length; i++) {
+                    if (isIncluded(fromIndex + i)) {
+                        action.accept(values[offset + i]);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class RowIds extends Range implements Spliterator.OfInt {
+
+        RowIds(int fromIndex, int toIndex, BitSet excluded, int chunkSizeLog) {
+            super(fromIndex, toIndex, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int start = from;
+            int mid = split();
+            if (mid < 0) {
+                return null;
+            }
+            from = mid;
+            return new RowIds(start, mid, excluded, chunkSizeLog);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            int index = nextIncluded();
+            if (index >= to) {
+                return false;
+            }
+            from = index + 1;
+            advanced();
+            action.accept(index);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (int index = nextIncluded(); index < to; index = nextIncluded()) {
+                from = index + 1;
+                action.accept(index);
+            }
+        }
+    }
+}
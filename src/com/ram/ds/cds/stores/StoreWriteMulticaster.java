@@ -0,0 +1,94 @@
+package com.ram.ds.cds.stores;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes the writes to a store on to two listeners, either of which can itself be a multicaster, so that a
+ * store with a single listener slot can be observed by a write-ahead log and by standing aggregates at once.
+ * A multicaster is never changed: adding or removing a listener gives a new chain.
+ */
+public final class StoreWriteMulticaster implements IStoreWriteListener {
+
+    private final IStoreWriteListener first;
+    private final IStoreWriteListener second;
+
+    private StoreWriteMulticaster(IStoreWriteListener first, IStoreWriteListener second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @param current the current listener of a store, or null.
+     * @param listener the listener to add, or null.
+     * @return the listener to set on the store.
+     */
+    public static IStoreWriteListener add(IStoreWriteListener current, IStoreWriteListener listener) {
+        if (current == null) {
+            return listener;
+        }
+        if (listener == null) {
+            return current;
+        }
+        return new StoreWriteMulticaster(current, listener);
+    }
+
+    /**
+     * @param current the current listener of a store, or null.
+     * @param listener the listener to remove.
+     * @return the listener to set on the store, null if there are none left.
+     */
+    public static IStoreWriteListener remove(IStoreWriteListener current, IStoreWriteListener listener) {
+        if (current == listener) {
+            return null;
+        }
+        if (!(current instanceof StoreWriteMulticaster)) {
+            return current;
+        }
+        StoreWriteMulticaster multicaster = (StoreWriteMulticaster) current;
+        IStoreWriteListener first = remove(multicaster.first, listener);
+        IStoreWriteListener second = remove(multicaster.second, listener);
+        if (first == multicaster.first && second == multicaster.second) {
+            return current;
+        }
+        return add(first, second);
+    }
+
+    /**
+     * @param current the current listener of a store, or null.
+     * @return the listeners in the chain, in the order they are called.
+     */
+    public static List<IStoreWriteListener> getListeners(IStoreWriteListener current) {
+        List<IStoreWriteListener> listeners = new ArrayList<IStoreWriteListener>();
+        collect(current, listeners);
+        return listeners;
+    }
+
+    private static void collect(IStoreWriteListener listener, List<IStoreWriteListener> listeners) {
+        if (listener instanceof StoreWriteMulticaster) {
+            collect(((StoreWriteMulticaster) listener).first, listeners);
+            collect(((StoreWriteMulticaster) listener).second, listeners);
+        } else if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void elementWritten(IObservableStore store, int index) {
+        first.elementWritten(store, index);
+        second.elementWritten(store, index);
+    }
+
+    @Override
+    public void doubleWritten(IDoubleStore store, int index, double oldValue) {
+        first.doubleWritten(store, index, oldValue);
+        second.doubleWritten(store, index, oldValue);
+    }
+
+    @Override
+    public String toString() {
+        return "StoreWriteMulticaster{" +
+                "listeners=" + getListeners(this) +
+                '}';
+    }
+}
@@ -5,6 +5,8 @@ import gnu.trove.map.hash.TObjectIntHashMap;
 
 import java.util.*;
 
+import com.ram.ds.cds.memory.MemoryEstimator;
+
 /**
  * Holds an ordered, growable collection of Strings avoiding the storage overhead of duplicated values.
  */
@@ -47,6 +49,22 @@ public class StringLookupStore extends LookupStore implements IStringLookupStore
         return valueToKeyMap.get(value);
     }
 
+    @Override
+    public int getKeyAt(int index) {
+        int key = keyStore.getElement(index);
+        return keyStore.isEmptyValue(key) ? -1 : key;
+    }
+
+    @Override
+    public int getKeyCount() {
+        return currentID;
+    }
+
+    @Override
+    public String getValidValueForKey(int valueKey) {
+        return keyToValueArray[valueKey];
+    }
+
 	/**
 	 * Get the value at the given index. If the index is less than the 
 	 * current size of the store, a value will be returned, even if it 
@@ -211,6 +229,24 @@ public class StringLookupStore extends LookupStore implements IStringLookupStore
                 ", keyToValueArray=" + (keyToValueArray == null ? null : Arrays.asList(keyToValueArray)) +
                 '}';
     }
+
+    @Override
+    public long getDataSize() {
+        long size = keyStore.getDataSize();
+        for ( int key = 0; key < currentID; key++ ) {
+            String s = keyToValueArray[key];
+            if ( s != null )
+                size += s.length()*2;
+        }
+        return size;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        // the map shares its Strings with keyToValueArray.
+        return super.getRetainedSize() + MemoryEstimator.sizeOfArray(keyToValueArray)
+                + MemoryEstimator.sizeOfOpenHashMap(valueToKeyMap.size(), Integer.BYTES);
+    }
 }
 
 
@@ -0,0 +1,358 @@
+package com.ram.ds.cds.stores;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a time series of doubles, such as the periods of a forecast, into a long[] for a
+ * {@link CompressedDoubleArrayStore}.  The first word is a header holding the encoding, the number of periods
+ * and, for runs, the number of runs.  Four encodings are tried:
+ * <ul>
+ * <li>constant: every period has the same value, which is the only other word.</li>
+ * <li>runs: the length of each run of equal values, two to a word, followed by the value of each run.</li>
+ * <li>XOR: the first value whole, then each value as the XOR of its bits with those of the previous value.  A
+ * repeated value takes one bit; otherwise only the bits between the leading and trailing zeros of the XOR
+ * are written, reusing the previous window when they fit in it.  Slowly changing series share their sign,
+ * exponent and leading mantissa bits from one period to the next, so they take far fewer than 64 bits.</li>
+ * <li>raw: the bits of each value, for series that none of the others would make smaller.</li>
+ * </ul>
+ * Values are compared by their bits, so NaN periods, as used for missing values, are kept as they are.
+ * Constant and run series can be summed without being decoded, so XOR is only chosen over runs when it is at
+ * most three quarters of their size.
+ */
+final class TimeSeriesCodec {
+
+    static final int CONSTANT = 0;
+    static final int RUNS = 1;
+    static final int XOR = 2;
+    static final int RAW = 3;
+
+    private static final int LEADING_BITS = 5;     // leading zeros are capped at 31
+    private static final int SIGNIFICANT_BITS = 6; // 64 significant bits are written as 0
+
+    private TimeSeriesCodec() {
+    }
+
+    /**
+     * @param values a time series, not null.
+     * @return the encoded series.
+     */
+    static long[] encode(double[] values) {
+        int length = values.length;
+        if (length == 0) {
+            return new long[] { header(CONSTANT, 0, 0), 0L };
+        }
+        int runCount = 1;
+        long previous = Double.doubleToRawLongBits(values[0]);
+        for (int i = 1; i < length; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            if (bits != previous) {
+                runCount++;
+                previous = bits;
+            }
+        }
+        if (runCount == 1) {
+            return new long[] { header(CONSTANT, length, 0), Double.doubleToRawLongBits(values[0]) };
+        }
+        int runWords = 1 + ((runCount + 1) >> 1) + runCount;
+        long[] xor = encodeXor(values);
+        int rawWords = 1 + length;
+        if (runWords <= rawWords && 4L * xor.length >= 3L * runWords) {
+            return encodeRuns(values, runCount, runWords);
+        }
+        if (xor.length < rawWords) {
+            return xor;
+        }
+        long[] encoded = new long[rawWords];
+        encoded[0] = header(RAW, length, 0);
+        for (int i = 0; i < length; i++) {
+            encoded[i + 1] = Double.doubleToRawLongBits(values[i]);
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the encoding of the given series, one of {@link #CONSTANT}, {@link #RUNS}, {@link #XOR} and
+     *         {@link #RAW}.
+     */
+    static int getEncoding(long[] encoded) {
+        return (int) (encoded[0] & 3);
+    }
+
+    /**
+     * @return the number of periods of the given series.
+     */
+    static int length(long[] encoded) {
+        return (int) (encoded[0] >>> 2);
+    }
+
+    private static int runCount(long[] encoded) {
+        return (int) (encoded[0] >>> 34);
+    }
+
+    private static long header(int encoding, int length, int runCount) {
+        return encoding | (long) length << 2 | (long) runCount << 34;
+    }
+
+    /**
+     * Decode a series into the given array.
+     *
+     * @param encoded the encoded series.
+     * @param target an array with room for the series from the given position.
+     * @param targetPos the position of the first period in the target.
+     * @return the number of periods decoded.
+     */
+    static int decode(long[] encoded, double[] target, int targetPos) {
+        int length = length(encoded);
+        switch (getEncoding(encoded)) {
+        case CONSTANT:
+            Arrays.fill(target, targetPos, targetPos + length, Double.longBitsToDouble(encoded[1]));
+            break;
+        case RUNS: {
+            int runCount = runCount(encoded);
+            int valueWord = 1 + ((runCount + 1) >> 1);
+            for (int run = 0; run < runCount; run++) {
+                int runLength = runLength(encoded, run);
+                Arrays.fill(target, targetPos, targetPos + runLength, Double.longBitsToDouble(encoded[valueWord + run]));
+                targetPos += runLength;
+            }
+            break;
+        }
+        case XOR: {
+            XorReader reader = new XorReader(encoded);
+            for (int i = 0; i < length; i++) {
+                target[targetPos + i] = Double.longBitsToDouble(reader.next());
+            }
+            break;
+        }
+        default:
+            for (int i = 0; i < length; i++) {
+                target[targetPos + i] = Double.longBitsToDouble(encoded[i + 1]);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Add each period of a series to the matching position of the given array.  Constant and run series are
+     * added a run at a time, and XOR series as they are decoded, without decoding them into an array first.
+     *
+     * @param encoded the encoded series.
+     * @param result an array at least as long as the series.
+     */
+    static void addTo(long[] encoded, double[] result) {
+        int length = length(encoded);
+        switch (getEncoding(encoded)) {
+        case CONSTANT: {
+            double value = Double.longBitsToDouble(encoded[1]);
+            for (int i = 0; i < length; i++) {
+                result[i] += value;
+            }
+            break;
+        }
+        case RUNS: {
+            int runCount = runCount(encoded);
+            int valueWord = 1 + ((runCount + 1) >> 1);
+            int pos = 0;
+            for (int run = 0; run < runCount; run++) {
+                double value = Double.longBitsToDouble(encoded[valueWord + run]);
+                for (int end = pos + runLength(encoded, run); pos < end; pos++) {
+                    result[pos] += value;
+                }
+            }
+            break;
+        }
+        case XOR: {
+            XorReader reader = new XorReader(encoded);
+            for (int i = 0; i < length; i++) {
+                result[i] += Double.longBitsToDouble(reader.next());
+            }
+            break;
+        }
+        default:
+            for (int i = 0; i < length; i++) {
+                result[i] += Double.longBitsToDouble(encoded[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the periods of a series.  A constant series is summed with one multiplication, and a
+     *         run series with one per run.
+     */
+    static double sum(long[] encoded) {
+        int length = length(encoded);
+        switch (getEncoding(encoded)) {
+        case CONSTANT:
+            return length == 0 ? 0.0 : Double.longBitsToDouble(encoded[1]) * length;
+        case RUNS: {
+            int runCount = runCount(encoded);
+            int valueWord = 1 + ((runCount + 1) >> 1);
+            double sum = 0.0;
+            for (int run = 0; run < runCount; run++) {
+                sum += Double.longBitsToDouble(encoded[valueWord + run]) * runLength(encoded, run);
+            }
+            return sum;
+        }
+        case XOR: {
+            XorReader reader = new XorReader(encoded);
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += Double.longBitsToDouble(reader.next());
+            }
+            return sum;
+        }
+        default: {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += Double.longBitsToDouble(encoded[i + 1]);
+            }
+            return sum;
+        }
+        }
+    }
+
+    private static int runLength(long[] encoded, int run) {
+        long word = encoded[1 + (run >> 1)];
+        return (int) ((run & 1) == 0 ? word >>> 32 : word);
+    }
+
+    private static long[] encodeRuns(double[] values, int runCount, int runWords) {
+        long[] encoded = new long[runWords];
+        encoded[0] = header(RUNS, values.length, runCount);
+        int valueWord = 1 + ((runCount + 1) >> 1);
+        int run = 0;
+        int runStart = 0;
+        for (int i = 1; i <= values.length; i++) {
+            if (i == values.length
+                    || Double.doubleToRawLongBits(values[i]) != Double.doubleToRawLongBits(values[runStart])) {
+                long runLength = i - runStart;
+                encoded[1 + (run >> 1)] |= (run & 1) == 0 ? runLength << 32 : runLength;
+                encoded[valueWord + run] = Double.doubleToRawLongBits(values[runStart]);
+                run++;
+                runStart = i;
+            }
+        }
+        return encoded;
+    }
+
+    private static long[] encodeXor(double[] values) {
+        XorWriter writer = new XorWriter(values.length);
+        long previous = Double.doubleToRawLongBits(values[0]);
+        writer.write(previous, 64);
+        int windowLeading = -1;
+        int windowTrailing = 0;
+        for (int i = 1; i < values.length; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                writer.write(0, 1);
+                continue;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), (1 << LEADING_BITS) - 1);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (windowLeading >= 0 && leading >= windowLeading && trailing >= windowTrailing) {
+                writer.write(2, 2);
+                writer.write(xor >>> windowTrailing, 64 - windowLeading - windowTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                writer.write(3, 2);
+                writer.write(leading, LEADING_BITS);
+                writer.write(significant & 63, SIGNIFICANT_BITS);
+                writer.write(xor >>> trailing, significant);
+                windowLeading = leading;
+                windowTrailing = trailing;
+            }
+        }
+        long[] encoded = writer.toArray();
+        encoded[0] = header(XOR, values.length, 0);
+        return encoded;
+    }
+
+    /**
+     * Writes bits from the most significant end of each word, leaving the first word for the header.
+     */
+    private static final class XorWriter {
+        private long[] words;
+        private int bitPos = 64;
+
+        XorWriter(int length) {
+            words = new long[2 + (length >> 2)];
+        }
+
+        void write(long value, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (count < 64) {
+                value &= (1L << count) - 1;
+            }
+            int wordIndex = bitPos >>> 6;
+            if (wordIndex + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int offset = bitPos & 63;
+            int free = 64 - offset;
+            if (count <= free) {
+                words[wordIndex] |= value << (free - count);
+            } else {
+                words[wordIndex] |= value >>> (count - free);
+                words[wordIndex + 1] |= value << (64 - (count - free));
+            }
+            bitPos += count;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (bitPos + 63) >>> 6);
+        }
+    }
+
+    /**
+     * Reads back the values written by {@link #encodeXor(double[])}, one at a time.
+     */
+    private static final class XorReader {
+        private final long[] words;
+        private int bitPos = 64;
+        private long previous;
+        private boolean started;
+        private int windowLeading;
+        private int windowTrailing;
+
+        XorReader(long[] words) {
+            this.words = words;
+        }
+
+        long next() {
+            if (!started) {
+                started = true;
+                previous = read(64);
+                return previous;
+            }
+            if (read(1) == 0) {
+                return previous;
+            }
+            if (read(1) != 0) {
+                windowLeading = (int) read(LEADING_BITS);
+                int significant = (int) read(SIGNIFICANT_BITS);
+                windowTrailing = 64 - windowLeading - (significant == 0 ? 64 : significant);
+            }
+            previous ^= read(64 - windowLeading - windowTrailing) << windowTrailing;
+            return previous;
+        }
+
+        private long read(int count) {
+            int wordIndex = bitPos >>> 6;
+            int offset = bitPos & 63;
+            int free = 64 - offset;
+            long value;
+            if (count <= free) {
+                value = words[wordIndex] << offset >>> (64 - count);
+            } else {
+                value = (words[wordIndex] << offset >>> offset) << (count - free)
+                        | words[wordIndex + 1] >>> (64 - (count - free));
+            }
+            bitPos += count;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ram.ds.cds.stores;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
+
+/**
+ * A bit for each index of a store, set where the store holds a non-empty value, kept in one array of words per
+ * chunk of the store.  Filters and aggregators use it to skip the empty values 64 indices at a time instead
+ * of comparing each value with the empty value of the store.
+ *
+ * @see IValidityMappedStore
+ */
+public final class ValidityBitmap implements Serializable {
+
+    private static final long serialVersionUID = -8146094187310585092L;
+
+    private final int chunkSizeLog;  // at least 6, so that a chunk holds whole words
+    private long[][] chunks = new long[0][];
+
+    /**
+     * @param chunkSizeLog log2 of the chunk size of the store.  Chunks smaller than 64 are widened to 64.
+     */
+    public ValidityBitmap(int chunkSizeLog) {
+        this.chunkSizeLog = Math.max(chunkSizeLog, 6);
+    }
+
+    /**
+     * @param index a non-negative index.
+     * @param valid true if the store holds a non-empty value at the index.
+     */
+    public void set(int index, boolean valid) {
+        int chunkIndex = index >> chunkSizeLog;
+        if (chunkIndex >= chunks.length) {
+            if (!valid) {
+                return;
+            }
+            chunks = Arrays.copyOf(chunks, Math.max(chunkIndex + 1, chunks.length * 2));
+        }
+        long[] chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            if (!valid) {
+                return;
+            }
+            chunk = chunks[chunkIndex] = new long[1 << (chunkSizeLog - 6)];
+        }
+        int word = (index >> 6) & (chunk.length - 1);
+        if (valid) {
+            chunk[word] |= 1L << index;
+        } else {
+            chunk[word] &= ~(1L << index);
+        }
+    }
+
+    public boolean isValid(int index) {
+        return (getWord(index >> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @param wordIndex the index of a group of 64 indices, the first being at <code>wordIndex * 64</code>.
+     * @return a bit for each non-empty value of the group, from the least significant.
+     */
+    public long getWord(int wordIndex) {
+        int chunkIndex = wordIndex >> (chunkSizeLog - 6);
+        if (chunkIndex >= chunks.length || chunks[chunkIndex] == null) {
+            return 0L;
+        }
+        long[] chunk = chunks[chunkIndex];
+        return chunk[wordIndex & (chunk.length - 1)];
+    }
+
+    /**
+     * @return the first index from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) that
+     *         holds a non-empty value, or -1 if there is none.
+     */
+    public int nextValid(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return -1;
+        }
+        int wordIndex = fromIndex >> 6;
+        long word = getWord(wordIndex) & (-1L << fromIndex);
+        int lastWord = (toIndex - 1) >> 6;
+        while (word == 0) {
+            if (++wordIndex > lastWord) {
+                return -1;
+            }
+            int chunkIndex = wordIndex >> (chunkSizeLog - 6);
+            if (chunkIndex >= chunks.length) {
+                return -1;
+            }
+            if (chunks[chunkIndex] == null) {
+                // skip the whole chunk
+                wordIndex = ((chunkIndex + 1) << (chunkSizeLog - 6)) - 1;
+                continue;
+            }
+            word = getWord(wordIndex);
+        }
+        int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        return index < toIndex ? index : -1;
+    }
+
+    /**
+     * Call the given action for each index from <code>fromIndex</code> (inclusive) to <code>toIndex</code>
+     * (exclusive) that holds a non-empty value, in order.
+     */
+    public void forEachValid(int fromIndex, int toIndex, IntConsumer action) {
+        for (int index = nextValid(fromIndex, toIndex); index >= 0; index = nextValid(index + 1, toIndex)) {
+            action.accept(index);
+        }
+    }
+
+    /**
+     * @return the number of indices from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive)
+     *         that hold a non-empty value.
+     */
+    public int countValid(int fromIndex, int toIndex) {
+        int count = 0;
+        for (int wordIndex = fromIndex >> 6, lastWord = (toIndex - 1) >> 6; wordIndex <= lastWord && fromIndex < toIndex;
+             wordIndex++) {
+            count += Long.bitCount(getWord(wordIndex) & rangeMask(wordIndex, fromIndex, toIndex));
+        }
+        return count;
+    }
+
+    /**
+     * Clear the bits of <code>matches</code> from <code>fromIndex</code> (inclusive) to <code>toIndex</code>
+     * (exclusive) whose index holds the empty value.  Bits outside of the range are left alone.
+     */
+    public void and(int fromIndex, int toIndex, BitSet matches) {
+        clear(fromIndex, toIndex, matches, false);
+    }
+
+    /**
+     * Clear the bits of <code>matches</code> from <code>fromIndex</code> (inclusive) to <code>toIndex</code>
+     * (exclusive) whose index holds a non-empty value.  Bits outside of the range are left alone.
+     */
+    public void andNot(int fromIndex, int toIndex, BitSet matches) {
+        clear(fromIndex, toIndex, matches, true);
+    }
+
+    private void clear(int fromIndex, int toIndex, BitSet matches, boolean clearValid) {
+        for (int wordIndex = fromIndex >> 6, lastWord = (toIndex - 1) >> 6; wordIndex <= lastWord && fromIndex < toIndex;
+             wordIndex++) {
+            long mask = rangeMask(wordIndex, fromIndex, toIndex);
+            long word = getWord(wordIndex);
+            long rejected = (clearValid ? word : ~word) & mask;
+            int start = wordIndex << 6;
+            if (rejected == mask) {
+                matches.clear(start + Long.numberOfTrailingZeros(mask), start + 64 - Long.numberOfLeadingZeros(mask));
+                continue;
+            }
+            for (int bit = matches.nextSetBit(start + Long.numberOfTrailingZeros(rejected));
+                 rejected != 0 && bit >= 0 && bit < start + 64; bit = matches.nextSetBit(bit + 1)) {
+                if ((rejected & (1L << bit)) != 0) {
+                    matches.clear(bit);
+                }
+            }
+        }
+    }
+
+    private static long rangeMask(int wordIndex, int fromIndex, int toIndex) {
+        int start = wordIndex << 6;
+        long mask = fromIndex > start ? -1L << fromIndex : -1L;
+        if (toIndex - start < 64) {
+            mask &= (1L << (toIndex - start)) - 1;
+        }
+        return mask;
+    }
+
+    /**
+     * Mark every index as holding the empty value.
+     */
+    public void clear() {
+        chunks = new long[0][];
+    }
+
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(1, Integer.BYTES) + MemoryEstimator.sizeOfArray(chunks);
+    }
+
+    @Override
+    public String toString() {
+        return "ValidityBitmap{" +
+                "chunkSizeLog=" + chunkSizeLog +
+                ", chunks=" + chunks.length +
+                '}';
+    }
+}
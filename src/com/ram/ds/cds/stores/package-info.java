@@ -1,6 +1,8 @@
 /**
  * Classes for holding arrays of data values, or arrays of arrays such as would be used for time series.  Implementations
  * are either growable or fixed length. Applications may define their own stores by implementing one of the type-specific
- * interfaces.
+ * interfaces.  Paged stores keep their chunks in a column file on local disk and load them on demand into a shared,
+ * bounded {@link com.ram.ds.cds.stores.PageCache}.  Compressed, encoded and bit-packed stores trade some decoding work
+ * for a smaller footprint.
  */
 package com.ram.ds.cds.stores;
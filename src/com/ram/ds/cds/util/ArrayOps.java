@@ -78,13 +78,13 @@ public class ArrayOps
      * in the second array.
      * 
      * @param values the values to collect the value from.
-     * @param inds an array of indices into the values array.
+     * @param inds an array of indices into the values array; a negative index collects -1.
      * @return a new array of the same size as the given indices.
      */
     public static int[] index( int[] values, int[] inds ){
         int[] result = new int[inds.length];
         for( int i=0; i<inds.length; i++ )
-            result[i] = values[inds[i]];
+            result[i] = inds[i] < 0 ? -1 : values[inds[i]];
         return result;
     }
 
@@ -108,13 +108,13 @@ public class ArrayOps
      * are in the integer array.
      * 
      * @param values the BitSet to collect the value from.
-     * @param inds an array of indices into the BitSet.
+     * @param inds an array of indices into the BitSet; a negative index collects a clear bit.
      * @return a new BitSet of the same size as the given indices.
      */
     public static BitSet index( BitSet values, int[] inds ) {
         BitSet result = new BitSet( inds.length );
         for( int i=0; i<inds.length; i++ )
-            result.set( i, values.get(inds[i]));
+            result.set( i, inds[i] >= 0 && values.get(inds[i]));
         return result;
     }
 
@@ -0,0 +1,354 @@
+package com.ram.ds.cds.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.stores.IIntStore;
+
+/**
+ * Secondary index from a tuple of member ids in some key columns to all the rows that hold the tuple.
+ *
+ * <p>Each distinct tuple is a group with a posting list: a primitive array of its rows in ascending order.
+ * The groups are found through an open-addressing table of 64-bit tuple hashes, verified against the key
+ * columns at the first row of the group, as in {@link TupleIndex}.</p>
+ *
+ * <p>The index covers the rows from 0 up to {@link #getIndexedRowCount()}, and is extended with
+ * {@link #indexRows(int)}.  Rows with an empty value in a key column are not indexed.  When the key of a
+ * covered row changes, the owner calls {@link #removeRow(int)} before the change and {@link #indexRow(int)}
+ * after it, which moves the row between posting lists.  A group left without rows stays in the table, never
+ * matching, until the next rehash.  Only the key columns are serialized; the postings are rebuilt by the
+ * owner after deserialization.</p>
+ */
+public class CompositeIndex implements Serializable {
+
+    private static final long serialVersionUID = -2286047393406851937L;
+
+    private static final int NO_GROUP = -1;
+    private static final int NO_ROW = -1;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIN_POSTING_SIZE = 4;
+
+    private final IIntStore[] keyColumns;
+
+    private transient long[] hashes;
+    private transient int[] slotGroups;
+    private transient int[] groupFirstRows;
+    private transient int[][] postings;
+    private transient int[] postingSizes;
+    private transient int groupCount;
+    private transient int emptyGroupCount;
+    private transient int indexedRowCount;
+
+    /**
+     * @param keyColumns the columns that hold the tuple of each row, in tuple order.
+     */
+    public CompositeIndex(IIntStore[] keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * @return the number of key columns.
+     */
+    public int getKeyLength() {
+        return keyColumns.length;
+    }
+
+    /**
+     * @return the number of rows covered by the index.
+     */
+    public synchronized int getIndexedRowCount() {
+        return indexedRowCount;
+    }
+
+    /**
+     * @return the number of distinct tuples in the covered rows.
+     */
+    public synchronized int getGroupCount() {
+        return groupCount - emptyGroupCount;
+    }
+
+    /**
+     * Add the rows from {@link #getIndexedRowCount()} up to the given row count to the index.
+     *
+     * @param rowCount the number of rows the index should cover.
+     */
+    public synchronized void indexRows(int rowCount) {
+        if (hashes == null) {
+            allocate(MIN_CAPACITY);
+        }
+        int[] tuple = new int[keyColumns.length];
+        for (int row = indexedRowCount; row < rowCount; row++) {
+            if (readTuple(row, tuple)) {
+                addRow(getOrAddGroup(tuple, row), row);
+            }
+        }
+        indexedRowCount = Math.max(indexedRowCount, rowCount);
+    }
+
+    /**
+     * Index a row whose key was just set: add it to the posting list of its tuple if it is covered, or
+     * extend the index up to it otherwise.
+     *
+     * @param row the row.
+     */
+    public synchronized void indexRow(int row) {
+        if (row >= indexedRowCount) {
+            indexRows(row + 1);
+            return;
+        }
+        int[] tuple = new int[keyColumns.length];
+        if (readTuple(row, tuple)) {
+            int group = getOrAddGroup(tuple, row);
+            int size = postingSizes[group];
+            int position = -Arrays.binarySearch(postings[group], 0, size, row) - 1;
+            if (position >= 0) {
+                if (size == postings[group].length) {
+                    postings[group] = Arrays.copyOf(postings[group], size << 1);
+                }
+                int[] posting = postings[group];
+                System.arraycopy(posting, position, posting, position + 1, size - position);
+                posting[position] = row;
+                postingSizes[group] = size + 1;
+            }
+        }
+    }
+
+    /**
+     * Take a covered row out of the posting list of the tuple in its key columns, before its key changes.
+     *
+     * @param row the row.
+     */
+    public synchronized void removeRow(int row) {
+        if (row >= indexedRowCount) {
+            return;
+        }
+        int[] tuple = new int[keyColumns.length];
+        if (!readTuple(row, tuple)) {
+            return;
+        }
+        int group = findGroup(tuple);
+        if (group == NO_GROUP) {
+            return;
+        }
+        int[] posting = postings[group];
+        int size = postingSizes[group];
+        int position = Arrays.binarySearch(posting, 0, size, row);
+        if (position < 0) {
+            return;
+        }
+        System.arraycopy(posting, position + 1, posting, position, size - position - 1);
+        postingSizes[group] = --size;
+        if (size == 0) {
+            // the group can no longer be verified against a row, so it never matches again
+            groupFirstRows[group] = NO_ROW;
+            postings[group] = null;
+            if (++emptyGroupCount > MIN_CAPACITY && emptyGroupCount > groupCount >> 1) {
+                compactGroups();
+            }
+        } else if (groupFirstRows[group] == row) {
+            groupFirstRows[group] = posting[0];
+        }
+    }
+
+    /**
+     * Drop all the rows from the index.
+     */
+    public synchronized void clear() {
+        hashes = null;
+        slotGroups = null;
+        groupFirstRows = null;
+        postings = null;
+        postingSizes = null;
+        groupCount = 0;
+        emptyGroupCount = 0;
+        indexedRowCount = 0;
+    }
+
+    /**
+     * @param tuple a member id for each key column.
+     * @return the rows holding the tuple in ascending order; empty if there are none.
+     */
+    public synchronized int[] getRows(int[] tuple) {
+        int group = findGroup(tuple);
+        return group == NO_GROUP ? new int[0] : Arrays.copyOf(postings[group], postingSizes[group]);
+    }
+
+    /**
+     * Set the bits of the rows holding a tuple.
+     *
+     * @param tuple a member id for each key column.
+     * @param rows input/output, the set the rows are added to.
+     * @return the number of rows holding the tuple.
+     */
+    public synchronized int addRows(int[] tuple, BitSet rows) {
+        int group = findGroup(tuple);
+        if (group == NO_GROUP) {
+            return 0;
+        }
+        int[] posting = postings[group];
+        int size = postingSizes[group];
+        for (int i = 0; i < size; i++) {
+            rows.set(posting[i]);
+        }
+        return size;
+    }
+
+    /**
+     * @return the approximate number of heap bytes held by the index, not counting the key columns.
+     */
+    public synchronized long getRetainedSize() {
+        long bytes = MemoryEstimator.sizeOfObject(7, 2 * Integer.BYTES);
+        if (hashes != null) {
+            bytes += MemoryEstimator.sizeOfArray(hashes) + MemoryEstimator.sizeOfArray(slotGroups)
+                    + MemoryEstimator.sizeOfArray(groupFirstRows) + MemoryEstimator.sizeOfArray(postingSizes)
+                    + MemoryEstimator.sizeOfArray(postings);
+        }
+        return bytes;
+    }
+
+    private int findGroup(int[] tuple) {
+        if (hashes == null) {
+            return NO_GROUP;
+        }
+        long hash = TupleIndex.hash(tuple);
+        int mask = slotGroups.length - 1;
+        for (int slot = (int) hash & mask; slotGroups[slot] != NO_GROUP; slot = (slot + 1) & mask) {
+            int group = slotGroups[slot];
+            if (hashes[slot] == hash && matches(groupFirstRows[group], tuple)) {
+                return group;
+            }
+        }
+        return NO_GROUP;
+    }
+
+    private int getOrAddGroup(int[] tuple, int row) {
+        long hash = TupleIndex.hash(tuple);
+        int mask = slotGroups.length - 1;
+        int slot = (int) hash & mask;
+        for (; slotGroups[slot] != NO_GROUP; slot = (slot + 1) & mask) {
+            int group = slotGroups[slot];
+            if (hashes[slot] == hash && matches(groupFirstRows[group], tuple)) {
+                return group;
+            }
+        }
+        int group = groupCount++;
+        if (group == groupFirstRows.length) {
+            int groupCapacity = group << 1;
+            groupFirstRows = Arrays.copyOf(groupFirstRows, groupCapacity);
+            postings = Arrays.copyOf(postings, groupCapacity);
+            postingSizes = Arrays.copyOf(postingSizes, groupCapacity);
+        }
+        groupFirstRows[group] = row;
+        postings[group] = new int[MIN_POSTING_SIZE];
+        hashes[slot] = hash;
+        slotGroups[slot] = group;
+        if (groupCount > slotGroups.length >> 1) {
+            rehash(slotGroups.length << 1);
+        }
+        return group;
+    }
+
+    private void addRow(int group, int row) {
+        int size = postingSizes[group];
+        if (size == postings[group].length) {
+            postings[group] = Arrays.copyOf(postings[group], size << 1);
+        }
+        postings[group][size] = row;
+        postingSizes[group] = size + 1;
+    }
+
+    /**
+     * Read the tuple of a row from the key columns.
+     *
+     * @return false if the row has an empty value in a key column.
+     */
+    private boolean readTuple(int row, int[] tuple) {
+        for (int k = 0; k < tuple.length; k++) {
+            tuple[k] = keyColumns[k].getElement(row);
+            if (keyColumns[k].isEmptyValue(tuple[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int row, int[] tuple) {
+        if (row == NO_ROW) {
+            return false;
+        }
+        for (int k = 0; k < tuple.length; k++) {
+            if (keyColumns[k].getElement(row) != tuple[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHashes = hashes;
+        int[] oldSlotGroups = slotGroups;
+        hashes = new long[capacity];
+        slotGroups = new int[capacity];
+        Arrays.fill(slotGroups, NO_GROUP);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldSlotGroups.length; i++) {
+            if (oldSlotGroups[i] != NO_GROUP && groupFirstRows[oldSlotGroups[i]] != NO_ROW) {
+                int slot = (int) oldHashes[i] & mask;
+                while (slotGroups[slot] != NO_GROUP) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                slotGroups[slot] = oldSlotGroups[i];
+            }
+        }
+    }
+
+    /**
+     * Renumber the groups that still have rows and drop the others from the table.
+     */
+    private void compactGroups() {
+        int[] newGroups = new int[groupCount];
+        int liveCount = 0;
+        for (int group = 0; group < groupCount; group++) {
+            if (groupFirstRows[group] == NO_ROW) {
+                newGroups[group] = NO_GROUP;
+                continue;
+            }
+            newGroups[group] = liveCount;
+            groupFirstRows[liveCount] = groupFirstRows[group];
+            postings[liveCount] = postings[group];
+            postingSizes[liveCount] = postingSizes[group];
+            liveCount++;
+        }
+        Arrays.fill(postings, liveCount, groupCount, null);
+        Arrays.fill(postingSizes, liveCount, groupCount, 0);
+        for (int slot = 0; slot < slotGroups.length; slot++) {
+            if (slotGroups[slot] != NO_GROUP) {
+                slotGroups[slot] = newGroups[slotGroups[slot]];
+            }
+        }
+        groupCount = liveCount;
+        emptyGroupCount = 0;
+        rehash(slotGroups.length);
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        slotGroups = new int[capacity];
+        Arrays.fill(slotGroups, NO_GROUP);
+        groupFirstRows = new int[MIN_CAPACITY];
+        postings = new int[MIN_CAPACITY][];
+        postingSizes = new int[MIN_CAPACITY];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompositeIndex{" +
+                "keyColumns=" + keyColumns.length +
+                ", groupCount=" + (groupCount - emptyGroupCount) +
+                ", indexedRowCount=" + indexedRowCount +
+                '}';
+    }
+}
@@ -0,0 +1,228 @@
+package com.ram.ds.cds.util;
+
+import java.util.Arrays;
+
+import com.ram.ds.cds.memory.MemoryEstimator;
+import com.ram.ds.cds.stores.IIntStore;
+
+/**
+ * Hash index from a tuple of member ids to the row that holds the tuple in a set of key columns.
+ *
+ * <p>The tuples are not packed into a single number, so there is no limit on the number of key columns or on
+ * their cardinalities.  Each slot of the open-addressing table holds a 64-bit hash of a tuple and its row;
+ * a slot whose hash matches is verified against the key columns themselves, so two tuples with the same hash
+ * never return each other's row.  Nothing is boxed.</p>
+ *
+ * <p>A row that is given another tuple should be {@link #remove(int[], int) removed} under its old tuple
+ * first.  A slot whose row was given another tuple without that no longer verifies, and is skipped by lookups
+ * and dropped when the table is rehashed.</p>
+ */
+public class TupleIndex {
+
+    private static final int NO_ROW = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private final IIntStore[] keyColumns;
+    private long[] hashes;
+    private int[] rows;
+    private int size;
+
+    /**
+     * @param keyColumns the columns that hold the tuple of each row, in tuple order.
+     * @param expectedSize the number of tuples the index is expected to hold.
+     */
+    public TupleIndex(IIntStore[] keyColumns, int expectedSize) {
+        this.keyColumns = keyColumns;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return the number of tuples in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param tuple a member id for each key column.
+     * @return the row holding the tuple, or -1 if the tuple is not in the index.
+     */
+    public int get(int[] tuple) {
+        long hash = hash(tuple);
+        int mask = rows.length - 1;
+        for (int slot = (int) hash & mask; rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(rows[slot], tuple)) {
+                return rows[slot];
+            }
+        }
+        return NO_ROW;
+    }
+
+    /**
+     * Map a tuple to a row.  The key columns must already hold the tuple at that row.
+     *
+     * @param tuple a member id for each key column.
+     * @param row the row holding the tuple.
+     * @return the row the tuple was previously mapped to, or -1 if it was not in the index.
+     */
+    public int put(int[] tuple, int row) {
+        long hash = hash(tuple);
+        int mask = rows.length - 1;
+        int slot = (int) hash & mask;
+        for (; rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(rows[slot], tuple)) {
+                int previous = rows[slot];
+                rows[slot] = row;
+                return previous;
+            }
+        }
+        hashes[slot] = hash;
+        rows[slot] = row;
+        if (++size > rows.length >> 1) {
+            rehash();
+        }
+        return NO_ROW;
+    }
+
+    /**
+     * Remove the mapping of a tuple to a row, before the key columns give the row another tuple.
+     *
+     * @param tuple the member ids the key columns still hold at the row.
+     * @param row the row.
+     * @return true if the tuple was mapped to the row.
+     */
+    public boolean remove(int[] tuple, int row) {
+        long hash = hash(tuple);
+        int mask = rows.length - 1;
+        for (int slot = (int) hash & mask; rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (rows[slot] == row && hashes[slot] == hash) {
+                removeSlot(slot);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Empty a slot, moving back the slots after it in its probe run that could not be found past the hole.
+     */
+    private void removeSlot(int slot) {
+        int mask = rows.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; rows[next] != NO_ROW; next = (next + 1) & mask) {
+            int home = (int) hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                hashes[hole] = hashes[next];
+                rows[hole] = rows[next];
+                hole = next;
+            }
+        }
+        rows[hole] = NO_ROW;
+    }
+
+    public void clear() {
+        Arrays.fill(rows, NO_ROW);
+        size = 0;
+    }
+
+    /**
+     * @return the approximate number of heap bytes held by the index, not counting the key columns.
+     */
+    public long getRetainedSize() {
+        return MemoryEstimator.sizeOfObject(3, Integer.BYTES) + MemoryEstimator.sizeOfArray(hashes)
+                + MemoryEstimator.sizeOfArray(rows);
+    }
+
+    private boolean matches(int row, int[] tuple) {
+        for (int k = 0; k < tuple.length; k++) {
+            if (keyColumns[k].getElement(row) != tuple[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combine the member ids with a multiply-xorshift mix, so that tuples differing in any position spread
+     * over the whole table.
+     */
+    static long hash(int[] tuple) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int memberId : tuple) {
+            hash = (hash ^ memberId) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        hash *= 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Move the slots to a table sized for the ones whose row still holds their tuple, dropping the others.
+     */
+    private void rehash() {
+        long[] oldHashes = hashes;
+        int[] oldRows = rows;
+        int[] tuple = new int[keyColumns.length];
+        int live = 0;
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != NO_ROW) {
+                if (holds(oldRows[i], oldHashes[i], tuple)) {
+                    live++;
+                } else {
+                    oldRows[i] = NO_ROW;
+                }
+            }
+        }
+        int capacity = capacityFor(live + (live >> 1));
+        allocate(capacity);
+        size = live;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != NO_ROW) {
+                int slot = (int) oldHashes[i] & mask;
+                while (rows[slot] != NO_ROW) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    /**
+     * @return true if the key columns hold a tuple of the given hash at the row.
+     */
+    private boolean holds(int row, long hash, int[] tuple) {
+        for (int k = 0; k < tuple.length; k++) {
+            if (row >= keyColumns[k].size()) {
+                return false;
+            }
+            tuple[k] = keyColumns[k].getElement(row);
+        }
+        return hash(tuple) == hash;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, NO_ROW);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expectedSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "TupleIndex{" +
+                "keyColumns=" + keyColumns.length +
+                ", size=" + size +
+                ", capacity=" + rows.length +
+                '}';
+    }
+}
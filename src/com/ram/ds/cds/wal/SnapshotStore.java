@@ -0,0 +1,421 @@
+package com.ram.ds.cds.wal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.ram.ds.cds.AttributeContainer;
+import com.ram.ds.cds.CdsException;
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.Dimension;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.stores.IChunkedStore;
+import com.ram.ds.cds.stores.IDataStore;
+
+/**
+ * Snapshots of a cube kept in a directory as a full base and a chain of deltas, so that a checkpoint only
+ * writes what changed since the previous one.
+ *
+ * <p>A delta holds the cube without the contents of the stores that were already saved and have not been
+ * replaced since: those are written as references, followed by the chunks written since the last save (see
+ * {@link IChunkedStore}).  Everything else is written whole: the dimensions and their members, the
+ * intersections' own state, and the stores that are new, or do not keep their values in chunks, such as the
+ * lookup stores.  A checkpoint of a large cube after a few edits thus writes a few chunks and the metadata.</p>
+ *
+ * <p>{@link #load()} reads the base and applies the deltas in order.  {@link #compact()} merges the deltas
+ * into a new base, so that loading does not get slower as deltas accumulate; it can run in the background
+ * while deltas are being written.</p>
+ *
+ * <p>Each base and delta carries a generation number, which increases with every save and is used by
+ * {@link WriteAheadLog} to match its records to a snapshot.  The writers of the cube should be paused while a
+ * base or a delta is written, since it is taken from the live cube.</p>
+ */
+public class SnapshotStore {
+
+    private static final String BASE_FILE = "base.snap";
+    private static final String DELTA_PREFIX = "delta-";
+    private static final String SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    /**
+     * Generation of the last base or delta saved, 0 if there is none.
+     */
+    private long generation;
+    private long baseGeneration;
+
+    /**
+     * The stores of the cube as of the last save or load, with the container and attribute they were saved
+     * under; null if the files on disk are not known to describe this cube.
+     */
+    private Map<IDataStore, String> savedStores;
+
+    /**
+     * Open a snapshot directory, creating it if needed.
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        Path baseFile = directory.resolve(BASE_FILE);
+        if (Files.exists(baseFile)) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(baseFile)))) {
+                baseGeneration = in.readLong();
+            }
+        }
+        generation = baseGeneration;
+        for (long deltaGeneration : listDeltas().keySet()) {
+            generation = Math.max(generation, deltaGeneration);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the generation of the last base or delta saved, 0 if there is none.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of deltas that have not been merged into the base.
+     */
+    public synchronized int getDeltaCount() throws IOException {
+        return listDeltas().tailMap(baseGeneration, false).size();
+    }
+
+    /**
+     * Save the whole cube as the new base, and drop the deltas.
+     *
+     * @param cube the cube.
+     * @param newGeneration the generation of the base, greater than {@link #getGeneration()}.
+     */
+    public synchronized void writeBase(CubeDs cube, long newGeneration) throws IOException {
+        checkGeneration(newGeneration);
+        Map<IDataStore, String> stores = collectStores(cube);
+        Path baseFile = directory.resolve(BASE_FILE);
+        Path tempFile = directory.resolve(BASE_FILE + TEMP_SUFFIX);
+        writeFile(tempFile, out -> {
+            out.writeLong(newGeneration);
+            out.writeObject(cube);
+        });
+        Files.move(tempFile, baseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        baseGeneration = newGeneration;
+        generation = newGeneration;
+        deleteDeltas(newGeneration);
+        saved(stores);
+    }
+
+    /**
+     * Save the changes made to the cube since the last save as a delta.  The first save of a cube that was
+     * not loaded from this directory writes a base instead.
+     *
+     * @param cube the cube.
+     * @param newGeneration the generation of the delta, greater than {@link #getGeneration()}.
+     */
+    public synchronized void writeDelta(CubeDs cube, long newGeneration) throws IOException {
+        if (savedStores == null || !Files.exists(directory.resolve(BASE_FILE))) {
+            writeBase(cube, newGeneration);
+            return;
+        }
+        checkGeneration(newGeneration);
+        Map<IDataStore, String> stores = collectStores(cube);
+        Map<IDataStore, StoreRef> references = new IdentityHashMap<IDataStore, StoreRef>();
+        Map<IChunkedStore, BitSet> dirtyChunks = new IdentityHashMap<IChunkedStore, BitSet>();
+        for (Map.Entry<IDataStore, String> entry : stores.entrySet()) {
+            IDataStore store = entry.getKey();
+            if (store instanceof IChunkedStore && entry.getValue().equals(savedStores.get(store))) {
+                BitSet dirty = ((IChunkedStore) store).getDirtyChunks();
+                if (dirty != null) {
+                    references.put(store, new StoreRef(entry.getValue()));
+                    dirtyChunks.put((IChunkedStore) store, dirty);
+                }
+            }
+        }
+        Path deltaFile = deltaFile(newGeneration);
+        Path tempFile = deltaFile.resolveSibling(deltaFile.getFileName() + TEMP_SUFFIX);
+        writeFile(tempFile, out -> {
+            out.writeLong(newGeneration);
+            DeltaOutputStream deltaOut = (DeltaOutputStream) out;
+            deltaOut.references = references;
+            out.writeObject(cube);
+            deltaOut.references = null;
+            out.writeInt(dirtyChunks.size());
+            for (Map.Entry<IChunkedStore, BitSet> entry : dirtyChunks.entrySet()) {
+                out.writeUTF(stores.get(entry.getKey()));
+                entry.getKey().writeChunks(out, entry.getValue());
+            }
+        });
+        Files.move(tempFile, deltaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generation = newGeneration;
+        saved(stores);
+    }
+
+    /**
+     * Read the base and apply the deltas.  Later deltas are written against the loaded cube.
+     *
+     * @return the cube as of the last save, or null if there is no base.
+     */
+    public synchronized CubeDs load() throws IOException, ClassNotFoundException {
+        CubeDs cube = readChain(Long.MAX_VALUE);
+        if (cube != null) {
+            saved(collectStores(cube));
+        }
+        return cube;
+    }
+
+    /**
+     * Merge the deltas into a new base.  The cube is read back from the files rather than taken from memory,
+     * so deltas can be written meanwhile; they are kept, and apply to the new base.
+     *
+     * @return the number of deltas merged.
+     */
+    public int compact() throws IOException, ClassNotFoundException {
+        long targetGeneration;
+        synchronized (this) {
+            targetGeneration = generation;
+            if (targetGeneration == baseGeneration) {
+                return 0;
+            }
+        }
+        CubeDs cube = readChain(targetGeneration);
+        Path tempFile = directory.resolve(BASE_FILE + ".compact" + TEMP_SUFFIX);
+        writeFile(tempFile, out -> {
+            out.writeLong(targetGeneration);
+            out.writeObject(cube);
+        });
+        synchronized (this) {
+            if (baseGeneration >= targetGeneration) {
+                // a base was written meanwhile
+                Files.delete(tempFile);
+                return 0;
+            }
+            int merged = listDeltas().subMap(baseGeneration, false, targetGeneration, true).size();
+            Files.move(tempFile, directory.resolve(BASE_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            baseGeneration = targetGeneration;
+            deleteDeltas(targetGeneration);
+            return merged;
+        }
+    }
+
+    /**
+     * Read the base and the deltas up to the given generation.  Deltas left over from before the base, by a
+     * compaction that stopped before deleting them, are skipped.
+     */
+    private CubeDs readChain(long lastGeneration) throws IOException, ClassNotFoundException {
+        Path baseFile = directory.resolve(BASE_FILE);
+        if (!Files.exists(baseFile)) {
+            return null;
+        }
+        long chainBaseGeneration;
+        CubeDs cube;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(baseFile)))) {
+            chainBaseGeneration = in.readLong();
+            cube = (CubeDs) in.readObject();
+        }
+        for (Map.Entry<Long, Path> delta : listDeltas().subMap(chainBaseGeneration, false, lastGeneration, true).entrySet()) {
+            Map<String, IDataStore> storesByKey = new HashMap<String, IDataStore>();
+            for (Map.Entry<IDataStore, String> entry : collectStores(cube).entrySet()) {
+                storesByKey.put(entry.getValue(), entry.getKey());
+            }
+            try (InputStream fileIn = new BufferedInputStream(Files.newInputStream(delta.getValue()));
+                 DeltaInputStream in = new DeltaInputStream(fileIn, storesByKey)) {
+                if (in.readLong() != delta.getKey()) {
+                    throw new CdsException("Snapshot delta " + delta.getValue() + " does not match its name");
+                }
+                cube = (CubeDs) in.readObject();
+                for (int count = in.readInt(); count > 0; count--) {
+                    String key = in.readUTF();
+                    IDataStore store = storesByKey.get(key);
+                    if (!(store instanceof IChunkedStore)) {
+                        throw new CdsException("Snapshot delta " + delta.getValue() + " names an unknown store " + key);
+                    }
+                    ((IChunkedStore) store).readChunks(in);
+                }
+            }
+        }
+        return cube;
+    }
+
+    private void saved(Map<IDataStore, String> stores) {
+        for (IDataStore store : stores.keySet()) {
+            if (store instanceof IChunkedStore) {
+                ((IChunkedStore) store).clearDirtyChunks();
+            }
+        }
+        savedStores = stores;
+    }
+
+    private void checkGeneration(long newGeneration) {
+        if (newGeneration <= generation) {
+            throw new IllegalArgumentException("Generation " + newGeneration + " is not after the last one saved, "
+                    + generation);
+        }
+    }
+
+    /**
+     * The attribute stores of the levels and intersections of a cube, keyed by container and attribute name.
+     */
+    private static Map<IDataStore, String> collectStores(CubeDs cube) {
+        Map<IDataStore, String> stores = new IdentityHashMap<IDataStore, String>();
+        for (Dimension dimension : cube.getDimensions()) {
+            for (HierarchyLevel level : dimension.getLevels()) {
+                collectStores(level, "level\u0000" + dimension.getName() + '\u0000' + level.getName(), stores);
+            }
+        }
+        for (Intersection intersection : cube.getIntersections()) {
+            collectStores(intersection, "intersection\u0000" + intersection.getName(), stores);
+        }
+        return stores;
+    }
+
+    private static void collectStores(AttributeContainer container, String containerKey, Map<IDataStore, String> stores) {
+        for (String attrName : container.getAttributes().keySet()) {
+            IDataStore store = container.getAttributeStore(attrName);
+            if (!stores.containsKey(store)) {
+                stores.put(store, containerKey + '\u0000' + attrName);
+            }
+        }
+    }
+
+    private TreeMap<Long, Path> listDeltas() throws IOException {
+        TreeMap<Long, Path> deltas = new TreeMap<Long, Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, DELTA_PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    deltas.put(Long.parseLong(name.substring(DELTA_PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return deltas;
+    }
+
+    private void deleteDeltas(long upToGeneration) throws IOException {
+        for (Path file : listDeltas().headMap(upToGeneration, true).values()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private Path deltaFile(long deltaGeneration) {
+        return directory.resolve(String.format("%s%019d%s", DELTA_PREFIX, deltaGeneration, SUFFIX));
+    }
+
+    /**
+     * Write a file and force it to the disk.
+     */
+    private static void writeFile(Path file, SnapshotWriter writer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            DeltaOutputStream objectOut = new DeltaOutputStream(out);
+            writer.write(objectOut);
+            objectOut.flush();
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SnapshotStore{" +
+                "directory=" + directory +
+                ", generation=" + generation +
+                ", baseGeneration=" + baseGeneration +
+                '}';
+    }
+
+    private interface SnapshotWriter {
+        void write(ObjectOutputStream out) throws IOException;
+    }
+
+    /**
+     * Stands for a store already saved, in the cube written to a delta.
+     */
+    private static final class StoreRef implements Serializable {
+
+        private static final long serialVersionUID = 6807391358460184313L;
+
+        private final String key;
+
+        StoreRef(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Writes the stores that have references as the references.
+     */
+    private static final class DeltaOutputStream extends ObjectOutputStream {
+
+        private Map<IDataStore, StoreRef> references;
+
+        DeltaOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (references != null && obj instanceof IDataStore) {
+                StoreRef reference = references.get(obj);
+                if (reference != null) {
+                    return reference;
+                }
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Reads the references to stores as the stores of the cube the delta applies to.
+     */
+    private static final class DeltaInputStream extends ObjectInputStream {
+
+        private final Map<String, IDataStore> storesByKey;
+
+        DeltaInputStream(InputStream in, Map<String, IDataStore> storesByKey) throws IOException {
+            super(in);
+            this.storesByKey = storesByKey;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof StoreRef) {
+                IDataStore store = storesByKey.get(((StoreRef) obj).key);
+                if (store == null) {
+                    throw new CdsException("Snapshot delta refers to an unknown store " + ((StoreRef) obj).key);
+                }
+                return store;
+            }
+            return obj;
+        }
+    }
+}
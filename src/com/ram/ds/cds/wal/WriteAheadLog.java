@@ -0,0 +1,833 @@
+package com.ram.ds.cds.wal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.ram.ds.cds.AttributeContainer;
+import com.ram.ds.cds.CdsException;
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.Dimension;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.ICubeWriteListener;
+import com.ram.ds.cds.IRowRemapListener;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.stores.DoubleSparseArrayStore;
+import com.ram.ds.cds.stores.IDataStore;
+import com.ram.ds.cds.stores.IDoubleArrayStore;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.stores.IObservableStore;
+import com.ram.ds.cds.stores.IStoreWriteListener;
+import com.ram.ds.cds.stores.StoreWriteMulticaster;
+
+/**
+ * Append-only log of the writes made to a cube since its last snapshot, so that they survive the death of
+ * the JVM without serializing the whole cube after each edit.
+ *
+ * <p>Once {@link #attach(CubeDs) attached}, the log records every value written through the add and set
+ * methods of the double and double array stores of the levels and intersections, every member added to or
+ * renamed in a level, and every item added to, set in, deleted from or compacted out of an intersection.
+ * Each record names its container and attribute by a small id defined once per log, followed by the row and
+ * the value, and ends with a checksum.</p>
+ *
+ * <p>The file is mapped into memory, so a record is in the operating system's page cache as soon as it is
+ * appended and is not lost if the JVM dies.  Surviving a crash of the machine also requires the pages to be
+ * forced to the disk, which is done every {@link #getSyncBatchSize()} records, and by {@link #sync()}.</p>
+ *
+ * <p>{@link #checkpoint(CubeDs, Path)} serializes the cube to a snapshot and truncates the log;
+ * {@link #recover(Path)} reads the snapshot back and replays the log on top of it, which takes time in
+ * proportion to the size of the log rather than to the size of the cube.  The log only holds the writes
+ * since the last checkpoint, so take one after the initial load.  With a {@link SnapshotStore},
+ * {@link #checkpoint(CubeDs, SnapshotStore)} only writes the chunks changed since the previous checkpoint.</p>
+ *
+ * <p>Attributes, levels and intersections added to the cube after it was attached are not logged until it is
+ * attached again.  Values changed in place in arrays held by a store, and stores grown with empty values,
+ * are not logged.  Writers should be paused during a checkpoint, since the snapshot is taken from the live
+ * cube.</p>
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * Default number of records appended between two forces of the log to the disk.
+     */
+    public static final int DEFAULT_SYNC_BATCH_SIZE = 1024;
+
+    /**
+     * Size of the mapping of a new log; the mapping doubles whenever it is full.
+     */
+    public static final int INITIAL_MAP_SIZE = 1 << 24;
+
+    private static final int MAGIC = 0x4357414C; // "CWAL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES; // magic, version, generation
+    private static final int GENERATION_OFFSET = 2 * Integer.BYTES;
+
+    private static final byte DEFINE_LEVEL = 1;
+    private static final byte DEFINE_INTERSECTION = 2;
+    private static final byte DEFINE_STORE = 3;
+    private static final byte SET_DOUBLE = 4;
+    private static final byte SET_DOUBLE_ARRAY = 5;
+    private static final byte SET_SPARSE_ARRAY = 6;
+    private static final byte SET_MEMBER = 7;
+    private static final byte SET_KEY = 8;
+    private static final byte DELETE_ITEMS = 9;
+    private static final byte COMPACT = 10;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int syncBatchSize;
+    private final CRC32 checksum = new CRC32();
+    private final CubeListener cubeListener = new CubeListener();
+
+    private MappedByteBuffer buffer;
+    private long generation;
+    private long recordCount;
+    private int unsyncedRecordCount;
+    private int recordStart;
+
+    /**
+     * Ids of the levels, intersections and store listeners defined in the current generation of the log.
+     */
+    private final Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+    private int nextId;
+
+    private CubeDs attachedCube;
+    private boolean closed;
+
+    /**
+     * Open the log with the default sync batch size, creating the file if needed.
+     */
+    public WriteAheadLog(Path file) throws IOException {
+        this(file, DEFAULT_SYNC_BATCH_SIZE);
+    }
+
+    /**
+     * Open the log, creating the file if needed.  The records already in the file are checked, and new ones
+     * are appended after the last complete record.
+     *
+     * @param file the log file.
+     * @param syncBatchSize the number of records appended between two forces of the log to the disk: 1 to
+     *                      force every record, 0 to only force on {@link #sync()}, checkpoints and close.
+     */
+    public WriteAheadLog(Path file, int syncBatchSize) throws IOException {
+        if (syncBatchSize < 0) {
+            throw new IllegalArgumentException("syncBatchSize must not be negative: " + syncBatchSize);
+        }
+        this.file = file;
+        this.syncBatchSize = syncBatchSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean created = channel.size() < HEADER_SIZE;
+        long mapSize = Math.max(channel.size(), INITIAL_MAP_SIZE);
+        if (mapSize > Integer.MAX_VALUE) {
+            throw new CdsException("Write-ahead log " + file + " is too large to map: " + mapSize + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        if (created) {
+            writeHeader(0);
+        } else {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+                throw new CdsException("Not a write-ahead log of version " + VERSION + ": " + file);
+            }
+            generation = buffer.getLong(GENERATION_OFFSET);
+        }
+        buffer.position(HEADER_SIZE);
+        scan(null);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    /**
+     * @return the number of checkpoints taken since the log was created.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of records in the log since the last checkpoint.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of bytes used by the log, including its header.
+     */
+    public synchronized int getSize() {
+        return buffer.position();
+    }
+
+    /**
+     * Read the last snapshot and replay the log on top of it.  If the log predates the snapshot, because the
+     * last checkpoint stopped before truncating it, the log is truncated instead.
+     *
+     * @param snapshotFile the snapshot written by {@link #checkpoint(CubeDs, Path)}.
+     * @return the recovered cube, not yet attached; or null if there is no snapshot.
+     * @throws CdsException if the log is newer than the snapshot, or does not apply to it.
+     */
+    public synchronized CubeDs recover(Path snapshotFile) throws IOException, ClassNotFoundException {
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        long snapshotGeneration;
+        CubeDs cube;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotFile));
+             ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            snapshotGeneration = objectIn.readLong();
+            cube = (CubeDs) objectIn.readObject();
+        }
+        return recover(cube, snapshotGeneration, snapshotFile);
+    }
+
+    /**
+     * Load the snapshots and replay the log on top of them, see {@link #recover(Path)}.
+     *
+     * @param snapshots the snapshots written by {@link #checkpoint(CubeDs, SnapshotStore)}.
+     * @return the recovered cube, not yet attached; or null if there is no snapshot.
+     * @throws CdsException if the log is newer than the snapshots, or does not apply to them.
+     */
+    public synchronized CubeDs recover(SnapshotStore snapshots) throws IOException, ClassNotFoundException {
+        CubeDs cube = snapshots.load();
+        if (cube == null) {
+            return null;
+        }
+        return recover(cube, snapshots.getGeneration(), snapshots.getDirectory());
+    }
+
+    private CubeDs recover(CubeDs cube, long snapshotGeneration, Path snapshotPath) {
+        if (snapshotGeneration > generation) {
+            truncate(snapshotGeneration);
+        } else if (snapshotGeneration < generation) {
+            throw new CdsException("Write-ahead log " + file + " of generation " + generation
+                    + " is newer than the snapshot " + snapshotPath + " of generation " + snapshotGeneration);
+        } else {
+            replay(cube);
+        }
+        return cube;
+    }
+
+    /**
+     * Apply the records of the log to a cube, which must hold the state of the cube at the last checkpoint.
+     *
+     * @param cube the cube, which must not be attached.
+     * @return the number of records applied.
+     * @throws CdsException if a record names a container or attribute that the cube does not have.
+     */
+    public synchronized int replay(CubeDs cube) {
+        if (cube == attachedCube) {
+            throw new IllegalStateException("The log cannot be replayed into the cube it is attached to");
+        }
+        int end = buffer.position();
+        buffer.position(HEADER_SIZE);
+        long count = recordCount;
+        scan(cube);
+        if (buffer.position() != end || recordCount != count) {
+            throw new IllegalStateException("The write-ahead log " + file + " changed during the replay");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Start logging the writes to a cube.  Attaching the cube again picks up the levels, intersections and
+     * attributes added since.
+     */
+    public synchronized void attach(CubeDs cube) {
+        checkOpen();
+        if (attachedCube != null && attachedCube != cube) {
+            throw new IllegalStateException("The write-ahead log is already attached to another cube");
+        }
+        attachedCube = cube;
+        for (Dimension dimension : cube.getDimensions()) {
+            for (HierarchyLevel level : dimension.getLevels()) {
+                level.removeWriteListener(cubeListener);
+                level.addWriteListener(cubeListener);
+                attachStores(level);
+            }
+        }
+        for (Intersection intersection : cube.getIntersections()) {
+            intersection.removeWriteListener(cubeListener);
+            intersection.addWriteListener(cubeListener);
+            intersection.removeRowRemapListener(cubeListener);
+            intersection.addRowRemapListener(cubeListener);
+            attachStores(intersection);
+        }
+    }
+
+    /**
+     * Stop logging the writes to the attached cube, if any.
+     */
+    public synchronized void detach() {
+        if (attachedCube == null) {
+            return;
+        }
+        for (Dimension dimension : attachedCube.getDimensions()) {
+            for (HierarchyLevel level : dimension.getLevels()) {
+                level.removeWriteListener(cubeListener);
+                detachStores(level);
+            }
+        }
+        for (Intersection intersection : attachedCube.getIntersections()) {
+            intersection.removeWriteListener(cubeListener);
+            intersection.removeRowRemapListener(cubeListener);
+            detachStores(intersection);
+        }
+        attachedCube = null;
+    }
+
+    /**
+     * Force the records appended so far to the disk.
+     */
+    public synchronized void sync() {
+        if (!closed) {
+            buffer.force();
+            unsyncedRecordCount = 0;
+        }
+    }
+
+    /**
+     * Write a snapshot of the cube and truncate the log.  The snapshot is written to a temporary file next to
+     * the given one, forced to the disk and then moved over it, so that a crash leaves either the old or the
+     * new snapshot.
+     *
+     * @param cube the cube; its writers should be paused.
+     * @param snapshotFile the snapshot to replace.
+     */
+    public synchronized void checkpoint(CubeDs cube, Path snapshotFile) throws IOException {
+        checkOpen();
+        long nextGeneration = generation + 1;
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(snapshotChannel));
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeLong(nextGeneration);
+            objectOut.writeObject(cube);
+            objectOut.flush();
+            snapshotChannel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        truncate(nextGeneration);
+    }
+
+    /**
+     * Write a delta snapshot of the cube, holding the chunks written since the last checkpoint, and truncate
+     * the log.  The first checkpoint of a cube that was not recovered from the snapshots writes a full base.
+     *
+     * @param cube the cube; its writers should be paused.
+     * @param snapshots the snapshots to add to.
+     */
+    public synchronized void checkpoint(CubeDs cube, SnapshotStore snapshots) throws IOException {
+        checkOpen();
+        long nextGeneration = Math.max(generation, snapshots.getGeneration()) + 1;
+        snapshots.writeDelta(cube, nextGeneration);
+        truncate(nextGeneration);
+    }
+
+    /**
+     * Force the log to the disk, detach it and close the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        detach();
+        sync();
+        closed = true;
+        channel.close();
+    }
+
+    private void attachStores(AttributeContainer container) {
+        for (String attrName : container.getAttributes().keySet()) {
+            IDataStore store = container.getAttributeStore(attrName);
+            if (store instanceof IObservableStore && findStoreListener((IObservableStore) store) == null) {
+                ((IObservableStore) store).addWriteListener(new StoreListener(container, attrName));
+            }
+        }
+    }
+
+    private void detachStores(AttributeContainer container) {
+        for (String attrName : container.getAttributes().keySet()) {
+            IDataStore store = container.getAttributeStore(attrName);
+            if (store instanceof IObservableStore) {
+                StoreListener listener = findStoreListener((IObservableStore) store);
+                if (listener != null) {
+                    ((IObservableStore) store).removeWriteListener(listener);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the listener of this log among those of the given store, or null.
+     */
+    private StoreListener findStoreListener(IObservableStore store) {
+        for (IStoreWriteListener listener : StoreWriteMulticaster.getListeners(store.getWriteListener())) {
+            if (listener instanceof StoreListener && ((StoreListener) listener).log() == this) {
+                return (StoreListener) listener;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start a new generation of the log: drop all the records and the ids they defined.
+     */
+    private void truncate(long newGeneration) {
+        writeHeader(newGeneration);
+        buffer.position(HEADER_SIZE);
+        buffer.putInt(HEADER_SIZE, 0);
+        recordCount = 0;
+        ids.clear();
+        nextId = 0;
+        buffer.force();
+        unsyncedRecordCount = 0;
+    }
+
+    private void writeHeader(long newGeneration) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(Integer.BYTES, VERSION);
+        buffer.putLong(GENERATION_OFFSET, newGeneration);
+        generation = newGeneration;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log " + file + " is closed");
+        }
+    }
+
+    // ---- reading ----
+
+    /**
+     * Read the records from the current position up to the first one that is incomplete or does not belong
+     * to the current generation, leaving the position after the last valid record.  Each checksum covers the
+     * generation and the sequence number of its record, so that records left over from an earlier generation,
+     * or from before a torn write, end the log.
+     *
+     * @param cube the cube to apply the records to, or null to only check them.
+     */
+    private void scan(CubeDs cube) {
+        Map<Integer, Object> targets = cube == null ? null : new HashMap<Integer, Object>();
+        recordCount = 0;
+        int position = buffer.position();
+        while (position + 2 * Integer.BYTES < buffer.capacity()) {
+            int length = buffer.getInt(position);
+            int end = position + Integer.BYTES + length;
+            if (length <= 0 || end < 0 || end + Integer.BYTES > buffer.capacity()
+                    || buffer.getInt(end) != checksum(position + Integer.BYTES, length, recordCount)) {
+                break;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + Integer.BYTES).limit(end);
+            byte type = record.get();
+            if (type == DEFINE_LEVEL || type == DEFINE_INTERSECTION || type == DEFINE_STORE) {
+                nextId = Math.max(nextId, record.getInt(record.position()) + 1);
+            }
+            if (cube != null) {
+                apply(cube, targets, type, record);
+            }
+            recordCount++;
+            position = end + Integer.BYTES;
+        }
+        buffer.position(position);
+    }
+
+    private void apply(CubeDs cube, Map<Integer, Object> targets, byte type, ByteBuffer record) {
+        switch (type) {
+            case DEFINE_LEVEL: {
+                int id = record.getInt();
+                String dimensionName = getString(record);
+                String levelName = getString(record);
+                Dimension dimension = cube.getDimension(dimensionName);
+                HierarchyLevel level = dimension == null ? null : dimension.getLevel(levelName);
+                if (level == null) {
+                    throw new CdsException("Write-ahead log names an unknown level " + dimensionName + "." + levelName);
+                }
+                targets.put(id, level);
+                break;
+            }
+            case DEFINE_INTERSECTION: {
+                int id = record.getInt();
+                String name = getString(record);
+                Intersection intersection = cube.getIntersection(name);
+                if (intersection == null) {
+                    throw new CdsException("Write-ahead log names an unknown intersection " + name);
+                }
+                targets.put(id, intersection);
+                break;
+            }
+            case DEFINE_STORE: {
+                int id = record.getInt();
+                AttributeContainer container = (AttributeContainer) target(targets, record.getInt());
+                String attrName = getString(record);
+                IDataStore store = container.getAttributeStore(attrName);
+                if (store == null) {
+                    throw new CdsException("Write-ahead log names an unknown attribute " + attrName + " of "
+                            + container.getName());
+                }
+                targets.put(id, store);
+                break;
+            }
+            case SET_DOUBLE: {
+                IDoubleStore store = (IDoubleStore) target(targets, record.getInt());
+                int row = record.getInt();
+                store.setElementAt(row, record.getDouble());
+                break;
+            }
+            case SET_DOUBLE_ARRAY: {
+                IDoubleArrayStore store = (IDoubleArrayStore) target(targets, record.getInt());
+                int row = record.getInt();
+                store.setElementAt(row, getDoubles(record));
+                break;
+            }
+            case SET_SPARSE_ARRAY: {
+                DoubleSparseArrayStore store = (DoubleSparseArrayStore) target(targets, record.getInt());
+                int row = record.getInt();
+                int offset = record.getInt();
+                int maxTimeSeriesLength = record.getInt();
+                double[] values = getDoubles(record);
+                if (values != null) {
+                    store.setElementAt(row, values, offset);
+                }
+                store.setMaxTimeSeriesLength(maxTimeSeriesLength);
+                break;
+            }
+            case SET_MEMBER: {
+                HierarchyLevel level = (HierarchyLevel) target(targets, record.getInt());
+                int memberId = record.getInt();
+                String name = getString(record);
+                if (memberId < level.getMemberCount()) {
+                    level.setMemberAt(memberId, name);
+                } else if (level.addMember(name) != memberId) {
+                    throw new CdsException("Write-ahead log does not match the snapshot: member " + name
+                            + " of level " + level.getName() + " was not added as member " + memberId);
+                }
+                break;
+            }
+            case SET_KEY: {
+                Intersection intersection = (Intersection) target(targets, record.getInt());
+                int row = record.getInt();
+                int[] key = new int[record.getInt()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = record.getInt();
+                }
+                intersection.addKey(row, key);
+                break;
+            }
+            case DELETE_ITEMS: {
+                Intersection intersection = (Intersection) target(targets, record.getInt());
+                BitSet items = new BitSet();
+                for (int count = record.getInt(); count > 0; count--) {
+                    items.set(record.getInt());
+                }
+                intersection.deleteItems(items);
+                break;
+            }
+            case COMPACT: {
+                Intersection intersection = (Intersection) target(targets, record.getInt());
+                intersection.compact();
+                break;
+            }
+            default:
+                throw new CdsException("Unknown record type " + type + " in write-ahead log " + file);
+        }
+    }
+
+    private Object target(Map<Integer, Object> targets, int id) {
+        Object target = targets.get(id);
+        if (target == null) {
+            throw new CdsException("Write-ahead log " + file + " uses id " + id + " before defining it");
+        }
+        return target;
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static double[] getDoubles(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        double[] values = new double[length];
+        record.asDoubleBuffer().get(values);
+        record.position(record.position() + length * Double.BYTES);
+        return values;
+    }
+
+    // ---- writing ----
+
+    private void logDouble(StoreListener listener, int row, double value) {
+        int id = storeId(listener);
+        begin(SET_DOUBLE, 2 * Integer.BYTES + Double.BYTES);
+        buffer.putInt(id).putInt(row).putDouble(value);
+        end();
+    }
+
+    private void logDoubles(StoreListener listener, int row, double[] values) {
+        int id = storeId(listener);
+        begin(SET_DOUBLE_ARRAY, 2 * Integer.BYTES + sizeOf(values));
+        buffer.putInt(id).putInt(row);
+        putDoubles(values);
+        end();
+    }
+
+    private void logSparse(StoreListener listener, int row, DoubleSparseArrayStore store) {
+        int id = storeId(listener);
+        double[] values = store.refBaseArray(row);
+        begin(SET_SPARSE_ARRAY, 4 * Integer.BYTES + sizeOf(values));
+        buffer.putInt(id).putInt(row).putInt(store.getTimeSeriesOffset(row)).putInt(store.getMaxTimeSeriesLength());
+        putDoubles(values);
+        end();
+    }
+
+    private void logMember(HierarchyLevel level, int memberId) {
+        int id = containerId(level);
+        byte[] name = level.getStringAttribute(level.getIdentityAttributeName()).getElement(memberId)
+                .getBytes(StandardCharsets.UTF_8);
+        begin(SET_MEMBER, 3 * Integer.BYTES + name.length);
+        buffer.putInt(id).putInt(memberId).putInt(name.length).put(name);
+        end();
+    }
+
+    private void logKey(Intersection intersection, int row) {
+        int id = containerId(intersection);
+        int[] key = intersection.getKey(row, new int[intersection.relatedLevels().length]);
+        begin(SET_KEY, (3 + key.length) * Integer.BYTES);
+        buffer.putInt(id).putInt(row).putInt(key.length);
+        for (int memberId : key) {
+            buffer.putInt(memberId);
+        }
+        end();
+    }
+
+    private void logDelete(Intersection intersection, BitSet items) {
+        int id = containerId(intersection);
+        int count = items.cardinality();
+        begin(DELETE_ITEMS, (2 + count) * Integer.BYTES);
+        buffer.putInt(id).putInt(count);
+        for (int row = items.nextSetBit(0); row >= 0; row = items.nextSetBit(row + 1)) {
+            buffer.putInt(row);
+        }
+        end();
+    }
+
+    private void logCompact(Intersection intersection) {
+        int id = containerId(intersection);
+        begin(COMPACT, Integer.BYTES);
+        buffer.putInt(id);
+        end();
+    }
+
+    private int containerId(AttributeContainer container) {
+        Integer id = ids.get(container);
+        if (id != null) {
+            return id;
+        }
+        id = nextId++;
+        byte[] name = container.getName().getBytes(StandardCharsets.UTF_8);
+        if (container instanceof HierarchyLevel) {
+            byte[] dimensionName = ((HierarchyLevel) container).getDimensionName().getBytes(StandardCharsets.UTF_8);
+            begin(DEFINE_LEVEL, 3 * Integer.BYTES + dimensionName.length + name.length);
+            buffer.putInt(id).putInt(dimensionName.length).put(dimensionName).putInt(name.length).put(name);
+        } else {
+            begin(DEFINE_INTERSECTION, 2 * Integer.BYTES + name.length);
+            buffer.putInt(id).putInt(name.length).put(name);
+        }
+        end();
+        ids.put(container, id);
+        return id;
+    }
+
+    private int storeId(StoreListener listener) {
+        Integer id = ids.get(listener);
+        if (id != null) {
+            return id;
+        }
+        int containerId = containerId(listener.container);
+        id = nextId++;
+        byte[] attrName = listener.attrName.getBytes(StandardCharsets.UTF_8);
+        begin(DEFINE_STORE, 3 * Integer.BYTES + attrName.length);
+        buffer.putInt(id).putInt(containerId).putInt(attrName.length).put(attrName);
+        end();
+        ids.put(listener, id);
+        return id;
+    }
+
+    private static int sizeOf(double[] values) {
+        return Integer.BYTES + (values == null ? 0 : values.length * Double.BYTES);
+    }
+
+    private void putDoubles(double[] values) {
+        if (values == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(values.length);
+        buffer.asDoubleBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+    }
+
+    /**
+     * Start a record, making room in the mapping for it, its checksum and the end marker after it.
+     */
+    private void begin(byte type, int payloadSize) {
+        checkOpen();
+        int length = 1 + payloadSize;
+        long needed = (long) buffer.position() + 3 * Integer.BYTES + length;
+        if (needed > buffer.capacity()) {
+            grow(needed);
+        }
+        recordStart = buffer.position();
+        buffer.putInt(length);
+        buffer.put(type);
+    }
+
+    private void end() {
+        int length = buffer.getInt(recordStart);
+        buffer.putInt(checksum(recordStart + Integer.BYTES, length, recordCount));
+        buffer.putInt(buffer.position(), 0); // end marker, overwritten by the next record
+        recordCount++;
+        if (syncBatchSize > 0 && ++unsyncedRecordCount >= syncBatchSize) {
+            buffer.force();
+            unsyncedRecordCount = 0;
+        }
+    }
+
+    private void grow(long needed) {
+        long capacity = buffer.capacity();
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new CdsException("Write-ahead log " + file + " is full; take a checkpoint to truncate it");
+        }
+        int position = buffer.position();
+        buffer.force();
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new CdsException("Cannot grow write-ahead log " + file + ": " + e.getMessage());
+        }
+        buffer.position(position);
+    }
+
+    private int checksum(int offset, int length, long sequence) {
+        checksum.reset();
+        checksum.update(longBytes(generation));
+        checksum.update(longBytes(sequence));
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset).limit(offset + length);
+        checksum.update(body);
+        return (int) checksum.getValue();
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WriteAheadLog{" +
+                "file=" + file +
+                ", generation=" + generation +
+                ", recordCount=" + recordCount +
+                ", size=" + buffer.position() +
+                ", syncBatchSize=" + syncBatchSize +
+                '}';
+    }
+
+    /**
+     * Logs the writes to one store.
+     */
+    private final class StoreListener implements IStoreWriteListener {
+
+        private final AttributeContainer container;
+        private final String attrName;
+
+        StoreListener(AttributeContainer container, String attrName) {
+            this.container = container;
+            this.attrName = attrName;
+        }
+
+        WriteAheadLog log() {
+            return WriteAheadLog.this;
+        }
+
+        @Override
+        public void elementWritten(IObservableStore store, int index) {
+            synchronized (WriteAheadLog.this) {
+                if (store instanceof DoubleSparseArrayStore) {
+                    logSparse(this, index, (DoubleSparseArrayStore) store);
+                } else if (store instanceof IDoubleStore) {
+                    logDouble(this, index, ((IDoubleStore) store).getElement(index));
+                } else if (store instanceof IDoubleArrayStore) {
+                    logDoubles(this, index, ((IDoubleArrayStore) store).getElement(index));
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs the writes to the members of the levels and the items of the intersections.
+     */
+    private final class CubeListener implements ICubeWriteListener, IRowRemapListener {
+
+        @Override
+        public void memberWritten(HierarchyLevel level, int memberId) {
+            synchronized (WriteAheadLog.this) {
+                logMember(level, memberId);
+            }
+        }
+
+        @Override
+        public void keyWritten(Intersection intersection, int index) {
+            synchronized (WriteAheadLog.this) {
+                logKey(intersection, index);
+            }
+        }
+
+        @Override
+        public void itemsDeleted(Intersection intersection, BitSet items) {
+            synchronized (WriteAheadLog.this) {
+                logDelete(intersection, items);
+            }
+        }
+
+        @Override
+        public void rowsRemapped(Intersection intersection, int[] remap) {
+            synchronized (WriteAheadLog.this) {
+                logCompact(intersection);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Durability between snapshots: a memory-mapped write-ahead log of the measure values, members and items
+ * written to a cube, replayed on top of the last serialized snapshot at startup and truncated by each
+ * checkpoint; and snapshots kept as a base and deltas of the chunks written since the previous one.
+ */
+package com.ram.ds.cds.wal;
@@ -0,0 +1,103 @@
+package com.ram.ds.demo;
+
+import java.util.Random;
+
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.StandingAggregate;
+import com.ram.ds.cds.stores.IDoubleStore;
+
+/**
+ * Demonstration of MDAP Usage for JDA Application Developers.  To see MDAP in action, trace
+ * through this code in the debugger.
+ */
+class Demo10_StandingAggregate {
+
+    public static void main( String[] args ) {
+        CubeDs collector = Demo1_CollectorInitialization.initializeCollector();
+        Intersection item_store = collector.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        HierarchyLevel levelItem = collector.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        HierarchyLevel levelStore = collector.getDimension( Demo1_CollectorInitialization.LOCDIM )
+                .getLevel( Demo1_CollectorInitialization.STORELEVEL );
+        HierarchyLevel levelCategory = collector.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.CATEGORYLEVEL );
+        HierarchyLevel levelRegion = collector.getDimension( Demo1_CollectorInitialization.LOCDIM )
+                .getLevel( Demo1_CollectorInitialization.REGIONLEVEL );
+
+        Random random = new Random( 1 );
+        IDoubleStore sales = item_store.addDoubleAttribute( "Sales" );
+        for( int i=0; i<item_store.size(); i++ ) {
+            sales.addElement( random.nextInt( 100 ));
+        }
+
+        // A standing aggregate keeps the totals of Sales by Category and Region up to date as the intersection
+        // is written, without scanning it again.
+        StandingAggregate salesByCategoryRegion = item_store.addStandingAggregate( collector, "Sales",
+                levelCategory, levelRegion );
+        int tuple = salesByCategoryRegion.getTuple( 0, 0 );
+        System.out.println( "Sales of Category 0 in Region 0: " + salesByCategoryRegion.getSum( tuple ));
+
+        edit( item_store, sales, levelItem, levelStore, random );
+        check( collector, item_store, salesByCategoryRegion, levelCategory, levelRegion );
+
+        // Packing the key columns replaces their stores.  The aggregate keeps following the intersection.
+        System.out.println( "Encoding the key columns saved " + item_store.encodeKeyColumns() + " bytes" );
+        edit( item_store, sales, levelItem, levelStore, random );
+        check( collector, item_store, salesByCategoryRegion, levelCategory, levelRegion );
+        System.out.println( "Sales of Category 0 in Region 0: " + salesByCategoryRegion.getSum( tuple ));
+    }
+
+    /**
+     * Change some Sales values, move some items to other tuples, and add some items.
+     */
+    private static void edit( Intersection item_store, IDoubleStore sales, HierarchyLevel levelItem,
+                              HierarchyLevel levelStore, Random random ) {
+        int[] key = new int[2];
+        for( int i=0; i<1000; i++ ) {
+            key[0] = random.nextInt( levelItem.getMemberCount() );
+            key[1] = random.nextInt( levelStore.getMemberCount() );
+            switch ( random.nextInt( 3 )) {
+                case 0:
+                    sales.setElementAt( random.nextInt( item_store.size() ), random.nextInt( 100 ));
+                    break;
+                case 1:
+                    if ( item_store.lookup( key ) < 0 )
+                        item_store.addKey( random.nextInt( item_store.size() ), key );
+                    break;
+                default:
+                    sales.setElementAt( item_store.lookupOrAdd( key ), random.nextInt( 100 ));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Compare the aggregate with totals computed by scanning the intersection.
+     */
+    private static void check( CubeDs collector, Intersection item_store, StandingAggregate aggregate,
+                               HierarchyLevel levelCategory, HierarchyLevel levelRegion ) {
+        item_store.clearLevelMappingCache();
+        int[] categories = item_store.getTargetAggregationInds( collector, levelCategory );
+        int[] regions = item_store.getTargetAggregationInds( collector, levelRegion );
+        IDoubleStore sales = item_store.getDoubleAttribute( "Sales" );
+        int regionCount = levelRegion.getMemberCount();
+        double[] sums = new double[levelCategory.getMemberCount() * regionCount];
+        long[] itemCounts = new long[sums.length];
+        for( int i=0; i<item_store.size(); i++ ) {
+            int cell = categories[i] * regionCount + regions[i];
+            sums[cell] += sales.getElement( i );
+            itemCounts[cell]++;
+        }
+        for( int cell=0; cell<sums.length; cell++ ) {
+            int tuple = aggregate.getTuple( cell / regionCount, cell % regionCount );
+            long itemCount = tuple < 0 ? 0 : aggregate.getItemCount( tuple );
+            double sum = tuple < 0 ? 0.0 : aggregate.getSum( tuple );
+            if ( itemCount != itemCounts[cell] || Math.abs( sum - sums[cell] ) > 1e-6 )
+                throw new IllegalStateException( "The standing aggregate differs for Category " + cell / regionCount
+                        + " and Region " + cell % regionCount + ": " + sum + " in " + itemCount + " items instead of "
+                        + sums[cell] + " in " + itemCounts[cell] );
+        }
+    }
+}
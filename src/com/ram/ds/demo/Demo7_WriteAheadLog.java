@@ -0,0 +1,92 @@
+package com.ram.ds.demo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.Dimension;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.util.ArrayOps;
+import com.ram.ds.cds.wal.WriteAheadLog;
+
+/**
+ * Demonstration of MDAP Usage for JDA Application Developers.  To see MDAP in action, trace
+ * through this code in the debugger.
+ */
+class Demo7_WriteAheadLog {
+
+    public static void main( String[] args ) throws IOException, ClassNotFoundException {
+        // Start with the sample Collector, and give its intersection a measure.
+        CubeDs collector = Demo1_CollectorInitialization.initializeCollector();
+        Intersection item_store = collector.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        IDoubleStore sales = item_store.addDoubleAttribute( "Sales" );
+        for( int sale : ArrayOps.randomFromPopulation( item_store.size(), new int[]{ 10, 20, 50, 100 }) ) {
+            sales.addElement( sale );
+        }
+
+        Path directory = Files.createTempDirectory( "cds-wal-demo" );
+        Path logFile = directory.resolve( "cube.wal" );
+        Path snapshotFile = directory.resolve( "cube.snap" );
+
+        // Open the log and attach it to the Collector.  From here on, every write to the measure, the levels
+        // and the intersection is appended to the log.
+        WriteAheadLog log = new WriteAheadLog( logFile );
+        log.attach( collector );
+
+        // The log only holds the writes since the last checkpoint, so take one after the initial load.  This
+        // serializes the whole Collector to the snapshot file and empties the log.
+        log.checkpoint( collector, snapshotFile );
+        System.out.println( "After the checkpoint: " + log );
+
+        // Now edit the Collector.  These edits are only in the log, not in the snapshot.
+        sales.setElementAt( 0, 1234.5 );
+        sales.setElementAt( 7, sales.getElement( 7 ) * 2 );
+
+        Dimension product_dimension = collector.getDimension( Demo1_CollectorInitialization.PRODDIM );
+        HierarchyLevel levelItem = product_dimension.getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        levelItem.setMemberAt( 3, "Renamed item" );
+
+        // Add an item for a tuple of members that has no data yet, and delete another one.
+        int[] key = new int[]{ levelItem.getMemberCount() - 1, 0 };
+        int newItem = item_store.lookupOrAdd( key );
+        sales.setElementAt( newItem, 99.0 );
+        item_store.deleteItem( 5 );
+        System.out.println( "After the edits: " + log );
+
+        // Close the log.  After a crash the log file would be in the same state, since every record is in
+        // the page cache as soon as it is appended.
+        log.close();
+
+        // Reopen the log, then read the snapshot back and replay the log on top of it.
+        WriteAheadLog reopened = new WriteAheadLog( logFile );
+        CubeDs recovered = reopened.recover( snapshotFile );
+        Intersection recovered_item_store = recovered.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        IDoubleStore recovered_sales = recovered_item_store.getDoubleAttribute( "Sales" );
+        HierarchyLevel recoveredLevelItem = recovered.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        System.out.println( "Recovered " + reopened.getRecordCount() + " records on top of the snapshot" );
+
+        // The recovered Collector has the edits made after the checkpoint.
+        check( recovered_item_store.size() == item_store.size(), "item count" );
+        for( int i=0; i<item_store.size(); i++ ) {
+            check( recovered_item_store.isDeleted( i ) == item_store.isDeleted( i ), "deleted item " + i );
+            check( Double.compare( recovered_sales.getElement( i ), sales.getElement( i )) == 0, "Sales of item " + i );
+        }
+        check( recovered_item_store.lookup( key ) == newItem, "added item" );
+        check( recoveredLevelItem.lookup( "Renamed item" ) == 3, "renamed member" );
+        System.out.println( "Recovered Sales of item 0: " + recovered_sales.getElement( 0 ) );
+        System.out.println( "Recovered member id of the renamed item: " + recoveredLevelItem.lookup( "Renamed item" ) );
+
+        // Attach the reopened log to the recovered Collector to carry on logging its writes.
+        reopened.attach( recovered );
+        reopened.close();
+    }
+
+    private static void check( boolean matches, String what ) {
+        if ( !matches )
+            throw new IllegalStateException( "The recovered Collector differs in " + what );
+    }
+}
@@ -0,0 +1,91 @@
+package com.ram.ds.demo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.stores.IDoubleStore;
+import com.ram.ds.cds.util.ArrayOps;
+import com.ram.ds.cds.wal.SnapshotStore;
+
+/**
+ * Demonstration of MDAP Usage for JDA Application Developers.  To see MDAP in action, trace
+ * through this code in the debugger.
+ */
+class Demo8_SnapshotStore {
+
+    public static void main( String[] args ) throws IOException, ClassNotFoundException {
+        // Start with the sample Collector, and give its intersection a measure.
+        CubeDs collector = Demo1_CollectorInitialization.initializeCollector();
+        Intersection item_store = collector.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        IDoubleStore sales = item_store.addDoubleAttribute( "Sales" );
+        for( int sale : ArrayOps.randomFromPopulation( item_store.size(), new int[]{ 10, 20, 50, 100 }) ) {
+            sales.addElement( sale );
+        }
+
+        // The snapshots are kept in a directory: a full base, then a delta for each later save.
+        Path directory = Files.createTempDirectory( "cds-snapshot-demo" );
+        SnapshotStore snapshots = new SnapshotStore( directory );
+
+        // The first save writes the whole Collector as the base.  Every save has a generation number, which
+        // must increase.
+        snapshots.writeBase( collector, 1 );
+        System.out.println( "After the base: " + snapshots );
+
+        // Edit a few values, then save again.  The delta only holds the chunks of the stores that were written
+        // since the base, plus the metadata.
+        sales.setElementAt( 0, 1234.5 );
+        sales.setElementAt( 7, sales.getElement( 7 ) * 2 );
+        snapshots.writeDelta( collector, 2 );
+
+        // A second delta, with an added item and a renamed member.
+        HierarchyLevel levelItem = collector.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        levelItem.setMemberAt( 3, "Renamed item" );
+        int[] key = new int[]{ levelItem.getMemberCount() - 1, 0 };
+        int newItem = item_store.lookupOrAdd( key );
+        sales.setElementAt( newItem, 99.0 );
+        snapshots.writeDelta( collector, 3 );
+        System.out.println( "After two deltas: " + snapshots.getDeltaCount() + " deltas, " + snapshots );
+
+        // Loading reads the base and applies the deltas in order.
+        check( collector, new SnapshotStore( directory ).load(), key, newItem );
+
+        // Compacting merges the deltas into a new base, so that loading does not slow down as they pile up.
+        int merged = snapshots.compact();
+        System.out.println( "Merged " + merged + " deltas, " + snapshots.getDeltaCount() + " left: " + snapshots );
+
+        // Open the directory again, as after a restart, and load the compacted base.
+        SnapshotStore reopened = new SnapshotStore( directory );
+        CubeDs loaded = reopened.load();
+        check( collector, loaded, key, newItem );
+        System.out.println( "Loaded generation " + reopened.getGeneration() + ": Sales of item 0 is "
+                + loaded.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE )
+                        .getDoubleAttribute( "Sales" ).getElement( 0 ));
+    }
+
+    /**
+     * Compare the loaded Collector with the one that was saved.
+     */
+    private static void check( CubeDs saved, CubeDs loaded, int[] addedKey, int addedItem ) {
+        Intersection item_store = saved.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        Intersection loaded_item_store = loaded.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+        IDoubleStore sales = item_store.getDoubleAttribute( "Sales" );
+        IDoubleStore loaded_sales = loaded_item_store.getDoubleAttribute( "Sales" );
+        if ( loaded_item_store.size() != item_store.size() )
+            throw new IllegalStateException( "The loaded Collector has " + loaded_item_store.size() + " items" );
+        for( int i=0; i<item_store.size(); i++ ) {
+            if ( Double.compare( loaded_sales.getElement( i ), sales.getElement( i )) != 0 )
+                throw new IllegalStateException( "The loaded Collector differs in the Sales of item " + i );
+        }
+        if ( loaded_item_store.lookup( addedKey ) != addedItem )
+            throw new IllegalStateException( "The loaded Collector is missing the added item" );
+        HierarchyLevel loadedLevelItem = loaded.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        if ( loadedLevelItem.lookup( "Renamed item" ) != 3 )
+            throw new IllegalStateException( "The loaded Collector is missing the renamed member" );
+    }
+}
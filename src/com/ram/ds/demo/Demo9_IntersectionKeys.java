@@ -0,0 +1,75 @@
+package com.ram.ds.demo;
+
+import java.util.Random;
+
+import com.ram.ds.cds.CubeDs;
+import com.ram.ds.cds.HierarchyLevel;
+import com.ram.ds.cds.Intersection;
+import com.ram.ds.cds.memory.MemoryUsage;
+import com.ram.ds.cds.stores.IIntStore;
+
+/**
+ * Demonstration of MDAP Usage for JDA Application Developers.  To see MDAP in action, trace
+ * through this code in the debugger.
+ */
+class Demo9_IntersectionKeys {
+
+    public static void main( String[] args ) {
+        CubeDs collector = Demo1_CollectorInitialization.initializeCollector();
+        Intersection item_store = collector.getIntersection( Demo1_CollectorInitialization.INTERSECTION_ITEM_STORE );
+
+        // The key of each item is held in one IIntStore per related level.  They are normally written together
+        // by lookupOrAdd() or addKey(), but an application that loads the key columns directly can leave one
+        // of them shorter than the others.
+        IIntStore item_memberIds = item_store.getIntAttribute( Demo1_CollectorInitialization.ITEMLEVEL );
+        IIntStore store_memberIds = item_store.getIntAttribute( Demo1_CollectorInitialization.STORELEVEL );
+        int partialItem = item_store.size();
+        item_memberIds.addElement( 0 );
+        System.out.println( "Item column holds " + item_memberIds.size() + " keys, Store column "
+                + store_memberIds.size() );
+
+        // addKey() completes the key of the partly written item.
+        int[] key = new int[]{ 1, store_memberIds.size() % 7 };
+        item_store.addKey( partialItem, key );
+        check( item_store.lookup( key ) == partialItem, "the item whose key was completed" );
+        System.out.println( "Completed the key of item " + partialItem );
+
+        // Now move the items between tuples many times over.  Each addKey() takes the item out of the lookup
+        // index under its old tuple, so the index stays the size of the intersection.
+        HierarchyLevel levelItem = collector.getDimension( Demo1_CollectorInitialization.PRODDIM )
+                .getLevel( Demo1_CollectorInitialization.ITEMLEVEL );
+        HierarchyLevel levelStore = collector.getDimension( Demo1_CollectorInitialization.LOCDIM )
+                .getLevel( Demo1_CollectorInitialization.STORELEVEL );
+        long indexBytes = getTupleIndexBytes( item_store );
+        Random random = new Random( 1 );
+        int itemCount = item_store.size();
+        int[] newKey = new int[2];
+        for( int i=0; i<200 * itemCount; i++ ) {
+            int item = random.nextInt( itemCount );
+            newKey[0] = random.nextInt( levelItem.getMemberCount() );
+            newKey[1] = random.nextInt( levelStore.getMemberCount() );
+            int holder = item_store.lookup( newKey );
+            if ( holder < 0 )
+                item_store.addKey( item, newKey );
+        }
+        System.out.println( "Lookup index held " + indexBytes + " bytes before the key rewrites, "
+                + getTupleIndexBytes( item_store ) + " after" );
+        check( getTupleIndexBytes( item_store ) <= 2 * indexBytes, "the size of its lookup index" );
+
+        // Every item is still found under its current key.
+        int[] key2 = new int[2];
+        for( int item=0; item<itemCount; item++ ) {
+            check( item_store.lookup( item_store.getKey( item, key2 )) == item, "the key of item " + item );
+        }
+    }
+
+    private static long getTupleIndexBytes( Intersection intersection ) {
+        MemoryUsage tupleIndex = intersection.getMemoryUsage().getChild( "tupleIndex" );
+        return tupleIndex == null ? 0 : tupleIndex.getHeapBytes();
+    }
+
+    private static void check( boolean matches, String what ) {
+        if ( !matches )
+            throw new IllegalStateException( "The intersection is wrong about " + what );
+    }
+}
@@ -13,6 +13,15 @@
  *     tuple of level members.</li>
  *     <li>Demo6_AttributeHierarchy:  Illustrates the creation of new hierarchies that contain attributes other
  *     than member names.</li>
+ *     <li>Demo7_WriteAheadLog:  Illustrates logging the writes to a Collector, taking a checkpoint, and recovering
+ *     the Collector from the snapshot and the log after the log is reopened.</li>
+ *     <li>Demo8_SnapshotStore:  Illustrates saving a Collector as a base snapshot and a chain of deltas, compacting
+ *     the deltas into a new base, and loading the Collector back.</li>
+ *     <li>Demo9_IntersectionKeys:  Illustrates writing the keys of intersection items with addKey(), and checks
+ *     that the intersection stays consistent when its key columns are written unevenly, and that its lookup
+ *     index does not grow as items move between tuples.</li>
+ *     <li>Demo10_StandingAggregate:  Illustrates keeping totals up to date with a standing aggregate while the
+ *     intersection is edited and its key columns are encoded, checking them against a scan.</li>
  * </ul>
  */
 package com.ram.ds.demo;